@@ -9,7 +9,6 @@ public class App
 {
     public static void main( String[] args )
     {
-        CommandLineApp app = new CommandLineApp();
-        app.run();
+        CommandLineApp.main(args);
     }
 }
@@ -0,0 +1,19 @@
+package top.thesumst.cli;
+
+import top.thesumst.cli.CommandParser.ParsedCommand;
+import top.thesumst.workspace.EditorInstance;
+
+/**
+ * CommandHandler - 命令处理器
+ */
+@FunctionalInterface
+public interface CommandHandler {
+
+    /**
+     * 执行命令；参数个数和活动编辑器已按 CommandSpec 校验
+     * @param cmd 解析后的命令
+     * @param editor 活动编辑器，命令声明不需要时为 null
+     * @throws Exception 执行失败，由命令行程序统一输出
+     */
+    void execute(ParsedCommand cmd, EditorInstance editor) throws Exception;
+}
@@ -6,55 +6,237 @@ import top.thesumst.engine.TextBuffer;
 import top.thesumst.command.InsertCommand;
 import top.thesumst.command.DeleteCommand;
 import top.thesumst.command.AppendCommand;
+import top.thesumst.command.CommandHistory;
+import top.thesumst.observer.LogFlushPolicy;
+import top.thesumst.observer.LogRotationPolicy;
+import top.thesumst.observer.OperationLog;
+import top.thesumst.observer.OperationLogReplayer;
+import top.thesumst.observer.TextLogReader;
 import top.thesumst.cli.CommandParser.ParsedCommand;
 
+import java.io.BufferedOutputStream;
 import java.io.BufferedReader;
+import java.io.BufferedWriter;
 import java.io.File;
+import java.io.FileDescriptor;
+import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.PrintStream;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Locale;
+import java.util.Map;
 
 /**
  * CommandLineApp - 命令行交互程序
  * 实现文本编辑器的命令行界面
+ * 批处理模式下从脚本逐行读取命令：不输出提示符、不等待用户输入，
+ * 重名文件和未保存更改按预设策略处理，输出整批缓冲写出，结束时报告吞吐量
+ * 输出经过大缓冲且不自动刷新：交互模式每条命令结束（以及等待输入前）刷新一次
+ * 交互模式下上次的工作区推迟到第一条需要工作区的命令前恢复，第一个提示符不等待文件加载
  */
 public class CommandLineApp {
     
+    private static final int OUTPUT_BUFFER_SIZE = 1 << 16;
+    
+    /**
+     * 日志时间格式，只有 log-show 按时间过滤时才用到，放在内部类中按需初始化
+     */
+    private static final class LogTimeFormat {
+        static final DateTimeFormatter VALUE = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss");
+    }
+    
+    /**
+     * 批处理模式下多个文件同名时的处理方式
+     */
+    public enum AmbiguousMatchPolicy {
+        FIRST,  // 取第一个匹配的文件（按打开顺序）
+        FAIL    // 跳过该命令并报错
+    }
+    
+    /**
+     * 批处理模式下关闭或退出时遇到未保存更改的处理方式
+     */
+    public enum UnsavedChangesPolicy {
+        SAVE,
+        DISCARD,
+        CANCEL
+    }
+    
     private final Workspace workspace;
     private final BufferedReader reader;
+    private final PrintStream out;
+    private final PrintStream err;
+    private final boolean batch;
+    private AmbiguousMatchPolicy ambiguousMatchPolicy = AmbiguousMatchPolicy.FAIL;
+    private UnsavedChangesPolicy unsavedChangesPolicy = UnsavedChangesPolicy.CANCEL;
+    private final Map<String, CommandSpec> commands = new HashMap<>();
+    private boolean ownActiveEditor;         // 服务器连接：记住自己的活动编辑器，不用工作区的
+    private EditorInstance sessionEditor;    // 自己的活动编辑器，null 表示没有
+    private String[] commandNames = new String[0];   // 命令表的键，供解析器复用
+    private NumberedLineWriter screenWriter;   // show 输出到 out 时复用，首次使用时创建
     private boolean running;
+    private boolean restorePending;     // 交互模式下尚未恢复上次的工作区
+    private boolean startupReport;
+    private boolean startupReported;
+    private long launchMillis = -1;     // JVM 启动时刻，第一次测量时获取
+    private long reportOverheadMillis;  // 获取启动时刻本身的耗时，从后续测量中扣除
+    private long firstPromptMillis = -1;
     
     public CommandLineApp() {
-        this.workspace = new Workspace();
-        this.reader = new BufferedReader(new InputStreamReader(System.in));
+        this(new BufferedReader(new InputStreamReader(System.in)), bufferedStdout(), false);
+    }
+    
+    /**
+     * 创建写到标准输出的大缓冲 PrintStream，不自动刷新
+     * @return 输出流
+     */
+    static PrintStream bufferedStdout() {
+        return new PrintStream(
+            new BufferedOutputStream(new FileOutputStream(FileDescriptor.out), OUTPUT_BUFFER_SIZE),
+            false, System.out.charset());
+    }
+    
+    /**
+     * 构造函数
+     * @param reader 命令来源
+     * @param out 输出目标
+     * @param batch 是否为批处理模式
+     */
+    public CommandLineApp(BufferedReader reader, PrintStream out, boolean batch) {
+        this(newWorkspace(), reader, out, System.err, batch);
+    }
+    
+    /**
+     * 构造函数，在已有的工作区上执行命令（服务器的每个连接共用一个工作区）
+     * @param workspace 工作区
+     * @param reader 命令来源
+     * @param out 输出目标
+     * @param err 错误信息输出目标
+     * @param batch 是否为批处理模式
+     */
+    public CommandLineApp(Workspace workspace, BufferedReader reader, PrintStream out, PrintStream err,
+                          boolean batch) {
+        this.workspace = workspace;
+        this.reader = reader;
+        this.out = out;
+        this.err = err;
+        this.batch = batch;
         this.running = true;
+        registerBuiltinCommands();
+    }
+    
+    /**
+     * 创建按命令行程序默认配置的工作区：持久化撤销历史、异步批量写日志、日志轮转、异步观察者
+     * 二进制操作日志不受轮转约束，只在给出 --oplog 时启用
+     * @return 工作区
+     */
+    static Workspace newWorkspace() {
+        Workspace workspace = new Workspace();
+        workspace.setHistoryPersistenceEnabled(true);
+        workspace.setLogFlushPolicy(LogFlushPolicy.asynchronous());
+        workspace.setLogRotationPolicy(LogRotationPolicy.bySize(64L * 1024 * 1024));
+        workspace.setAsyncObserverDispatch(true);
+        return workspace;
+    }
+    
+    public void setAmbiguousMatchPolicy(AmbiguousMatchPolicy policy) {
+        this.ambiguousMatchPolicy = policy;
+    }
+    
+    public void setUnsavedChangesPolicy(UnsavedChangesPolicy policy) {
+        this.unsavedChangesPolicy = policy;
+    }
+    
+    public Workspace getWorkspace() {
+        return workspace;
+    }
+    
+    /**
+     * 设置是否记住自己的活动编辑器（服务器的每个连接一个）
+     * 启用后只有本程序的 load、init、edit 会切换活动编辑器，其他连接切换工作区的活动文件不影响本程序；
+     * 没有自己的活动编辑器时编辑命令报告没有活动的编辑器
+     * @param enabled 是否启用
+     */
+    void setOwnActiveEditor(boolean enabled) {
+        this.ownActiveEditor = enabled;
+    }
+    
+    /**
+     * 获取命令作用的活动编辑器
+     * @return 活动编辑器，没有时返回 null
+     */
+    EditorInstance activeEditor() {
+        return ownActiveEditor ? sessionEditor : workspace.getActiveEditor();
+    }
+    
+    /**
+     * 让工作区的活动文件回到本程序自己的活动编辑器（可能已被其他连接切走或关闭）
+     * 已经相同时不再激活，避免每次都发布激活事件、追加状态日志；已被关闭或切换失败时不再有活动编辑器
+     */
+    void reactivate() {
+        if (!ownActiveEditor || sessionEditor == null || sessionEditor == workspace.getActiveEditor()) {
+            return;
+        }
+        String path = sessionEditor.getFilePath();
+        if (workspace.getEditor(path) != sessionEditor || !workspace.activate(path)) {
+            sessionEditor = null;
+        }
+    }
+    
+    /**
+     * 结束命令循环而不处理工作区中的文件（服务器连接的 exit）
+     */
+    void stop() {
+        running = false;
+    }
+    
+    /**
+     * 设置是否在第一条命令完成后向标准错误报告启动耗时
+     * @param enabled 是否启用
+     */
+    public void setStartupReportEnabled(boolean enabled) {
+        this.startupReport = enabled;
     }
     
     /**
      * 启动命令行应用
      */
     public void run() {
-        System.out.println("=== 文本编辑器 ===");
-        System.out.println("输入 'help' 查看帮助信息");
-        System.out.println();
-        
-        // 尝试恢复工作区状态
-        try {
-            workspace.restoreState();
-            if (workspace.getOpenFileCount() > 0) {
-                System.out.println("已恢复工作区，打开了 " + workspace.getOpenFileCount() + " 个文件");
-            }
-        } catch (IOException e) {
-            // 忽略恢复错误
+        if (batch) {
+            runBatch();
+            return;
         }
+        out.println("=== 文本编辑器 ===");
+        out.println("输入 'help' 查看帮助信息");
+        out.println();
+        
+        // 工作区状态推迟到第一条需要它的命令前恢复
+        restorePending = true;
         
         while (running) {
             try {
-                System.out.print("> ");
+                // 空闲等待输入前写出编辑过的未保存内容，进程被强行结束时不丢失
+                workspace.snapshotUnsavedContent();
+                out.print("> ");
+                out.flush();
+                if (startupReport && firstPromptMillis < 0) {
+                    firstPromptMillis = millisSinceLaunch(System.currentTimeMillis());
+                }
                 String input = reader.readLine();
                 
                 if (input == null) {
@@ -68,86 +250,255 @@ public class CommandLineApp {
                 executeCommand(input);
                 
             } catch (IOException e) {
-                System.err.println("读取输入错误: " + e.getMessage());
+                err.println("读取输入错误: " + e.getMessage());
                 break;
             } catch (Exception e) {
-                System.err.println("错误: " + e.getMessage());
+                err.println("错误: " + e.getMessage());
             }
         }
         
-        System.out.println("再见！");
+        // 关闭日志记录器，写完缓冲中的日志
+        workspace.closeAll();
+        out.println("再见！");
+        out.flush();
+    }
+    
+    /**
+     * 批处理：不恢复上次的工作区，逐行执行直到 exit 或输入结束；以 # 开头的行为注释
+     * 吞吐量报告写到标准错误，不混入命令输出
+     */
+    private void runBatch() {
+        long commands = 0;
+        long start = System.nanoTime();
+        try {
+            String input;
+            while (running && (input = reader.readLine()) != null) {
+                String line = input.strip();
+                if (line.isEmpty() || line.charAt(0) == '#') {
+                    continue;
+                }
+                executeCommand(line);
+                commands++;
+            }
+        } catch (IOException e) {
+            err.println("读取输入错误: " + e.getMessage());
+        }
+        workspace.closeAll();
+        out.flush();
+        long elapsed = System.nanoTime() - start;
+        double seconds = elapsed / 1_000_000_000.0;
+        err.printf("批处理完成: %d 条命令，耗时 %.3f 秒，%.0f 条/秒%n",
+            commands, seconds, seconds > 0 ? commands / seconds : 0.0);
+    }
+    
+    /**
+     * 执行一行命令（空行和 # 开头的注释行忽略），供服务器逐行驱动
+     * @param input 命令行
+     * @return 执行后是否仍在运行（执行了 exit 时为 false）
+     */
+    boolean execute(String input) {
+        String line = input.strip();
+        if (!line.isEmpty() && line.charAt(0) != '#') {
+            executeCommand(line);
+        }
+        return running;
+    }
+    
+    /**
+     * 执行已解析的命令，供服务器在分发前查看命令信息
+     * @param cmd 解析后的命令
+     * @return 执行后是否仍在运行
+     */
+    boolean execute(ParsedCommand cmd) {
+        executeCommand(cmd);
+        return running;
+    }
+    
+    /**
+     * 查找命令，先按原样再按小写
+     * @param name 命令名
+     * @return 命令注册信息，未知命令返回 null
+     */
+    CommandSpec findCommand(String name) {
+        CommandSpec spec = commands.get(name);
+        return spec != null ? spec : commands.get(name.toLowerCase(Locale.ROOT));
+    }
+    
+    /**
+     * 注册内置命令
+     */
+    private void registerBuiltinCommands() {
+        // 工作区命令
+        registerCommand(new CommandSpec("load", "load <文件路径>", 1, false, (cmd, editor) -> cmdLoad(cmd)));
+        registerCommand(new CommandSpec("save", "save [file|all]", 0, false, (cmd, editor) -> cmdSave(cmd)));
+        registerCommand(new CommandSpec("init", "init <文件路径> [with-log]", 1, false, (cmd, editor) -> cmdInit(cmd)));
+        registerCommand(new CommandSpec("close", "close [file]", 0, false, (cmd, editor) -> cmdClose(cmd)));
+        registerCommand(new CommandSpec("edit", "edit <文件路径或文件名>", 1, false, (cmd, editor) -> cmdEdit(cmd)));
+        registerCommand(new CommandSpec("editor-list", "editor-list", 0, false, (cmd, editor) -> cmdEditorList(cmd)));
+        registerCommand(new CommandSpec("undo", "undo [n|--to-save-point]", 0, true, this::cmdUndo));
+        registerCommand(new CommandSpec("redo", "redo [n]", 0, true, this::cmdRedo));
+        registerCommand(new CommandSpec("undo-tree", "undo-tree", 0, true, this::cmdUndoTree));
+        registerCommand(new CommandSpec("undo-jump", "undo-jump <节点编号>", 1, true, this::cmdUndoJump));
+        registerCommand(new CommandSpec("exit", "exit", 0, false, (cmd, editor) -> cmdExit(cmd)));
+        
+        // 编辑命令
+        registerCommand(new CommandSpec("append", "append <文本>", 1, true, this::cmdAppend));
+        registerCommand(new CommandSpec("insert", "insert <行:列> <文本>", 2, true, this::cmdInsert));
+        registerCommand(new CommandSpec("delete", "delete <行:列> <长度>", 2, true, this::cmdDelete));
+        registerCommand(new CommandSpec("replace", "replace <行:列> <长度> <新文本>", 3, true, this::cmdReplace));
+        registerCommand(new CommandSpec("show", "show [start:end] [--out 文件]", 0, true, this::cmdShow));
+        
+        // 日志命令
+        registerCommand(new CommandSpec("log-on", "log-on [file]", 0, false, (cmd, editor) -> cmdLogOn(cmd)));
+        registerCommand(new CommandSpec("log-off", "log-off [file]", 0, false, (cmd, editor) -> cmdLogOff(cmd)));
+        registerCommand(new CommandSpec("log-show", "log-show [file]", 0, false, (cmd, editor) -> cmdLogShow(cmd)));
+        registerCommand(new CommandSpec("log-replay", "log-replay [file]", 0, false, (cmd, editor) -> cmdLogReplay(cmd)));
+        
+        // 辅助命令
+        registerCommand(new CommandSpec("dir-tree", "dir-tree [path]", 0, false, false, (cmd, editor) -> cmdDirTree(cmd)));
+        registerCommand(new CommandSpec("help", "help", 0, false, false, (cmd, editor) -> cmdHelp(cmd)));
+    }
+    
+    /**
+     * 注册命令，同名时替换已有命令
+     * @param spec 命令注册信息
+     */
+    public void registerCommand(CommandSpec spec) {
+        commands.put(spec.getName(), spec);
+        commandNames = commands.keySet().toArray(new String[0]);
+    }
+    
+    /**
+     * 解析命令行，已注册的命令名直接取命令表中的键
+     * @param input 命令行
+     * @return 解析后的命令
+     */
+    ParsedCommand parse(String input) {
+        return CommandParser.parse(input, commandNames);
     }
     
     /**
      * 执行命令
+     * 命令名先按原样查表（已注册的命令名由解析器返回命令表中的键，哈希已缓存），找不到时再转为小写重试
      */
     private void executeCommand(String input) {
-        ParsedCommand cmd = CommandParser.parse(input);
-        String command = cmd.getCommand().toLowerCase();
-        
+        executeCommand(parse(input));
+    }
+    
+    private void executeCommand(ParsedCommand cmd) {
         try {
-            switch (command) {
-                // 工作区命令
-                case "load" -> cmdLoad(cmd);
-                case "save" -> cmdSave(cmd);
-                case "init" -> cmdInit(cmd);
-                case "close" -> cmdClose(cmd);
-                case "edit" -> cmdEdit(cmd);
-                case "editor-list" -> cmdEditorList(cmd);
-                case "undo" -> cmdUndo(cmd);
-                case "redo" -> cmdRedo(cmd);
-                case "exit" -> cmdExit(cmd);
-                
-                // 编辑命令
-                case "append" -> cmdAppend(cmd);
-                case "insert" -> cmdInsert(cmd);
-                case "delete" -> cmdDelete(cmd);
-                case "replace" -> cmdReplace(cmd);
-                case "show" -> cmdShow(cmd);
-                
-                // 日志命令
-                case "log-on" -> cmdLogOn(cmd);
-                case "log-off" -> cmdLogOff(cmd);
-                case "log-show" -> cmdLogShow(cmd);
-                
-                // 辅助命令
-                case "dir-tree" -> cmdDirTree(cmd);
-                case "help" -> cmdHelp(cmd);
-                
-                default -> System.out.println("未知命令: " + command + "。输入 'help' 查看帮助。");
+            CommandSpec spec = findCommand(cmd.getCommand());
+            if (spec == null) {
+                out.println("未知命令: " + cmd.getCommand() + "。输入 'help' 查看帮助。");
+                return;
+            }
+            if (restorePending && spec.requiresWorkspace()) {
+                restoreWorkspace();
             }
+            
+            EditorInstance editor = null;
+            if (spec.requiresEditor()) {
+                editor = activeEditor();
+                if (editor == null) {
+                    out.println("没有活动的编辑器");
+                    return;
+                }
+            }
+            if (cmd.getArgCount() < spec.getRequiredArgs()) {
+                out.println("用法: " + spec.getUsage());
+                return;
+            }
+            spec.getHandler().execute(cmd, editor);
         } catch (Exception e) {
-            System.err.println("命令执行失败: " + e.getMessage());
+            out.flush();
+            err.println("命令执行失败: " + e.getMessage());
+        } finally {
+            if (!batch) {
+                out.flush();
+            }
+            if (startupReport && !startupReported) {
+                reportStartup();
+            }
         }
     }
     
+    /**
+     * 恢复上次的工作区状态（交互模式下只执行一次），之后工作区的变化随时追加到状态日志
+     */
+    private void restoreWorkspace() {
+        restorePending = false;
+        try {
+            workspace.restoreState();
+            if (workspace.getOpenFileCount() > 0) {
+                out.println("已恢复工作区，打开了 " + workspace.getOpenFileCount() + " 个文件");
+            }
+        } catch (IOException e) {
+            // 忽略恢复错误
+        }
+        enableStateJournal(workspace, err);
+    }
+    
+    private static void enableStateJournal(Workspace workspace, PrintStream err) {
+        try {
+            workspace.enableStateJournal();
+        } catch (IOException e) {
+            err.println("无法打开工作区状态日志: " + e.getMessage());
+        }
+    }
+    
+    /**
+     * 报告从 JVM 启动到第一个提示符、到第一条命令完成的耗时，写到标准错误
+     */
+    private void reportStartup() {
+        startupReported = true;
+        long firstCommand = millisSinceLaunch(System.currentTimeMillis());
+        if (firstPromptMillis >= 0) {
+            err.printf("启动耗时: 首个提示符 %d ms，首条命令完成 %d ms（自 JVM 启动起）%n",
+                firstPromptMillis, firstCommand);
+        } else {
+            err.printf("启动耗时: 首条命令完成 %d ms（自 JVM 启动起）%n", firstCommand);
+        }
+        err.flush();
+    }
+    
+    /**
+     * 计算从 JVM 启动到给定时刻的毫秒数
+     * JVM 启动时刻取自 RuntimeMXBean（进程启动时间在 Linux 上只精确到秒），
+     * 只在启用报告时才加载 java.management，加载耗时不计入后续测量
+     * @param now 测量时刻（调用前取得，不含加载耗时）
+     */
+    private long millisSinceLaunch(long now) {
+        if (launchMillis < 0) {
+            launchMillis = ManagementFactory.getRuntimeMXBean().getStartTime();
+            reportOverheadMillis = System.currentTimeMillis() - now;
+            return now - launchMillis;
+        }
+        return now - launchMillis - reportOverheadMillis;
+    }
+    
     // ===== 工作区命令 =====
     
     private void cmdLoad(ParsedCommand cmd) throws IOException {
-        if (cmd.getArgCount() < 1) {
-            System.out.println("用法: load <文件路径>");
-            return;
-        }
-        
         String path = cmd.getArg(0);
         EditorInstance editor = workspace.load(path);
-        System.out.println("已加载文件: " + editor.getFileName());
+        sessionEditor = editor;
+        out.println("已加载文件: " + editor.getFileName());
     }
     
     private void cmdSave(ParsedCommand cmd) throws IOException {
         if (cmd.getArgCount() == 0) {
             // 默认保存当前文件
-            EditorInstance editor = workspace.getActiveEditor();
+            EditorInstance editor = activeEditor();
             if (editor == null) {
-                System.out.println("没有活动的编辑器");
+                out.println("没有活动的编辑器");
                 return;
             }
             
             try {
                 workspace.saveActive();
-                System.out.println("已保存: " + editor.getFileName());
+                out.println("已保存: " + editor.getFileName());
             } catch (IOException e) {
-                System.err.println("保存失败: " + e.getMessage());
+                err.println("保存失败: " + e.getMessage());
                 throw e;
             }
         } else {
@@ -157,7 +508,7 @@ public class CommandLineApp {
                 // 保存所有文件
                 List<String> openFiles = workspace.getOpenFiles();
                 if (openFiles.isEmpty()) {
-                    System.out.println("没有打开的文件");
+                    out.println("没有打开的文件");
                     return;
                 }
                 
@@ -170,18 +521,18 @@ public class CommandLineApp {
                         workspace.save(filePath);
                         savedCount++;
                         EditorInstance editor = workspace.getEditor(filePath);
-                        System.out.println("已保存: " + editor.getFileName());
+                        out.println("已保存: " + editor.getFileName());
                     } catch (IOException e) {
                         errorCount++;
                         EditorInstance editor = workspace.getEditor(filePath);
                         String errorMsg = editor.getFileName() + ": " + e.getMessage();
                         errors.add(errorMsg);
-                        System.err.println("保存失败: " + errorMsg);
+                        err.println("保存失败: " + errorMsg);
                     }
                 }
                 
-                System.out.println("---");
-                System.out.println("保存完成: 成功 " + savedCount + " 个，失败 " + errorCount + " 个");
+                out.println("---");
+                out.println("保存完成: 成功 " + savedCount + " 个，失败 " + errorCount + " 个");
                 
                 if (!errors.isEmpty() && errorCount > 0) {
                     throw new IOException("部分文件保存失败");
@@ -204,9 +555,9 @@ public class CommandLineApp {
                             }
                         }
                     }
-                    System.out.println("已保存: " + (editor != null ? editor.getFileName() : arg));
+                    out.println("已保存: " + (editor != null ? editor.getFileName() : arg));
                 } catch (IOException e) {
-                    System.err.println("保存失败: " + e.getMessage());
+                    err.println("保存失败: " + e.getMessage());
                     throw e;
                 }
             }
@@ -214,19 +565,15 @@ public class CommandLineApp {
     }
     
     private void cmdInit(ParsedCommand cmd) {
-        if (cmd.getArgCount() < 1) {
-            System.out.println("用法: init <文件路径> [with-log]");
-            return;
-        }
-
         String path = cmd.getArg(0);
         boolean withLog = cmd.getArgCount() > 1 && "with-log".equalsIgnoreCase(cmd.getArg(1));
 
         EditorInstance editor = withLog ? workspace.initWithLog(path) : workspace.init(path);
+        sessionEditor = editor;
         if (withLog) {
-            System.out.println("已创建文件并启用日志: " + editor.getFileName());
+            out.println("已创建文件并启用日志: " + editor.getFileName());
         } else {
-            System.out.println("已创建文件: " + editor.getFileName());
+            out.println("已创建文件: " + editor.getFileName());
         }
     }
     
@@ -235,9 +582,9 @@ public class CommandLineApp {
 
         if (cmd.getArgCount() < 1) {
             // 没有参数时，关闭当前活动文件
-            EditorInstance active = workspace.getActiveEditor();
+            EditorInstance active = activeEditor();
             if (active == null) {
-                System.out.println("没有活动的编辑器");
+                out.println("没有活动的编辑器");
                 return;
             }
             pathToClose = active.getFilePath();
@@ -252,34 +599,15 @@ public class CommandLineApp {
                 List<String> matches = workspace.findFilesByName(input);
                 
                 if (matches.isEmpty()) {
-                    System.out.println("文件未打开: " + input);
+                    out.println("文件未打开: " + input);
                     return;
                 } else if (matches.size() == 1) {
                     // 只有一个匹配
                     pathToClose = matches.get(0);
                 } else {
                     // 多个匹配，让用户选择
-                    System.out.println("当前打开了多个名为 \"" + input + "\" 的文件：");
-                    for (int i = 0; i < matches.size(); i++) {
-                        System.out.printf("%d. %s%n", i + 1, matches.get(i));
-                    }
-                    System.out.print("请输入要操作的文件编号: ");
-                    
-                    try {
-                        String choice = reader.readLine().trim();
-                        int index = Integer.parseInt(choice) - 1;
-                        
-                        if (index >= 0 && index < matches.size()) {
-                            pathToClose = matches.get(index);
-                        } else {
-                            System.out.println("无效的编号");
-                            return;
-                        }
-                    } catch (NumberFormatException e) {
-                        System.out.println("请输入有效的数字");
-                        return;
-                    } catch (IOException e) {
-                        System.err.println("读取输入失败: " + e.getMessage());
+                    pathToClose = chooseMatch(input, matches);
+                    if (pathToClose == null) {
                         return;
                     }
                 }
@@ -288,62 +616,61 @@ public class CommandLineApp {
         
         // 检查文件是否有未保存的更改
         if (workspace.hasUnsavedChanges(pathToClose)) {
-            System.out.println("警告: 文件 '" + pathToClose + "' 有未保存的更改");
-            System.out.print("是否保存更改？(y/n/c - 保存/不保存/取消): ");
+            out.println("警告: 文件 '" + pathToClose + "' 有未保存的更改");
             
             try {
-                String choice = reader.readLine().trim().toLowerCase();
+                String choice = askUnsavedChanges("是否保存更改？(y/n/c - 保存/不保存/取消): ");
                 
                 switch (choice) {
                     case "y", "yes" -> {
                         // 保存文件
                         try {
-                            workspace.save(pathToClose);
-                            System.out.println("已保存文件: " + pathToClose);
+                            workspace.saveIfChanged(pathToClose);
+                            out.println("已保存文件: " + pathToClose);
                         } catch (IOException e) {
-                            System.err.println("保存失败: " + e.getMessage());
-                            System.out.println("文件未关闭");
+                            err.println("保存失败: " + e.getMessage());
+                            out.println("文件未关闭");
                             return;
                         }
                     }
                     case "n", "no" -> {
                         // 不保存，直接关闭
-                        System.out.println("放弃更改");
+                        out.println("放弃更改");
                     }
                     case "c", "cancel" -> {
                         // 取消关闭操作
-                        System.out.println("已取消关闭操作");
+                        out.println("已取消关闭操作");
                         return;
                     }
                     default -> {
-                        System.out.println("无效的选择，已取消关闭操作");
+                        out.println("无效的选择，已取消关闭操作");
                         return;
                     }
                 }
             } catch (IOException e) {
-                System.err.println("读取输入失败: " + e.getMessage());
+                err.println("读取输入失败: " + e.getMessage());
                 return;
             }
         }
         
         // 关闭文件
+        EditorInstance closing = workspace.getEditor(pathToClose);
         boolean success = workspace.close(pathToClose);
         if (success) {
-            System.out.println("已关闭文件: " + pathToClose);
+            if (closing == sessionEditor) {
+                sessionEditor = null;
+            }
+            out.println("已关闭文件: " + pathToClose);
         }
     }
     
     private void cmdEdit(ParsedCommand cmd) {
-        if (cmd.getArgCount() < 1) {
-            System.out.println("用法: edit <文件路径或文件名>");
-            return;
-        }
-        
         String input = cmd.getArg(0);
         
         // 1. 先尝试精确匹配（完整路径）
         if (workspace.activate(input)) {
-            System.out.println("已切换到文件: " + input);
+            sessionEditor = workspace.getActiveEditor();
+            out.println("已切换到文件: " + input);
             return;
         }
         
@@ -351,48 +678,87 @@ public class CommandLineApp {
         List<String> matches = workspace.findFilesByName(input);
         
         if (matches.isEmpty()) {
-            System.out.println("文件未打开: " + input);
+            out.println("文件未打开: " + input);
         } else if (matches.size() == 1) {
             // 只有一个匹配，直接切换
             String matchedPath = matches.get(0);
             workspace.activate(matchedPath);
-            System.out.println("已切换到文件: " + matchedPath);
+            sessionEditor = workspace.getActiveEditor();
+            out.println("已切换到文件: " + matchedPath);
         } else {
             // 多个匹配，让用户选择
-            System.out.println("当前打开了多个名为 \"" + input + "\" 的文件：");
-            for (int i = 0; i < matches.size(); i++) {
-                System.out.printf("%d. %s%n", i + 1, matches.get(i));
+            String selectedPath = chooseMatch(input, matches);
+            if (selectedPath != null) {
+                workspace.activate(selectedPath);
+                sessionEditor = workspace.getActiveEditor();
+                out.println("已切换到文件: " + selectedPath);
             }
-            System.out.print("请输入要操作的文件编号: ");
-            
-            try {
-                String choice = reader.readLine().trim();
-                int index = Integer.parseInt(choice) - 1;
-                
-                if (index >= 0 && index < matches.size()) {
-                    String selectedPath = matches.get(index);
-                    workspace.activate(selectedPath);
-                    System.out.println("已切换到文件: " + selectedPath);
-                } else {
-                    System.out.println("无效的编号");
-                }
-            } catch (NumberFormatException e) {
-                System.out.println("请输入有效的数字");
-            } catch (IOException e) {
-                System.err.println("读取输入失败: " + e.getMessage());
+        }
+    }
+    
+    /**
+     * 从多个同名文件中选出一个：交互模式让用户输入编号，批处理模式按策略决定
+     * @param input 用户给出的文件名
+     * @param matches 匹配的文件路径
+     * @return 选中的路径，无法确定时返回 null（已输出提示）
+     */
+    private String chooseMatch(String input, List<String> matches) {
+        if (batch) {
+            if (ambiguousMatchPolicy == AmbiguousMatchPolicy.FIRST) {
+                return matches.get(0);
             }
+            out.println("当前打开了多个名为 \"" + input + "\" 的文件，已跳过: " + String.join(", ", matches));
+            return null;
+        }
+        out.println("当前打开了多个名为 \"" + input + "\" 的文件：");
+        for (int i = 0; i < matches.size(); i++) {
+            out.printf("%d. %s%n", i + 1, matches.get(i));
         }
+        out.print("请输入要操作的文件编号: ");
+        out.flush();
+        try {
+            String choice = reader.readLine();
+            int index = choice != null ? Integer.parseInt(choice.trim()) - 1 : -1;
+            if (index >= 0 && index < matches.size()) {
+                return matches.get(index);
+            }
+            out.println("无效的编号");
+        } catch (NumberFormatException e) {
+            out.println("请输入有效的数字");
+        } catch (IOException e) {
+            err.println("读取输入失败: " + e.getMessage());
+        }
+        return null;
+    }
+    
+    /**
+     * 询问如何处理未保存的更改：交互模式读取用户输入，批处理模式按策略回答
+     * @param prompt 提示
+     * @return y、n 或 c 等选择（小写）
+     */
+    private String askUnsavedChanges(String prompt) throws IOException {
+        if (batch) {
+            return switch (unsavedChangesPolicy) {
+                case SAVE -> "y";
+                case DISCARD -> "n";
+                case CANCEL -> "c";
+            };
+        }
+        out.print(prompt);
+        out.flush();
+        String choice = reader.readLine();
+        return choice != null ? choice.trim().toLowerCase() : "c";
     }
     
     private void cmdEditorList(ParsedCommand cmd) {
         List<String> files = workspace.getOpenFiles();
         if (files.isEmpty()) {
-            System.out.println("没有打开的文件");
+            out.println("没有打开的文件");
             return;
         }
         
-        System.out.println("打开的文件列表:");
-        EditorInstance active = workspace.getActiveEditor();
+        out.println("打开的文件列表:");
+        EditorInstance active = activeEditor();
         
         // 找出最长的文件名，用于对齐
         int maxFileNameLen = 0;
@@ -407,7 +773,7 @@ public class CommandLineApp {
             String modified = editor.isModified() ? " [modified]" : "";
             
             // 格式：* 文件名 (完整路径) [modified]
-            System.out.printf("%s %-" + maxFileNameLen + "s  (%s)%s%n", 
+            out.printf("%s %-" + maxFileNameLen + "s  (%s)%s%n", 
                 marker, 
                 editor.getFileName(), 
                 editor.getFilePath(),
@@ -415,50 +781,143 @@ public class CommandLineApp {
         }
     }
     
-    private void cmdUndo(ParsedCommand cmd) {
-        EditorInstance editor = workspace.getActiveEditor();
-        if (editor == null) {
-            System.out.println("没有活动的编辑器");
+    private void cmdUndo(ParsedCommand cmd, EditorInstance editor) {
+        if ("--to-save-point".equalsIgnoreCase(cmd.getArg(0))) {
+            if (!editor.getHistory().hasSavePoint()) {
+                out.println("文件尚未保存过，没有保存点");
+            } else if (editor.getHistory().isAtSavePoint()) {
+                out.println("已处于保存点");
+            } else if (editor.getHistory().undoToSavePoint()) {
+                out.println("已回到保存点");
+            } else {
+                out.println("无法回到保存点");
+            }
             return;
         }
         
-        boolean success = editor.getHistory().undo();
-        if (success) {
-            System.out.println("已撤销");
-            editor.markAsModified();
+        int steps = parseStepCount(cmd, "undo");
+        if (steps < 1) {
+            return;
+        }
+        
+        int undone = editor.getHistory().undo(steps);
+        if (undone == 0) {
+            out.println("没有可撤销的操作");
         } else {
-            System.out.println("没有可撤销的操作");
+            out.println(steps == 1 ? "已撤销" : "已撤销 " + undone + " 步");
         }
     }
     
-    private void cmdRedo(ParsedCommand cmd) {
-        EditorInstance editor = workspace.getActiveEditor();
-        if (editor == null) {
-            System.out.println("没有活动的编辑器");
+    private void cmdRedo(ParsedCommand cmd, EditorInstance editor) {
+        int steps = parseStepCount(cmd, "redo");
+        if (steps < 1) {
             return;
         }
         
-        boolean success = editor.getHistory().redo();
-        if (success) {
-            System.out.println("已重做");
-            editor.markAsModified();
+        int redone = editor.getHistory().redo(steps);
+        if (redone == 0) {
+            out.println("没有可重做的操作");
         } else {
-            System.out.println("没有可重做的操作");
+            out.println(steps == 1 ? "已重做" : "已重做 " + redone + " 步");
+        }
+    }
+    
+    /**
+     * 解析 undo/redo 的可选步数参数
+     * @return 步数，参数无效时返回 0
+     */
+    private int parseStepCount(ParsedCommand cmd, String name) {
+        if (cmd.getArgCount() < 1) {
+            return 1;
+        }
+        try {
+            int steps = Integer.parseInt(cmd.getArg(0));
+            if (steps < 1) {
+                out.println("步数必须大于 0");
+                return 0;
+            }
+            return steps;
+        } catch (NumberFormatException e) {
+            out.println("用法: " + name + " [步数]");
+            return 0;
+        }
+    }
+    
+    private void cmdUndoTree(ParsedCommand cmd, EditorInstance editor) {
+        CommandHistory history = editor.getHistory();
+        int currentId = history.getCurrentNodeId();
+        out.println("撤销树 (共 " + (history.getNodeCount() - 1) + " 条命令):");
+        printUndoTree(history, 0, currentId);
+        
+        // 从撤销日志恢复的历史在撤销到更早位置之前尚未与根节点相连
+        for (int id = 1; id < history.getNodeCount(); id++) {
+            if (history.getParentId(id) < 0) {
+                out.println("(更早的历史尚未从日志载入)");
+                printUndoTree(history, id, currentId);
+            }
+        }
+    }
+    
+    private void printUndoTree(CommandHistory history, int rootId, int currentId) {
+        // 显式栈代替递归，避免长历史导致栈溢出
+        Deque<int[]> stack = new ArrayDeque<>();
+        Deque<String> prefixes = new ArrayDeque<>();
+        stack.push(new int[] {rootId, 1});
+        prefixes.push("");
+        
+        while (!stack.isEmpty()) {
+            int[] item = stack.pop();
+            String prefix = prefixes.pop();
+            int id = item[0];
+            boolean last = item[1] == 1;
+            
+            String marker = (id == currentId) ? " *" : "";
+            if (id == 0) {
+                out.println("#" + id + " (初始状态)" + marker);
+            } else if (id == rootId) {
+                out.println("#" + id + " " + history.getCommand(id) + marker);
+            } else {
+                out.println(prefix + (last ? "└── " : "├── ") + "#" + id + " " + history.getCommand(id) + marker);
+            }
+            
+            List<Integer> children = history.getChildIds(id);
+            String childPrefix = (id == rootId) ? prefix : prefix + (last ? "    " : "│   ");
+            for (int i = children.size() - 1; i >= 0; i--) {
+                stack.push(new int[] {children.get(i), i == children.size() - 1 ? 1 : 0});
+                prefixes.push(childPrefix);
+            }
+        }
+    }
+    
+    private void cmdUndoJump(ParsedCommand cmd, EditorInstance editor) {
+        try {
+            int nodeId = Integer.parseInt(cmd.getArg(0).replace("#", ""));
+            if (nodeId < 0 || nodeId >= editor.getHistory().getNodeCount()) {
+                out.println("历史节点不存在: " + nodeId);
+                return;
+            }
+            if (editor.getHistory().jumpTo(nodeId)) {
+                out.println("已跳转到历史节点 #" + nodeId);
+            } else {
+                out.println("无法跳转到历史节点 #" + nodeId);
+            }
+        } catch (NumberFormatException e) {
+            out.println("节点编号必须是数字");
         }
     }
     
     private void cmdExit(ParsedCommand cmd) {
+        boolean keepUnsavedContent = true; // 工作区状态是否附带未保存的内容，下次启动时恢复
         // 检查是否有未保存的文件
         if (workspace.hasUnsavedChanges()) {
             List<String> unsavedFiles = workspace.getUnsavedFiles();
-            System.out.println("警告: 以下文件有未保存的更改:");
+            out.println("警告: 以下文件有未保存的更改:");
             for (String file : unsavedFiles) {
-                System.out.println("  - " + file);
+                out.println("  - " + file);
             }
-            System.out.print("是否保存所有更改？(y/n/c - 保存/不保存/取消): ");
             
             try {
-                String choice = reader.readLine().trim().toLowerCase();
+                String choice = askUnsavedChanges("是否保存所有更改？(y/n/c - 保存/不保存/取消): ");
                 
                 switch (choice) {
                     case "y", "yes" -> {
@@ -468,51 +927,53 @@ public class CommandLineApp {
                         
                         for (String filePath : unsavedFiles) {
                             try {
-                                workspace.save(filePath);
+                                workspace.saveIfChanged(filePath);
                                 successCount++;
                             } catch (IOException e) {
-                                System.err.println("保存文件失败 (" + filePath + "): " + e.getMessage());
+                                err.println("保存文件失败 (" + filePath + "): " + e.getMessage());
                                 failCount++;
                             }
                         }
                         
-                        System.out.printf("保存完成: 成功 %d 个，失败 %d 个%n", successCount, failCount);
+                        out.printf("保存完成: 成功 %d 个，失败 %d 个%n", successCount, failCount);
                         
-                        if (failCount > 0) {
-                            System.out.print("部分文件保存失败，是否仍要退出？(y/n): ");
+                        if (failCount > 0 && !batch) {
+                            out.print("部分文件保存失败，是否仍要退出？(y/n): ");
+                            out.flush();
                             String confirmExit = reader.readLine().trim().toLowerCase();
                             if (!confirmExit.equals("y") && !confirmExit.equals("yes")) {
-                                System.out.println("已取消退出");
+                                out.println("已取消退出");
                                 return;
                             }
                         }
                     }
                     case "n", "no" -> {
-                        // 不保存，直接退出
-                        System.out.println("放弃所有未保存的更改");
+                        // 不保存，直接退出，下次启动时也不恢复这些更改
+                        out.println("放弃所有未保存的更改");
+                        keepUnsavedContent = false;
                     }
                     case "c", "cancel" -> {
                         // 取消退出操作
-                        System.out.println("已取消退出");
+                        out.println("已取消退出");
                         return;
                     }
                     default -> {
-                        System.out.println("无效的选择，已取消退出");
+                        out.println("无效的选择，已取消退出");
                         return;
                     }
                 }
             } catch (IOException e) {
-                System.err.println("读取输入失败: " + e.getMessage());
+                err.println("读取输入失败: " + e.getMessage());
                 return;
             }
         }
         
         // 保存工作区状态
         try {
-            workspace.saveState();
-            System.out.println("已保存工作区状态");
+            workspace.saveState(keepUnsavedContent);
+            out.println("已保存工作区状态");
         } catch (IOException e) {
-            System.err.println("保存工作区状态失败: " + e.getMessage());
+            err.println("保存工作区状态失败: " + e.getMessage());
         }
         
         running = false;
@@ -520,348 +981,371 @@ public class CommandLineApp {
     
     // ===== 编辑命令 =====
     
-    private void cmdAppend(ParsedCommand cmd) {
-        EditorInstance editor = workspace.getActiveEditor();
-        if (editor == null) {
-            System.out.println("没有活动的编辑器");
-            return;
-        }
-
-        if (cmd.getArgCount() < 1) {
-            System.out.println("用法: append <文本>");
-            return;
-        }
-
+    private void cmdAppend(ParsedCommand cmd, EditorInstance editor) {
         String text = cmd.getArg(0);
         try {
             AppendCommand command = new AppendCommand(editor.getBuffer(), text);
             editor.getHistory().push(command);
-            editor.markAsModified();
-            System.out.println("已追加文本");
+            out.println("已追加文本");
         } catch (Exception e) {
-            System.out.println("追加失败: " + e.getMessage());
+            out.println("追加失败: " + e.getMessage());
         }
     }
     
-    private void cmdInsert(ParsedCommand cmd) {
-        EditorInstance editor = workspace.getActiveEditor();
-        if (editor == null) {
-            System.out.println("没有活动的编辑器");
-            return;
-        }
-        
-        if (cmd.getArgCount() < 2) {
-            System.out.println("用法: insert <行:列> <文本>");
-            return;
-        }
-        
+    private void cmdInsert(ParsedCommand cmd, EditorInstance editor) {
         try {
-            String[] pos = cmd.getArg(0).split(":");
-            if (pos.length != 2) {
-                System.out.println("位置格式错误，应为 <行:列>");
+            Position pos = parsePosition(cmd.getArg(0));
+            if (pos == null) {
                 return;
             }
-            
-            int line = Integer.parseInt(pos[0]);
-            int col = Integer.parseInt(pos[1]);
             String text = cmd.getArg(1);
             
-            InsertCommand command = new InsertCommand(editor.getBuffer(), line, col, text);
+            InsertCommand command = new InsertCommand(editor.getBuffer(), pos.getLine(), pos.getColumn(), text);
             editor.getHistory().push(command);
-            editor.markAsModified();
-            System.out.println("已插入文本");
+            out.println("已插入文本");
         } catch (NumberFormatException e) {
-            System.out.println("行号和列号必须是数字");
+            out.println("行号和列号必须是数字");
         }
     }
     
-    private void cmdDelete(ParsedCommand cmd) {
-        EditorInstance editor = workspace.getActiveEditor();
-        if (editor == null) {
-            System.out.println("没有活动的编辑器");
-            return;
-        }
-        
-        if (cmd.getArgCount() < 2) {
-            System.out.println("用法: delete <行:列> <长度>");
-            return;
-        }
-        
+    private void cmdDelete(ParsedCommand cmd, EditorInstance editor) {
         try {
-            String[] pos = cmd.getArg(0).split(":");
-            if (pos.length != 2) {
-                System.out.println("位置格式错误，应为 <行:列>");
+            Position pos = parsePosition(cmd.getArg(0));
+            if (pos == null) {
                 return;
             }
-            
-            int line = Integer.parseInt(pos[0]);
-            int col = Integer.parseInt(pos[1]);
             int length = Integer.parseInt(cmd.getArg(1));
 
             if (length == 0) {
-                System.out.println("删除长度为0，未执行任何操作");
+                out.println("删除长度为0，未执行任何操作");
                 return;
             }
             
-            DeleteCommand command = new DeleteCommand(editor.getBuffer(), line, col, length);
+            DeleteCommand command = new DeleteCommand(editor.getBuffer(), pos.getLine(), pos.getColumn(), length);
             editor.getHistory().push(command);
-            editor.markAsModified();
-            System.out.println("已删除文本");
+            out.println("已删除文本");
         } catch (NumberFormatException e) {
-            System.out.println("行号、列号和长度必须是数字");
+            out.println("行号、列号和长度必须是数字");
         }
     }
     
-    private void cmdReplace(ParsedCommand cmd) {
-        EditorInstance editor = workspace.getActiveEditor();
-        if (editor == null) {
-            System.out.println("没有活动的编辑器");
-            return;
-        }
-        
-        if (cmd.getArgCount() < 3) {
-            System.out.println("用法: replace <行:列> <长度> <新文本>");
-            return;
-        }
-        
+    private void cmdReplace(ParsedCommand cmd, EditorInstance editor) {
         try {
-            String[] pos = cmd.getArg(0).split(":");
-            if (pos.length != 2) {
-                System.out.println("位置格式错误，应为 <行:列>");
+            Position pos = parsePosition(cmd.getArg(0));
+            if (pos == null) {
                 return;
             }
-            
-            int line = Integer.parseInt(pos[0]);
-            int col = Integer.parseInt(pos[1]);
+            int line = pos.getLine();
+            int col = pos.getColumn();
             int length = Integer.parseInt(cmd.getArg(1));
             String newText = cmd.getArg(2);
             
-            // Replace = Delete + Insert
-            DeleteCommand deleteCmd = new DeleteCommand(editor.getBuffer(), line, col, length);
-            editor.getHistory().push(deleteCmd);
-            
-            InsertCommand insertCmd = new InsertCommand(editor.getBuffer(), line, col, newText);
-            editor.getHistory().push(insertCmd);
+            // Replace = Delete + Insert，两个事件作为一批通知观察者
+            editor.beginBatch();
+            try {
+                DeleteCommand deleteCmd = new DeleteCommand(editor.getBuffer(), line, col, length);
+                editor.getHistory().push(deleteCmd);
+                
+                InsertCommand insertCmd = new InsertCommand(editor.getBuffer(), line, col, newText);
+                editor.getHistory().push(insertCmd);
+            } finally {
+                editor.endBatch();
+            }
             
-            editor.markAsModified();
-            System.out.println("已替换文本");
+            out.println("已替换文本");
         } catch (NumberFormatException e) {
-            System.out.println("行号、列号和长度必须是数字");
+            out.println("行号、列号和长度必须是数字");
         }
     }
     
-    private void cmdShow(ParsedCommand cmd) {
-        EditorInstance editor = workspace.getActiveEditor();
-        if (editor == null) {
-            System.out.println("没有活动的编辑器");
-            return;
+    /**
+     * 解析 <行:列> 参数，格式错误时输出提示
+     * @return 位置，格式错误时返回 null
+     * @throws NumberFormatException 行号或列号不是数字
+     */
+    private Position parsePosition(String text) {
+        Position pos = Position.parse(text);
+        if (pos == null) {
+            out.println("位置格式错误，应为 <行:列>");
         }
+        return pos;
+    }
+    
+    private void cmdShow(ParsedCommand cmd, EditorInstance editor) {
         
         TextBuffer buffer = editor.getBuffer();
         if (buffer.getSize() == 0) {
-            System.out.println("(空文件)");
+            out.println("(空文件)");
             return;
         }
         
         int startLine = 1;
         int endLine = buffer.getSize();
-        
-        // 如果提供了范围参数
-        if (cmd.getArgCount() > 0) {
-            String range = cmd.getArg(0);
-            String[] parts = range.split(":");
-            
-            if (parts.length != 2) {
-                System.out.println("范围格式错误，应为 <起始行:结束行>");
+        String range = null;
+        String target = null;
+        for (int i = 0; i < cmd.getArgCount(); i++) {
+            String arg = cmd.getArg(i);
+            if (arg.equals("--out") && target == null && i + 1 < cmd.getArgCount()) {
+                target = cmd.getArg(++i);
+            } else if (range == null && !arg.startsWith("--")) {
+                range = arg;
+            } else {
+                out.println("用法: show [start:end] [--out 文件]");
                 return;
             }
-            
+        }
+        
+        // 如果提供了范围参数
+        if (range != null) {
             try {
-                startLine = Integer.parseInt(parts[0]);
-                endLine = Integer.parseInt(parts[1]);
+                Position parts = Position.parse(range);
+                if (parts == null) {
+                    out.println("范围格式错误，应为 <起始行:结束行>");
+                    return;
+                }
+                startLine = parts.getLine();
+                endLine = parts.getColumn();
                 
                 // 验证范围
                 if (startLine < 1) {
-                    System.out.println("起始行号不能小于1");
+                    out.println("起始行号不能小于1");
                     return;
                 }
                 
                 if (endLine > buffer.getSize()) {
-                    System.out.println("结束行号超出文件范围 (文件共 " + buffer.getSize() + " 行)");
+                    out.println("结束行号超出文件范围 (文件共 " + buffer.getSize() + " 行)");
                     return;
                 }
                 
                 if (startLine > endLine) {
-                    System.out.println("起始行号不能大于结束行号");
+                    out.println("起始行号不能大于结束行号");
                     return;
                 }
                 
             } catch (NumberFormatException e) {
-                System.out.println("行号必须是数字");
+                out.println("行号必须是数字");
                 return;
             }
         }
         
-        // 显示指定范围的行
-        for (int i = startLine; i <= endLine; i++) {
-            System.out.println(i + ": " + buffer.getLine(i));
+        // 显示指定范围的行：直接写入已有大缓冲的 out，命令结束时刷新一次
+        if (target == null) {
+            if (screenWriter == null) {
+                screenWriter = new NumberedLineWriter(new OutputStreamWriter(out, out.charset()));
+            }
+            writeLines(buffer, startLine, endLine, screenWriter);
+            return;
+        }
+        try (BufferedWriter file = new BufferedWriter(new OutputStreamWriter(
+                Files.newOutputStream(Paths.get(target)), StandardCharsets.UTF_8), OUTPUT_BUFFER_SIZE)) {
+            NumberedLineWriter writer = new NumberedLineWriter(file);
+            writeLines(buffer, startLine, endLine, writer);
+            out.println("已写入 " + writer.getCount() + " 行到 " + target);
+        } catch (IOException e) {
+            err.println("写入失败: " + e.getMessage());
+        }
+    }
+    
+    private void writeLines(TextBuffer buffer, int startLine, int endLine, NumberedLineWriter writer) {
+        try {
+            for (int i = startLine; i <= endLine; i++) {
+                writer.write(i, buffer.getLine(i));
+            }
+            writer.flush();
+        } catch (IOException e) {
+            err.println("输出失败: " + e.getMessage());
         }
     }
     
     // ===== 日志命令 =====
     
-    private void cmdLogOn(ParsedCommand cmd) {
+    /**
+     * 解析日志相关命令的目标编辑器：指定文件名时按路径或文件名查找（重名时让用户选择），否则使用活动编辑器
+     * @param input 文件路径或文件名，null 表示活动编辑器
+     * @return 目标编辑器，无法确定时返回 null（已输出提示）
+     */
+    private EditorInstance resolveLogTarget(String input) {
         EditorInstance target = null;
-        if (cmd.getArgCount() > 0) {
-            String input = cmd.getArg(0);
+        if (input != null) {
             if (workspace.isFileOpen(input)) {
                 target = workspace.getEditor(input);
             } else {
                 List<String> matches = workspace.findFilesByName(input);
                 if (matches.isEmpty()) {
-                    System.out.println("文件未打开: " + input);
-                    return;
+                    out.println("文件未打开: " + input);
+                    return null;
                 } else if (matches.size() == 1) {
                     target = workspace.getEditor(matches.get(0));
                 } else {
-                    System.out.println("当前打开了多个名为 \"" + input + "\" 的文件：");
-                    for (int i = 0; i < matches.size(); i++) {
-                        System.out.printf("%d. %s%n", i + 1, matches.get(i));
-                    }
-                    System.out.print("请输入要操作的文件编号: ");
-                    try {
-                        String choice = reader.readLine().trim();
-                        int index = Integer.parseInt(choice) - 1;
-                        if (index >= 0 && index < matches.size()) {
-                            target = workspace.getEditor(matches.get(index));
-                        } else {
-                            System.out.println("无效的编号");
-                            return;
-                        }
-                    } catch (Exception e) {
-                        System.out.println("输入无效");
-                        return;
+                    String selectedPath = chooseMatch(input, matches);
+                    if (selectedPath == null) {
+                        return null;
                     }
+                    target = workspace.getEditor(selectedPath);
                 }
             }
         } else {
-            target = workspace.getActiveEditor();
+            target = activeEditor();
             if (target == null) {
-                System.out.println("没有活动的编辑器");
-                return;
+                out.println("没有活动的编辑器");
+                return null;
             }
         }
+        return target;
+    }
+    
+    private void cmdLogOn(ParsedCommand cmd) {
+        EditorInstance target = resolveLogTarget(cmd.getArg(0));
+        if (target == null) {
+            return;
+        }
 
         workspace.enableLogging(target);
-        System.out.println("已启用日志");
+        out.println("已启用日志");
     }
     
     private void cmdLogOff(ParsedCommand cmd) {
-        EditorInstance target = null;
-        if (cmd.getArgCount() > 0) {
-            String input = cmd.getArg(0);
-            if (workspace.isFileOpen(input)) {
-                target = workspace.getEditor(input);
-            } else {
-                List<String> matches = workspace.findFilesByName(input);
-                if (matches.isEmpty()) {
-                    System.out.println("文件未打开: " + input);
-                    return;
-                } else if (matches.size() == 1) {
-                    target = workspace.getEditor(matches.get(0));
-                } else {
-                    System.out.println("当前打开了多个名为 \"" + input + "\" 的文件：");
-                    for (int i = 0; i < matches.size(); i++) {
-                        System.out.printf("%d. %s%n", i + 1, matches.get(i));
-                    }
-                    System.out.print("请输入要操作的文件编号: ");
-                    try {
-                        String choice = reader.readLine().trim();
-                        int index = Integer.parseInt(choice) - 1;
-                        if (index >= 0 && index < matches.size()) {
-                            target = workspace.getEditor(matches.get(index));
-                        } else {
-                            System.out.println("无效的编号");
-                            return;
-                        }
-                    } catch (Exception e) {
-                        System.out.println("输入无效");
-                        return;
-                    }
-                }
-            }
-        } else {
-            target = workspace.getActiveEditor();
-            if (target == null) {
-                System.out.println("没有活动的编辑器");
-                return;
-            }
+        EditorInstance target = resolveLogTarget(cmd.getArg(0));
+        if (target == null) {
+            return;
         }
 
         workspace.disableLogging(target);
-        System.out.println("已禁用日志");
+        out.println("已禁用日志");
     }
     
     private void cmdLogShow(ParsedCommand cmd) throws IOException {
-        EditorInstance target = null;
-        if (cmd.getArgCount() > 0) {
-            String input = cmd.getArg(0);
-            if (workspace.isFileOpen(input)) {
-                target = workspace.getEditor(input);
-            } else {
-                List<String> matches = workspace.findFilesByName(input);
-                if (matches.isEmpty()) {
-                    System.out.println("文件未打开: " + input);
-                    return;
-                } else if (matches.size() == 1) {
-                    target = workspace.getEditor(matches.get(0));
-                } else {
-                    System.out.println("当前打开了多个名为 \"" + input + "\" 的文件：");
-                    for (int i = 0; i < matches.size(); i++) {
-                        System.out.printf("%d. %s%n", i + 1, matches.get(i));
-                    }
-                    System.out.print("请输入要操作的文件编号: ");
-                    try {
-                        String choice = reader.readLine().trim();
-                        int index = Integer.parseInt(choice) - 1;
-                        if (index >= 0 && index < matches.size()) {
-                            target = workspace.getEditor(matches.get(index));
-                        } else {
-                            System.out.println("无效的编号");
-                            return;
+        String file = null;
+        int tail = -1;
+        LocalDateTime from = null;
+        LocalDateTime to = null;
+        boolean follow = false;
+        try {
+            for (int i = 0; i < cmd.getArgCount(); i++) {
+                String arg = cmd.getArg(i);
+                switch (arg) {
+                    case "--tail" -> tail = Integer.parseInt(requireOptionValue(cmd, ++i));
+                    case "--from" -> from = parseLogTime(requireOptionValue(cmd, ++i), false);
+                    case "--to" -> to = parseLogTime(requireOptionValue(cmd, ++i), true);
+                    case "--follow" -> follow = true;
+                    default -> {
+                        if (arg.startsWith("--") || file != null) {
+                            throw new IllegalArgumentException(arg);
                         }
-                    } catch (Exception e) {
-                        System.out.println("输入无效");
-                        return;
+                        file = arg;
                     }
                 }
             }
-        } else {
-            target = workspace.getActiveEditor();
-            if (target == null) {
-                System.out.println("没有活动的编辑器");
+            if (tail < -1 || (tail >= 0 && (from != null || to != null))) {
+                throw new IllegalArgumentException();
+            }
+            if (follow && batch) {
+                out.println("批处理模式不支持 --follow");
                 return;
             }
+        } catch (IllegalArgumentException | DateTimeParseException e) {
+            out.println("用法: log-show [file] [--tail N | --from 时间] [--to 时间] [--follow]");
+            out.println("时间格式: \"yyyy-MM-dd HH:mm:ss\" 或 yyyy-MM-dd");
+            return;
+        }
+
+        EditorInstance target = resolveLogTarget(file);
+        if (target == null) {
+            return;
         }
 
         if (!target.isLoggingEnabled()) {
-            System.out.println("当前文件未启用日志");
+            out.println("当前文件未启用日志");
             return;
         }
 
-        // 生成日志文件路径
+        // 生成日志文件路径（先等待异步日志写完）
+        workspace.flushLog(target);
         String filePath = target.getFilePath();
         Path logPath = Paths.get(filePath).resolveSibling("." + Paths.get(filePath).getFileName() + ".log");
         
-        if (!Files.exists(logPath)) {
-            System.out.println("日志文件不存在");
+        if (!TextLogReader.exists(logPath)) {
+            out.println("日志文件不存在");
             return;
         }
         
-        List<String> lines = Files.readAllLines(logPath);
-        System.out.println("=== 日志内容 ===");
-        for (String line : lines) {
-            System.out.println(line);
+        // 逐行输出，不把整个日志读入内存
+        out.println("=== 日志内容 ===");
+        long offset;
+        if (tail >= 0) {
+            offset = TextLogReader.tail(logPath, tail, out::println);
+        } else {
+            TextLogReader.range(logPath, from, to, out::println);
+            offset = Files.exists(logPath) ? Files.size(logPath) : 0;
+        }
+        if (follow) {
+            followLog(target, logPath, offset);
+        }
+    }
+    
+    /**
+     * 持续输出日志的新增内容，直到用户按回车
+     */
+    private void followLog(EditorInstance target, Path logPath, long offset) throws IOException {
+        out.println("=== 持续跟踪中，按回车结束 ===");
+        while (!reader.ready()) {
+            workspace.flushLog(target);
+            offset = TextLogReader.follow(logPath, offset, out::println);
+            out.flush();
+            try {
+                Thread.sleep(200);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+        reader.readLine();
+    }
+    
+    private static String requireOptionValue(ParsedCommand cmd, int index) {
+        String value = cmd.getArg(index);
+        if (value == null) {
+            throw new IllegalArgumentException();
+        }
+        return value;
+    }
+    
+    /**
+     * 解析日志时间参数，只给出日期时取当天的开始或结束
+     */
+    private static LocalDateTime parseLogTime(String text, boolean endOfDay) {
+        if (text.length() == 10) {
+            LocalDate date = LocalDate.parse(text);
+            return endOfDay ? date.atTime(23, 59, 59) : date.atStartOfDay();
+        }
+        return LocalDateTime.parse(text.replace('T', ' '), LogTimeFormat.VALUE);
+    }
+    
+    private void cmdLogReplay(ParsedCommand cmd) {
+        EditorInstance target = resolveLogTarget(cmd.getArg(0));
+        if (target == null) {
+            return;
+        }
+
+        workspace.flushLog(target); // 等待异步分发的操作日志写完
+        Path logPath = OperationLog.pathFor(target.getFilePath());
+        if (!Files.exists(logPath)) {
+            out.println(workspace.isOperationLogEnabled() ? "操作日志不存在" : "操作日志不存在（以 --oplog 启动以记录操作日志）");
+            return;
+        }
+
+        // 从空缓冲区回放，并与当前内容比较
+        TextBuffer replayed = new TextBuffer();
+        try {
+            OperationLogReplayer.Result result = new OperationLogReplayer(replayed).replay(logPath);
+            out.println("回放完成: " + result);
+            if (replayed.getLines().equals(target.getBuffer().getLines())) {
+                out.println("回放结果与当前内容一致");
+            } else {
+                out.println("回放结果与当前内容不一致（日志可能不是从空文件开始记录）");
+            }
+        } catch (IOException e) {
+            out.println(e.getMessage());
         }
     }
     
@@ -872,16 +1356,16 @@ public class CommandLineApp {
         File dir = new File(path);
         
         if (!dir.exists()) {
-            System.out.println("目录不存在: " + path);
+            out.println("目录不存在: " + path);
             return;
         }
         
         if (!dir.isDirectory()) {
-            System.out.println("不是目录: " + path);
+            out.println("不是目录: " + path);
             return;
         }
         
-        System.out.println(dir.getAbsolutePath());
+        out.println(dir.getAbsolutePath());
         printDirTree(dir, "", true);
     }
     
@@ -907,7 +1391,7 @@ public class CommandLineApp {
                 name += "/";
             }
             
-            System.out.println(prefix + connector + name);
+            out.println(prefix + connector + name);
             
             if (file.isDirectory()) {
                 String newPrefix = prefix + (last ? "    " : "│   ");
@@ -917,43 +1401,160 @@ public class CommandLineApp {
     }
     
     private void cmdHelp(ParsedCommand cmd) {
-    System.out.println("=== 命令帮助 ===");
-    System.out.println();
-    System.out.println("工作区命令:");
-    System.out.println("  load <file>             - 加载文件 (支持自动识别 #log)");
-    System.out.println("  save [file|all]         - 保存当前文件、指定文件或所有文件");
-    System.out.println("  init <file> [with-log]  - 创建新文件 (可选自动开启日志)");
-    System.out.println("  close [file]            - 关闭当前或指定文件");
-    System.out.println("  edit <file>             - 切换当前活动文件");
-    System.out.println("  editor-list             - 列出打开的文件及状态");
-    System.out.println("  undo                    - 撤销");
-    System.out.println("  redo                    - 重做");
-    System.out.println("  exit                    - 退出程序 (自动保存工作区)");
-    System.out.println();
-    System.out.println("编辑命令:");
-    System.out.println("  append <text>                - 在末尾追加一行");
-    System.out.println("  insert <line:col> <text>     - 在指定位置插入文本 (例: insert 1:5 \"text\")");
-    System.out.println("  delete <line:col> <len>      - 删除指定长度字符");
-    System.out.println("  replace <line:col> <len> <text> - 替换文本");
-    System.out.println("  show [start:end]             - 显示全文或指定行范围 (例: show 1:10)");
-    System.out.println();
-    System.out.println("日志命令:");
-    System.out.println("  log-on [file]           - 启用日志");
-    System.out.println("  log-off [file]          - 禁用日志");
-    System.out.println("  log-show [file]         - 显示日志内容");
-    System.out.println();
-    System.out.println("辅助命令:");
-    System.out.println("  dir-tree [path]         - 显示目录树");
-    System.out.println("  help                    - 显示此帮助");
-    System.out.println();
-    System.out.println("提示: 使用双引号括起带空格的参数，如: append \"hello world\"");
+    out.println("=== 命令帮助 ===");
+    out.println();
+    out.println("工作区命令:");
+    out.println("  load <file>             - 加载文件 (支持自动识别 #log)");
+    out.println("  save [file|all]         - 保存当前文件、指定文件或所有文件");
+    out.println("  init <file> [with-log]  - 创建新文件 (可选自动开启日志)");
+    out.println("  close [file]            - 关闭当前或指定文件");
+    out.println("  edit <file>             - 切换当前活动文件");
+    out.println("  editor-list             - 列出打开的文件及状态");
+    out.println("  undo [n|--to-save-point] - 撤销 (可指定步数或回到保存点)");
+    out.println("  redo [n]                - 重做 (可指定步数)");
+    out.println("  undo-tree               - 显示撤销树（保留所有分支）");
+    out.println("  undo-jump <id>          - 跳转到撤销树中的任意节点");
+    out.println("  exit                    - 退出程序 (自动保存工作区)");
+    out.println();
+    out.println("编辑命令:");
+    out.println("  append <text>                - 在末尾追加一行");
+    out.println("  insert <line:col> <text>     - 在指定位置插入文本 (例: insert 1:5 \"text\")");
+    out.println("  delete <line:col> <len>      - 删除指定长度字符");
+    out.println("  replace <line:col> <len> <text> - 替换文本");
+    out.println("  show [start:end]             - 显示全文或指定行范围 (例: show 1:10)");
+    out.println("    --out <file>               - 写入文件而不是屏幕");
+    out.println();
+    out.println("日志命令:");
+    out.println("  log-on [file]           - 启用日志");
+    out.println("  log-off [file]          - 禁用日志");
+    out.println("  log-show [file]         - 显示日志内容");
+    out.println("    --tail N              - 只显示最后 N 行");
+    out.println("    --from/--to 时间      - 只显示时间范围内的记录（\"yyyy-MM-dd HH:mm:ss\" 或 yyyy-MM-dd）");
+    out.println("    --follow              - 持续显示新增记录，按回车结束");
+    out.println("  log-replay [file]       - 从空缓冲区回放操作日志并报告吞吐量");
+    out.println();
+    out.println("辅助命令:");
+    out.println("  dir-tree [path]         - 显示目录树");
+    out.println("  help                    - 显示此帮助");
+    out.println();
+    out.println("提示: 使用双引号括起带空格的参数，如: append \"hello world\"");
     }
     
     /**
      * 主入口
+     * 用法: [--batch | --server 套接字路径] [--on-ambiguous first|fail] [--on-unsaved save|discard|cancel]
+     *       [--startup-report] [--oplog] [脚本文件]
+     * 给出脚本文件或 --batch（从标准输入读取）时进入批处理模式；--server 时作为服务器常驻；
+     * --startup-report 在第一条命令完成后向标准错误报告启动耗时；--oplog 启用日志时同时写入二进制操作日志
      */
     public static void main(String[] args) {
-        CommandLineApp app = new CommandLineApp();
-        app.run();
+        boolean batch = false;
+        boolean startupReport = false;
+        boolean operationLog = false;
+        String script = null;
+        String server = null;
+        AmbiguousMatchPolicy ambiguous = AmbiguousMatchPolicy.FAIL;
+        UnsavedChangesPolicy unsaved = UnsavedChangesPolicy.CANCEL;
+        try {
+            for (int i = 0; i < args.length; i++) {
+                switch (args[i]) {
+                    case "--batch" -> batch = true;
+                    case "--startup-report" -> startupReport = true;
+                    case "--oplog" -> operationLog = true;
+                    case "--server" -> {
+                        if (++i >= args.length) {
+                            throw new IllegalArgumentException();
+                        }
+                        server = args[i];
+                    }
+                    case "--on-ambiguous" -> ambiguous = AmbiguousMatchPolicy.valueOf(optionValue(args, ++i));
+                    case "--on-unsaved" -> unsaved = UnsavedChangesPolicy.valueOf(optionValue(args, ++i));
+                    default -> {
+                        if (args[i].startsWith("--") || script != null) {
+                            throw new IllegalArgumentException(args[i]);
+                        }
+                        script = args[i];
+                        batch = true;
+                    }
+                }
+            }
+        } catch (IllegalArgumentException e) {
+            System.err.println("用法: [--batch | --server 套接字路径] [--on-ambiguous first|fail] "
+                + "[--on-unsaved save|discard|cancel] [--startup-report] [--oplog] [脚本文件]");
+            System.exit(2);
+            return;
+        }
+        
+        if (server != null) {
+            runServer(Paths.get(server), ambiguous, unsaved, operationLog);
+            return;
+        }
+        if (!batch) {
+            CommandLineApp app = new CommandLineApp();
+            app.getWorkspace().setOperationLogEnabled(operationLog);
+            app.setStartupReportEnabled(startupReport);
+            app.run();
+            return;
+        }
+        try (BufferedReader input = script != null
+                ? Files.newBufferedReader(Paths.get(script))
+                : new BufferedReader(new InputStreamReader(System.in), OUTPUT_BUFFER_SIZE)) {
+            CommandLineApp app = new CommandLineApp(input, bufferedStdout(), true);
+            app.getWorkspace().setOperationLogEnabled(operationLog);
+            app.setAmbiguousMatchPolicy(ambiguous);
+            app.setUnsavedChangesPolicy(unsaved);
+            app.setStartupReportEnabled(startupReport);
+            app.run();
+        } catch (IOException e) {
+            System.err.println("无法读取脚本: " + e.getMessage());
+            System.exit(1);
+        }
+    }
+    
+    /**
+     * 服务器模式：恢复上次的工作区后常驻，工作区的变化随时追加到状态日志，进程结束时保存工作区状态并写完日志
+     */
+    private static void runServer(Path socketPath, AmbiguousMatchPolicy ambiguous, UnsavedChangesPolicy unsaved,
+                                  boolean operationLog) {
+        Workspace workspace = newWorkspace();
+        workspace.setOperationLogEnabled(operationLog);
+        try {
+            workspace.restoreState();
+        } catch (IOException e) {
+            // 忽略恢复错误
+        }
+        enableStateJournal(workspace, System.err);
+        EditorServer server = new EditorServer(workspace, socketPath);
+        server.setAmbiguousMatchPolicy(ambiguous);
+        server.setUnsavedChangesPolicy(unsaved);
+        try {
+            server.start();
+        } catch (IOException e) {
+            System.err.println("无法监听 " + socketPath + ": " + e.getMessage());
+            System.exit(1);
+            return;
+        }
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            try {
+                server.close();
+                workspace.saveState();
+            } catch (IOException e) {
+                System.err.println("保存工作区状态失败: " + e.getMessage());
+            }
+            workspace.closeAll();
+        }));
+        System.out.println("编辑器服务器已启动: " + socketPath.toAbsolutePath());
+        try {
+            server.awaitTermination();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+    
+    private static String optionValue(String[] args, int index) {
+        if (index >= args.length) {
+            throw new IllegalArgumentException();
+        }
+        return args[index].toUpperCase();
     }
 }
@@ -1,52 +1,111 @@
 package top.thesumst.cli;
 
-import java.util.ArrayList;
-import java.util.List;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
+import java.util.Arrays;
 
 /**
  * CommandParser - 命令解析器
  * 解析用户输入的命令行，支持双引号参数
+ * 单遍扫描切分参数，不使用正则；命令名与调用方给出的已注册命令名相同时直接返回该字符串，不再为其创建子串
  */
 public class CommandParser {
     
+    private static final String[] NO_ARGS = new String[0];
+    
     /**
      * 解析命令行输入
      * 支持双引号括起来的参数（如 append "hello world"）
+     * 规则与原先的正则 "([^"]*)"|\S+ 一致：引号有配对时取引号内的内容（可为空、可含空白），
+     * 否则与普通单词一样取到下一个空白为止
      * @param input 用户输入的命令行
      * @return ParsedCommand 对象
      */
     public static ParsedCommand parse(String input) {
-        if (input == null || input.trim().isEmpty()) {
-            return new ParsedCommand("", new String[0]);
+        return parse(input, NO_ARGS);
+    }
+    
+    /**
+     * 解析命令行输入，命令名与 commandNames 中某一项完全相同时返回该项本身
+     * （命令表的键，hashCode 已缓存，查表时 equals 走引用相等的快速路径）
+     * @param input 用户输入的命令行
+     * @param commandNames 已注册的命令名
+     * @return ParsedCommand 对象
+     */
+    public static ParsedCommand parse(String input, String[] commandNames) {
+        if (input == null) {
+            return new ParsedCommand("", NO_ARGS);
         }
         
-        input = input.trim();
-        List<String> tokens = new ArrayList<>();
-        
-        // 使用正则表达式匹配：引号内的内容 或 非空格字符
-        Pattern pattern = Pattern.compile("\"([^\"]*)\"|\\S+");
-        Matcher matcher = pattern.matcher(input);
+        // 与 trim() 相同的首尾范围，但不创建新字符串
+        int end = input.length();
+        while (end > 0 && input.charAt(end - 1) <= ' ') {
+            end--;
+        }
+        int pos = 0;
+        while (pos < end && input.charAt(pos) <= ' ') {
+            pos++;
+        }
         
-        while (matcher.find()) {
-            if (matcher.group(1) != null) {
+        String command = null;
+        String[] args = NO_ARGS;
+        int argCount = 0;
+        while (pos < end) {
+            char c = input.charAt(pos);
+            if (isWhitespace(c)) {
+                pos++;
+                continue;
+            }
+            int tokenStart;
+            int tokenEnd;
+            int close = c == '"' ? input.indexOf('"', pos + 1) : -1;
+            if (close >= 0 && close < end) {
                 // 引号内的内容
-                tokens.add(matcher.group(1));
+                tokenStart = pos + 1;
+                tokenEnd = close;
+                pos = close + 1;
             } else {
                 // 普通单词
-                tokens.add(matcher.group());
+                tokenStart = pos;
+                tokenEnd = pos + 1;
+                while (tokenEnd < end && !isWhitespace(input.charAt(tokenEnd))) {
+                    tokenEnd++;
+                }
+                pos = tokenEnd;
+            }
+            
+            if (command == null) {
+                command = commandName(input, tokenStart, tokenEnd, commandNames);
+                continue;
             }
+            if (argCount == args.length) {
+                args = Arrays.copyOf(args, Math.max(4, argCount * 2));
+            }
+            args[argCount++] = input.substring(tokenStart, tokenEnd);
         }
         
-        if (tokens.isEmpty()) {
-            return new ParsedCommand("", new String[0]);
+        if (command == null) {
+            return new ParsedCommand("", NO_ARGS);
         }
-        
-        String command = tokens.get(0);
-        String[] args = tokens.subList(1, tokens.size()).toArray(new String[0]);
-        
-        return new ParsedCommand(command, args);
+        return new ParsedCommand(command, argCount == args.length ? args : Arrays.copyOf(args, argCount));
+    }
+    
+    /**
+     * 与正则 \s 相同的空白字符
+     */
+    private static boolean isWhitespace(char c) {
+        return c == ' ' || c == '\t' || c == '\n' || c == '\u000B' || c == '\f' || c == '\r';
+    }
+    
+    /**
+     * 命令名与已注册命令完全相同时返回已有的字符串，否则截取子串
+     */
+    private static String commandName(String input, int start, int end, String[] commandNames) {
+        int length = end - start;
+        for (String name : commandNames) {
+            if (name.length() == length && input.regionMatches(start, name, 0, length)) {
+                return name;
+            }
+        }
+        return input.substring(start, end);
     }
     
     /**
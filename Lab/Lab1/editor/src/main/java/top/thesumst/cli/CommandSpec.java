@@ -0,0 +1,72 @@
+package top.thesumst.cli;
+
+/**
+ * CommandSpec - 命令的注册信息
+ * 分发前统一校验：需要活动编辑器时先检查编辑器，再检查必需参数个数，不满足时输出用法
+ * 交互模式下上次的工作区推迟到第一条需要工作区的命令前才恢复，help 等命令不触发恢复
+ */
+public final class CommandSpec {
+
+    private final String name;
+    private final String usage;
+    private final int requiredArgs;
+    private final boolean requiresEditor;
+    private final boolean requiresWorkspace;
+    private final CommandHandler handler;
+
+    /**
+     * 构造函数
+     * @param name 命令名（小写）
+     * @param usage 用法说明，如 "insert <行:列> <文本>"
+     * @param requiredArgs 必需参数个数
+     * @param requiresEditor 是否需要活动编辑器
+     * @param handler 处理器
+     */
+    public CommandSpec(String name, String usage, int requiredArgs, boolean requiresEditor,
+                       CommandHandler handler) {
+        this(name, usage, requiredArgs, requiresEditor, true, handler);
+    }
+
+    /**
+     * 构造函数
+     * @param name 命令名（小写）
+     * @param usage 用法说明
+     * @param requiredArgs 必需参数个数
+     * @param requiresEditor 是否需要活动编辑器
+     * @param requiresWorkspace 执行前是否需要先恢复上次的工作区
+     * @param handler 处理器
+     */
+    public CommandSpec(String name, String usage, int requiredArgs, boolean requiresEditor,
+                       boolean requiresWorkspace, CommandHandler handler) {
+        this.name = name;
+        this.usage = usage;
+        this.requiredArgs = requiredArgs;
+        this.requiresEditor = requiresEditor;
+        this.requiresWorkspace = requiresWorkspace;
+        this.handler = handler;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public String getUsage() {
+        return usage;
+    }
+
+    public int getRequiredArgs() {
+        return requiredArgs;
+    }
+
+    public boolean requiresEditor() {
+        return requiresEditor;
+    }
+
+    public boolean requiresWorkspace() {
+        return requiresWorkspace;
+    }
+
+    public CommandHandler getHandler() {
+        return handler;
+    }
+}
@@ -0,0 +1,313 @@
+package top.thesumst.cli;
+
+import top.thesumst.workspace.EditorInstance;
+import top.thesumst.workspace.Workspace;
+
+import top.thesumst.cli.CommandParser.ParsedCommand;
+
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.PrintStream;
+import java.io.Reader;
+import java.net.StandardProtocolFamily;
+import java.net.UnixDomainSocketAddress;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * EditorServer - 无界面的编辑器服务器
+ * 在 Unix 域套接字上接受连接，每个连接由一个虚拟线程服务，所有连接共用一个常驻的工作区，
+ * 省去每次调用的 JVM 启动和工作区恢复
+ * 协议与脚本相同：客户端每行发送一条命令，服务器按批处理模式执行（不提示、按策略处理），
+ * 输出（含错误信息）写回连接并以只含 "." 的一行结束，见 {@link ResponseFramer}
+ * 分帧请求 "@编号 命令" 的响应为 "@编号 行数" 加上相应行数的输出，客户端可以不等响应连续发送（流水线），
+ * 按编号对应响应；两种请求可在同一连接上混用，响应顺序与请求顺序一致
+ * 工作区不是线程安全的，命令在一把锁下执行：每个连接由读取线程把请求放入队列，
+ * 执行线程一次持锁处理队列中已到达的全部请求，响应在这批请求处理完、释放锁后一起写出；
+ * 每个连接记住自己的活动编辑器，执行前与工作区当前的不同时才切换回来，切换不回来（已被关闭）或尚未打开文件时
+ * 编辑命令报告没有活动的编辑器，不会作用到其他连接的文件上；exit 只结束本连接
+ */
+public final class EditorServer implements Closeable {
+
+    private static final int BUFFER_SIZE = 1 << 16;
+    private static final int MAX_PENDING_REQUESTS = 4096;                // 每个连接排队等待执行的请求上限
+    private static final String END_OF_INPUT = new String("<eof>");      // 队列中的输入结束标记（按引用比较）
+
+    private final Workspace workspace;
+    private final Path socketPath;
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Set<SocketChannel> connections = ConcurrentHashMap.newKeySet();
+    private final AtomicInteger sessionIds = new AtomicInteger();
+    private final AtomicLong commandCount = new AtomicLong();
+    private CommandLineApp.AmbiguousMatchPolicy ambiguousMatchPolicy = CommandLineApp.AmbiguousMatchPolicy.FAIL;
+    private CommandLineApp.UnsavedChangesPolicy unsavedChangesPolicy = CommandLineApp.UnsavedChangesPolicy.CANCEL;
+    private ServerSocketChannel serverChannel;
+    private Thread acceptor;
+
+    /**
+     * 构造函数
+     * @param workspace 共用的工作区
+     * @param socketPath 套接字文件路径
+     */
+    public EditorServer(Workspace workspace, Path socketPath) {
+        this.workspace = workspace;
+        this.socketPath = socketPath;
+    }
+
+    public void setAmbiguousMatchPolicy(CommandLineApp.AmbiguousMatchPolicy policy) {
+        this.ambiguousMatchPolicy = policy;
+    }
+
+    public void setUnsavedChangesPolicy(CommandLineApp.UnsavedChangesPolicy policy) {
+        this.unsavedChangesPolicy = policy;
+    }
+
+    /**
+     * 开始监听；套接字文件已存在时先删除（上次未正常退出留下的）
+     * @throws IOException 绑定失败
+     */
+    public void start() throws IOException {
+        Files.deleteIfExists(socketPath);
+        serverChannel = ServerSocketChannel.open(StandardProtocolFamily.UNIX);
+        serverChannel.bind(UnixDomainSocketAddress.of(socketPath));
+        acceptor = Thread.ofVirtual().name("editor-server-accept").start(this::acceptLoop);
+    }
+
+    /**
+     * 获取当前连接数
+     * @return 连接数
+     */
+    public int getConnectionCount() {
+        return connections.size();
+    }
+
+    /**
+     * 获取累计执行的命令数
+     * @return 命令数
+     */
+    public long getCommandCount() {
+        return commandCount.get();
+    }
+
+    /**
+     * 等待服务器停止
+     * @throws InterruptedException 等待被中断
+     */
+    public void awaitTermination() throws InterruptedException {
+        if (acceptor != null) {
+            acceptor.join();
+        }
+    }
+
+    /**
+     * 停止监听、断开所有连接并等待正在执行的命令结束；工作区由调用方负责保存和关闭
+     */
+    @Override
+    public void close() throws IOException {
+        if (serverChannel != null) {
+            serverChannel.close();
+        }
+        for (SocketChannel connection : connections) {
+            connection.close();
+        }
+        try {
+            awaitTermination();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        lock.lock();
+        lock.unlock();
+        Files.deleteIfExists(socketPath);
+    }
+
+    // ===== 内部实现 =====
+
+    private void acceptLoop() {
+        while (serverChannel.isOpen()) {
+            try {
+                SocketChannel connection = serverChannel.accept();
+                connections.add(connection);
+                Thread.ofVirtual().name("editor-session-" + sessionIds.incrementAndGet())
+                    .start(() -> serve(connection));
+            } catch (ClosedChannelException e) {
+                return;
+            } catch (IOException e) {
+                System.err.println("接受连接失败: " + e.getMessage());
+            }
+        }
+    }
+
+    private void serve(SocketChannel connection) {
+        BlockingQueue<String> requests = new LinkedBlockingQueue<>(MAX_PENDING_REQUESTS);
+        Thread receiver = Thread.ofVirtual().name(Thread.currentThread().getName() + "-read")
+            .start(() -> receive(connection, requests));
+        try (connection) {
+            new Session(connection).run(requests);
+        } catch (IOException e) {
+            // 客户端断开
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            receiver.interrupt();
+            connections.remove(connection);
+        }
+    }
+
+    /**
+     * 读取请求行放入队列；队列满时阻塞读取，对客户端形成背压
+     */
+    private static void receive(SocketChannel connection, BlockingQueue<String> requests) {
+        try {
+            BufferedReader reader = new BufferedReader(new InputStreamReader(
+                SocketStreams.input(connection), StandardCharsets.UTF_8), BUFFER_SIZE);
+            String line;
+            while ((line = reader.readLine()) != null) {
+                requests.put(line);
+            }
+            requests.put(END_OF_INPUT);
+        } catch (IOException e) {
+            requests.offer(END_OF_INPUT);
+        } catch (InterruptedException e) {
+            // 连接已结束
+        }
+    }
+
+    /**
+     * 一个连接的执行状态
+     */
+    private final class Session {
+        private final ResponseCapture capture = new ResponseCapture();
+        private final PrintStream out = new PrintStream(capture, false, StandardCharsets.UTF_8);
+        private final ByteArrayOutputStream responses = new ByteArrayOutputStream(); // 本批请求的响应
+        private final ResponseFramer framer = new ResponseFramer(responses);
+        private final BufferedOutputStream socketOut;
+        private final CommandLineApp app;
+        private EditorInstance batchEditor;
+        private boolean running = true;
+
+        Session(SocketChannel connection) {
+            socketOut = new BufferedOutputStream(SocketStreams.output(connection), BUFFER_SIZE);
+            // 批处理模式下不会读取交互输入
+            app = new CommandLineApp(workspace, new BufferedReader(Reader.nullReader()), out, out, true);
+            app.setAmbiguousMatchPolicy(ambiguousMatchPolicy);
+            app.setUnsavedChangesPolicy(unsavedChangesPolicy);
+            app.setOwnActiveEditor(true);
+            // 工作区由所有连接共用，exit 不保存或丢弃其他连接的编辑
+            app.registerCommand(new CommandSpec("exit", "exit", 0, false, false, (cmd, editor) -> app.stop()));
+        }
+
+        void run(BlockingQueue<String> requests) throws IOException, InterruptedException {
+            while (running) {
+                String line = requests.take();
+                if (line == END_OF_INPUT) {
+                    return;
+                }
+                lock.lock();
+                try {
+                    app.reactivate();
+                    // 一次持锁处理所有已到达的请求
+                    do {
+                        handle(line);
+                    } while (running && (line = requests.poll()) != null && line != END_OF_INPUT);
+                    endBatch();
+                    workspace.snapshotUnsavedContent();
+                } finally {
+                    lock.unlock();
+                }
+                // 在锁外写出，慢客户端不会阻塞其他连接
+                responses.writeTo(socketOut);
+                responses.reset();
+                socketOut.flush();
+                if (line == END_OF_INPUT) {
+                    return;
+                }
+            }
+        }
+
+        /**
+         * 执行一条请求并写出响应
+         * 以 "@编号 " 开头的请求按分帧格式响应，否则按行协议以 "." 结束
+         */
+        private void handle(String line) throws IOException {
+            String id = null;
+            String text = line;
+            if (line.startsWith("@")) {
+                int space = line.indexOf(' ');
+                id = space < 0 ? line.substring(1) : line.substring(1, space);
+                text = space < 0 ? "" : line.substring(space + 1);
+            }
+
+            capture.reset();
+            String command = text.strip();
+            if (!command.isEmpty() && command.charAt(0) != '#') {
+                ParsedCommand cmd = app.parse(command);
+                CommandSpec spec = app.findCommand(cmd.getCommand());
+                // 连续作用于同一编辑器的编辑命令合为一批通知观察者，其他命令前结束当前批次
+                EditorInstance target = spec != null && spec.requiresEditor() ? app.activeEditor() : null;
+                if (target != batchEditor) {
+                    endBatch();
+                    if (target != null) {
+                        target.beginBatch();
+                        batchEditor = target;
+                    }
+                }
+                running = app.execute(cmd);
+                commandCount.incrementAndGet();
+            }
+
+            if (id == null) {
+                capture.writeTo(framer);
+                framer.endResponse();
+                return;
+            }
+            int lines = capture.lineCount();
+            if (capture.size() > 0 && !capture.endsWithNewline()) {
+                capture.write('\n');
+                lines++;
+            }
+            responses.write(("@" + id + " " + lines + "\n").getBytes(StandardCharsets.UTF_8));
+            capture.writeTo(responses);
+        }
+
+        private void endBatch() {
+            if (batchEditor != null) {
+                batchEditor.endBatch();
+                batchEditor = null;
+            }
+        }
+    }
+
+    /**
+     * 收集一条命令的输出，可直接统计行数而不复制
+     */
+    private static final class ResponseCapture extends ByteArrayOutputStream {
+        int lineCount() {
+            int lines = 0;
+            for (int i = 0; i < count; i++) {
+                if (buf[i] == '\n') {
+                    lines++;
+                }
+            }
+            return lines;
+        }
+
+        boolean endsWithNewline() {
+            return count > 0 && buf[count - 1] == '\n';
+        }
+    }
+}
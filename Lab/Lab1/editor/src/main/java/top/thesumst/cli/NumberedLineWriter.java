@@ -0,0 +1,55 @@
+package top.thesumst.cli;
+
+import java.io.Flushable;
+import java.io.IOException;
+import java.io.Writer;
+
+/**
+ * NumberedLineWriter - 带行号的文本输出
+ * 行号逐位写入复用的字符数组，与分隔符、行内容分别写入底层 Writer，不拼接字符串；
+ * 底层应为大缓冲的 Writer，由调用方在命令结束时刷新一次
+ */
+final class NumberedLineWriter implements Flushable {
+
+    private static final String SEPARATOR = ": ";
+    private static final String LINE_SEPARATOR = System.lineSeparator();
+
+    private final Writer writer;
+    private final char[] digits = new char[10];   // int 最多 10 位
+    private long count;
+
+    NumberedLineWriter(Writer writer) {
+        this.writer = writer;
+    }
+
+    /**
+     * 写出一行，格式为 "行号: 内容"
+     * @param number 行号（非负）
+     * @param line 行内容
+     */
+    void write(int number, String line) throws IOException {
+        int pos = digits.length;
+        do {
+            digits[--pos] = (char) ('0' + number % 10);
+            number /= 10;
+        } while (number > 0);
+        writer.write(digits, pos, digits.length - pos);
+        writer.write(SEPARATOR);
+        writer.write(line);
+        writer.write(LINE_SEPARATOR);
+        count++;
+    }
+
+    /**
+     * 获取已写出的行数
+     * @return 行数
+     */
+    long getCount() {
+        return count;
+    }
+
+    @Override
+    public void flush() throws IOException {
+        writer.flush();
+    }
+}
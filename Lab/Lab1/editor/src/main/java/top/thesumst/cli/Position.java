@@ -0,0 +1,54 @@
+package top.thesumst.cli;
+
+/**
+ * Position - 形如 "a:b" 的一对整数参数
+ * 用于 insert/delete/replace 的 <行:列> 和 show 的 <起始行:结束行>
+ * 直接在原字符串上按区间解析数字，不 split、不创建子串
+ */
+public final class Position {
+
+    private final int first;
+    private final int second;
+
+    public Position(int first, int second) {
+        this.first = first;
+        this.second = second;
+    }
+
+    /**
+     * 解析 "a:b"
+     * @param text 参数文本
+     * @return 解析结果；不是恰好一个冒号分隔的两部分时返回 null
+     * @throws NumberFormatException 两部分不是整数
+     */
+    public static Position parse(String text) {
+        int colon = text.indexOf(':');
+        if (colon < 0 || colon == text.length() - 1 || text.indexOf(':', colon + 1) >= 0) {
+            return null;
+        }
+        int first = Integer.parseInt(text, 0, colon, 10);
+        int second = Integer.parseInt(text, colon + 1, text.length(), 10);
+        return new Position(first, second);
+    }
+
+    /**
+     * 获取行号（作为范围时为起始行）
+     * @return 冒号前的数
+     */
+    public int getLine() {
+        return first;
+    }
+
+    /**
+     * 获取列号（作为范围时为结束行）
+     * @return 冒号后的数
+     */
+    public int getColumn() {
+        return second;
+    }
+
+    @Override
+    public String toString() {
+        return first + ":" + second;
+    }
+}
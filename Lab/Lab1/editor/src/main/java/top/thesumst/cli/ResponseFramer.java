@@ -0,0 +1,56 @@
+package top.thesumst.cli;
+
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * ResponseFramer - 服务器响应的分帧
+ * 每条命令的输出以只含 "." 的一行结束；输出中以 "." 开头的行在行首多写一个 "."（与 SMTP 相同），
+ * 客户端读到单独的 "." 即知道本条响应结束，去掉行首多余的 "." 即得到原始输出
+ */
+final class ResponseFramer extends FilterOutputStream {
+
+    private static final byte[] TERMINATOR = {'.', '\n'};
+
+    private boolean lineStart = true;
+
+    ResponseFramer(OutputStream out) {
+        super(out);
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        if (lineStart && b == '.') {
+            out.write('.');
+        }
+        out.write(b);
+        lineStart = b == '\n';
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+        int start = off;
+        int end = off + len;
+        for (int i = off; i < end; i++) {
+            if (lineStart && b[i] == '.') {
+                out.write(b, start, i - start);
+                out.write('.');
+                start = i;
+            }
+            lineStart = b[i] == '\n';
+        }
+        out.write(b, start, end - start);
+    }
+
+    /**
+     * 结束当前响应：补齐未换行的最后一行，写出结束行（不刷新，由调用方在一批响应后刷新）
+     */
+    void endResponse() throws IOException {
+        if (!lineStart) {
+            out.write('\n');
+            lineStart = true;
+        }
+        out.write(TERMINATOR);
+    }
+}
@@ -0,0 +1,74 @@
+package top.thesumst.cli;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+
+/**
+ * SocketStreams - 套接字通道的字节流适配
+ * Channels.newInputStream/newOutputStream 阻塞读写时持有通道 blockingLock 的 synchronized 锁，
+ * 虚拟线程会被钉在载体线程上，多个连接同时等待输入就会占满载体线程；
+ * 这里直接调用 SocketChannel.read/write（内部使用 ReentrantLock），等待时虚拟线程可以让出载体线程
+ */
+final class SocketStreams {
+
+    private SocketStreams() {
+    }
+
+    /**
+     * 创建从通道读取的输入流（不缓冲，由调用方包装）
+     * @param channel 阻塞模式的通道
+     * @return 输入流
+     */
+    static InputStream input(SocketChannel channel) {
+        return new InputStream() {
+            @Override
+            public int read() throws IOException {
+                byte[] one = new byte[1];
+                return read(one, 0, 1) < 0 ? -1 : one[0] & 0xFF;
+            }
+
+            @Override
+            public int read(byte[] b, int off, int len) throws IOException {
+                if (len == 0) {
+                    return 0;
+                }
+                return channel.read(ByteBuffer.wrap(b, off, len));
+            }
+
+            @Override
+            public void close() throws IOException {
+                channel.close();
+            }
+        };
+    }
+
+    /**
+     * 创建写入通道的输出流（不缓冲，由调用方包装）
+     * @param channel 阻塞模式的通道
+     * @return 输出流
+     */
+    static OutputStream output(SocketChannel channel) {
+        return new OutputStream() {
+            @Override
+            public void write(int b) throws IOException {
+                write(new byte[] {(byte) b}, 0, 1);
+            }
+
+            @Override
+            public void write(byte[] b, int off, int len) throws IOException {
+                ByteBuffer buffer = ByteBuffer.wrap(b, off, len);
+                while (buffer.hasRemaining()) {
+                    channel.write(buffer);
+                }
+            }
+
+            @Override
+            public void close() throws IOException {
+                channel.close();
+            }
+        };
+    }
+}
@@ -3,6 +3,7 @@ package top.thesumst.command;
 import top.thesumst.engine.TextBuffer;
 
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
 
 /**
@@ -28,6 +29,18 @@ public class AppendCommand implements Command {
         this.originalSize = buffer.getSize();
     }
 
+    /**
+     * 从持久化记录还原命令时使用，显式指定执行前的行数
+     * @param buffer       文本缓冲区
+     * @param text         追加的文本
+     * @param originalSize 执行前的行数
+     */
+    AppendCommand(TextBuffer buffer, String text, int originalSize) {
+        this.buffer = buffer;
+        this.linesToAdd = Arrays.asList(text.split("\n", -1));
+        this.originalSize = originalSize;
+    }
+
     @Override
     public void execute() {
         for (String line : linesToAdd) {
@@ -51,11 +64,42 @@ public class AppendCommand implements Command {
         buffer.removeLastLines(linesToAdd.size());
     }
 
+    /**
+     * 追加的文本（多行以 \n 连接，用于序列化）
+     */
+    String getText() {
+        return String.join("\n", linesToAdd);
+    }
+
+    /**
+     * 获取要追加的各行
+     * @return 只读的行列表
+     */
+    public List<String> getLinesToAdd() {
+        return Collections.unmodifiableList(linesToAdd);
+    }
+
+    int getOriginalSize() {
+        return originalSize;
+    }
+
+    int getLineCount() {
+        return linesToAdd.size();
+    }
+
     @Override
-    public String toString() {
+    public void describeTo(StringBuilder out) {
         if (linesToAdd.size() == 1) {
-            return String.format("AppendCommand(line=+%d, text=\"%s\")", linesToAdd.size(), linesToAdd.get(0));
+            out.append("AppendCommand(line=+1, text=\"").append(linesToAdd.get(0)).append("\")");
+        } else {
+            out.append("AppendCommand(lines=+").append(linesToAdd.size()).append(')');
         }
-        return String.format("AppendCommand(lines=+%d)", linesToAdd.size());
+    }
+    
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder(48);
+        describeTo(sb);
+        return sb.toString();
     }
 }
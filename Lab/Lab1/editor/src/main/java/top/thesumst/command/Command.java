@@ -15,4 +15,13 @@ public interface Command {
      * 撤销命令（执行逆操作）
      */
     void undo();
+    
+    /**
+     * 将命令描述直接追加到 StringBuilder（日志热路径使用，避免 String.format）
+     * 默认实现退化为 toString
+     * @param out 输出
+     */
+    default void describeTo(StringBuilder out) {
+        out.append(this);
+    }
 }
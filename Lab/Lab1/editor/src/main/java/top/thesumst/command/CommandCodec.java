@@ -0,0 +1,200 @@
+package top.thesumst.command;
+
+import top.thesumst.engine.TextBuffer;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * CommandCodec - 命令二进制编解码器
+ * 将可撤销命令编码为紧凑的二进制形式，统一布局为：
+ * op(1 字节) line(varint) col(varint) length(varint) payload(varint 长度 + UTF-8)
+ * 供撤销历史日志等持久化场景使用
+ */
+public final class CommandCodec {
+
+    public static final byte OP_APPEND = 1;
+    public static final byte OP_INSERT = 2;
+    public static final byte OP_DELETE = 3;
+    public static final byte OP_REPLACE_CONTENT = 4;   // line 为原行数，length 为新行数，payload 为原行与新行以 \n 连接
+
+    private CommandCodec() {
+    }
+
+    /**
+     * 检查命令是否可以被编码
+     * @param command 命令
+     * @return true 如果是内置的可编码命令
+     */
+    public static boolean supports(Command command) {
+        return command instanceof AppendCommand
+            || command instanceof InsertCommand
+            || command instanceof DeleteCommand
+            || command instanceof ReplaceContentCommand;
+    }
+
+    /**
+     * 编码命令（需在命令执行后调用，以便记录删除的文本等执行期状态）
+     * @param command 要编码的命令
+     * @param out 输出缓冲区
+     * @return 写入后的缓冲区（容量不足时会扩容，返回新实例）
+     * @throws IllegalArgumentException 如果命令类型不支持
+     */
+    public static ByteBuffer encode(Command command, ByteBuffer out) {
+        if (command instanceof AppendCommand append) {
+            return putFields(out, OP_APPEND, append.getOriginalSize(), 0,
+                             append.getLineCount(), append.getText());
+        }
+        if (command instanceof InsertCommand insert) {
+            return putFields(out, OP_INSERT, insert.getLine(), insert.getCol(), 0, insert.getText());
+        }
+        if (command instanceof DeleteCommand delete) {
+            String deleted = delete.getDeletedText();
+            return putFields(out, OP_DELETE, delete.getLine(), delete.getCol(),
+                             delete.getLength(), deleted != null ? deleted : "");
+        }
+        if (command instanceof ReplaceContentCommand replace) {
+            List<String> oldLines = replace.getOldLines();
+            List<String> newLines = replace.getNewLines();
+            List<String> all = new ArrayList<>(oldLines.size() + newLines.size());
+            all.addAll(oldLines);
+            all.addAll(newLines);
+            return putFields(out, OP_REPLACE_CONTENT, oldLines.size(), 0, newLines.size(), String.join("\n", all));
+        }
+        throw new IllegalArgumentException("不支持编码的命令类型: " + command.getClass().getName());
+    }
+
+    /**
+     * 解码命令，还原后的命令视为已执行状态（可直接 undo）
+     * @param in 输入缓冲区，读取位置会前移
+     * @param buffer 命令作用的文本缓冲区
+     * @return 还原的命令
+     * @throws IllegalArgumentException 如果操作码未知
+     */
+    public static Command decode(ByteBuffer in, TextBuffer buffer) {
+        byte op = in.get();
+        int line = (int) getVarLong(in);
+        int col = (int) getVarLong(in);
+        int length = (int) getVarLong(in);
+        String payload = getString(in);
+
+        return switch (op) {
+            case OP_APPEND -> new AppendCommand(buffer, payload, line);
+            case OP_INSERT -> {
+                InsertCommand insert = new InsertCommand(buffer, line, col, payload);
+                insert.markExecuted();
+                yield insert;
+            }
+            case OP_DELETE -> {
+                DeleteCommand delete = new DeleteCommand(buffer, line, col, length);
+                delete.setDeletedText(payload);
+                yield delete;
+            }
+            case OP_REPLACE_CONTENT -> {
+                List<String> all = line + length == 0 ? List.of() : Arrays.asList(payload.split("\n", -1));
+                if (all.size() != line + length) {
+                    throw new IllegalArgumentException("替换内容的行数不符: " + all.size());
+                }
+                yield new ReplaceContentCommand(buffer, all.subList(0, line), all.subList(line, all.size()));
+            }
+            default -> throw new IllegalArgumentException("未知的操作码: " + op);
+        };
+    }
+
+    private static ByteBuffer putFields(ByteBuffer out, byte op, int line, int col, int length, String payload) {
+        out = ensureRemaining(out, 1);
+        out.put(op);
+        out = putVarLong(out, line);
+        out = putVarLong(out, col);
+        out = putVarLong(out, length);
+        return putString(out, payload);
+    }
+
+    // ===== 基础编码工具 =====
+
+    /**
+     * 写入无符号变长整数（LEB128）
+     * @param out 输出缓冲区
+     * @param value 非负整数
+     * @return 写入后的缓冲区
+     */
+    public static ByteBuffer putVarLong(ByteBuffer out, long value) {
+        if (value < 0) {
+            throw new IllegalArgumentException("varint 不支持负数: " + value);
+        }
+        out = ensureRemaining(out, 10);
+        while ((value & ~0x7FL) != 0) {
+            out.put((byte) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        out.put((byte) value);
+        return out;
+    }
+
+    /**
+     * 读取无符号变长整数（LEB128）
+     * @param in 输入缓冲区
+     * @return 读取的值
+     */
+    public static long getVarLong(ByteBuffer in) {
+        long value = 0;
+        int shift = 0;
+        while (true) {
+            byte b = in.get();
+            value |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+            shift += 7;
+            if (shift > 63) {
+                throw new IllegalArgumentException("varint 过长");
+            }
+        }
+    }
+
+    /**
+     * 写入字符串（varint 字节长度 + UTF-8 内容）
+     */
+    public static ByteBuffer putString(ByteBuffer out, String value) {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        out = putVarLong(out, bytes.length);
+        out = ensureRemaining(out, bytes.length);
+        out.put(bytes);
+        return out;
+    }
+
+    /**
+     * 读取字符串（varint 字节长度 + UTF-8 内容）
+     */
+    public static String getString(ByteBuffer in) {
+        int length = (int) getVarLong(in);
+        if (in.hasArray()) {
+            String value = new String(in.array(), in.arrayOffset() + in.position(), length, StandardCharsets.UTF_8);
+            in.position(in.position() + length);
+            return value;
+        }
+        byte[] bytes = new byte[length];
+        in.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * 确保缓冲区至少还有 n 字节剩余空间，不足时按倍数扩容
+     * @param out 输出缓冲区（写模式）
+     * @param n 需要的字节数
+     * @return 原缓冲区或扩容后的新缓冲区
+     */
+    public static ByteBuffer ensureRemaining(ByteBuffer out, int n) {
+        if (out.remaining() >= n) {
+            return out;
+        }
+        int capacity = Math.max(out.capacity() * 2, out.position() + n);
+        ByteBuffer grown = out.isDirect() ? ByteBuffer.allocateDirect(capacity) : ByteBuffer.allocate(capacity);
+        out.flip();
+        grown.put(out);
+        return grown;
+    }
+}
@@ -1,146 +1,813 @@
 package top.thesumst.command;
 
-import java.util.Stack;
+import top.thesumst.engine.TextBuffer;
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.function.Consumer;
 
 /**
  * CommandHistory - 命令历史管理器
- * 使用两个栈实现撤销/重做功能
+ * 以撤销树保存历史：每个节点代表执行某条命令后的状态，
+ * 撤销回到父节点，重做进入最近访问的子节点；执行新命令会新建分支而不是丢弃旧分支，
+ * 因此可以通过 jumpTo 跳转到任意历史状态
+ * 持有缓冲区时每隔固定深度保存一次检查点（共享行块的快照），
+ * 远距离跳转从最近的检查点恢复，只需重放有限条命令；
+ * 检查点按分支稀疏化：每个分支最近的保持密集，更早的每 SPARSE_CHECKPOINT_STRIDE 个间隔保留一个，
+ * 因此任意状态（包括离开重做方向的分支）的恢复都不超过 SPARSE_CHECKPOINT_STRIDE 个间隔的重放
  * 支持命令执行事件的回调通知
+ * 可挂接 HistoryJournal，使撤销历史在重启编辑器后仍然可用
  */
 public class CommandHistory {
-    
-    private final Stack<Command> undoStack; // 撤销栈
-    private final Stack<Command> redoStack; // 重做栈
-    
+
+    /** 默认检查点间隔（命令条数） */
+    public static final int DEFAULT_CHECKPOINT_INTERVAL = 64;
+
+    /** 稀疏检查点的跨度（间隔数）：每个分支最近这么多个间隔内的检查点全部保留，更早的每这么多个间隔保留一个 */
+    static final int SPARSE_CHECKPOINT_STRIDE = 8;
+
+    private final TextBuffer buffer;          // 检查点所需的缓冲区（可为 null，此时不创建检查点）
+    private final int checkpointInterval;     // 检查点间隔
+    private final List<Node> nodes;           // 所有节点，下标即节点编号
+    private Node root;                        // 根节点（初始状态）
+    private Node current;                     // 当前状态所在节点
+    private Node savePoint;                   // 最近一次保存时所在的节点（未保存过为 null）
+    private TextBuffer.Snapshot lastSnapshot; // 最近创建的快照，作为下一次快照的共享基准
+    private int checkpointCount;              // 保留的检查点数（不含根节点与从日志恢复的起点）
+
+    // 撤销日志（可选）
+    private HistoryJournal journal;
+    private TextBuffer journalBuffer;         // 从日志还原命令时使用的缓冲区
+    private final Map<Long, Node> loaded;     // 从日志载入的节点（按偏移），同一记录只载入一次
+    private long baselineChecksum;            // 日志从根节点开始记录时根节点内容的校验和
+    private boolean baselinePending;          // 尚未在日志中把根节点内容记为保存点
+
     // 事件回调
     private Consumer<Command> onExecute;
     private Consumer<Command> onUndo;
     private Consumer<Command> onRedo;
-    
+    private Consumer<List<Command>> onBulkUndo; // 批量撤销（一次移动多步时只通知一次）
+    private Consumer<List<Command>> onBulkRedo; // 批量重做
+
     /**
-     * 构造函数
+     * 构造函数（不带缓冲区，不创建检查点）
      */
     public CommandHistory() {
-        this.undoStack = new Stack<>();
-        this.redoStack = new Stack<>();
+        this(null);
+    }
+
+    /**
+     * 构造函数
+     * @param buffer 命令作用的文本缓冲区，用于创建检查点
+     */
+    public CommandHistory(TextBuffer buffer) {
+        this(buffer, DEFAULT_CHECKPOINT_INTERVAL);
+    }
+
+    /**
+     * 构造函数
+     * @param buffer 命令作用的文本缓冲区，用于创建检查点
+     * @param checkpointInterval 检查点间隔（每执行多少条命令保存一次快照）
+     * @throws IllegalArgumentException 如果间隔小于 1
+     */
+    public CommandHistory(TextBuffer buffer, int checkpointInterval) {
+        if (checkpointInterval < 1) {
+            throw new IllegalArgumentException("检查点间隔必须大于 0: " + checkpointInterval);
+        }
+        this.buffer = buffer;
+        this.checkpointInterval = checkpointInterval;
+        this.nodes = new ArrayList<>();
+        this.loaded = new HashMap<>();
+        this.root = newNode(null, null, 0);
+        this.current = root;
     }
-    
+
     /**
      * 执行并记录新命令
-     * 执行新命令时会清空重做栈
+     * 新命令成为当前节点的子节点；之前的重做分支保留在树中，但不再是重做目标
      * @param command 要执行的命令
      */
     public void push(Command command) {
+        // 根节点的状态在第一次离开时才确定（加载文件内容发生在历史创建之后）
+        if (current == root && root.checkpoint == null) {
+            root.checkpoint = takeSnapshot();
+        }
+
         // 执行命令
         command.execute();
-        
-        // 将命令压入撤销栈
-        undoStack.push(command);
-        
-        // 清空重做栈（执行新命令后，之前的重做历史失效）
-        redoStack.clear();
-        
+
+        // 作为当前节点的新子节点；父节点已有子节点时开启新分支，否则延续父节点所在的分支
+        Node parent = current;
+        Node node = newNode(parent, command, parent.depth + 1);
+        if (parent.children.isEmpty()) {
+            node.branch = parent.branch;
+        }
+        parent.addChild(node);
+        parent.redoChild = node;
+        current = node;
+        node.offset = journalAppend(command, parent.offset, node.depth);
+        compactJournalIfNeeded();
+        journalMoved();
+
+        if (node.depth % checkpointInterval == 0) {
+            node.checkpoint = takeSnapshot();
+            addCheckpoint(node);
+        }
+
         // 触发回调
         if (onExecute != null) {
             onExecute.accept(command);
         }
     }
-    
+
     /**
      * 撤销最近的一次操作
      * @return 是否成功撤销
      */
     public boolean undo() {
-        if (undoStack.isEmpty()) {
+        Node parent = parentOf(current);
+        if (parent == null) {
             return false;
         }
-        
-        // 从撤销栈弹出命令
-        Command command = undoStack.pop();
-        
+
+        Node node = current;
+
         // 执行撤销操作
-        command.undo();
-        
-        // 将命令压入重做栈
-        redoStack.push(command);
-        
+        node.command.undo();
+
+        // 回到父节点，并记住重做方向
+        parent.redoChild = node;
+        current = parent;
+        journalMoved();
+
         // 触发回调
         if (onUndo != null) {
-            onUndo.accept(command);
+            onUndo.accept(node.command);
         }
-        
+
         return true;
     }
-    
+
     /**
      * 重做最近被撤销的操作
      * @return 是否成功重做
      */
     public boolean redo() {
-        if (redoStack.isEmpty()) {
+        Node next = current.redoChild;
+        if (next == null) {
             return false;
         }
-        
-        // 从重做栈弹出命令
-        Command command = redoStack.pop();
-        
+
         // 重新执行命令
-        command.execute();
-        
-        // 将命令压入撤销栈
-        undoStack.push(command);
-        
+        next.command.execute();
+        current = next;
+        journalMoved();
+
         // 触发回调
         if (onRedo != null) {
-            onRedo.accept(command);
+            onRedo.accept(next.command);
+        }
+
+        return true;
+    }
+
+    /**
+     * 连续撤销多步
+     * 步数超过检查点间隔时从检查点恢复并只重放剩余命令，而不是逐条撤销
+     * @param steps 要撤销的步数
+     * @return 实际撤销的步数（历史不足时小于 steps）
+     */
+    public int undo(int steps) {
+        Node target = current;
+        int moved = 0;
+        while (moved < steps) {
+            Node parent = parentOf(target);
+            if (parent == null) {
+                break;
+            }
+            target = parent;
+            moved++;
+        }
+        if (moved > 0) {
+            moveTo(target);
+        }
+        return moved;
+    }
+
+    /**
+     * 沿重做方向连续重做多步
+     * @param steps 要重做的步数
+     * @return 实际重做的步数（可重做的命令不足时小于 steps）
+     */
+    public int redo(int steps) {
+        Node target = current;
+        int moved = 0;
+        while (moved < steps && target.redoChild != null) {
+            target = target.redoChild;
+            moved++;
+        }
+        if (moved > 0) {
+            moveTo(target);
+        }
+        return moved;
+    }
+
+    /**
+     * 回到最近一次保存时的状态（可能需要撤销、重做或跨分支）
+     * @return 是否成功；从未保存过时返回 false
+     */
+    public boolean undoToSavePoint() {
+        if (savePoint == null) {
+            return false;
+        }
+        return moveTo(savePoint);
+    }
+
+    /**
+     * 将当前状态记为保存点（文件加载或保存后调用）
+     */
+    public void markSavePoint() {
+        savePoint = current;
+    }
+
+    /**
+     * 检查当前是否处于保存点
+     * @return true 如果当前状态与最近一次保存时相同
+     */
+    public boolean isAtSavePoint() {
+        return savePoint == current;
+    }
+
+    /**
+     * 检查是否记录过保存点
+     * @return true 如果有保存点
+     */
+    public boolean hasSavePoint() {
+        return savePoint != null;
+    }
+
+    /**
+     * 获取检查点间隔
+     * @return 检查点间隔
+     */
+    public int getCheckpointInterval() {
+        return checkpointInterval;
+    }
+
+    /**
+     * 跳转到任意节点对应的状态（可跨分支）
+     * 逐步撤销/重做的距离超过检查点间隔时，从目标节点最近的带检查点祖先恢复，
+     * 再重放剩余命令，代价不超过一个检查点间隔的命令数
+     * 被撤销和重做的命令仍会逐条触发回调
+     * @param nodeId 目标节点编号
+     * @return 是否成功跳转
+     * @throws IllegalArgumentException 如果节点编号不存在
+     */
+    public boolean jumpTo(int nodeId) {
+        if (nodeId < 0 || nodeId >= nodes.size()) {
+            throw new IllegalArgumentException("历史节点不存在: " + nodeId);
+        }
+        return moveTo(nodes.get(nodeId));
+    }
+
+    /**
+     * 移动到目标节点：选择逐条撤销/重做或从检查点恢复中代价更低的方式
+     * @return 是否成功移动
+     */
+    private boolean moveTo(Node target) {
+        if (target == current) {
+            return true;
+        }
+
+        Node ancestor = commonAncestor(current, target);
+        if (ancestor == null) {
+            return false;
+        }
+
+        // 需要撤销的命令（从当前节点向上）与需要重做的命令（从公共祖先向下）
+        List<Node> undoPath = new ArrayList<>();
+        for (Node n = current; n != ancestor; n = n.parent) {
+            undoPath.add(n);
+        }
+        List<Node> redoPath = new ArrayList<>();
+        for (Node n = target; n != ancestor; n = n.parent) {
+            redoPath.add(n);
+        }
+        Collections.reverse(redoPath);
+
+        Node checkpointNode = nearestCheckpoint(target);
+        int stepCost = undoPath.size() + redoPath.size();
+        if (buffer != null && checkpointNode != null
+                && stepCost > checkpointInterval
+                && target.depth - checkpointNode.depth < stepCost) {
+            // 从检查点恢复，再重放到目标节点
+            buffer.restore(checkpointNode.checkpoint);
+            List<Node> replay = new ArrayList<>();
+            for (Node n = target; n != checkpointNode; n = n.parent) {
+                replay.add(n);
+            }
+            for (int i = replay.size() - 1; i >= 0; i--) {
+                replay.get(i).command.execute();
+            }
+        } else {
+            for (Node n : undoPath) {
+                n.command.undo();
+            }
+            for (Node n : redoPath) {
+                n.command.execute();
+            }
+        }
+
+        // 更新重做方向：与逐条撤销/重做的效果一致
+        for (Node n : undoPath) {
+            n.parent.redoChild = n;
+        }
+        for (Node n : redoPath) {
+            n.parent.redoChild = n;
         }
-        
+        current = target;
+        journalMoved();
+
+        // 触发回调：多步移动时每个方向只通知一次
+        fireMoved(undoPath, onUndo, onBulkUndo);
+        fireMoved(redoPath, onRedo, onBulkRedo);
         return true;
     }
-    
+
+    private void fireMoved(List<Node> path, Consumer<Command> single, Consumer<List<Command>> bulk) {
+        if (path.isEmpty()) {
+            return;
+        }
+        if (bulk != null && path.size() > 1) {
+            List<Command> commands = new ArrayList<>(path.size());
+            for (Node n : path) {
+                commands.add(n.command);
+            }
+            bulk.accept(commands);
+        } else if (single != null) {
+            for (Node n : path) {
+                single.accept(n.command);
+            }
+        }
+    }
+
     /**
      * 检查是否可以撤销
-     * @return 如果撤销栈不为空则返回 true
+     * @return 如果当前不在根节点则返回 true
      */
     public boolean canUndo() {
-        return !undoStack.isEmpty();
+        return current != root && !current.truncated;
     }
-    
+
     /**
      * 检查是否可以重做
-     * @return 如果重做栈不为空则返回 true
+     * @return 如果当前节点有重做目标则返回 true
      */
     public boolean canRedo() {
-        return !redoStack.isEmpty();
+        return current.redoChild != null;
     }
-    
+
     /**
      * 清空所有历史记录
      */
     public void clear() {
-        undoStack.clear();
-        redoStack.clear();
+        nodes.clear();
+        loaded.clear();
+        checkpointCount = 0;
+        lastSnapshot = null;
+        savePoint = null;
+        root = newNode(null, null, 0);
+        current = root;
     }
-    
+
     /**
      * 获取撤销栈的大小（用于测试）
-     * @return 撤销栈中命令的数量
+     * @return 从根节点到当前节点的命令数量
      */
     public int getUndoStackSize() {
-        return undoStack.size();
+        return current.depth;
     }
-    
+
     /**
      * 获取重做栈的大小（用于测试）
-     * @return 重做栈中命令的数量
+     * @return 沿重做方向可以重做的命令数量
      */
     public int getRedoStackSize() {
-        return redoStack.size();
+        int size = 0;
+        for (Node n = current.redoChild; n != null; n = n.redoChild) {
+            size++;
+        }
+        return size;
     }
-    
+
+    // ===== 撤销树查询 =====
+
+    /**
+     * 获取当前节点编号
+     * @return 节点编号（根节点为 0）
+     */
+    public int getCurrentNodeId() {
+        return current.id;
+    }
+
+    /**
+     * 获取树中的节点数量（含根节点）
+     * @return 节点数量
+     */
+    public int getNodeCount() {
+        return nodes.size();
+    }
+
+    /**
+     * 获取节点的父节点编号
+     * @param nodeId 节点编号
+     * @return 父节点编号，根节点或父节点尚未从日志载入时返回 -1
+     */
+    public int getParentId(int nodeId) {
+        Node parent = nodes.get(nodeId).parent;
+        return parent != null ? parent.id : -1;
+    }
+
+    /**
+     * 获取节点对应的命令
+     * @param nodeId 节点编号
+     * @return 命令，根节点返回 null
+     */
+    public Command getCommand(int nodeId) {
+        return nodes.get(nodeId).command;
+    }
+
+    /**
+     * 获取节点的子节点编号（按创建顺序）
+     * @param nodeId 节点编号
+     * @return 子节点编号列表
+     */
+    public List<Integer> getChildIds(int nodeId) {
+        List<Integer> ids = new ArrayList<>();
+        for (Node child : nodes.get(nodeId).children) {
+            ids.add(child.id);
+        }
+        return ids;
+    }
+
+    // ===== 撤销日志 =====
+
+    /**
+     * 挂接撤销日志
+     * 如果日志中最近的保存点与当前缓冲区内容一致，则恢复保存点所在的历史节点
+     * （只解码栈顶命令，更早的命令在撤销时才从日志中解码）；否则清空过期的日志，
+     * 之后第一次写入时先把当前内容记为根节点处的保存点，下次重启据此判断日志是否仍然有效
+     * @param journal 撤销日志
+     * @param buffer 命令作用的文本缓冲区
+     * @param contentChecksum 当前缓冲区内容的校验和
+     * @throws IOException 如果读取或清空日志失败
+     */
+    public void attachJournal(HistoryJournal journal, TextBuffer buffer, long contentChecksum) throws IOException {
+        this.journal = journal;
+        this.journalBuffer = buffer;
+
+        HistoryJournal.SavePoint saved = journal.getLastSavePoint();
+        if (saved != null && saved.getChecksum() == contentChecksum && current == root && nodes.size() == 1) {
+            if (saved.getTopOffset() != 0) {
+                Node restored = loadNode(saved.getTopOffset());
+                restored.checkpoint = takeSnapshot();
+                current = restored;
+                savePoint = restored;
+            }
+        } else {
+            journal.reset();
+            baselineChecksum = contentChecksum;
+            baselinePending = current == root && nodes.size() == 1;
+        }
+    }
+
+    /**
+     * 恢复上次会话未保存的内容（挂接日志之后、添加观察者之前调用）
+     * 日志记录的当前节点内容与之相同时跳转到该节点，上次会话的编辑仍可逐条撤销；
+     * 否则作为一步可撤销的编辑换成该内容，之后的重启会跳转到这一步而不是再追加一步
+     * @param content 未保存的内容
+     * @throws IllegalStateException 如果构造时没有传入缓冲区
+     */
+    public void restoreContent(List<String> content) {
+        if (buffer == null) {
+            throw new IllegalStateException("没有可恢复内容的缓冲区");
+        }
+        if (content.equals(buffer.getLines())) {
+            return;
+        }
+        Node start = current;
+        if (journal != null && journal.getLastSavePoint() != null) {
+            Node last = null;
+            try {
+                long offset = journal.getCurrentOffset();
+                last = offset == 0 ? root : loadNode(offset);
+            } catch (IOException | RuntimeException e) {
+                System.err.println("读取撤销日志失败: " + e.getMessage());
+            }
+            if (last != null && last != start && moveTo(last)) {
+                if (content.equals(buffer.getLines())) {
+                    return;
+                }
+                moveTo(start);
+            }
+        }
+        push(new ReplaceContentCommand(buffer, content));
+    }
+
+    /**
+     * 解除并关闭撤销日志
+     */
+    public void detachJournal() {
+        if (journal == null) {
+            return;
+        }
+        try {
+            journal.close();
+        } catch (IOException e) {
+            System.err.println("关闭撤销日志失败: " + e.getMessage());
+        }
+        journal = null;
+        journalBuffer = null;
+    }
+
+    /**
+     * 获取挂接的撤销日志
+     * @return 撤销日志，未挂接时返回 null
+     */
+    public HistoryJournal getJournal() {
+        return journal;
+    }
+
+    /**
+     * 记录保存点（文件保存后调用），重启后从该位置恢复撤销历史
+     * @param contentChecksum 保存内容的校验和
+     */
+    public void markSaved(long contentChecksum) {
+        if (journal == null) {
+            return;
+        }
+        if (current != root && current.offset == 0) {
+            // 当前节点没有写入日志（例如日志中途挂接），保存点无法定位
+            return;
+        }
+        try {
+            journal.markSave(current.offset, current.depth, contentChecksum);
+        } catch (IOException e) {
+            journalFailed(e);
+            return;
+        }
+        baselinePending = false;
+        compactJournalIfNeeded();
+    }
+
+    /**
+     * 日志过大时压实：只保留当前节点与保存点回溯到根的记录，并更新各节点记住的偏移
+     * 被丢弃的分支上的节点不再有日志位置；父节点尚未载入且已被丢弃的节点不能再向上撤销
+     */
+    private void compactJournalIfNeeded() {
+        if (journal == null || !journal.needsCompaction()) {
+            return;
+        }
+        Map<Long, Long> moved;
+        try {
+            moved = journal.compact(current.offset, savePoint != null ? savePoint.offset : 0);
+        } catch (IOException e) {
+            journalFailed(e);
+            return;
+        }
+        Map<Long, Node> survivors = new HashMap<>();
+        for (Map.Entry<Long, Node> entry : loaded.entrySet()) {
+            Long offset = moved.get(entry.getKey());
+            if (offset != null) {
+                survivors.put(offset, entry.getValue());
+            }
+        }
+        loaded.clear();
+        loaded.putAll(survivors);
+        for (Node node : nodes) {
+            if (node.offset != 0) {
+                node.offset = moved.getOrDefault(node.offset, 0L);
+            }
+            if (node.parent == null && node.parentOffset != 0) {
+                Long parentOffset = moved.get(node.parentOffset);
+                if (parentOffset != null) {
+                    node.parentOffset = parentOffset;
+                } else {
+                    node.truncated = true;
+                }
+            }
+        }
+        journalMoved(); // 压实后的日志头部不再记得当前位置
+    }
+
+    private long journalAppend(Command command, long parentOffset, int depth) {
+        if (journal == null || (parentOffset == 0 && depth > 1)) {
+            return 0;
+        }
+        if (!CommandCodec.supports(command)) {
+            // 无法持久化的命令会打断历史链，后续记录不再可靠
+            detachJournal();
+            return 0;
+        }
+        try {
+            if (baselinePending) {
+                journal.markSave(0, 0, baselineChecksum);
+                baselinePending = false;
+            }
+            return journal.append(command, parentOffset, depth);
+        } catch (IOException e) {
+            journalFailed(e);
+            return 0;
+        }
+    }
+
+    /**
+     * 在日志头部记录当前历史位置；当前节点没有写入日志时保留上一次的记录
+     */
+    private void journalMoved() {
+        if (journal == null || (current != root && current.offset == 0)) {
+            return;
+        }
+        try {
+            journal.markCurrent(current.offset);
+        } catch (IOException e) {
+            journalFailed(e);
+        }
+    }
+
+    private void journalFailed(IOException e) {
+        System.err.println("无法写入撤销日志: " + e.getMessage());
+        detachJournal();
+    }
+
+    // ===== 内部实现 =====
+
+    private Node newNode(Node parent, Command command, int depth) {
+        Node node = new Node(nodes.size(), parent, command, depth);
+        nodes.add(node);
+        return node;
+    }
+
+    private TextBuffer.Snapshot takeSnapshot() {
+        if (buffer == null) {
+            return null;
+        }
+        lastSnapshot = buffer.snapshot(lastSnapshot);
+        return lastSnapshot;
+    }
+
+    /**
+     * 获取当前保留的检查点数量（不含根节点，用于测试）
+     * @return 检查点数量
+     */
+    int getCheckpointCount() {
+        return checkpointCount;
+    }
+
+    /**
+     * 获取恢复某个状态时需要重放的命令数（从最近的检查点算起，用于测试）
+     * @param nodeId 节点编号
+     * @return 重放命令数，路径上没有检查点时返回 -1
+     */
+    int getReplayDistance(int nodeId) {
+        Node node = nodes.get(nodeId);
+        Node checkpointNode = nearestCheckpoint(node);
+        return checkpointNode == null ? -1 : node.depth - checkpointNode.depth;
+    }
+
+    /**
+     * 登记新建的检查点并稀疏化所在分支：同一分支上落后最新检查点 SPARSE_CHECKPOINT_STRIDE 个间隔
+     * 且不在跨度倍数处的检查点被丢弃；其他分支的检查点不受影响
+     */
+    private void addCheckpoint(Node node) {
+        checkpointCount++;
+        Node branch = node.branch;
+        if (branch.recentCheckpoints == null) {
+            branch.recentCheckpoints = new ArrayDeque<>();
+        }
+        ArrayDeque<Node> recent = branch.recentCheckpoints;
+        int index = node.depth / checkpointInterval;
+        while (!recent.isEmpty()
+                && index - recent.peekFirst().depth / checkpointInterval >= SPARSE_CHECKPOINT_STRIDE) {
+            recent.pollFirst().checkpoint = null;
+            checkpointCount--;
+        }
+        if (index % SPARSE_CHECKPOINT_STRIDE != 0) {
+            recent.addLast(node);
+        }
+    }
+
+    /**
+     * 从日志载入一个节点（其父节点延迟载入），同一条记录总是对应同一个节点
+     */
+    private Node loadNode(long offset) throws IOException {
+        Node known = loaded.get(offset);
+        if (known != null) {
+            return known;
+        }
+        HistoryJournal.Entry entry = journal.read(offset, journalBuffer);
+        Node node = newNode(null, entry.getCommand(), entry.getDepth());
+        node.offset = offset;
+        node.parentOffset = entry.getParentOffset();
+        loaded.put(offset, node);
+        return node;
+    }
+
+    /**
+     * 获取父节点，必要时从日志中载入
+     * @return 父节点，根节点或无法载入时返回 null
+     */
+    private Node parentOf(Node node) {
+        if (node == root || node.truncated) {
+            return null;
+        }
+        if (node.parent == null) {
+            try {
+                Node parent = node.parentOffset == 0 ? root : loadNode(node.parentOffset);
+                parent.addChild(node);
+                node.parent = parent;
+            } catch (IOException | RuntimeException e) {
+                System.err.println("读取撤销日志失败: " + e.getMessage());
+                node.truncated = true;
+                return null;
+            }
+        }
+        return node.parent;
+    }
+
+    private Node commonAncestor(Node a, Node b) {
+        while (a.depth > b.depth) {
+            a = parentOf(a);
+            if (a == null) {
+                return null;
+            }
+        }
+        while (b.depth > a.depth) {
+            b = parentOf(b);
+            if (b == null) {
+                return null;
+            }
+        }
+        while (a != b) {
+            a = parentOf(a);
+            b = parentOf(b);
+            if (a == null || b == null) {
+                return null;
+            }
+        }
+        return a;
+    }
+
+    private Node nearestCheckpoint(Node node) {
+        for (Node n = node; n != null; n = n.parent) {
+            if (n.checkpoint != null) {
+                return n;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * 撤销树节点：执行 command 之后的状态
+     */
+    private static final class Node {
+        private final int id;
+        private final Command command;       // 根节点为 null
+        private final int depth;             // 从根节点到此节点的命令数
+        private Node parent;                 // 从日志恢复的节点可能延迟载入
+        private long parentOffset;           // 父节点在日志中的偏移（延迟载入时使用）
+        private long offset;                 // 在撤销日志中的偏移（0 表示未持久化）
+        private List<Node> children;         // 子节点（分支），按创建顺序
+        private Node redoChild;              // 重做方向
+        private TextBuffer.Snapshot checkpoint; // 此状态的检查点（可为 null）
+        private Node branch;                 // 所在分支的第一个节点（分支内节点成一条链）
+        private ArrayDeque<Node> recentCheckpoints; // 分支第一个节点上：本分支中尚未稀疏化的检查点
+        private boolean truncated;           // 父节点无法从日志载入
+
+        Node(int id, Node parent, Command command, int depth) {
+            this.id = id;
+            this.parent = parent;
+            this.command = command;
+            this.depth = depth;
+            this.branch = this;
+            this.children = Collections.emptyList();
+        }
+
+        void addChild(Node child) {
+            if (children.isEmpty()) {
+                children = new ArrayList<>(2);
+            }
+            children.add(child);
+        }
+    }
+
     // ===== 事件回调设置 =====
-    
+
     /**
      * 设置命令执行回调
      * @param callback 回调函数
@@ -148,7 +815,7 @@ public class CommandHistory {
     public void setOnExecute(Consumer<Command> callback) {
         this.onExecute = callback;
     }
-    
+
     /**
      * 设置命令撤销回调
      * @param callback 回调函数
@@ -156,7 +823,7 @@ public class CommandHistory {
     public void setOnUndo(Consumer<Command> callback) {
         this.onUndo = callback;
     }
-    
+
     /**
      * 设置命令重做回调
      * @param callback 回调函数
@@ -164,4 +831,20 @@ public class CommandHistory {
     public void setOnRedo(Consumer<Command> callback) {
         this.onRedo = callback;
     }
+
+    /**
+     * 设置批量撤销回调（一次撤销多步时代替逐条的撤销回调）
+     * @param callback 回调函数，参数为按撤销顺序排列的命令
+     */
+    public void setOnBulkUndo(Consumer<List<Command>> callback) {
+        this.onBulkUndo = callback;
+    }
+
+    /**
+     * 设置批量重做回调（一次重做多步时代替逐条的重做回调）
+     * @param callback 回调函数，参数为按重做顺序排列的命令
+     */
+    public void setOnBulkRedo(Consumer<List<Command>> callback) {
+        this.onBulkRedo = callback;
+    }
 }
@@ -63,12 +63,40 @@ public class DeleteCommand implements Command {
         }
     }
     
+    int getLine() {
+        return line;
+    }
+
+    int getCol() {
+        return col;
+    }
+
+    int getLength() {
+        return length;
+    }
+
+    /**
+     * 还原已执行命令的被删除文本（从持久化记录恢复时使用）
+     */
+    void setDeletedText(String deletedText) {
+        this.deletedText = deletedText;
+    }
+
     /**
      * 获取命令描述（用于日志）
      */
+    @Override
+    public void describeTo(StringBuilder out) {
+        out.append("DeleteCommand(line=").append(line)
+           .append(", col=").append(col)
+           .append(", length=").append(length).append(')');
+    }
+    
     @Override
     public String toString() {
-        return String.format("DeleteCommand(line=%d, col=%d, length=%d)", line, col, length);
+        StringBuilder sb = new StringBuilder(48);
+        describeTo(sb);
+        return sb.toString();
     }
     
     /**
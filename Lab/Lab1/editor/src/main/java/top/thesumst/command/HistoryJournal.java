@@ -0,0 +1,488 @@
+package top.thesumst.command;
+
+import top.thesumst.engine.TextBuffer;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * HistoryJournal - 撤销历史日志
+ * 将命令历史以追加方式写入源文件旁的 .filename.history 二进制文件，
+ * 重新打开时只映射文件并读取最后一个保存点，命令在真正撤销时才按需解码，
+ * 因此启动时无需重放整个日志
+ *
+ * 文件格式：
+ * 头部 24 字节：magic(4) version(4) lastSaveOffset(8) currentOffset(8)
+ * 记录：type(1) bodyLength(varint) body
+ *   COMMAND 记录体：parentOffset(varint) depth(varint) 命令编码（见 CommandCodec）
+ *   SAVE 记录体：topOffset(varint) depth(varint) checksum(8)
+ * parentOffset 为 0 表示没有上一条命令（偏移总是大于头部长度）
+ * currentOffset 是最近一次历史位置所在命令记录的偏移（0 表示位于最早状态），
+ * 随每次执行、撤销、重做原地更新，重启后用来恢复上次会话未保存时所处的节点
+ *
+ * 日志只追加，放弃的分支也会留在文件中；文件超过阈值且比上次压实后增长一倍时，
+ * 由 CommandHistory 调用 compact 只保留当前节点与保存点回溯到根的记录
+ */
+public class HistoryJournal implements Closeable {
+
+    private static final int MAGIC = 0x45444A31; // "EDJ1"
+    private static final int VERSION = 2;
+    private static final int HEADER_SIZE = 24;
+    private static final int LAST_SAVE_SLOT = 8;
+    private static final int CURRENT_SLOT = 16;
+
+    private static final byte TYPE_COMMAND = 1;
+    private static final byte TYPE_SAVE = 2;
+
+    /** 默认压实阈值（字节） */
+    public static final long DEFAULT_COMPACT_THRESHOLD = 1L << 20;
+
+    private final Path journalPath;
+    private FileChannel channel;          // 首次写入时才创建文件
+    private MappedByteBuffer mapped;      // 打开时已有内容的只读映射
+    private long size;                    // 文件长度，即下一条记录的偏移
+    private SavePoint lastSave;           // 最近一次保存点
+    private long currentOffset;           // 头部记录的当前历史位置
+    private ByteBuffer scratch;           // 复用的编码缓冲区
+    private long compactThreshold = DEFAULT_COMPACT_THRESHOLD;
+    private long compactedSize;           // 上次压实后的文件长度
+
+    /**
+     * 构造函数，若日志文件已存在则映射其内容
+     * @param sourceFilePath 源文件路径
+     * @throws IOException 如果日志文件读取失败
+     */
+    public HistoryJournal(String sourceFilePath) throws IOException {
+        this.journalPath = journalPathFor(sourceFilePath);
+        this.scratch = ByteBuffer.allocate(256);
+        this.size = 0;
+        if (Files.exists(journalPath)) {
+            open();
+        }
+    }
+
+    /**
+     * 根据源文件路径生成撤销日志路径（同目录下的 .filename.history）
+     * @param sourceFilePath 源文件路径
+     * @return 日志文件路径
+     */
+    public static Path journalPathFor(String sourceFilePath) {
+        Path sourcePath = Paths.get(sourceFilePath);
+        String journalName = "." + sourcePath.getFileName().toString() + ".history";
+        Path parent = sourcePath.getParent();
+        return parent != null ? parent.resolve(journalName) : Paths.get(journalName);
+    }
+
+    /**
+     * 获取日志文件路径
+     * @return 日志文件路径
+     */
+    public Path getJournalPath() {
+        return journalPath;
+    }
+
+    /**
+     * 获取最近一次保存点
+     * @return 保存点，如果日志中没有则返回 null
+     */
+    public SavePoint getLastSavePoint() {
+        return lastSave;
+    }
+
+    /**
+     * 获取上次记录的当前历史位置
+     * @return 命令记录的偏移，0 表示位于最早状态或没有记录
+     */
+    public long getCurrentOffset() {
+        return currentOffset;
+    }
+
+    /**
+     * 记录当前历史位置（只改写头部槽位，不追加记录，也不强制刷盘）
+     * @param offset 当前所在命令记录的偏移，0 表示位于最早状态
+     * @throws IOException 如果写入失败
+     */
+    public void markCurrent(long offset) throws IOException {
+        if (offset == currentOffset) {
+            return;
+        }
+        ensureOpen();
+        ByteBuffer slot = ByteBuffer.allocate(Long.BYTES).putLong(0, offset);
+        channel.write(slot, CURRENT_SLOT);
+        currentOffset = offset;
+    }
+
+    /**
+     * 追加一条已执行命令的记录
+     * @param command 已执行的命令
+     * @param parentOffset 执行前撤销栈顶记录的偏移（0 表示栈为空）
+     * @param depth 执行后撤销栈的深度
+     * @return 新记录的偏移
+     * @throws IOException 如果写入失败
+     */
+    public long append(Command command, long parentOffset, int depth) throws IOException {
+        ByteBuffer body = scratch.clear();
+        body = CommandCodec.putVarLong(body, parentOffset);
+        body = CommandCodec.putVarLong(body, depth);
+        body = CommandCodec.encode(command, body);
+        scratch = body;
+        return writeRecord(TYPE_COMMAND, body);
+    }
+
+    /**
+     * 记录保存点：保存后的文件内容对应 topOffset 所在的历史位置
+     * @param topOffset 撤销栈顶记录的偏移（0 表示栈为空）
+     * @param depth 撤销栈深度
+     * @param checksum 保存内容的校验和
+     * @throws IOException 如果写入失败
+     */
+    public void markSave(long topOffset, int depth, long checksum) throws IOException {
+        ByteBuffer body = scratch.clear();
+        body = CommandCodec.putVarLong(body, topOffset);
+        body = CommandCodec.putVarLong(body, depth);
+        body = CommandCodec.ensureRemaining(body, Long.BYTES);
+        body.putLong(checksum);
+        scratch = body;
+        long offset = writeRecord(TYPE_SAVE, body);
+
+        // 头部槽位指向最新保存点，重新打开时 O(1) 定位
+        ByteBuffer slot = ByteBuffer.allocate(Long.BYTES).putLong(0, offset);
+        channel.write(slot, LAST_SAVE_SLOT);
+        channel.force(false);
+        lastSave = new SavePoint(topOffset, depth, checksum);
+    }
+
+    /**
+     * 设置压实阈值
+     * @param bytes 文件超过此长度（且比上次压实后增长一倍）时压实
+     */
+    public void setCompactThreshold(long bytes) {
+        this.compactThreshold = bytes;
+    }
+
+    /**
+     * 获取日志文件当前长度
+     * @return 字节数
+     */
+    public long size() {
+        return size;
+    }
+
+    /**
+     * 检查是否需要压实
+     * @return true 如果文件超过阈值且比上次压实后增长了一倍
+     */
+    public boolean needsCompaction() {
+        return size > Math.max(compactThreshold, 2 * compactedSize);
+    }
+
+    /**
+     * 压实日志：只保留从给定节点和最近保存点回溯到根的命令记录，其余记录（放弃的分支）丢弃
+     * 先写入临时文件再替换日志，之后的偏移以返回的映射为准；当前历史位置需由调用方重新记录
+     * @param tips 要保留的节点在日志中的偏移，0 表示忽略
+     * @return 保留的记录的旧偏移到新偏移的映射
+     * @throws IOException 如果读写失败或记录损坏
+     */
+    public Map<Long, Long> compact(long... tips) throws IOException {
+        // 沿父偏移回溯，收集需要保留的记录（父记录总在子记录之前写入）
+        TreeMap<Long, Kept> kept = new TreeMap<>();
+        SavePoint save = lastSave;
+        long[] starts = Arrays.copyOf(tips, tips.length + 1);
+        starts[tips.length] = save != null ? save.getTopOffset() : 0;
+        for (long offset : starts) {
+            while (offset != 0 && !kept.containsKey(offset)) {
+                Kept record = readKept(offset);
+                kept.put(offset, record);
+                offset = record.parentOffset;
+            }
+        }
+
+        // 按原顺序写入临时文件，重写父偏移
+        close();
+        Path temp = journalPath.resolveSibling(journalPath.getFileName() + ".tmp");
+        channel = FileChannel.open(temp, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                                   StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+        writeHeader();
+        Map<Long, Long> moved = new HashMap<>();
+        for (Map.Entry<Long, Kept> entry : kept.entrySet()) {
+            Kept record = entry.getValue();
+            ByteBuffer body = scratch.clear();
+            body = CommandCodec.putVarLong(body, record.parentOffset == 0 ? 0 : moved.get(record.parentOffset));
+            body = CommandCodec.putVarLong(body, record.depth);
+            body = CommandCodec.ensureRemaining(body, record.command.length);
+            body.put(record.command);
+            scratch = body;
+            moved.put(entry.getKey(), writeRecord(TYPE_COMMAND, body));
+        }
+        if (save != null) {
+            long top = save.getTopOffset() == 0 ? 0 : moved.get(save.getTopOffset());
+            markSave(top, save.getDepth(), save.getChecksum());
+        }
+        channel.close();
+        channel = null;
+        Files.move(temp, journalPath, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        open();
+        compactedSize = size;
+        return moved;
+    }
+
+    private Kept readKept(long offset) throws IOException {
+        try {
+            ByteBuffer record = recordAt(offset);
+            if (record.get() != TYPE_COMMAND) {
+                throw new IOException("撤销日志损坏: 偏移 " + offset + " 处不是命令记录");
+            }
+            int bodyLength = (int) CommandCodec.getVarLong(record);
+            int bodyStart = record.position();
+            long parentOffset = CommandCodec.getVarLong(record);
+            int depth = (int) CommandCodec.getVarLong(record);
+            byte[] command = new byte[bodyLength - (record.position() - bodyStart)];
+            record.get(command);
+            return new Kept(parentOffset, depth, command);
+        } catch (RuntimeException e) {
+            throw new IOException("撤销日志损坏: 偏移 " + offset, e);
+        }
+    }
+
+    /**
+     * 读取指定偏移处的命令记录
+     * @param offset 记录偏移
+     * @param buffer 命令作用的文本缓冲区
+     * @return 命令记录
+     * @throws IOException 如果读取失败或记录损坏
+     */
+    public Entry read(long offset, TextBuffer buffer) throws IOException {
+        ByteBuffer record = recordAt(offset);
+        if (record.get() != TYPE_COMMAND) {
+            throw new IOException("撤销日志损坏: 偏移 " + offset + " 处不是命令记录");
+        }
+        CommandCodec.getVarLong(record); // 记录体长度
+        long parentOffset = CommandCodec.getVarLong(record);
+        int depth = (int) CommandCodec.getVarLong(record);
+        Command command = CommandCodec.decode(record, buffer);
+        return new Entry(command, parentOffset, depth);
+    }
+
+    /**
+     * 清空日志（历史与磁盘内容不再匹配时调用）
+     * @throws IOException 如果写入失败
+     */
+    public void reset() throws IOException {
+        mapped = null;
+        lastSave = null;
+        currentOffset = 0;
+        if (channel != null) {
+            channel.truncate(0);
+            writeHeader();
+        } else if (Files.exists(journalPath)) {
+            Files.delete(journalPath);
+            size = 0;
+        }
+    }
+
+    /**
+     * 关闭日志文件
+     * @throws IOException 如果关闭失败
+     */
+    @Override
+    public void close() throws IOException {
+        mapped = null;
+        if (channel != null) {
+            channel.close();
+            channel = null;
+        }
+    }
+
+    // ===== 内部实现 =====
+
+    private void open() throws IOException {
+        channel = FileChannel.open(journalPath, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        size = channel.size();
+        if (size < HEADER_SIZE) {
+            channel.truncate(0);
+            writeHeader();
+            return;
+        }
+
+        mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+        if (mapped.getInt(0) != MAGIC || mapped.getInt(4) != VERSION) {
+            System.err.println("撤销日志格式不兼容，已重置: " + journalPath);
+            reset();
+            return;
+        }
+
+        long current = mapped.getLong(CURRENT_SLOT);
+        currentOffset = current >= HEADER_SIZE && current < size ? current : 0;
+
+        long saveOffset = mapped.getLong(LAST_SAVE_SLOT);
+        if (saveOffset >= HEADER_SIZE && saveOffset < size) {
+            try {
+                ByteBuffer record = recordAt(saveOffset);
+                if (record.get() == TYPE_SAVE) {
+                    CommandCodec.getVarLong(record);
+                    long topOffset = CommandCodec.getVarLong(record);
+                    int depth = (int) CommandCodec.getVarLong(record);
+                    lastSave = new SavePoint(topOffset, depth, record.getLong());
+                }
+            } catch (RuntimeException e) {
+                lastSave = null; // 保存点损坏，视为没有可恢复的历史
+            }
+        }
+    }
+
+    private void ensureOpen() throws IOException {
+        if (channel == null) {
+            Path parent = journalPath.getParent();
+            if (parent != null && !Files.exists(parent)) {
+                Files.createDirectories(parent);
+            }
+            channel = FileChannel.open(journalPath, StandardOpenOption.CREATE,
+                                       StandardOpenOption.READ, StandardOpenOption.WRITE);
+            size = channel.size();
+            if (size < HEADER_SIZE) {
+                channel.truncate(0);
+                writeHeader();
+            }
+        }
+    }
+
+    private void writeHeader() throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+        header.putInt(MAGIC).putInt(VERSION).putLong(0L).putLong(0L).flip();
+        channel.write(header, 0);
+        size = HEADER_SIZE;
+        currentOffset = 0;
+    }
+
+    private long writeRecord(byte type, ByteBuffer body) throws IOException {
+        ensureOpen();
+        body.flip();
+        ByteBuffer prefix = ByteBuffer.allocate(11);
+        prefix.put(type);
+        prefix = CommandCodec.putVarLong(prefix, body.remaining());
+        prefix.flip();
+
+        long offset = size;
+        long position = offset;
+        while (prefix.hasRemaining()) {
+            position += channel.write(prefix, position);
+        }
+        while (body.hasRemaining()) {
+            position += channel.write(body, position);
+        }
+        size = position;
+        return offset;
+    }
+
+    /**
+     * 返回从记录起点开始的只读视图：打开时已存在的记录直接读映射区，
+     * 本次会话追加的记录通过定位读取
+     */
+    private ByteBuffer recordAt(long offset) throws IOException {
+        if (offset < HEADER_SIZE || offset >= size) {
+            throw new IOException("撤销日志偏移越界: " + offset);
+        }
+        if (mapped != null && offset < mapped.capacity()) {
+            return mapped.duplicate().position((int) offset);
+        }
+        ByteBuffer head = ByteBuffer.allocate((int) Math.min(11, size - offset));
+        readFully(head, offset);
+        head.flip();
+        head.get();
+        int bodyLength = (int) CommandCodec.getVarLong(head);
+        ByteBuffer record = ByteBuffer.allocate(head.position() + bodyLength);
+        readFully(record, offset);
+        return record.flip();
+    }
+
+    private void readFully(ByteBuffer target, long position) throws IOException {
+        while (target.hasRemaining()) {
+            int read = channel.read(target, position);
+            if (read < 0) {
+                throw new IOException("撤销日志意外结束: " + journalPath);
+            }
+            position += read;
+        }
+    }
+
+    /**
+     * 压实时保留的命令记录（命令编码原样复制）
+     */
+    private static final class Kept {
+        final long parentOffset;
+        final int depth;
+        final byte[] command;
+
+        Kept(long parentOffset, int depth, byte[] command) {
+            this.parentOffset = parentOffset;
+            this.depth = depth;
+            this.command = command;
+        }
+    }
+
+    /**
+     * 保存点信息
+     */
+    public static final class SavePoint {
+        private final long topOffset;
+        private final int depth;
+        private final long checksum;
+
+        SavePoint(long topOffset, int depth, long checksum) {
+            this.topOffset = topOffset;
+            this.depth = depth;
+            this.checksum = checksum;
+        }
+
+        public long getTopOffset() {
+            return topOffset;
+        }
+
+        public int getDepth() {
+            return depth;
+        }
+
+        public long getChecksum() {
+            return checksum;
+        }
+    }
+
+    /**
+     * 命令记录
+     */
+    public static final class Entry {
+        private final Command command;
+        private final long parentOffset;
+        private final int depth;
+
+        Entry(Command command, long parentOffset, int depth) {
+            this.command = command;
+            this.parentOffset = parentOffset;
+            this.depth = depth;
+        }
+
+        public Command getCommand() {
+            return command;
+        }
+
+        public long getParentOffset() {
+            return parentOffset;
+        }
+
+        public int getDepth() {
+            return depth;
+        }
+    }
+}
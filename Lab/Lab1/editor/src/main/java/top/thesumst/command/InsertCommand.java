@@ -33,7 +33,13 @@ public class InsertCommand implements Command {
     @Override
     public void execute() {
         buffer.insert(line, col, text);
-        
+        markExecuted();
+    }
+    
+    /**
+     * 记录已执行状态（从持久化记录还原时也需调用，以便撤销）
+     */
+    void markExecuted() {
         // 计算插入后的长度（用于撤销时删除）
         // 如果没有换行符，直接用文本长度
         if (!text.contains("\n")) {
@@ -80,11 +86,32 @@ public class InsertCommand implements Command {
         }
     }
     
+    int getLine() {
+        return line;
+    }
+
+    int getCol() {
+        return col;
+    }
+
+    String getText() {
+        return text;
+    }
+
     /**
      * 获取命令描述（用于日志）
      */
+    @Override
+    public void describeTo(StringBuilder out) {
+        out.append("InsertCommand(line=").append(line)
+           .append(", col=").append(col)
+           .append(", text=\"").append(text).append("\")");
+    }
+    
     @Override
     public String toString() {
-        return String.format("InsertCommand(line=%d, col=%d, text=\"%s\")", line, col, text);
+        StringBuilder sb = new StringBuilder(48);
+        describeTo(sb);
+        return sb.toString();
     }
 }
@@ -0,0 +1,79 @@
+package top.thesumst.command;
+
+import top.thesumst.engine.TextBuffer;
+
+import java.util.List;
+
+/**
+ * ReplaceContentCommand - 整体替换缓冲区内容命令
+ * 执行：记录当前的全部行，再换成新内容（恢复上次会话未保存的内容时使用）
+ * 撤销：换回原来的全部行
+ */
+public class ReplaceContentCommand implements Command {
+
+    private final TextBuffer buffer;
+    private final List<String> newLines;
+    private List<String> oldLines;      // 执行时记录，用于撤销
+
+    /**
+     * 构造函数
+     * @param buffer 文本缓冲区
+     * @param lines  新内容的各行
+     */
+    public ReplaceContentCommand(TextBuffer buffer, List<String> lines) {
+        this.buffer = buffer;
+        this.newLines = List.copyOf(lines);
+    }
+
+    /**
+     * 从持久化记录还原命令时使用，视为已执行
+     * @param buffer   文本缓冲区
+     * @param oldLines 执行前的各行
+     * @param newLines 执行后的各行
+     */
+    ReplaceContentCommand(TextBuffer buffer, List<String> oldLines, List<String> newLines) {
+        this.buffer = buffer;
+        this.oldLines = List.copyOf(oldLines);
+        this.newLines = List.copyOf(newLines);
+    }
+
+    @Override
+    public void execute() {
+        oldLines = buffer.getLines();
+        replaceWith(newLines);
+    }
+
+    @Override
+    public void undo() {
+        if (oldLines == null) {
+            return; // 尚未执行
+        }
+        replaceWith(oldLines);
+    }
+
+    private void replaceWith(List<String> lines) {
+        buffer.removeLastLines(buffer.getSize());
+        buffer.appendAll(lines);
+    }
+
+    List<String> getOldLines() {
+        return oldLines != null ? oldLines : List.of();
+    }
+
+    List<String> getNewLines() {
+        return newLines;
+    }
+
+    @Override
+    public void describeTo(StringBuilder out) {
+        out.append("ReplaceContentCommand(lines=").append(getOldLines().size())
+           .append("->").append(newLines.size()).append(')');
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder(48);
+        describeTo(sb);
+        return sb.toString();
+    }
+}
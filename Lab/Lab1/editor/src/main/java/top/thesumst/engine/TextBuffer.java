@@ -1,7 +1,9 @@
 package top.thesumst.engine;
 
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.zip.CRC32;
 
 /**
  * TextBuffer - 核心文本缓冲区
@@ -46,6 +48,14 @@ public class TextBuffer {
         lines.add(text);
     }
 
+    /**
+     * 在文本末尾一次追加多行（批量回放时使用，只扩容一次）
+     * @param texts 要追加的行
+     */
+    public void appendAll(List<String> texts) {
+        lines.addAll(texts);
+    }
+
     /**
      * 删除末尾的若干行（用于撤销 append 操作）
      * @param count 要删除的行数，必须 >=0 且 <= 当前行数
@@ -174,6 +184,140 @@ public class TextBuffer {
         return String.join("\n", lines);
     }
 
+    /**
+     * 计算内容校验和（按保存到磁盘时的格式：每行 UTF-8 编码后跟系统换行符）
+     * @return CRC32 校验和
+     */
+    public long checksum() {
+        CRC32 crc = new CRC32();
+        byte[] separator = System.lineSeparator().getBytes(StandardCharsets.UTF_8);
+        for (String line : lines) {
+            crc.update(line.getBytes(StandardCharsets.UTF_8));
+            crc.update(separator);
+        }
+        return crc.getValue();
+    }
+
+    /**
+     * 创建当前内容的快照
+     * @return 快照
+     */
+    public Snapshot snapshot() {
+        return snapshot(null);
+    }
+
+    /**
+     * 创建当前内容的快照，与基准快照共享未变化的行块（结构共享）
+     * 行字符串本身不可变，快照只复制引用；与基准快照逐块比较引用，
+     * 完全相同的块直接复用，因此连续检查点的额外内存只与变化的块数量有关
+     * @param base 基准快照（可为 null）
+     * @return 快照
+     */
+    public Snapshot snapshot(Snapshot base) {
+        int size = lines.size();
+        int chunkCount = (size + Snapshot.CHUNK_SIZE - 1) / Snapshot.CHUNK_SIZE;
+        String[][] chunks = new String[chunkCount][];
+        for (int c = 0; c < chunkCount; c++) {
+            int from = c * Snapshot.CHUNK_SIZE;
+            int to = Math.min(size, from + Snapshot.CHUNK_SIZE);
+            String[] shared = (base != null && c < base.chunks.length) ? base.chunks[c] : null;
+            if (shared != null && sameLines(shared, from, to)) {
+                chunks[c] = shared;
+            } else {
+                chunks[c] = lines.subList(from, to).toArray(new String[0]);
+            }
+        }
+        return new Snapshot(chunks, size);
+    }
+
+    /**
+     * 将缓冲区内容恢复为快照内容
+     * @param snapshot 快照
+     */
+    public void restore(Snapshot snapshot) {
+        List<String> restored = new ArrayList<>(Math.max(snapshot.size, 16));
+        for (String[] chunk : snapshot.chunks) {
+            for (String line : chunk) {
+                restored.add(line);
+            }
+        }
+        this.lines = restored;
+    }
+
+    private boolean sameLines(String[] chunk, int from, int to) {
+        if (chunk.length != to - from) {
+            return false;
+        }
+        for (int i = 0; i < chunk.length; i++) {
+            if (chunk[i] != lines.get(from + i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Snapshot - 缓冲区快照
+     * 按固定大小的行块保存行引用，块可以在多个快照之间共享
+     */
+    public static final class Snapshot {
+        static final int CHUNK_SIZE = 256;
+
+        private final String[][] chunks;
+        private final int size;
+
+        private Snapshot(String[][] chunks, int size) {
+            this.chunks = chunks;
+            this.size = size;
+        }
+
+        /**
+         * 获取快照的行数
+         * @return 行数
+         */
+        public int getSize() {
+            return size;
+        }
+
+        /**
+         * 获取快照中的一行
+         * @param index 行下标（从0开始）
+         * @return 行内容
+         */
+        public String getLine(int index) {
+            return chunks[index / CHUNK_SIZE][index % CHUNK_SIZE];
+        }
+
+        /**
+         * 检查两个快照是否由完全相同的行块组成
+         * 以前一个快照为基准截取、期间缓冲区未变化时成立，可据此复用基于旧快照计算的结果
+         * @param other 另一个快照
+         * @return true 如果所有行块都共享
+         */
+        public boolean sharesAllChunksWith(Snapshot other) {
+            if (other == null || size != other.size || chunks.length != other.chunks.length) {
+                return false;
+            }
+            for (int i = 0; i < chunks.length; i++) {
+                if (chunks[i] != other.chunks[i]) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        /**
+         * 检查两个快照是否共享同一行块（用于测试）
+         * @param other 另一个快照
+         * @param chunkIndex 块序号
+         * @return true 如果共享
+         */
+        public boolean sharesChunkWith(Snapshot other, int chunkIndex) {
+            return chunkIndex < chunks.length && chunkIndex < other.chunks.length
+                && chunks[chunkIndex] == other.chunks[chunkIndex];
+        }
+    }
+
     /**
      * 获取所有行（用于保存文件等操作）
      * @return 文本行列表的副本
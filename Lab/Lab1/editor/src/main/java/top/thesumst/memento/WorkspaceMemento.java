@@ -1,26 +1,73 @@
 package top.thesumst.memento;
 
+import top.thesumst.engine.TextBuffer;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.zip.CRC32;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.InflaterInputStream;
 
 /**
  * WorkspaceMemento - 工作区状态备忘录
  * 实现备忘录模式，用于保存和恢复工作区状态
+ *
+ * 二进制格式（大端）：
+ * 头部 12 字节：magic(4) version(4) bodyLength(4)
+ * 正文：activePath(字符串) fileCount(4) 每个文件 flags(1) path(字符串) [content]
+ *   字符串为 length(4) + UTF-8 字节，length 为 -1 表示 null；flags 见 FLAG_*，未知位忽略
+ *   content（版本 2，FLAG_CONTENT 置位时）：length(4) + 未保存内容的 Deflate 压缩数据，
+ *   解压后为 lineCount(4) 以及每行的 length(4) + UTF-8 字节，行内的换行等字符原样保留
+ * 尾部：CRC32(4)，覆盖头部与正文
+ * 旧的文本格式（serialize/deserialize）保留用于导入
  */
 public class WorkspaceMemento {
     
+    static final int MAGIC = 0x45445731; // "EDW1"
+    static final int VERSION = 2;
+    static final int MIN_VERSION = 1;        // 版本 1 没有未保存内容
+    static final int HEADER_SIZE = 12;
+    static final int CHECKSUM_SIZE = 4;
+    static final int FLAG_MODIFIED = 1;
+    static final int FLAG_LOGGING = 1 << 1;
+    static final int FLAG_CONTENT = 1 << 2;
+    
     /**
      * 文件状态信息
+     * 已修改的文件可以附带未保存的内容（压缩形式，见 compressContent）
      */
     public static class FileState {
         private final String filePath;
         private final boolean isModified;
         private final boolean loggingEnabled;
+        private final byte[] content;          // 压缩后的未保存内容，没有时为 null
         
         public FileState(String filePath, boolean isModified, boolean loggingEnabled) {
+            this(filePath, isModified, loggingEnabled, null);
+        }
+        
+        /**
+         * 构造函数
+         * @param filePath 文件路径
+         * @param isModified 是否已修改
+         * @param loggingEnabled 是否启用日志
+         * @param content compressContent 得到的未保存内容，可为 null
+         */
+        public FileState(String filePath, boolean isModified, boolean loggingEnabled, byte[] content) {
             this.filePath = filePath;
             this.isModified = isModified;
             this.loggingEnabled = loggingEnabled;
+            this.content = content;
         }
         
         public String getFilePath() {
@@ -34,6 +81,33 @@ public class WorkspaceMemento {
         public boolean isLoggingEnabled() {
             return loggingEnabled;
         }
+
+        /**
+         * 复制一份并修改标志；变为未修改时不再附带未保存的内容
+         * @param modified 是否已修改
+         * @param logging 是否启用日志
+         * @return 新的 FileState
+         */
+        public FileState withFlags(boolean modified, boolean logging) {
+            return new FileState(filePath, modified, logging, modified ? content : null);
+        }
+        
+        /**
+         * 检查是否附带未保存的内容
+         * @return true 如果附带
+         */
+        public boolean hasContent() {
+            return content != null;
+        }
+        
+        /**
+         * 解压附带的未保存内容
+         * @return 各行内容，没有附带时返回 null
+         * @throws IllegalArgumentException 如果压缩数据损坏
+         */
+        public List<String> getContent() {
+            return content != null ? decompressContent(content) : null;
+        }
         
         @Override
         public String toString() {
@@ -72,7 +146,189 @@ public class WorkspaceMemento {
     }
     
     /**
-     * 将备忘录序列化为字符串（简单的文本格式）
+     * 编码为二进制格式，可直接一次写入文件通道
+     * @return 已 flip 的缓冲区
+     */
+    public ByteBuffer toBytes() {
+        byte[] active = activeFilePath != null ? activeFilePath.getBytes(StandardCharsets.UTF_8) : null;
+        byte[][] paths = new byte[fileStates.size()][];
+        int bodyLength = stringSize(active) + 4;
+        for (int i = 0; i < paths.length; i++) {
+            FileState state = fileStates.get(i);
+            paths[i] = state.getFilePath().getBytes(StandardCharsets.UTF_8);
+            bodyLength += 1 + stringSize(paths[i]) + (state.content != null ? 4 + state.content.length : 0);
+        }
+        
+        ByteBuffer buffer = ByteBuffer.allocate(HEADER_SIZE + bodyLength + CHECKSUM_SIZE);
+        buffer.putInt(MAGIC).putInt(VERSION).putInt(bodyLength);
+        putString(buffer, active);
+        buffer.putInt(paths.length);
+        for (int i = 0; i < paths.length; i++) {
+            FileState state = fileStates.get(i);
+            int flags = (state.isModified() ? FLAG_MODIFIED : 0) | (state.isLoggingEnabled() ? FLAG_LOGGING : 0)
+                      | (state.content != null ? FLAG_CONTENT : 0);
+            buffer.put((byte) flags);
+            putString(buffer, paths[i]);
+            if (state.content != null) {
+                buffer.putInt(state.content.length).put(state.content);
+            }
+        }
+        CRC32 crc = new CRC32();
+        crc.update(buffer.array(), 0, buffer.position());
+        buffer.putInt((int) crc.getValue());
+        return buffer.flip();
+    }
+    
+    /**
+     * 检查数据是否为二进制格式（以 magic 开头）
+     * @param data 数据，不改变其位置
+     * @return true 如果是二进制格式
+     */
+    public static boolean isBinary(ByteBuffer data) {
+        return data.remaining() >= 4 && data.getInt(data.position()) == MAGIC;
+    }
+    
+    /**
+     * 从二进制格式解码
+     * @param data 数据（从当前位置开始）
+     * @return WorkspaceMemento 实例
+     * @throws IllegalArgumentException 如果格式、版本或校验和不正确
+     */
+    public static WorkspaceMemento fromBytes(ByteBuffer data) {
+        ByteBuffer buffer = data.slice();
+        if (buffer.remaining() < HEADER_SIZE + CHECKSUM_SIZE || buffer.getInt() != MAGIC) {
+            throw new IllegalArgumentException("不是工作区状态文件");
+        }
+        int version = buffer.getInt();
+        if (version < MIN_VERSION || version > VERSION) {
+            throw new IllegalArgumentException("不支持的工作区状态版本: " + version);
+        }
+        int bodyLength = buffer.getInt();
+        if (bodyLength < 0 || bodyLength > buffer.remaining() - CHECKSUM_SIZE) {
+            throw new IllegalArgumentException("工作区状态文件不完整");
+        }
+        int end = HEADER_SIZE + bodyLength;
+        CRC32 crc = new CRC32();
+        crc.update(buffer.duplicate().position(0).limit(end));
+        if (buffer.getInt(end) != (int) crc.getValue()) {
+            throw new IllegalArgumentException("工作区状态校验和不匹配");
+        }
+        
+        buffer.limit(end);
+        try {
+            String activeFilePath = getString(buffer);
+            int count = buffer.getInt();
+            if (count < 0) {
+                throw new IllegalArgumentException("工作区状态文件损坏");
+            }
+            List<FileState> fileStates = new ArrayList<>(Math.min(count, buffer.remaining() / 5));
+            for (int i = 0; i < count; i++) {
+                int flags = buffer.get();
+                String path = getString(buffer);
+                byte[] content = null;
+                if (version >= 2 && (flags & FLAG_CONTENT) != 0) {
+                    int length = buffer.getInt();
+                    if (length < 0 || length > buffer.remaining()) {
+                        throw new IllegalArgumentException("工作区状态文件损坏");
+                    }
+                    content = new byte[length];
+                    buffer.get(content);
+                }
+                fileStates.add(new FileState(path, (flags & FLAG_MODIFIED) != 0, (flags & FLAG_LOGGING) != 0,
+                                             content));
+            }
+            return new WorkspaceMemento(fileStates, activeFilePath);
+        } catch (BufferUnderflowException e) {
+            throw new IllegalArgumentException("工作区状态文件损坏", e);
+        }
+    }
+    
+    /**
+     * 压缩缓冲区内容，作为 FileState 附带的未保存内容
+     * 快照不可变，可以在截取快照的线程之外调用
+     * @param snapshot 内容快照
+     * @return 压缩数据
+     */
+    public static byte[] compressContent(TextBuffer.Snapshot snapshot) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+                new DeflaterOutputStream(bytes), 64 * 1024))) {
+            int size = snapshot.getSize();
+            out.writeInt(size);
+            for (int i = 0; i < size; i++) {
+                byte[] line = snapshot.getLine(i).getBytes(StandardCharsets.UTF_8);
+                out.writeInt(line.length);
+                out.write(line);
+            }
+        } catch (IOException e) {
+            throw new IllegalStateException(e); // 写入内存不会失败
+        }
+        return bytes.toByteArray();
+    }
+    
+    /**
+     * 解压 compressContent 得到的数据
+     * @param content 压缩数据
+     * @return 各行内容
+     * @throws IllegalArgumentException 如果数据损坏
+     */
+    public static List<String> decompressContent(byte[] content) {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(
+                new InflaterInputStream(new ByteArrayInputStream(content)), 64 * 1024))) {
+            int size = in.readInt();
+            if (size < 0) {
+                throw new IllegalArgumentException("未保存内容已损坏");
+            }
+            List<String> lines = new ArrayList<>(Math.min(size, 1 << 16));
+            for (int i = 0; i < size; i++) {
+                int length = in.readInt();
+                if (length < 0) {
+                    throw new IllegalArgumentException("未保存内容已损坏");
+                }
+                byte[] line = new byte[length];
+                in.readFully(line);
+                lines.add(new String(line, StandardCharsets.UTF_8));
+            }
+            return lines;
+        } catch (IOException e) {
+            throw new IllegalArgumentException("未保存内容已损坏", e);
+        }
+    }
+    
+    private static int stringSize(byte[] bytes) {
+        return 4 + (bytes != null ? bytes.length : 0);
+    }
+    
+    private static void putString(ByteBuffer buffer, byte[] bytes) {
+        if (bytes == null) {
+            buffer.putInt(-1);
+            return;
+        }
+        buffer.putInt(bytes.length).put(bytes);
+    }
+    
+    private static String getString(ByteBuffer buffer) {
+        int length = buffer.getInt();
+        if (length < 0) {
+            return null;
+        }
+        if (length > buffer.remaining()) {
+            throw new IllegalArgumentException("工作区状态文件损坏");
+        }
+        String value;
+        if (buffer.hasArray()) {
+            value = new String(buffer.array(), buffer.arrayOffset() + buffer.position(), length, StandardCharsets.UTF_8);
+        } else {
+            byte[] bytes = new byte[length];
+            buffer.get(buffer.position(), bytes);
+            value = new String(bytes, StandardCharsets.UTF_8);
+        }
+        buffer.position(buffer.position() + length);
+        return value;
+    }
+    
+    /**
+     * 将备忘录序列化为字符串（旧的文本格式，路径中含 | 或换行时无法正确读回）
      * 格式：
      * ACTIVE:<path>
      * FILE:<path>|<modified>|<logging>
@@ -99,7 +355,7 @@ public class WorkspaceMemento {
     }
     
     /**
-     * 从字符串反序列化备忘录
+     * 从字符串反序列化备忘录（导入旧的文本格式状态文件）
      * @param data 序列化的字符串
      * @return WorkspaceMemento 实例
      */
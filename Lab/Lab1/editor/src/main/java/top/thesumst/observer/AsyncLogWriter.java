@@ -0,0 +1,294 @@
+package top.thesumst.observer;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * AsyncLogWriter - 异步日志写入器
+ * 编辑线程把格式化好的日志文本放入有界环形缓冲区，
+ * 后台线程按批次取出并通过常驻的 FileChannel 追加写入，避免每个事件都打开/关闭文件
+ * 每次最多取出一批（批大小条）：积压较多时分多次写入，每次写入前都检查轮转，段大小不会因积压超出太多
+ * 环形缓冲区的槽位是预先分配的 StringBuilder，入队只复制字符，稳定状态下不产生新对象
+ */
+final class AsyncLogWriter implements Closeable {
+
+    private final Path logPath;
+    private final LogFlushPolicy policy;
+    private final TextLogIndex index;
+    private final LogRotator rotator;
+    private final StringBuilder[] ring;
+    private int head;                 // 最早一条待写入事件的下标
+    private int count;                // 待写入事件数
+    private long enqueued;            // 累计入队事件数
+    private long written;             // 累计已写入事件数
+    private long dropped;             // DROP 模式下丢弃的事件数
+    private boolean flushRequested;
+    private boolean closed;
+    private boolean started;          // 后台线程已开始等待事件
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition notEmpty = lock.newCondition();
+    private final Condition notFull = lock.newCondition();
+    private final Condition progress = lock.newCondition();
+
+    private final Thread worker;
+    private FileChannel channel;      // 以下字段仅由后台线程访问
+    private final CharsetEncoder encoder = StandardCharsets.UTF_8.newEncoder();
+    private final ByteBuffer bytes = ByteBuffer.allocateDirect(64 * 1024);
+
+    AsyncLogWriter(String logFilePath, LogFlushPolicy policy, TextLogIndex index, LogRotator rotator) {
+        this.logPath = Paths.get(logFilePath);
+        this.policy = policy;
+        this.index = index;
+        this.rotator = rotator;
+        this.ring = new StringBuilder[policy.getCapacity()];
+        for (int i = 0; i < ring.length; i++) {
+            ring[i] = new StringBuilder(128);
+        }
+        this.worker = new Thread(this::drainLoop, "file-logger-" + logPath.getFileName());
+        this.worker.setDaemon(true);
+        this.worker.start();
+        // FileLogger 在第一条事件到来时才创建写入器：等写线程就绪再入队，
+        // 首批事件与预先启动写线程时一样按批大小陆续写出，而不是堆积成一大批
+        lock.lock();
+        try {
+            while (!started) {
+                progress.awaitUninterruptibly();
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * 放入一条日志文本
+     * @param entry 日志文本（含换行），调用返回后即可复用
+     * @return true 如果已入队；DROP 模式下缓冲区满或写入器已关闭时返回 false
+     */
+    boolean offer(CharSequence entry) {
+        lock.lock();
+        try {
+            while (count == ring.length && !closed) {
+                if (policy.getBackpressure() == LogFlushPolicy.Backpressure.DROP) {
+                    dropped++;
+                    return false;
+                }
+                notFull.awaitUninterruptibly();
+            }
+            if (closed) {
+                return false;
+            }
+            StringBuilder slot = ring[(head + count) % ring.length];
+            slot.setLength(0);
+            slot.append(entry);
+            count++;
+            enqueued++;
+            if (count == 1 || count >= policy.getBatchSize()) {
+                notEmpty.signal(); // 首条事件开始计时，满一批立即写入
+            }
+            return true;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * 立即写入当前缓冲的所有事件，并等待写入完成
+     */
+    void flush() {
+        lock.lock();
+        try {
+            long target = enqueued;
+            while (written < target && worker.isAlive()) {
+                flushRequested = true;
+                notEmpty.signal();
+                progress.awaitUninterruptibly();
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * 获取因缓冲区已满而丢弃的事件数
+     * @return 丢弃数
+     */
+    long getDroppedCount() {
+        lock.lock();
+        try {
+            return dropped;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * 关闭写入器：按策略写完或丢弃剩余事件，然后关闭文件
+     */
+    @Override
+    public void close() {
+        lock.lock();
+        try {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            if (!policy.isDrainOnClose()) {
+                count = 0;
+            }
+            notEmpty.signal();
+            notFull.signalAll();
+        } finally {
+            lock.unlock();
+        }
+        try {
+            worker.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    // ===== 后台线程 =====
+
+    private void drainLoop() {
+        StringBuilder text = new StringBuilder(4096);
+        while (true) {
+            int n;
+            lock.lock();
+            try {
+                if (!started) {
+                    started = true;
+                    progress.signalAll(); // 构造线程在 awaitBatch 释放锁后才能继续
+                }
+                n = awaitBatch();
+                if (n < 0) {
+                    break;
+                }
+                text.setLength(0);
+                for (int i = 0; i < n; i++) {
+                    text.append(ring[head]);
+                    head = (head + 1) % ring.length;
+                }
+                count -= n;
+                if (count == 0) {
+                    flushRequested = false; // 未取完时继续立即写下一批
+                }
+                notFull.signalAll();
+            } finally {
+                lock.unlock();
+            }
+
+            write(text);
+
+            lock.lock();
+            try {
+                written += n;
+                progress.signalAll();
+            } finally {
+                lock.unlock();
+            }
+        }
+        closeChannel();
+        lock.lock();
+        try {
+            progress.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * 等待直到凑满一批、首条事件等待超过刷写间隔、收到 flush 请求或关闭
+     * @return 本批要取出的事件数（不超过批大小），-1 表示应退出
+     */
+    private int awaitBatch() {
+        long intervalNanos = TimeUnit.MILLISECONDS.toNanos(policy.getFlushIntervalMillis());
+        long deadline = 0;
+        while (!closed && !flushRequested && count < policy.getBatchSize()) {
+            if (count == 0) {
+                notEmpty.awaitUninterruptibly();
+                deadline = 0;
+                continue;
+            }
+            if (deadline == 0) {
+                deadline = System.nanoTime() + intervalNanos;
+            }
+            long remaining = deadline - System.nanoTime();
+            if (remaining <= 0) {
+                break;
+            }
+            try {
+                notEmpty.awaitNanos(remaining);
+            } catch (InterruptedException e) {
+                break;
+            }
+        }
+        if (count == 0) {
+            return closed ? -1 : 0;
+        }
+        return Math.min(count, policy.getBatchSize());
+    }
+
+    private void write(StringBuilder text) {
+        if (text.length() == 0) {
+            return;
+        }
+        try {
+            openChannel();
+            if (rotator.shouldRotate(channel.size(), System.currentTimeMillis())) {
+                closeChannel();
+                rotator.rotate(System.currentTimeMillis());
+                openChannel();
+            }
+            index.record(channel.size(), text); // 每批以完整记录开头
+            // 分段编码到复用的直接缓冲区，避免为每批分配字节数组
+            CharBuffer chars = CharBuffer.wrap(text);
+            encoder.reset();
+            CoderResult result;
+            do {
+                bytes.clear();
+                result = encoder.encode(chars, bytes, true);
+                if (!result.isOverflow()) {
+                    encoder.flush(bytes);
+                }
+                bytes.flip();
+                while (bytes.hasRemaining()) {
+                    channel.write(bytes);
+                }
+            } while (result.isOverflow());
+        } catch (IOException e) {
+            System.err.println("无法写入日志文件: " + e.getMessage());
+            closeChannel(); // 下一批重新打开
+        }
+    }
+
+    private void openChannel() throws IOException {
+        if (channel == null) {
+            channel = FileChannel.open(logPath, StandardOpenOption.CREATE,
+                                       StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+        }
+    }
+
+    private void closeChannel() {
+        if (channel != null) {
+            try {
+                channel.close();
+            } catch (IOException e) {
+                System.err.println("关闭日志文件失败: " + e.getMessage());
+            }
+            channel = null;
+        }
+    }
+}
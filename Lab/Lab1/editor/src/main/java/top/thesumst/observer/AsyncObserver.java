@@ -0,0 +1,264 @@
+package top.thesumst.observer;
+
+import top.thesumst.command.Command;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * AsyncObserver - 异步分发的观察者包装
+ * 编辑线程只把事件放入该观察者自己的无界队列，由虚拟线程按顺序逐个投递给被包装的观察者，
+ * 慢观察者不再增加编辑延迟，同一观察者收到事件的顺序与产生顺序一致
+ * 队列空时不占用线程：有新事件时才启动一个虚拟线程把队列排空
+ * 被包装的观察者按批接收事件时，一次排空取出的所有事件合并为一批投递
+ */
+public final class AsyncObserver implements EditorObserver {
+
+    private final EditorObserver delegate;
+    private final Queue<List<EditorEvent>> queue = new ConcurrentLinkedQueue<>(); // 每项为一次通知的事件
+    private final AtomicBoolean draining = new AtomicBoolean();
+    private final AtomicInteger depth = new AtomicInteger();
+    private final AtomicInteger peakDepth = new AtomicInteger();
+    private final AtomicLong submitted = new AtomicLong();
+    private final AtomicLong delivered = new AtomicLong();
+    private final AtomicInteger waiters = new AtomicInteger();
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition idle = lock.newCondition();
+    private volatile boolean closed;
+
+    /**
+     * 构造函数
+     * @param delegate 被包装的观察者
+     */
+    public AsyncObserver(EditorObserver delegate) {
+        this.delegate = delegate;
+    }
+
+    /**
+     * 获取被包装的观察者
+     * @return 观察者
+     */
+    public EditorObserver getDelegate() {
+        return delegate;
+    }
+
+    /**
+     * 获取当前排队等待投递的事件数（批量撤销/重做按其中的命令数计）
+     * @return 队列深度
+     */
+    public int getQueueDepth() {
+        return depth.get();
+    }
+
+    /**
+     * 获取队列深度的历史峰值
+     * @return 峰值
+     */
+    public int getPeakQueueDepth() {
+        return peakDepth.get();
+    }
+
+    /**
+     * 获取累计放入队列的事件数
+     * @return 事件数
+     */
+    public long getSubmittedCount() {
+        return submitted.get();
+    }
+
+    /**
+     * 获取累计已投递的事件数
+     * @return 事件数
+     */
+    public long getDeliveredCount() {
+        return delivered.get();
+    }
+
+    /**
+     * 等待此前放入队列的事件全部投递完成
+     */
+    public void awaitIdle() {
+        long target = submitted.get();
+        if (delivered.get() >= target) {
+            return;
+        }
+        waiters.incrementAndGet();
+        lock.lock();
+        try {
+            while (delivered.get() < target) {
+                idle.awaitUninterruptibly();
+            }
+        } finally {
+            lock.unlock();
+            waiters.decrementAndGet();
+        }
+    }
+
+    /**
+     * 投递完剩余事件后停用队列，之后的事件在调用线程上直接投递
+     */
+    public void close() {
+        closed = true;
+        awaitIdle();
+    }
+
+    @Override
+    public Dispatch getDispatch() {
+        return Dispatch.ASYNC;
+    }
+
+    @Override
+    public boolean wantsBatches() {
+        return delegate.wantsBatches();
+    }
+
+    @Override
+    public void onEvents(List<EditorEvent> events) {
+        submit(events);
+    }
+
+    @Override
+    public void onCommandExecuted(Command command) {
+        submit(EditorEvent.of(EditorEvent.Type.EXECUTE, List.of(command), System.currentTimeMillis()));
+    }
+
+    @Override
+    public void onCommandUndone(Command command) {
+        submit(EditorEvent.of(EditorEvent.Type.UNDO, List.of(command), System.currentTimeMillis()));
+    }
+
+    @Override
+    public void onCommandRedone(Command command) {
+        submit(EditorEvent.of(EditorEvent.Type.REDO, List.of(command), System.currentTimeMillis()));
+    }
+
+    @Override
+    public void onCommandsUndone(List<Command> commands) {
+        submit(EditorEvent.of(EditorEvent.Type.UNDO, commands, System.currentTimeMillis()));
+    }
+
+    @Override
+    public void onCommandsRedone(List<Command> commands) {
+        submit(EditorEvent.of(EditorEvent.Type.REDO, commands, System.currentTimeMillis()));
+    }
+
+    @Override
+    public String toString() {
+        return "AsyncObserver[" + delegate + ", depth=" + depth.get() + ", peak=" + peakDepth.get()
+            + ", delivered=" + delivered.get() + "]";
+    }
+
+    // ===== 内部实现 =====
+
+    private void submit(List<EditorEvent> events) {
+        if (closed) {
+            awaitIdle();
+            deliver(events);
+            return;
+        }
+        submitted.addAndGet(events.size());
+        queue.add(events);
+        int current = depth.addAndGet(events.size());
+        peakDepth.accumulateAndGet(current, Math::max);
+        if (draining.compareAndSet(false, true)) {
+            startDrainer();
+        }
+    }
+
+    private void startDrainer() {
+        Thread.ofVirtual().name("observer-" + delegate.getClass().getSimpleName()).start(this::drain);
+    }
+
+    /**
+     * 排空队列；同一时刻最多一个线程在排空，保证投递顺序
+     * 观察者抛出 Error 时这批事件仍计为已投递、排空标志照常释放，剩余事件交给新的排空线程，
+     * 等待队列空闲的线程（flushLog、closeAll）不会因此永远阻塞
+     */
+    private void drain() {
+        boolean completed = false;
+        try {
+            drainQueue();
+            completed = true;
+        } finally {
+            if (!completed && !queue.isEmpty() && draining.compareAndSet(false, true)) {
+                startDrainer();
+            }
+        }
+    }
+
+    private void drainQueue() {
+        List<EditorEvent> batch = new ArrayList<>();
+        do {
+            try {
+                List<EditorEvent> events;
+                while ((events = queue.poll()) != null) {
+                    if (delegate.wantsBatches()) {
+                        // 取出当前排队的全部事件合并为一批
+                        batch.clear();
+                        batch.addAll(events);
+                        while ((events = queue.poll()) != null) {
+                            batch.addAll(events);
+                        }
+                        events = List.copyOf(batch);
+                    }
+                    try {
+                        deliver(events);
+                    } finally {
+                        depth.addAndGet(-events.size());
+                        delivered.addAndGet(events.size());
+                        if (waiters.get() > 0) {
+                            signalIdle();
+                        }
+                    }
+                }
+            } finally {
+                draining.set(false);
+            }
+            // 释放标志后若又有新事件且没有其他线程接手，则继续排空
+        } while (!queue.isEmpty() && draining.compareAndSet(false, true));
+    }
+
+    private void deliver(List<EditorEvent> events) {
+        try {
+            if (delegate.wantsBatches()) {
+                delegate.onEvents(events);
+            } else {
+                deliverEach(events);
+            }
+        } catch (RuntimeException e) {
+            System.err.println("观察者处理事件失败: " + e.getMessage());
+        }
+    }
+
+    /**
+     * 逐条回调；来自一次批量撤销/重做的事件（同一类型）仍以批量回调投递
+     */
+    private void deliverEach(List<EditorEvent> events) {
+        EditorEvent.Type type = events.get(0).getType();
+        if (events.size() == 1) {
+            type.deliver(delegate, List.of(events.get(0).getCommand()));
+            return;
+        }
+        List<Command> commands = new ArrayList<>(events.size());
+        for (EditorEvent event : events) {
+            commands.add(event.getCommand());
+        }
+        type.deliver(delegate, commands);
+    }
+
+    private void signalIdle() {
+        lock.lock();
+        try {
+            idle.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+}
@@ -0,0 +1,98 @@
+package top.thesumst.observer;
+
+import top.thesumst.command.Command;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * EditorEvent - 一次命令事件
+ * 供按批接收事件的观察者使用，记录事件类型、命令与事件发生的时间
+ */
+public final class EditorEvent {
+
+    /**
+     * 事件类型
+     */
+    public enum Type {
+        EXECUTE,
+        UNDO,
+        REDO;
+
+        /**
+         * 把一组本类型的命令按逐条回调的方式通知观察者（多条撤销/重做使用批量撤销/重做回调）
+         * @param observer 观察者
+         * @param commands 命令列表
+         */
+        public void deliver(EditorObserver observer, List<Command> commands) {
+            switch (this) {
+                case EXECUTE -> commands.forEach(observer::onCommandExecuted);
+                case UNDO -> {
+                    if (commands.size() == 1) {
+                        observer.onCommandUndone(commands.get(0));
+                    } else {
+                        observer.onCommandsUndone(commands);
+                    }
+                }
+                case REDO -> {
+                    if (commands.size() == 1) {
+                        observer.onCommandRedone(commands.get(0));
+                    } else {
+                        observer.onCommandsRedone(commands);
+                    }
+                }
+            }
+        }
+    }
+
+    private final Type type;
+    private final Command command;
+    private final long timestamp;
+
+    /**
+     * 构造函数
+     * @param type 事件类型
+     * @param command 命令
+     * @param timestamp 事件发生的时间（毫秒）
+     */
+    public EditorEvent(Type type, Command command, long timestamp) {
+        this.type = type;
+        this.command = command;
+        this.timestamp = timestamp;
+    }
+
+    /**
+     * 为同一时刻发生的一组同类事件创建事件列表
+     * @param type 事件类型
+     * @param commands 命令列表
+     * @param timestamp 事件发生的时间
+     * @return 不可变的事件列表
+     */
+    public static List<EditorEvent> of(Type type, List<Command> commands, long timestamp) {
+        if (commands.size() == 1) {
+            return List.of(new EditorEvent(type, commands.get(0), timestamp));
+        }
+        List<EditorEvent> events = new ArrayList<>(commands.size());
+        for (Command command : commands) {
+            events.add(new EditorEvent(type, command, timestamp));
+        }
+        return List.copyOf(events);
+    }
+
+    public Type getType() {
+        return type;
+    }
+
+    public Command getCommand() {
+        return command;
+    }
+
+    public long getTimestamp() {
+        return timestamp;
+    }
+
+    @Override
+    public String toString() {
+        return type + ": " + command;
+    }
+}
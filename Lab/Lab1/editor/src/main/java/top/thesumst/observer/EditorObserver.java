@@ -2,12 +2,31 @@ package top.thesumst.observer;
 
 import top.thesumst.command.Command;
 
+import java.util.List;
+
 /**
  * EditorObserver - 观察者接口
  * 用于监听编辑器事件，实现观察者模式
  */
 public interface EditorObserver {
     
+    /**
+     * 事件分发方式
+     */
+    enum Dispatch {
+        SYNC,   // 在编辑线程上直接回调
+        ASYNC   // 启用异步分发时经由独立队列在虚拟线程上回调
+    }
+    
+    /**
+     * 声明希望的分发方式；只有编辑器启用了异步分发时 ASYNC 才生效
+     * 声明 ASYNC 的观察者会在编辑线程之外被回调，但同一观察者的回调不会并发且保持顺序
+     * @return 分发方式，默认同步
+     */
+    default Dispatch getDispatch() {
+        return Dispatch.SYNC;
+    }
+    
     /**
      * 当命令执行后被调用
      * @param command 已执行的命令
@@ -25,4 +44,51 @@ public interface EditorObserver {
      * @param command 已重做的命令
      */
     void onCommandRedone(Command command);
+    
+    /**
+     * 当一次操作撤销了多条命令后被调用（如 undo N），只通知一次
+     * 默认逐条转发给 onCommandUndone，需要聚合处理的观察者可以覆盖
+     * @param commands 按撤销顺序排列的命令
+     */
+    default void onCommandsUndone(List<Command> commands) {
+        for (Command command : commands) {
+            onCommandUndone(command);
+        }
+    }
+    
+    /**
+     * 当一次操作重做了多条命令后被调用（如 redo N），只通知一次
+     * 默认逐条转发给 onCommandRedone，需要聚合处理的观察者可以覆盖
+     * @param commands 按重做顺序排列的命令
+     */
+    default void onCommandsRedone(List<Command> commands) {
+        for (Command command : commands) {
+            onCommandRedone(command);
+        }
+    }
+    
+    /**
+     * 是否按批接收事件；返回 true 时事件改为通过 onEvents 投递
+     * 一批可能是一次批量撤销/重做、一个事务（EditorInstance.beginBatch/endBatch）内的全部事件，
+     * 或异步分发时一次排空队列取出的全部事件
+     * @return 默认 false，逐条回调
+     */
+    default boolean wantsBatches() {
+        return false;
+    }
+    
+    /**
+     * 按批接收事件（仅 wantsBatches 返回 true 时调用）
+     * 默认逐条转发给单条回调
+     * @param events 按发生顺序排列的事件，不可修改
+     */
+    default void onEvents(List<EditorEvent> events) {
+        for (EditorEvent event : events) {
+            switch (event.getType()) {
+                case EXECUTE -> onCommandExecuted(event.getCommand());
+                case UNDO -> onCommandUndone(event.getCommand());
+                case REDO -> onCommandRedone(event.getCommand());
+            }
+        }
+    }
 }
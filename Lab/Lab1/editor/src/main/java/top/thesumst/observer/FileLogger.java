@@ -3,29 +3,92 @@ package top.thesumst.observer;
 import top.thesumst.command.Command;
 
 import java.io.BufferedWriter;
+import java.io.Closeable;
 import java.io.FileWriter;
 import java.io.IOException;
+import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
-import java.time.LocalDateTime;
-import java.time.format.DateTimeFormatter;
+import java.util.List;
 
 /**
  * FileLogger - 文件日志记录器
  * 实现观察者模式，监听命令执行并记录到日志文件
+ * 默认同步写入；使用异步刷写策略时由后台线程批量写入，用完需调用 close
+ * 后台写线程和轮转器在第一次写日志时才创建，只打开不编辑的文件不启动线程、不扫描历史段
  */
-public class FileLogger implements EditorObserver {
+public class FileLogger implements EditorObserver, Closeable {
     
     private final String logFilePath;
-    private static final DateTimeFormatter TIME_FORMATTER = 
-        DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss");
+    private final LogFlushPolicy policy;
+    private final LogRotationPolicy rotation;
+    private final LogRecordFormatter formatter; // 复用的记录格式化器（观察者回调在编辑线程上）
+    private final TextLogIndex index;           // 稀疏偏移索引，供 log-show 按时间定位
+    private volatile AsyncLogWriter asyncWriter; // 同步模式下始终为 null
+    private volatile LogRotator rotator;
+    private boolean closed;                      // 由 this 保护
     
     /**
      * 构造函数
      * @param sourceFilePath 源文件路径
      */
     public FileLogger(String sourceFilePath) {
+        this(sourceFilePath, LogFlushPolicy.synchronous());
+    }
+    
+    /**
+     * 构造函数
+     * @param sourceFilePath 源文件路径
+     * @param policy 刷写策略
+     */
+    public FileLogger(String sourceFilePath, LogFlushPolicy policy) {
+        this(sourceFilePath, policy, LogRotationPolicy.none());
+    }
+    
+    /**
+     * 构造函数
+     * @param sourceFilePath 源文件路径
+     * @param policy 刷写策略
+     * @param rotation 轮转策略
+     */
+    public FileLogger(String sourceFilePath, LogFlushPolicy policy, LogRotationPolicy rotation) {
         this.logFilePath = generateLogFilePath(sourceFilePath);
+        this.formatter = new LogRecordFormatter();
+        this.index = new TextLogIndex(logFilePath);
+        this.policy = policy;
+        this.rotation = rotation;
+    }
+    
+    /**
+     * 获取轮转器，第一次调用时创建
+     */
+    private LogRotator rotator() {
+        LogRotator current = rotator;
+        if (current == null) {
+            synchronized (this) {
+                current = rotator;
+                if (current == null) {
+                    rotator = current = new LogRotator(Paths.get(logFilePath), rotation);
+                }
+            }
+        }
+        return current;
+    }
+    
+    /**
+     * 获取后台写入器，第一次调用时创建并启动写线程；关闭后返回 null
+     */
+    private AsyncLogWriter asyncWriter() {
+        AsyncLogWriter current = asyncWriter;
+        if (current == null) {
+            synchronized (this) {
+                current = asyncWriter;
+                if (current == null && !closed) {
+                    asyncWriter = current = new AsyncLogWriter(logFilePath, policy, index, rotator());
+                }
+            }
+        }
+        return current;
     }
     
     /**
@@ -55,6 +118,61 @@ public class FileLogger implements EditorObserver {
         return logFilePath;
     }
     
+    /**
+     * 检查是否为异步写入
+     * @return true 如果使用异步刷写策略
+     */
+    public boolean isAsynchronous() {
+        return policy.isAsynchronous();
+    }
+    
+    /**
+     * 等待已记录的事件全部写入文件（同步模式下无操作）
+     */
+    public void flush() {
+        AsyncLogWriter writer = asyncWriter;
+        if (writer != null) {
+            writer.flush();
+        }
+    }
+    
+    /**
+     * 获取因缓冲区已满被丢弃的事件数（仅 DROP 背压模式）
+     * @return 丢弃数
+     */
+    public long getDroppedCount() {
+        AsyncLogWriter writer = asyncWriter;
+        return writer != null ? writer.getDroppedCount() : 0;
+    }
+    
+    /**
+     * 关闭日志记录器，异步模式下按策略写完或丢弃剩余事件，并等待历史段压缩完成
+     */
+    @Override
+    public void close() {
+        AsyncLogWriter writer;
+        LogRotator currentRotator;
+        synchronized (this) {
+            closed = true;
+            writer = asyncWriter;
+            currentRotator = rotator;
+        }
+        if (writer != null) {
+            writer.close();
+        }
+        if (currentRotator != null) {
+            currentRotator.close();
+        }
+    }
+    
+    /**
+     * 写文件较慢（同步策略下每个事件都要打开文件），启用异步分发时不在编辑线程上执行
+     */
+    @Override
+    public Dispatch getDispatch() {
+        return Dispatch.ASYNC;
+    }
+    
     @Override
     public void onCommandExecuted(Command command) {
         logEvent("EXECUTE", command);
@@ -70,19 +188,88 @@ public class FileLogger implements EditorObserver {
         logEvent("REDO", command);
     }
     
+    @Override
+    public void onCommandsUndone(List<Command> commands) {
+        logEvents("UNDO", commands);
+    }
+    
+    @Override
+    public void onCommandsRedone(List<Command> commands) {
+        logEvents("REDO", commands);
+    }
+    
+    /**
+     * 按批接收事件，整批只写入一次
+     */
+    @Override
+    public boolean wantsBatches() {
+        return true;
+    }
+    
+    @Override
+    public void onEvents(List<EditorEvent> events) {
+        if (events.size() == 1) {
+            EditorEvent event = events.get(0);
+            write(formatter.format(event.getTimestamp(), event.getType().name(), event.getCommand()));
+            return;
+        }
+        StringBuilder entries = new StringBuilder(events.size() * 64);
+        for (EditorEvent event : events) {
+            formatter.append(entries, event.getTimestamp(), event.getType().name(), event.getCommand());
+        }
+        write(entries);
+    }
+    
     /**
      * 记录事件到日志文件
      * @param eventType 事件类型
      * @param command 命令对象
      */
     private void logEvent(String eventType, Command command) {
-        String timestamp = LocalDateTime.now().format(TIME_FORMATTER);
-        String commandInfo = command.toString();
-        String logEntry = String.format("[%s] %s: %s%n", timestamp, eventType, commandInfo);
-        
+        write(formatter.format(System.currentTimeMillis(), eventType, command));
+    }
+    
+    /**
+     * 批量记录同类事件：只打开一次日志文件并一次写入
+     * @param eventType 事件类型
+     * @param commands 命令列表
+     */
+    private void logEvents(String eventType, List<Command> commands) {
+        long now = System.currentTimeMillis();
+        StringBuilder entries = new StringBuilder(commands.size() * 64);
+        for (Command command : commands) {
+            formatter.append(entries, now, eventType, command);
+        }
+        write(entries);
+    }
+    
+    /**
+     * 写入日志文本：异步模式下放入环形缓冲区，否则直接追加到文件
+     * @param text 日志文本（调用返回后可复用）
+     */
+    private void write(CharSequence text) {
+        if (policy.isAsynchronous()) {
+            AsyncLogWriter writer = asyncWriter();
+            if (writer != null) {
+                writer.offer(text); // 关闭后的事件与原先一样被丢弃
+            }
+            return;
+        }
+        LogRotator logRotator = rotator();
+        Path logPath = Paths.get(logFilePath);
+        try {
+            long size = Files.exists(logPath) ? Files.size(logPath) : 0;
+            if (logRotator.shouldRotate(size, System.currentTimeMillis())) {
+                logRotator.rotate(System.currentTimeMillis());
+                size = 0;
+            }
+            index.record(size, text);
+        } catch (IOException e) {
+            System.err.println("无法读取日志文件大小: " + e.getMessage());
+        }
         try (BufferedWriter writer = new BufferedWriter(
                 new FileWriter(logFilePath, true))) { // append mode
-            writer.write(logEntry);
+            writer.append(text);
         } catch (IOException e) {
             System.err.println("无法写入日志文件: " + e.getMessage());
         }
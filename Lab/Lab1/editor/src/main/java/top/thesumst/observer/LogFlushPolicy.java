@@ -0,0 +1,151 @@
+package top.thesumst.observer;
+
+/**
+ * LogFlushPolicy - 日志刷写策略
+ * 同步模式下每个事件立即写入文件；异步模式下事件先进入有界环形缓冲区，
+ * 由后台线程按批次（达到批大小或超过刷写间隔）写入
+ * 实例不可变，with 方法返回修改后的副本
+ */
+public final class LogFlushPolicy {
+
+    /**
+     * 缓冲区已满时的背压方式
+     */
+    public enum Backpressure {
+        BLOCK,  // 阻塞编辑线程直到有空位
+        DROP    // 丢弃新事件并计数
+    }
+
+    private static final LogFlushPolicy SYNCHRONOUS =
+        new LogFlushPolicy(false, 0, 0, 0, true, Backpressure.BLOCK);
+
+    private final boolean asynchronous;
+    private final int capacity;
+    private final int batchSize;
+    private final long flushIntervalMillis;
+    private final boolean drainOnClose;
+    private final Backpressure backpressure;
+
+    private LogFlushPolicy(boolean asynchronous, int capacity, int batchSize,
+                           long flushIntervalMillis, boolean drainOnClose, Backpressure backpressure) {
+        this.asynchronous = asynchronous;
+        this.capacity = capacity;
+        this.batchSize = batchSize;
+        this.flushIntervalMillis = flushIntervalMillis;
+        this.drainOnClose = drainOnClose;
+        this.backpressure = backpressure;
+    }
+
+    /**
+     * 同步策略（默认）：每个事件写入后即可在文件中读到
+     * @return 同步策略
+     */
+    public static LogFlushPolicy synchronous() {
+        return SYNCHRONOUS;
+    }
+
+    /**
+     * 异步策略：容量 8192、批大小 512、刷写间隔 200ms、关闭时写完剩余事件、满时阻塞
+     * @return 异步策略
+     */
+    public static LogFlushPolicy asynchronous() {
+        return new LogFlushPolicy(true, 8192, 512, 200, true, Backpressure.BLOCK);
+    }
+
+    /**
+     * 设置环形缓冲区容量
+     * @param capacity 最多缓存的事件数
+     * @return 新策略
+     */
+    public LogFlushPolicy withCapacity(int capacity) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("缓冲区容量必须为正数: " + capacity);
+        }
+        return new LogFlushPolicy(asynchronous, capacity, Math.min(batchSize, capacity),
+                                  flushIntervalMillis, drainOnClose, backpressure);
+    }
+
+    /**
+     * 设置批大小：缓存的事件达到该数量时立即写入
+     * 批大小不能超过缓冲区容量，否则缓冲区满时凑不满一批，写线程要等满刷写间隔才写出
+     * @param batchSize 批大小
+     * @return 新策略
+     */
+    public LogFlushPolicy withBatchSize(int batchSize) {
+        if (batchSize < 1) {
+            throw new IllegalArgumentException("批大小必须为正数: " + batchSize);
+        }
+        if (batchSize > capacity) {
+            throw new IllegalArgumentException("批大小 " + batchSize + " 超过缓冲区容量 " + capacity);
+        }
+        return new LogFlushPolicy(asynchronous, capacity, batchSize,
+                                  flushIntervalMillis, drainOnClose, backpressure);
+    }
+
+    /**
+     * 设置刷写间隔：未满一批的事件最多等待该时长后写入
+     * @param millis 间隔毫秒数
+     * @return 新策略
+     */
+    public LogFlushPolicy withFlushInterval(long millis) {
+        if (millis < 1) {
+            throw new IllegalArgumentException("刷写间隔必须为正数: " + millis);
+        }
+        return new LogFlushPolicy(asynchronous, capacity, batchSize,
+                                  millis, drainOnClose, backpressure);
+    }
+
+    /**
+     * 设置关闭时是否写完缓冲区中剩余的事件
+     * @param drainOnClose true 表示写完，false 表示丢弃
+     * @return 新策略
+     */
+    public LogFlushPolicy withDrainOnClose(boolean drainOnClose) {
+        return new LogFlushPolicy(asynchronous, capacity, batchSize,
+                                  flushIntervalMillis, drainOnClose, backpressure);
+    }
+
+    /**
+     * 设置缓冲区满时的背压方式
+     * @param backpressure 背压方式
+     * @return 新策略
+     */
+    public LogFlushPolicy withBackpressure(Backpressure backpressure) {
+        return new LogFlushPolicy(asynchronous, capacity, batchSize,
+                                  flushIntervalMillis, drainOnClose, backpressure);
+    }
+
+    public boolean isAsynchronous() {
+        return asynchronous;
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+
+    public int getBatchSize() {
+        return batchSize;
+    }
+
+    public long getFlushIntervalMillis() {
+        return flushIntervalMillis;
+    }
+
+    public boolean isDrainOnClose() {
+        return drainOnClose;
+    }
+
+    public Backpressure getBackpressure() {
+        return backpressure;
+    }
+
+    @Override
+    public String toString() {
+        if (!asynchronous) {
+            return "LogFlushPolicy[sync]";
+        }
+        return "LogFlushPolicy[async, capacity=" + capacity + ", batch=" + batchSize
+            + ", interval=" + flushIntervalMillis + "ms, drainOnClose=" + drainOnClose
+            + ", backpressure=" + backpressure + "]";
+    }
+}
@@ -0,0 +1,77 @@
+package top.thesumst.observer;
+
+import top.thesumst.command.Command;
+
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+
+/**
+ * LogRecordFormatter - 日志记录格式化器
+ * 输出格式：[yyyy-MM-dd HH:mm:ss] TYPE: 命令描述
+ * 时间戳按秒缓存，命令通过 describeTo 直接写入复用的 StringBuilder，
+ * 稳定状态下格式化一条记录不产生新对象
+ * 非线程安全，每个日志记录器持有一个实例
+ */
+public final class LogRecordFormatter {
+
+    static final DateTimeFormatter TIME_FORMATTER =
+        DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss");
+
+    private final ZoneId zone;
+    private final StringBuilder record = new StringBuilder(128);
+    private final char[] timestamp = new char[19];
+    private long cachedSecond = Long.MIN_VALUE;
+
+    public LogRecordFormatter() {
+        this(ZoneId.systemDefault());
+    }
+
+    public LogRecordFormatter(ZoneId zone) {
+        this.zone = zone;
+    }
+
+    /**
+     * 格式化一条记录（含换行符）
+     * @param epochMillis 事件时间
+     * @param eventType 事件类型
+     * @param command 命令
+     * @return 复用的缓冲区，下次调用前有效
+     */
+    public StringBuilder format(long epochMillis, String eventType, Command command) {
+        record.setLength(0);
+        append(record, epochMillis, eventType, command);
+        return record;
+    }
+
+    /**
+     * 把一条记录（含换行符）追加到给定缓冲区
+     * @param out 输出
+     * @param epochMillis 事件时间
+     * @param eventType 事件类型
+     * @param command 命令
+     */
+    public void append(StringBuilder out, long epochMillis, String eventType, Command command) {
+        out.append('[');
+        appendTimestamp(out, epochMillis);
+        out.append("] ").append(eventType).append(": ");
+        command.describeTo(out);
+        out.append(System.lineSeparator());
+    }
+
+    /**
+     * 追加 yyyy-MM-dd HH:mm:ss 格式的时间戳，同一秒内复用缓存的字符
+     * @param out 输出
+     * @param epochMillis 时间
+     */
+    public void appendTimestamp(StringBuilder out, long epochMillis) {
+        long second = Math.floorDiv(epochMillis, 1000L);
+        if (second != cachedSecond) {
+            String text = LocalDateTime.ofInstant(Instant.ofEpochSecond(second), zone).format(TIME_FORMATTER);
+            text.getChars(0, timestamp.length, timestamp, 0);
+            cachedSecond = second;
+        }
+        out.append(timestamp);
+    }
+}
@@ -0,0 +1,119 @@
+package top.thesumst.observer;
+
+/**
+ * LogRotationPolicy - 日志轮转策略
+ * 当前日志超过大小上限或写入时间超过时长上限时，滚动为编号递增的历史段，
+ * 历史段在后台压缩，并只保留最近的若干段，使长期编辑的文件占用的磁盘空间有上限
+ * 实例不可变，with 方法返回修改后的副本
+ */
+public final class LogRotationPolicy {
+
+    private static final LogRotationPolicy NONE = new LogRotationPolicy(0, 0, 0, false);
+
+    private final long maxBytes;
+    private final long maxAgeMillis;
+    private final int maxSegments;
+    private final boolean compress;
+
+    private LogRotationPolicy(long maxBytes, long maxAgeMillis, int maxSegments, boolean compress) {
+        this.maxBytes = maxBytes;
+        this.maxAgeMillis = maxAgeMillis;
+        this.maxSegments = maxSegments;
+        this.compress = compress;
+    }
+
+    /**
+     * 不轮转（默认）：日志一直追加到同一个文件
+     * @return 不轮转的策略
+     */
+    public static LogRotationPolicy none() {
+        return NONE;
+    }
+
+    /**
+     * 按大小轮转：保留最近 16 段并压缩
+     * @param maxBytes 当前日志的大小上限
+     * @return 新策略
+     */
+    public static LogRotationPolicy bySize(long maxBytes) {
+        return NONE.withMaxBytes(maxBytes).withMaxSegments(16).withCompression(true);
+    }
+
+    /**
+     * 设置当前日志的大小上限
+     * @param maxBytes 字节数，0 表示不按大小轮转
+     * @return 新策略
+     */
+    public LogRotationPolicy withMaxBytes(long maxBytes) {
+        if (maxBytes < 0) {
+            throw new IllegalArgumentException("大小上限不能为负数: " + maxBytes);
+        }
+        return new LogRotationPolicy(maxBytes, maxAgeMillis, maxSegments, compress);
+    }
+
+    /**
+     * 设置当前日志的时长上限：从开始写入当前日志起计算
+     * @param millis 毫秒数，0 表示不按时间轮转
+     * @return 新策略
+     */
+    public LogRotationPolicy withMaxAge(long millis) {
+        if (millis < 0) {
+            throw new IllegalArgumentException("时长上限不能为负数: " + millis);
+        }
+        return new LogRotationPolicy(maxBytes, millis, maxSegments, compress);
+    }
+
+    /**
+     * 设置保留的历史段数，超出时删除最旧的段
+     * @param maxSegments 段数，0 表示不限
+     * @return 新策略
+     */
+    public LogRotationPolicy withMaxSegments(int maxSegments) {
+        if (maxSegments < 0) {
+            throw new IllegalArgumentException("保留段数不能为负数: " + maxSegments);
+        }
+        return new LogRotationPolicy(maxBytes, maxAgeMillis, maxSegments, compress);
+    }
+
+    /**
+     * 设置是否在后台用 Deflater 把历史段压缩为 .gz
+     * @param compress true 表示压缩
+     * @return 新策略
+     */
+    public LogRotationPolicy withCompression(boolean compress) {
+        return new LogRotationPolicy(maxBytes, maxAgeMillis, maxSegments, compress);
+    }
+
+    /**
+     * 检查是否会轮转
+     * @return true 如果设置了大小或时长上限
+     */
+    public boolean isEnabled() {
+        return maxBytes > 0 || maxAgeMillis > 0;
+    }
+
+    public long getMaxBytes() {
+        return maxBytes;
+    }
+
+    public long getMaxAgeMillis() {
+        return maxAgeMillis;
+    }
+
+    public int getMaxSegments() {
+        return maxSegments;
+    }
+
+    public boolean isCompress() {
+        return compress;
+    }
+
+    @Override
+    public String toString() {
+        if (!isEnabled()) {
+            return "LogRotationPolicy[none]";
+        }
+        return "LogRotationPolicy[maxBytes=" + maxBytes + ", maxAge=" + maxAgeMillis
+            + "ms, maxSegments=" + maxSegments + ", compress=" + compress + "]";
+    }
+}
@@ -0,0 +1,254 @@
+package top.thesumst.observer;
+
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * LogRotator - 文本日志轮转
+ * 把写满的 .filename.log 改名为 .filename.log.N（N 递增，不重命名已有的段），
+ * 再由后台线程压缩为 .filename.log.N.gz 并删除超出保留数的最旧段
+ * 轮转只发生在写入线程上，压缩与清理在单独的线程中按顺序执行
+ */
+final class LogRotator implements Closeable {
+
+    private static final String GZIP_SUFFIX = ".gz";
+
+    private final Path logPath;
+    private final LogRotationPolicy policy;
+    private long segmentStartMillis = -1;   // 当前日志开始写入的时间，-1 表示尚未从已有日志读取
+    private long nextSegment = -1;          // -1 表示尚未扫描已有的段
+    private ExecutorService compressor;     // 首次需要时创建
+
+    LogRotator(Path logPath, LogRotationPolicy policy) {
+        this.logPath = logPath;
+        this.policy = policy;
+        if (policy.isEnabled() && policy.isCompress()) {
+            // 上次退出时未压缩完的段
+            for (Path segment : segments(logPath)) {
+                if (!isCompressed(segment)) {
+                    submit(() -> compress(segment));
+                }
+            }
+        }
+    }
+
+    /**
+     * 列出日志的历史段，按从旧到新排列
+     * 同一编号的段同时存在压缩与未压缩版本时（压缩后删除原文件前退出），取压缩版本
+     * @param logPath 当前日志路径
+     * @return 历史段路径
+     */
+    static List<Path> segments(Path logPath) {
+        Path dir = logPath.toAbsolutePath().getParent();
+        String prefix = logPath.getFileName().toString() + ".";
+        List<long[]> numbered = new ArrayList<>();   // {编号, 是否压缩}
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(dir, glob(prefix))) {
+            for (Path path : stream) {
+                String rest = path.getFileName().toString().substring(prefix.length());
+                boolean gzip = rest.endsWith(GZIP_SUFFIX);
+                if (gzip) {
+                    rest = rest.substring(0, rest.length() - GZIP_SUFFIX.length());
+                }
+                long number = parseNumber(rest);
+                if (number > 0) {
+                    numbered.add(new long[] {number, gzip ? 1 : 0});
+                }
+            }
+        } catch (IOException e) {
+            System.err.println("无法列出日志段: " + e.getMessage());
+        }
+        // 压缩版本排在同编号的未压缩版本之后，去重时保留它
+        numbered.sort((a, b) -> a[0] != b[0] ? Long.compare(a[0], b[0]) : Long.compare(a[1], b[1]));
+        List<Path> result = new ArrayList<>();
+        for (int i = 0; i < numbered.size(); i++) {
+            long[] entry = numbered.get(i);
+            if (i + 1 < numbered.size() && numbered.get(i + 1)[0] == entry[0]) {
+                continue;
+            }
+            String name = prefix + entry[0] + (entry[1] == 1 ? GZIP_SUFFIX : "");
+            result.add(logPath.resolveSibling(name));
+        }
+        return result;
+    }
+
+    /**
+     * 检查历史段是否已压缩
+     * @param segment 段路径
+     * @return true 如果是 .gz 段
+     */
+    static boolean isCompressed(Path segment) {
+        return segment.getFileName().toString().endsWith(GZIP_SUFFIX);
+    }
+
+    /**
+     * 判断写入下一段日志前是否需要轮转
+     * @param size 当前日志大小
+     * @param now 当前时间
+     * @return true 如果应先轮转
+     */
+    boolean shouldRotate(long size, long now) {
+        if (!policy.isEnabled() || size == 0) {
+            return false;
+        }
+        if (segmentStartMillis < 0) {
+            segmentStartMillis = Math.min(existingSegmentStart(now), now);
+        }
+        return (policy.getMaxBytes() > 0 && size >= policy.getMaxBytes())
+            || (policy.getMaxAgeMillis() > 0 && now - segmentStartMillis >= policy.getMaxAgeMillis());
+    }
+
+    /**
+     * 把当前日志滚动为新的历史段（调用方须先关闭自己持有的文件句柄）
+     * @param now 当前时间
+     */
+    void rotate(long now) {
+        try {
+            if (nextSegment < 0) {
+                List<Path> existing = segments(logPath);
+                nextSegment = existing.isEmpty() ? 1 : numberOf(existing.get(existing.size() - 1)) + 1;
+            }
+            Path segment = logPath.resolveSibling(logPath.getFileName() + "." + nextSegment++);
+            Files.move(logPath, segment);
+            Files.deleteIfExists(TextLogIndex.pathFor(logPath));
+            segmentStartMillis = now;
+            if (policy.isCompress()) {
+                submit(() -> compress(segment));
+                submit(this::prune);
+            } else {
+                prune();
+            }
+        } catch (IOException e) {
+            System.err.println("日志轮转失败: " + e.getMessage());
+        }
+    }
+
+    /**
+     * 等待后台压缩完成并停止压缩线程
+     */
+    @Override
+    public void close() {
+        if (compressor == null) {
+            return;
+        }
+        compressor.shutdown();
+        try {
+            compressor.awaitTermination(1, TimeUnit.MINUTES);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    // ===== 内部实现 =====
+
+    /**
+     * 推断上次进程留下的当前日志开始写入的时间：取首条记录的时间戳，
+     * 读不到时取文件的创建时间，都不可用时视为刚开始
+     */
+    private long existingSegmentStart(long now) {
+        try (BufferedReader reader = Files.newBufferedReader(logPath, StandardCharsets.UTF_8)) {
+            String line = reader.readLine();
+            if (line != null && line.length() >= 21 && line.charAt(0) == '[' && line.charAt(20) == ']') {
+                return LocalDateTime.parse(line.substring(1, 20), LogRecordFormatter.TIME_FORMATTER)
+                                    .atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
+            }
+        } catch (IOException | DateTimeParseException e) {
+            // 退回到文件属性
+        }
+        try {
+            return Files.readAttributes(logPath, BasicFileAttributes.class).creationTime().toMillis();
+        } catch (IOException e) {
+            return now;
+        }
+    }
+
+    private void submit(Runnable task) {
+        if (compressor == null) {
+            String name = "log-compressor-" + logPath.getFileName();
+            compressor = Executors.newSingleThreadExecutor(r -> {
+                Thread thread = new Thread(r, name);
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+        compressor.execute(task);
+    }
+
+    /**
+     * 压缩到临时文件后原子替换，中途退出不会留下不完整的 .gz
+     */
+    private static void compress(Path segment) {
+        Path target = segment.resolveSibling(segment.getFileName() + GZIP_SUFFIX);
+        Path temp = segment.resolveSibling(segment.getFileName() + GZIP_SUFFIX + ".tmp");
+        try {
+            try (InputStream in = Files.newInputStream(segment);
+                 OutputStream out = new GZIPOutputStream(Files.newOutputStream(temp), 64 * 1024)) {
+                in.transferTo(out);
+            }
+            Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            Files.delete(segment);
+        } catch (IOException e) {
+            System.err.println("压缩日志段失败: " + e.getMessage());
+        }
+    }
+
+    /**
+     * 删除超出保留数的最旧段
+     */
+    private void prune() {
+        if (policy.getMaxSegments() == 0) {
+            return;
+        }
+        List<Path> existing = segments(logPath);
+        for (int i = 0; i < existing.size() - policy.getMaxSegments(); i++) {
+            try {
+                Files.deleteIfExists(existing.get(i));
+            } catch (IOException e) {
+                System.err.println("删除旧日志段失败: " + e.getMessage());
+            }
+        }
+    }
+
+    private static long numberOf(Path segment) {
+        String name = segment.getFileName().toString();
+        if (isCompressed(segment)) {
+            name = name.substring(0, name.length() - GZIP_SUFFIX.length());
+        }
+        return parseNumber(name.substring(name.lastIndexOf('.') + 1));
+    }
+
+    private static long parseNumber(String text) {
+        if (text.isEmpty() || text.length() > 18) {
+            return -1;
+        }
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (c < '0' || c > '9') {
+                return -1;
+            }
+        }
+        return Long.parseLong(text);
+    }
+
+    private static String glob(String prefix) {
+        // 文件名中的 glob 特殊字符需要转义
+        return prefix.replaceAll("([\\\\*?\\[\\]{}])", "\\\\$1") + "*";
+    }
+}
@@ -0,0 +1,88 @@
+package top.thesumst.observer;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.BiFunction;
+
+/**
+ * ObserverRegistry - 写时复制的观察者注册表
+ * 以观察者本身为键登记（可以存放包装后的条目，如 AsyncObserver），成员检查与增删都是 O(1)；
+ * 分发时遍历不可变的快照数组，不加锁、不创建迭代器，分发过程中增删观察者也不会影响本轮遍历
+ * 快照在变更后的第一次分发时才重建，连续注册大量观察者只复制一次
+ */
+public final class ObserverRegistry {
+
+    private static final EditorObserver[] EMPTY = new EditorObserver[0];
+
+    private final Map<EditorObserver, EditorObserver> entries = new LinkedHashMap<>(); // 观察者 -> 条目，保持注册顺序
+    private volatile EditorObserver[] snapshot = EMPTY;                               // null 表示需要重建
+
+    /**
+     * 登记观察者
+     * @param observer 观察者（作为键）
+     * @param entry 分发时实际回调的条目
+     * @return true 如果此前未登记
+     */
+    public synchronized boolean add(EditorObserver observer, EditorObserver entry) {
+        if (entries.putIfAbsent(observer, entry) != null) {
+            return false;
+        }
+        snapshot = null;
+        return true;
+    }
+
+    /**
+     * 移除观察者
+     * @param observer 观察者
+     * @return 移除的条目，未登记时返回 null
+     */
+    public synchronized EditorObserver remove(EditorObserver observer) {
+        EditorObserver entry = entries.remove(observer);
+        if (entry != null) {
+            snapshot = null;
+        }
+        return entry;
+    }
+
+    /**
+     * 检查观察者是否已登记
+     * @param observer 观察者
+     * @return true 如果已登记
+     */
+    public synchronized boolean contains(EditorObserver observer) {
+        return entries.containsKey(observer);
+    }
+
+    /**
+     * 替换每个观察者的条目
+     * @param mapping (观察者, 当前条目) -> 新条目
+     */
+    public synchronized void replaceAll(BiFunction<EditorObserver, EditorObserver, EditorObserver> mapping) {
+        entries.replaceAll(mapping);
+        snapshot = null;
+    }
+
+    /**
+     * 获取已登记的观察者数
+     * @return 数量
+     */
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    /**
+     * 获取当前条目的快照，调用方不得修改返回的数组
+     * @return 按注册顺序排列的条目
+     */
+    public EditorObserver[] snapshot() {
+        EditorObserver[] current = snapshot;
+        return current != null ? current : rebuild();
+    }
+
+    private synchronized EditorObserver[] rebuild() {
+        if (snapshot == null) {
+            snapshot = entries.isEmpty() ? EMPTY : entries.values().toArray(EMPTY);
+        }
+        return snapshot;
+    }
+}
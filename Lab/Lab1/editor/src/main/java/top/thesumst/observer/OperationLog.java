@@ -0,0 +1,68 @@
+package top.thesumst.observer;
+
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+/**
+ * OperationLog - 二进制操作日志的格式定义
+ * 与文本日志 .filename.log 并存，写入同目录下的 .filename.oplog，
+ * 供审计回放等需要快速读取大量事件的场景使用，文本形式按需渲染
+ *
+ * 文件格式：
+ * 头部 8 字节：magic(4) version(4)
+ * 记录：bodyLength(varint) body
+ *   body：type(1) seq(varint) timestamp(varint, 毫秒) 命令编码（见 CommandCodec）
+ * 稀疏索引 .filename.oplog.idx：每 INDEX_INTERVAL 条记录一项，
+ *   每项 24 字节：seq(8) timestamp(8) offset(8)
+ * 时间戳在写入时保证单调不减，因此可以按时间二分查找
+ */
+public final class OperationLog {
+
+    static final int MAGIC = 0x45444F31; // "EDO1"
+    static final int VERSION = 1;
+    static final int HEADER_SIZE = 8;
+    static final int INDEX_INTERVAL = 256;
+    static final int INDEX_ENTRY_SIZE = 24;
+
+    public static final byte TYPE_EXECUTE = 1;
+    public static final byte TYPE_UNDO = 2;
+    public static final byte TYPE_REDO = 3;
+
+    private OperationLog() {
+    }
+
+    /**
+     * 根据源文件路径生成操作日志路径（同目录下的 .filename.oplog）
+     * @param sourceFilePath 源文件路径
+     * @return 操作日志路径
+     */
+    public static Path pathFor(String sourceFilePath) {
+        Path sourcePath = Paths.get(sourceFilePath);
+        String logName = "." + sourcePath.getFileName().toString() + ".oplog";
+        Path parent = sourcePath.getParent();
+        return parent != null ? parent.resolve(logName) : Paths.get(logName);
+    }
+
+    /**
+     * 获取操作日志对应的稀疏索引路径
+     * @param logPath 操作日志路径
+     * @return 索引路径
+     */
+    public static Path indexPathFor(Path logPath) {
+        return logPath.resolveSibling(logPath.getFileName().toString() + ".idx");
+    }
+
+    /**
+     * 获取事件类型名称（与文本日志一致）
+     * @param type 事件类型
+     * @return EXECUTE / UNDO / REDO
+     */
+    public static String typeName(byte type) {
+        return switch (type) {
+            case TYPE_EXECUTE -> "EXECUTE";
+            case TYPE_UNDO -> "UNDO";
+            case TYPE_REDO -> "REDO";
+            default -> "UNKNOWN";
+        };
+    }
+}
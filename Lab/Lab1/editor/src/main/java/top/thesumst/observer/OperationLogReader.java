@@ -0,0 +1,282 @@
+package top.thesumst.observer;
+
+import top.thesumst.command.Command;
+import top.thesumst.command.CommandCodec;
+import top.thesumst.engine.TextBuffer;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/**
+ * OperationLogReader - 二进制操作日志读取器
+ * 顺序读取记录，并借助稀疏索引按序号或时间定位，
+ * 定位后只需从最近的索引项向后扫描不超过 INDEX_INTERVAL 条记录
+ * 末尾不完整的记录（如写入时崩溃）视为日志结束
+ */
+public class OperationLogReader implements Closeable {
+
+    private final FileChannel channel;
+    private final TextBuffer buffer;      // 解码命令的目标缓冲区，为 null 时不解码命令
+    private long size;                    // 已知的文件长度，读到末尾时刷新（日志可能仍在追加）
+    private final long[] indexSeq;
+    private final long[] indexTime;
+    private final long[] indexOffset;
+
+    private ByteBuffer window = ByteBuffer.allocate(64 * 1024).flip();
+    private long readPosition;            // 下一次从文件读取的位置（窗口末尾对应的偏移）
+
+    /**
+     * 打开操作日志
+     * @param logPath 操作日志路径
+     * @param buffer 命令作用的文本缓冲区；为 null 时只读取记录头，不解码命令
+     * @throws IOException 如果文件不存在或格式不正确
+     */
+    public OperationLogReader(Path logPath, TextBuffer buffer) throws IOException {
+        this.channel = FileChannel.open(logPath, StandardOpenOption.READ);
+        this.buffer = buffer;
+        this.size = channel.size();
+
+        ByteBuffer header = ByteBuffer.allocate(OperationLog.HEADER_SIZE);
+        while (header.hasRemaining() && channel.read(header, header.position()) > 0) {
+            // 读满头部
+        }
+        if (header.position() < OperationLog.HEADER_SIZE
+                || header.getInt(0) != OperationLog.MAGIC
+                || header.getInt(4) != OperationLog.VERSION) {
+            channel.close();
+            throw new IOException("不是有效的操作日志: " + logPath);
+        }
+
+        // 载入稀疏索引，丢弃指向文件末尾之外的项
+        Path indexPath = OperationLog.indexPathFor(logPath);
+        int entries = 0;
+        long[] seqs = new long[0];
+        long[] times = new long[0];
+        long[] offsets = new long[0];
+        if (Files.exists(indexPath)) {
+            ByteBuffer index = ByteBuffer.wrap(Files.readAllBytes(indexPath));
+            int capacity = index.remaining() / OperationLog.INDEX_ENTRY_SIZE;
+            seqs = new long[capacity];
+            times = new long[capacity];
+            offsets = new long[capacity];
+            for (int i = 0; i < capacity; i++) {
+                long seq = index.getLong();
+                long time = index.getLong();
+                long offset = index.getLong();
+                if (offset < OperationLog.HEADER_SIZE || offset >= size) {
+                    break;
+                }
+                seqs[entries] = seq;
+                times[entries] = time;
+                offsets[entries] = offset;
+                entries++;
+            }
+        }
+        this.indexSeq = Arrays.copyOf(seqs, entries);
+        this.indexTime = Arrays.copyOf(times, entries);
+        this.indexOffset = Arrays.copyOf(offsets, entries);
+
+        seek(OperationLog.HEADER_SIZE);
+    }
+
+    /**
+     * 读取下一条记录
+     * @return 记录，已到末尾时返回 null
+     * @throws IOException 如果读取失败
+     */
+    public OperationRecord next() throws IOException {
+        long offset = position();
+        int bodyLength = peekVarInt();
+        if (bodyLength < 0) {
+            return null;
+        }
+        int prefix = varIntSize(bodyLength);
+        if (!fill(prefix + bodyLength)) {
+            return null; // 末尾不完整的记录
+        }
+        window.position(window.position() + prefix);
+        ByteBuffer body = window.slice(window.position(), bodyLength);
+        window.position(window.position() + bodyLength);
+
+        byte type = body.get();
+        long seq = CommandCodec.getVarLong(body);
+        long timestamp = CommandCodec.getVarLong(body);
+        byte[] commandBytes = new byte[body.remaining()];
+        body.get(body.position(), commandBytes);
+        Command command = buffer != null ? CommandCodec.decode(body, buffer) : null;
+        return new OperationRecord(seq, timestamp, type, command, offset, commandBytes);
+    }
+
+    /**
+     * 定位到序号不小于 sequence 的第一条记录
+     * @param sequence 记录序号
+     * @throws IOException 如果读取失败
+     */
+    public void seekToSequence(long sequence) throws IOException {
+        int entry = lastIndexEntryBefore(indexSeq, sequence + 1);
+        seek(entry >= 0 ? indexOffset[entry] : OperationLog.HEADER_SIZE);
+        skipWhile(true, sequence);
+    }
+
+    /**
+     * 定位到时间不早于 timestamp 的第一条记录
+     * @param timestamp 时间（毫秒）
+     * @throws IOException 如果读取失败
+     */
+    public void seekToTime(long timestamp) throws IOException {
+        // 同一时间戳可能跨越多个索引块，因此从严格早于该时间的索引项开始扫描
+        int entry = lastIndexEntryBefore(indexTime, timestamp);
+        seek(entry >= 0 ? indexOffset[entry] : OperationLog.HEADER_SIZE);
+        skipWhile(false, timestamp);
+    }
+
+    /**
+     * 定位到文件中的指定偏移（必须是记录起点）
+     * @param offset 偏移
+     */
+    public void seek(long offset) {
+        readPosition = offset;
+        window.clear().flip();
+    }
+
+    /**
+     * 获取下一条记录的偏移
+     * @return 偏移
+     */
+    public long position() {
+        return readPosition - window.remaining();
+    }
+
+    /**
+     * 获取最后一个索引项的偏移，用于快速找到日志末尾附近的位置
+     * @return 偏移；没有索引时返回头部之后的位置
+     */
+    public long lastIndexedOffset() {
+        return indexOffset.length > 0 ? indexOffset[indexOffset.length - 1] : OperationLog.HEADER_SIZE;
+    }
+
+    /**
+     * 获取有效的索引项数
+     * @return 索引项数
+     */
+    public int getIndexEntryCount() {
+        return indexOffset.length;
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    // ===== 内部实现 =====
+
+    /**
+     * 跳过序号（或时间）小于 bound 的记录，停在第一条不小于 bound 的记录之前
+     */
+    private void skipWhile(boolean bySequence, long bound) throws IOException {
+        while (true) {
+            int bodyLength = peekVarInt();
+            if (bodyLength < 0) {
+                return;
+            }
+            int prefix = varIntSize(bodyLength);
+            // 只需读出记录头部即可比较
+            if (!fill(Math.min(prefix + bodyLength, prefix + 21))) {
+                return;
+            }
+            ByteBuffer head = window.duplicate();
+            head.position(head.position() + prefix + 1);
+            long seq = CommandCodec.getVarLong(head);
+            long time = CommandCodec.getVarLong(head);
+            if ((bySequence ? seq : time) >= bound) {
+                return;
+            }
+            if (!fill(prefix + bodyLength)) {
+                return;
+            }
+            window.position(window.position() + prefix + bodyLength);
+        }
+    }
+
+    private static int lastIndexEntryBefore(long[] keys, long bound) {
+        int low = 0;
+        int high = keys.length - 1;
+        int found = -1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            if (keys[mid] < bound) {
+                found = mid;
+                low = mid + 1;
+            } else {
+                high = mid - 1;
+            }
+        }
+        return found;
+    }
+
+    /**
+     * 读取当前位置的 varint 而不移动位置
+     * @return 值，已到末尾或不完整时返回 -1
+     */
+    private int peekVarInt() throws IOException {
+        int value = 0;
+        for (int i = 0; i < 5; i++) {
+            if (!fill(i + 1)) {
+                return -1;
+            }
+            byte b = window.get(window.position() + i);
+            value |= (b & 0x7F) << (7 * i);
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new IOException("操作日志损坏: 偏移 " + position() + " 处的记录长度无效");
+    }
+
+    private static int varIntSize(int value) {
+        int size = 1;
+        while ((value & ~0x7F) != 0) {
+            value >>>= 7;
+            size++;
+        }
+        return size;
+    }
+
+    /**
+     * 确保窗口中至少有 needed 个可读字节
+     * @return false 如果文件剩余内容不足
+     */
+    private boolean fill(int needed) throws IOException {
+        if (window.remaining() >= needed) {
+            return true;
+        }
+        if (position() + needed > size) {
+            size = channel.size();
+            if (position() + needed > size) {
+                return false;
+            }
+        }
+        if (window.capacity() < needed) {
+            ByteBuffer grown = ByteBuffer.allocate(Math.max(needed, window.capacity() * 2));
+            grown.put(window);
+            window = grown;
+        } else {
+            window.compact();
+        }
+        while (window.position() < needed) {
+            int read = channel.read(window, readPosition);
+            if (read < 0) {
+                break;
+            }
+            readPosition += read;
+        }
+        window.flip();
+        return window.remaining() >= needed;
+    }
+}
@@ -0,0 +1,194 @@
+package top.thesumst.observer;
+
+import top.thesumst.command.AppendCommand;
+import top.thesumst.command.Command;
+import top.thesumst.command.CommandCodec;
+import top.thesumst.engine.TextBuffer;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * OperationLogReplayer - 操作日志回放引擎
+ * 读取 .filename.oplog 并把编辑重新作用到 TextBuffer 上，用于崩溃恢复，
+ * 以及用真实编辑轨迹对缓冲区实现做回归测试
+ *
+ * 为了尽快回放：
+ * 1. 记录先只读头部，放入待应用栈；与栈顶互逆的记录（执行后紧跟撤销、撤销后紧跟重做同一命令）
+ *    直接成对抵消，永远不会被解码
+ * 2. 连续的追加操作合并成一次 TextBuffer.appendAll
+ */
+public class OperationLogReplayer {
+
+    private static final int MAX_PENDING = 4096;  // 待应用栈的上限，超过后先应用较早的一半
+
+    private final TextBuffer target;
+    private final ArrayDeque<OperationRecord> pending = new ArrayDeque<>();
+    private final List<String> pendingLines = new ArrayList<>();
+    private long applied;
+    private long cancelled;
+    private long appendBatches;
+
+    /**
+     * 构造函数
+     * @param target 回放的目标缓冲区（通常为空缓冲区）
+     */
+    public OperationLogReplayer(TextBuffer target) {
+        this.target = target;
+    }
+
+    /**
+     * 回放整个操作日志
+     * @param logPath 操作日志路径
+     * @return 回放统计
+     * @throws IOException 如果读取失败或某条记录无法应用
+     */
+    public Result replay(Path logPath) throws IOException {
+        return replay(logPath, Long.MAX_VALUE);
+    }
+
+    /**
+     * 回放操作日志中序号小于 untilSequence 的记录
+     * @param logPath 操作日志路径
+     * @param untilSequence 回放截止序号（不含）
+     * @return 回放统计
+     * @throws IOException 如果读取失败或某条记录无法应用
+     */
+    public Result replay(Path logPath, long untilSequence) throws IOException {
+        long start = System.nanoTime();
+        long read = 0;
+        applied = 0;
+        cancelled = 0;
+        appendBatches = 0;
+        try (OperationLogReader reader = new OperationLogReader(logPath, null)) {
+            OperationRecord record;
+            while ((record = reader.next()) != null && record.getSequence() < untilSequence) {
+                read++;
+                OperationRecord top = pending.peekLast();
+                if (top != null && cancels(top, record)) {
+                    pending.pollLast();
+                    cancelled += 2;
+                    continue;
+                }
+                pending.addLast(record);
+                if (pending.size() > MAX_PENDING) {
+                    applyOldest(MAX_PENDING / 2);
+                }
+            }
+        }
+        applyOldest(pending.size());
+        flushAppends();
+        return new Result(read, applied, cancelled, appendBatches, System.nanoTime() - start);
+    }
+
+    // ===== 内部实现 =====
+
+    /**
+     * 判断两条相邻记录是否互逆：同一命令编码，且一条正向（执行/重做）一条撤销
+     */
+    private static boolean cancels(OperationRecord earlier, OperationRecord later) {
+        boolean earlierUndo = earlier.getType() == OperationLog.TYPE_UNDO;
+        boolean laterUndo = later.getType() == OperationLog.TYPE_UNDO;
+        return earlierUndo != laterUndo
+            && Arrays.equals(earlier.getCommandBytes(), later.getCommandBytes());
+    }
+
+    private void applyOldest(int count) throws IOException {
+        for (int i = 0; i < count; i++) {
+            apply(pending.pollFirst());
+        }
+    }
+
+    private void apply(OperationRecord record) throws IOException {
+        byte[] bytes = record.getCommandBytes();
+        boolean undo = record.getType() == OperationLog.TYPE_UNDO;
+        try {
+            Command command = CommandCodec.decode(ByteBuffer.wrap(bytes), target);
+            if (!undo && command instanceof AppendCommand append) {
+                pendingLines.addAll(append.getLinesToAdd());
+            } else {
+                flushAppends();
+                if (undo) {
+                    command.undo();
+                } else {
+                    command.execute();
+                }
+            }
+        } catch (RuntimeException e) {
+            throw new IOException("回放失败: 序号 " + record.getSequence() + " 的记录无法应用 - " + e.getMessage(), e);
+        }
+        applied++;
+    }
+
+    private void flushAppends() {
+        if (!pendingLines.isEmpty()) {
+            target.appendAll(pendingLines);
+            pendingLines.clear();
+            appendBatches++;
+        }
+    }
+
+    /**
+     * 回放统计
+     */
+    public static final class Result {
+        private final long recordsRead;
+        private final long recordsApplied;
+        private final long recordsCancelled;
+        private final long appendBatches;
+        private final long elapsedNanos;
+
+        Result(long recordsRead, long recordsApplied, long recordsCancelled,
+               long appendBatches, long elapsedNanos) {
+            this.recordsRead = recordsRead;
+            this.recordsApplied = recordsApplied;
+            this.recordsCancelled = recordsCancelled;
+            this.appendBatches = appendBatches;
+            this.elapsedNanos = elapsedNanos;
+        }
+
+        public long getRecordsRead() {
+            return recordsRead;
+        }
+
+        public long getRecordsApplied() {
+            return recordsApplied;
+        }
+
+        /**
+         * 获取成对抵消而未应用的记录数
+         * @return 记录数
+         */
+        public long getRecordsCancelled() {
+            return recordsCancelled;
+        }
+
+        public long getAppendBatches() {
+            return appendBatches;
+        }
+
+        public long getElapsedNanos() {
+            return elapsedNanos;
+        }
+
+        /**
+         * 获取回放吞吐量（按读取的记录数计算）
+         * @return 每秒操作数
+         */
+        public double getOpsPerSecond() {
+            return elapsedNanos == 0 ? 0 : recordsRead * 1_000_000_000.0 / elapsedNanos;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("读取 %d 条，应用 %d 条，抵消 %d 条，合并追加 %d 批，耗时 %.1f ms，%.0f ops/s",
+                recordsRead, recordsApplied, recordsCancelled, appendBatches,
+                elapsedNanos / 1_000_000.0, getOpsPerSecond());
+        }
+    }
+}
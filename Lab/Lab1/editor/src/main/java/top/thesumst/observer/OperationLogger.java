@@ -0,0 +1,230 @@
+package top.thesumst.observer;
+
+import top.thesumst.command.Command;
+import top.thesumst.command.CommandCodec;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+
+/**
+ * OperationLogger - 二进制操作日志记录器
+ * 实现观察者模式，把命令事件以紧凑的二进制格式追加到 .filename.oplog（格式见 OperationLog）
+ * 日志文件在首次写入时打开并保持打开，编码使用复用的缓冲区；
+ * 重新打开已有日志时会截掉末尾不完整的记录，并从最后一个索引项接续序号
+ */
+public class OperationLogger implements EditorObserver, Closeable {
+
+    private final Path logPath;
+    private final Path indexPath;
+    private FileChannel channel;
+    private FileChannel indexChannel;
+    private long size;                 // 下一条记录的偏移
+    private long nextSequence;
+    private long lastTimestamp;
+    private ByteBuffer body = ByteBuffer.allocate(256);
+    private ByteBuffer records = ByteBuffer.allocate(4096);
+    private final ByteBuffer indexEntry = ByteBuffer.allocate(OperationLog.INDEX_ENTRY_SIZE);
+
+    /**
+     * 构造函数
+     * @param sourceFilePath 源文件路径
+     */
+    public OperationLogger(String sourceFilePath) {
+        this.logPath = OperationLog.pathFor(sourceFilePath);
+        this.indexPath = OperationLog.indexPathFor(logPath);
+    }
+
+    /**
+     * 获取操作日志路径
+     * @return 日志路径
+     */
+    public Path getLogPath() {
+        return logPath;
+    }
+
+    /**
+     * 获取下一条记录的序号（也即已写入的记录数）
+     * @return 序号
+     * @throws IOException 如果读取已有日志失败
+     */
+    public long getNextSequence() throws IOException {
+        ensureOpen();
+        return nextSequence;
+    }
+
+    @Override
+    public Dispatch getDispatch() {
+        return Dispatch.ASYNC;
+    }
+
+    @Override
+    public void onCommandExecuted(Command command) {
+        log(OperationLog.TYPE_EXECUTE, command);
+    }
+
+    @Override
+    public void onCommandUndone(Command command) {
+        log(OperationLog.TYPE_UNDO, command);
+    }
+
+    @Override
+    public void onCommandRedone(Command command) {
+        log(OperationLog.TYPE_REDO, command);
+    }
+
+    @Override
+    public void onCommandsUndone(List<Command> commands) {
+        log(OperationLog.TYPE_UNDO, commands);
+    }
+
+    @Override
+    public void onCommandsRedone(List<Command> commands) {
+        log(OperationLog.TYPE_REDO, commands);
+    }
+
+    /**
+     * 关闭日志文件
+     */
+    @Override
+    public void close() {
+        try {
+            if (channel != null) {
+                channel.close();
+            }
+            if (indexChannel != null) {
+                indexChannel.close();
+            }
+        } catch (IOException e) {
+            System.err.println("关闭操作日志失败: " + e.getMessage());
+        }
+        channel = null;
+        indexChannel = null;
+    }
+
+    // ===== 内部实现 =====
+
+    private void log(byte type, Command command) {
+        try {
+            ensureOpen();
+            long timestamp = beginBatch();
+            appendRecord(type, command, timestamp);
+            endBatch(timestamp);
+        } catch (IOException e) {
+            System.err.println("无法写入操作日志: " + e.getMessage());
+        }
+    }
+
+    /**
+     * 追加一批同类事件，一次写入
+     */
+    private void log(byte type, List<Command> commands) {
+        try {
+            ensureOpen();
+            long timestamp = beginBatch();
+            for (Command command : commands) {
+                appendRecord(type, command, timestamp);
+            }
+            endBatch(timestamp);
+        } catch (IOException e) {
+            System.err.println("无法写入操作日志: " + e.getMessage());
+        }
+    }
+
+    private long beginBatch() {
+        records.clear();
+        return Math.max(System.currentTimeMillis(), lastTimestamp); // 保持单调，便于按时间二分查找
+    }
+
+    private void appendRecord(byte type, Command command, long timestamp) throws IOException {
+        if (!CommandCodec.supports(command)) {
+            return;
+        }
+        body.clear();
+        body = CommandCodec.ensureRemaining(body, 1);
+        body.put(type);
+        body = CommandCodec.putVarLong(body, nextSequence);
+        body = CommandCodec.putVarLong(body, timestamp);
+        body = CommandCodec.encode(command, body);
+        body.flip();
+
+        if (nextSequence % OperationLog.INDEX_INTERVAL == 0) {
+            writeIndexEntry(nextSequence, timestamp, size + records.position());
+        }
+        records = CommandCodec.putVarLong(records, body.remaining());
+        records = CommandCodec.ensureRemaining(records, body.remaining());
+        records.put(body);
+        nextSequence++;
+    }
+
+    private void endBatch(long timestamp) throws IOException {
+        lastTimestamp = timestamp;
+        records.flip();
+        while (records.hasRemaining()) {
+            size += channel.write(records, size);
+        }
+    }
+
+    private void writeIndexEntry(long sequence, long timestamp, long offset) throws IOException {
+        indexEntry.clear();
+        indexEntry.putLong(sequence).putLong(timestamp).putLong(offset).flip();
+        long position = indexChannel.size();
+        while (indexEntry.hasRemaining()) {
+            position += indexChannel.write(indexEntry, position);
+        }
+    }
+
+    private void ensureOpen() throws IOException {
+        if (channel != null) {
+            return;
+        }
+        Path parent = logPath.getParent();
+        if (parent != null && !Files.exists(parent)) {
+            Files.createDirectories(parent);
+        }
+
+        boolean existing = Files.exists(logPath) && Files.size(logPath) >= OperationLog.HEADER_SIZE;
+        long validEnd = OperationLog.HEADER_SIZE;
+        int validIndexEntries = 0;
+        if (existing) {
+            try (OperationLogReader reader = new OperationLogReader(logPath, null)) {
+                // 从最后一个索引项向后扫描到末尾，得到序号与有效长度
+                validIndexEntries = reader.getIndexEntryCount();
+                reader.seek(reader.lastIndexedOffset());
+                OperationRecord record;
+                while ((record = reader.next()) != null) {
+                    nextSequence = record.getSequence() + 1;
+                    lastTimestamp = record.getTimestamp();
+                }
+                validEnd = reader.position();
+            } catch (IOException e) {
+                System.err.println("操作日志格式不兼容，已重置: " + logPath);
+                existing = false;
+                nextSequence = 0;
+                lastTimestamp = 0;
+            }
+        }
+
+        channel = FileChannel.open(logPath, StandardOpenOption.CREATE,
+                                   StandardOpenOption.READ, StandardOpenOption.WRITE);
+        indexChannel = FileChannel.open(indexPath, StandardOpenOption.CREATE,
+                                        StandardOpenOption.READ, StandardOpenOption.WRITE);
+        if (existing) {
+            channel.truncate(validEnd); // 丢弃崩溃时写了一半的记录
+            indexChannel.truncate((long) validIndexEntries * OperationLog.INDEX_ENTRY_SIZE);
+            size = validEnd;
+        } else {
+            channel.truncate(0);
+            indexChannel.truncate(0);
+            ByteBuffer header = ByteBuffer.allocate(OperationLog.HEADER_SIZE);
+            header.putInt(OperationLog.MAGIC).putInt(OperationLog.VERSION).flip();
+            channel.write(header, 0);
+            size = OperationLog.HEADER_SIZE;
+        }
+    }
+}
@@ -0,0 +1,68 @@
+package top.thesumst.observer;
+
+import top.thesumst.command.Command;
+
+/**
+ * OperationRecord - 操作日志中的一条记录
+ */
+public final class OperationRecord {
+
+    private final long sequence;
+    private final long timestamp;
+    private final byte type;
+    private final Command command;   // 读取时未指定缓冲区则为 null
+    private final long offset;
+    private final byte[] commandBytes; // 命令的编码（见 CommandCodec），用于比较与延迟解码
+
+    OperationRecord(long sequence, long timestamp, byte type, Command command, long offset, byte[] commandBytes) {
+        this.sequence = sequence;
+        this.timestamp = timestamp;
+        this.type = type;
+        this.command = command;
+        this.offset = offset;
+        this.commandBytes = commandBytes;
+    }
+
+    public long getSequence() {
+        return sequence;
+    }
+
+    public long getTimestamp() {
+        return timestamp;
+    }
+
+    public byte getType() {
+        return type;
+    }
+
+    public Command getCommand() {
+        return command;
+    }
+
+    /**
+     * 获取记录在操作日志中的偏移
+     * @return 偏移
+     */
+    public long getOffset() {
+        return offset;
+    }
+
+    byte[] getCommandBytes() {
+        return commandBytes;
+    }
+
+    /**
+     * 按文本日志的格式渲染本记录（含换行符）
+     * @param formatter 格式化器
+     * @param out 输出
+     */
+    public void appendText(LogRecordFormatter formatter, StringBuilder out) {
+        formatter.append(out, timestamp, OperationLog.typeName(type), command);
+    }
+
+    @Override
+    public String toString() {
+        return "OperationRecord[seq=" + sequence + ", time=" + timestamp + ", type="
+            + OperationLog.typeName(type) + ", command=" + command + "]";
+    }
+}
@@ -0,0 +1,152 @@
+package top.thesumst.observer;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeParseException;
+
+/**
+ * TextLogIndex - 文本日志的稀疏偏移索引
+ * 日志每增长 SPACING 字节记录一项 (时间, 偏移)，写入 .filename.log.idx，
+ * 按时间范围查询时二分查找索引直接定位，而不必从头扫描
+ * 偏移 0 是隐含的起点，小于 SPACING 的日志不会生成索引文件
+ *
+ * 每项 16 字节：second(8) offset(8)
+ * second 为记录中的本地时间按 UTC 换算的秒数，只用于比较大小
+ */
+public final class TextLogIndex {
+
+    static final int SPACING = 64 * 1024;
+    private static final int ENTRY_SIZE = 16;
+
+    private final Path indexPath;
+    private long lastIndexedOffset = -1;   // -1 表示尚未读取已有索引
+    private final ByteBuffer entry = ByteBuffer.allocate(ENTRY_SIZE);
+
+    /**
+     * 构造函数
+     * @param logFilePath 文本日志路径
+     */
+    public TextLogIndex(String logFilePath) {
+        this.indexPath = pathFor(Paths.get(logFilePath));
+    }
+
+    /**
+     * 获取文本日志对应的索引路径
+     * @param logPath 文本日志路径
+     * @return 索引路径
+     */
+    public static Path pathFor(Path logPath) {
+        return logPath.resolveSibling(logPath.getFileName().toString() + ".idx");
+    }
+
+    /**
+     * 在写入一段日志前调用：距上一个索引项足够远时记录新索引项
+     * @param offset 这段日志将写入的偏移（必须是一条记录的起点）
+     * @param text 这段日志的内容，以 [yyyy-MM-dd HH:mm:ss] 开头
+     */
+    void record(long offset, CharSequence text) {
+        try {
+            if (lastIndexedOffset < 0 || offset < lastIndexedOffset) {
+                // 首次使用，或日志被截断/轮转后重新开始
+                lastIndexedOffset = loadLastOffset(offset);
+            }
+            if (offset - lastIndexedOffset < SPACING) {
+                return;
+            }
+            long second = parseSecond(text);
+            if (second == Long.MIN_VALUE) {
+                return;
+            }
+            try (FileChannel channel = FileChannel.open(indexPath, StandardOpenOption.CREATE,
+                                                         StandardOpenOption.WRITE, StandardOpenOption.APPEND)) {
+                entry.clear();
+                entry.putLong(second).putLong(offset).flip();
+                while (entry.hasRemaining()) {
+                    channel.write(entry);
+                }
+            }
+            lastIndexedOffset = offset;
+        } catch (IOException e) {
+            System.err.println("无法写入日志索引: " + e.getMessage());
+        }
+    }
+
+    /**
+     * 查找时间不早于 from 的记录可能出现的最早偏移
+     * @param logPath 文本日志路径
+     * @param from 起始时间
+     * @return 可以开始扫描的偏移
+     * @throws IOException 如果读取索引失败
+     */
+    public static long seekOffset(Path logPath, LocalDateTime from) throws IOException {
+        Path indexPath = pathFor(logPath);
+        if (!Files.exists(indexPath)) {
+            return 0;
+        }
+        long size = Files.size(logPath);
+        long bound = from.toEpochSecond(ZoneOffset.UTC);
+        ByteBuffer index = ByteBuffer.wrap(Files.readAllBytes(indexPath));
+        int low = 0;
+        int high = index.capacity() / ENTRY_SIZE - 1;
+        long offset = 0;
+        // 同一秒的记录可能跨越多个索引项，因此取严格早于 from 的最后一项
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            long second = index.getLong(mid * ENTRY_SIZE);
+            long candidate = index.getLong(mid * ENTRY_SIZE + 8);
+            if (second < bound && candidate < size) {
+                offset = candidate;
+                low = mid + 1;
+            } else {
+                high = mid - 1;
+            }
+        }
+        return offset;
+    }
+
+    /**
+     * 解析记录开头的时间戳
+     * @return 秒数，格式不符时返回 Long.MIN_VALUE
+     */
+    static long parseSecond(CharSequence text) {
+        if (text.length() < 21 || text.charAt(0) != '[' || text.charAt(20) != ']') {
+            return Long.MIN_VALUE;
+        }
+        try {
+            return LocalDateTime.parse(text.subSequence(1, 20), LogRecordFormatter.TIME_FORMATTER)
+                                .toEpochSecond(ZoneOffset.UTC);
+        } catch (DateTimeParseException e) {
+            return Long.MIN_VALUE;
+        }
+    }
+
+    /**
+     * 读取已有索引的最后一项；索引指向当前日志末尾之外时视为过期并清空
+     */
+    private long loadLastOffset(long logSize) throws IOException {
+        if (!Files.exists(indexPath)) {
+            return 0;
+        }
+        long size = Files.size(indexPath);
+        if (size < ENTRY_SIZE) {
+            return 0;
+        }
+        ByteBuffer last = ByteBuffer.allocate(Long.BYTES);
+        try (FileChannel channel = FileChannel.open(indexPath, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            channel.read(last, (size / ENTRY_SIZE - 1) * ENTRY_SIZE + 8);
+            long offset = last.getLong(0);
+            if (offset > logSize) {
+                channel.truncate(0);
+                return 0;
+            }
+            return offset;
+        }
+    }
+}
@@ -0,0 +1,303 @@
+package top.thesumst.observer;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDateTime;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * TextLogReader - 文本日志读取器
+ * 供 log-show 使用，任何查询都不会把整个日志读入内存：
+ * 1. tail 从文件末尾按块向前读取，只读到包含最后 N 行的位置
+ * 2. 时间范围查询借助 TextLogIndex 定位起点，再流式扫描到结束时间为止
+ * 3. follow 从上次读到的偏移继续读取新增的完整行
+ * tail 与时间范围查询会透明地读取轮转出的历史段（.filename.log.N[.gz]），顺序为从旧到新
+ */
+public final class TextLogReader {
+
+    private static final int CHUNK_SIZE = 8 * 1024;
+
+    private TextLogReader() {
+    }
+
+    /**
+     * 检查日志是否存在（当前日志或任一历史段）
+     * @param logPath 当前日志路径
+     * @return true 如果存在
+     */
+    public static boolean exists(Path logPath) {
+        return Files.exists(logPath) || !LogRotator.segments(logPath).isEmpty();
+    }
+
+    /**
+     * 读取日志的最后 n 行，当前日志不足 n 行时从较新的历史段补足
+     * @param logPath 当前日志路径
+     * @param n 行数
+     * @param out 每行的输出
+     * @return 当前日志读到的末尾偏移，可作为 follow 的起点
+     * @throws IOException 如果读取失败
+     */
+    public static long tail(Path logPath, int n, Consumer<String> out) throws IOException {
+        List<String> lines = new ArrayList<>();
+        long end = 0;
+        if (Files.exists(logPath)) {
+            try (FileChannel channel = FileChannel.open(logPath, StandardOpenOption.READ)) {
+                end = channel.size();
+                long start = end;
+                if (n > 0 && end > 0) {
+                    start = findTailStart(channel, end, n);
+                }
+                end = readLines(channel, start, end, lines::add);
+            }
+        }
+        ArrayDeque<String> earlier = new ArrayDeque<>();
+        if (lines.size() < n) {
+            List<Path> segments = LogRotator.segments(logPath);
+            for (int i = segments.size() - 1; i >= 0 && lines.size() + earlier.size() < n; i--) {
+                // 历史段可能是压缩的，只能顺序读取，保留其最后若干行
+                int wanted = n - lines.size() - earlier.size();
+                ArrayDeque<String> last = new ArrayDeque<>(wanted);
+                try (BufferedReader reader = openSegment(segments.get(i))) {
+                    String line;
+                    while ((line = reader.readLine()) != null) {
+                        if (last.size() == wanted) {
+                            last.pollFirst();
+                        }
+                        last.addLast(line);
+                    }
+                }
+                while (!last.isEmpty()) {
+                    earlier.addFirst(last.pollLast());
+                }
+            }
+        }
+        earlier.forEach(out);
+        lines.forEach(out);
+        return end;
+    }
+
+    /**
+     * 输出时间落在 [from, to] 内的记录（含属于这些记录的续行）
+     * 起点之前的历史段按下一段的首条时间整段跳过，当前日志借助稀疏索引定位
+     * @param logPath 当前日志路径
+     * @param from 起始时间，null 表示不限
+     * @param to 结束时间，null 表示不限
+     * @param out 每行的输出
+     * @throws IOException 如果读取失败
+     */
+    public static void range(Path logPath, LocalDateTime from, LocalDateTime to,
+                             Consumer<String> out) throws IOException {
+        RangeScan scan = new RangeScan(from, to, out);
+        List<Path> segments = LogRotator.segments(logPath);
+        int first = 0;
+        if (scan.lower != null) {
+            // 下一段的首条记录早于起点时，本段的记录都早于起点
+            while (first < segments.size()) {
+                Path next = first + 1 < segments.size() ? segments.get(first + 1) : logPath;
+                String nextTime = firstTimestamp(next);
+                if (nextTime == null || nextTime.compareTo(scan.lower) >= 0) {
+                    break;
+                }
+                first++;
+            }
+        }
+        for (int i = first; i < segments.size() && !scan.done; i++) {
+            try (BufferedReader reader = openSegment(segments.get(i))) {
+                scan.consume(reader);
+            }
+        }
+        if (scan.done || !Files.exists(logPath)) {
+            return;
+        }
+        long start = from != null && first == segments.size() ? TextLogIndex.seekOffset(logPath, from) : 0;
+        try (FileChannel channel = FileChannel.open(logPath, StandardOpenOption.READ)) {
+            channel.position(start);
+            scan.consume(new BufferedReader(
+                new InputStreamReader(Channels.newInputStream(channel), StandardCharsets.UTF_8), CHUNK_SIZE));
+        }
+    }
+
+    /**
+     * 读取 offset 之后新增的完整行（最后一行尚未写完时留到下次）
+     * @param logPath 日志路径
+     * @param offset 上次读到的偏移
+     * @param out 每行的输出
+     * @return 新的偏移；日志被截断时从头开始
+     * @throws IOException 如果读取失败
+     */
+    public static long follow(Path logPath, long offset, Consumer<String> out) throws IOException {
+        if (!Files.exists(logPath)) {
+            return 0;
+        }
+        try (FileChannel channel = FileChannel.open(logPath, StandardOpenOption.READ)) {
+            long end = channel.size();
+            if (end < offset) {
+                offset = 0;
+            }
+            if (end == offset) {
+                return offset;
+            }
+            return readLines(channel, offset, end, out);
+        }
+    }
+
+    // ===== 内部实现 =====
+
+    /**
+     * 按时间范围逐行过滤，状态跨文件保持（续行归属上一条记录）
+     */
+    private static final class RangeScan {
+        private final String lower;
+        private final String upper;
+        private final Consumer<String> out;
+        private boolean inRange;
+        private boolean done;
+
+        RangeScan(LocalDateTime from, LocalDateTime to, Consumer<String> out) {
+            this.lower = from != null ? from.format(LogRecordFormatter.TIME_FORMATTER) : null;
+            this.upper = to != null ? to.format(LogRecordFormatter.TIME_FORMATTER) : null;
+            this.out = out;
+        }
+
+        void consume(BufferedReader reader) throws IOException {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                String time = timestampOf(line);
+                if (time != null) {
+                    // 时间戳格式固定，按字符串比较即按时间比较
+                    if (upper != null && time.compareTo(upper) > 0) {
+                        done = true;
+                        return;
+                    }
+                    inRange = lower == null || time.compareTo(lower) >= 0;
+                }
+                if (inRange) {
+                    out.accept(line);
+                }
+            }
+        }
+    }
+
+    /**
+     * 打开一个日志文件逐行读取，.gz 段边读边解压
+     */
+    private static BufferedReader openSegment(Path segment) throws IOException {
+        InputStream in = Files.newInputStream(segment);
+        if (LogRotator.isCompressed(segment)) {
+            in = new GZIPInputStream(in, CHUNK_SIZE);
+        }
+        return new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8), CHUNK_SIZE);
+    }
+
+    /**
+     * 读取文件首条记录的时间，文件不存在或没有记录时返回 null
+     */
+    private static String firstTimestamp(Path file) throws IOException {
+        if (!Files.exists(file)) {
+            return null;
+        }
+        try (BufferedReader reader = openSegment(file)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                String time = timestampOf(line);
+                if (time != null) {
+                    return time;
+                }
+            }
+            return null;
+        }
+    }
+
+    /**
+     * 从 end 向前按块扫描换行符，返回最后 n 行的起始偏移
+     */
+    private static long findTailStart(FileChannel channel, long end, int n) throws IOException {
+        ByteBuffer chunk = ByteBuffer.allocate(CHUNK_SIZE);
+        long position = end;
+        int newlines = 0;
+        boolean skipFinal = true;    // 文件末尾的换行符不算作新的一行
+        while (position > 0) {
+            int length = (int) Math.min(CHUNK_SIZE, position);
+            position -= length;
+            chunk.clear().limit(length);
+            while (chunk.hasRemaining()) {
+                if (channel.read(chunk, position + chunk.position()) < 0) {
+                    break;
+                }
+            }
+            for (int i = chunk.position() - 1; i >= 0; i--) {
+                if (chunk.get(i) != '\n') {
+                    skipFinal = false;
+                    continue;
+                }
+                if (skipFinal) {
+                    skipFinal = false;
+                    continue;
+                }
+                if (++newlines == n) {
+                    return position + i + 1;
+                }
+            }
+        }
+        return 0;
+    }
+
+    /**
+     * 输出 [start, end) 内的完整行，返回最后一个完整行之后的偏移
+     */
+    private static long readLines(FileChannel channel, long start, long end,
+                                  Consumer<String> out) throws IOException {
+        ByteBuffer chunk = ByteBuffer.allocate(CHUNK_SIZE);
+        ByteArrayOutputStream line = new ByteArrayOutputStream(256);
+        long position = start;
+        long consumed = start;
+        while (position < end) {
+            chunk.clear().limit((int) Math.min(CHUNK_SIZE, end - position));
+            int read = channel.read(chunk, position);
+            if (read <= 0) {
+                break;
+            }
+            for (int i = 0; i < read; i++) {
+                byte b = chunk.get(i);
+                if (b == '\n') {
+                    out.accept(decode(line));
+                    line.reset();
+                    consumed = position + i + 1;
+                } else {
+                    line.write(b);
+                }
+            }
+            position += read;
+        }
+        return consumed;
+    }
+
+    private static String decode(ByteArrayOutputStream line) {
+        String text = line.toString(StandardCharsets.UTF_8);
+        return text.endsWith("\r") ? text.substring(0, text.length() - 1) : text;
+    }
+
+    /**
+     * 取出行首 [yyyy-MM-dd HH:mm:ss] 中的时间，续行返回 null
+     */
+    private static String timestampOf(String line) {
+        if (line.length() < 21 || line.charAt(0) != '[' || line.charAt(20) != ']') {
+            return null;
+        }
+        return line.substring(1, 20);
+    }
+}
@@ -3,7 +3,10 @@ package top.thesumst.workspace;
 import top.thesumst.engine.TextBuffer;
 import top.thesumst.command.CommandHistory;
 import top.thesumst.command.Command;
+import top.thesumst.observer.AsyncObserver;
+import top.thesumst.observer.EditorEvent;
 import top.thesumst.observer.EditorObserver;
+import top.thesumst.observer.ObserverRegistry;
 
 import java.util.ArrayList;
 import java.util.List;
@@ -18,8 +21,14 @@ public class EditorInstance {
     private final String filePath;           // 文件路径
     private final TextBuffer buffer;         // 文本内容
     private final CommandHistory history;    // 命令历史（撤销/重做）
-    private boolean isModified;              // 修改标记
-    private final List<EditorObserver> observers; // 观察者列表
+    private boolean forcedModified;          // 不经过命令历史的修改标记（如 init、状态恢复）
+    private long savedChecksum;              // 最近一次加载/保存时的内容校验和
+    private long savedFileSize;              // 最近一次加载/保存时的磁盘文件大小（-1 表示未知）
+    private long savedLastModified;          // 最近一次加载/保存时的磁盘修改时间
+    private final ObserverRegistry observers; // 观察者注册表（异步分发的观察者以 AsyncObserver 包装存放）
+    private boolean asyncDispatchEnabled;    // 是否对声明 ASYNC 的观察者异步分发
+    private int batchDepth;                  // 进行中的事件批次嵌套层数
+    private final List<EditorEvent> pendingEvents = new ArrayList<>(); // 批次中暂存的事件
     private boolean loggingEnabled;          // 日志开关
     
     /**
@@ -29,15 +38,18 @@ public class EditorInstance {
     public EditorInstance(String filePath) {
         this.filePath = filePath;
         this.buffer = new TextBuffer();
-        this.history = new CommandHistory();
-        this.isModified = false;
-        this.observers = new ArrayList<>();
+        this.history = new CommandHistory(buffer);
+        this.forcedModified = false;
+        this.savedFileSize = -1;
+        this.observers = new ObserverRegistry();
         this.loggingEnabled = false;
         
         // 设置命令历史的回调，自动通知观察者
         this.history.setOnExecute(this::notifyCommandExecuted);
         this.history.setOnUndo(this::notifyCommandUndone);
         this.history.setOnRedo(this::notifyCommandRedone);
+        this.history.setOnBulkUndo(this::notifyCommandsUndone);
+        this.history.setOnBulkRedo(this::notifyCommandsRedone);
     }
     
     /**
@@ -66,32 +78,69 @@ public class EditorInstance {
     
     /**
      * 检查文件是否被修改
+     * 由命令历史的当前位置推导：撤销回保存时的位置即视为未修改
      * @return true 如果文件已修改
      */
     public boolean isModified() {
-        return isModified;
+        if (forcedModified) {
+            return true;
+        }
+        if (history.hasSavePoint()) {
+            return !history.isAtSavePoint();
+        }
+        return history.getCurrentNodeId() != 0;
     }
     
     /**
      * 设置修改标记
+     * 设为 false 时把当前历史位置记为保存点
      * @param modified 修改状态
      */
     public void setModified(boolean modified) {
-        this.isModified = modified;
+        if (modified) {
+            this.forcedModified = true;
+        } else {
+            markAsSaved();
+        }
     }
     
     /**
-     * 标记文件为已修改
+     * 标记文件为已修改（用于不经过命令历史的修改）
      */
     public void markAsModified() {
-        this.isModified = true;
+        this.forcedModified = true;
     }
     
     /**
      * 标记文件为未修改（通常在保存后调用）
      */
     public void markAsSaved() {
-        this.isModified = false;
+        this.forcedModified = false;
+        history.markSavePoint();
+    }
+    
+    /**
+     * 记录与磁盘文件一致时的内容状态（加载或保存后调用）
+     * @param checksum 内容校验和（见 TextBuffer.checksum）
+     * @param fileSize 磁盘文件大小
+     * @param lastModified 磁盘文件修改时间（毫秒）
+     */
+    void recordDiskState(long checksum, long fileSize, long lastModified) {
+        this.savedChecksum = checksum;
+        this.savedFileSize = fileSize;
+        this.savedLastModified = lastModified;
+    }
+    
+    long getSavedChecksum() {
+        return savedChecksum;
+    }
+    
+    long getSavedFileSize() {
+        return savedFileSize;
+    }
+    
+    long getSavedLastModified() {
+        return savedLastModified;
     }
     
     /**
@@ -114,16 +163,110 @@ public class EditorInstance {
      */
     public void addObserver(EditorObserver observer) {
         if (!observers.contains(observer)) {
-            observers.add(observer);
+            observers.add(observer, wrap(observer));
         }
     }
     
     /**
-     * 移除观察者
+     * 移除观察者（异步分发的观察者会先投递完已排队的事件）
      * @param observer 观察者对象
      */
     public void removeObserver(EditorObserver observer) {
-        observers.remove(observer);
+        if (observers.remove(observer) instanceof AsyncObserver async) {
+            async.close();
+        }
+    }
+    
+    /**
+     * 设置是否异步分发（默认关闭）
+     * 开启后声明 {@link EditorObserver.Dispatch#ASYNC} 的观察者各自经由独立队列在虚拟线程上接收事件，
+     * 其余观察者仍在编辑线程上同步回调；关闭时先投递完已排队的事件
+     * @param enabled 是否启用
+     */
+    public void setAsyncDispatchEnabled(boolean enabled) {
+        if (asyncDispatchEnabled == enabled) {
+            return;
+        }
+        asyncDispatchEnabled = enabled;
+        List<AsyncObserver> retired = new ArrayList<>();
+        observers.replaceAll((observer, entry) -> {
+            if (entry != observer && entry instanceof AsyncObserver async) {
+                retired.add(async);
+            }
+            return wrap(observer);
+        });
+        // 在注册表锁之外等待旧队列排空，回调中再操作注册表也不会死锁
+        for (AsyncObserver async : retired) {
+            async.close();
+        }
+    }
+    
+    /**
+     * 检查是否异步分发
+     * @return true 如果已启用
+     */
+    public boolean isAsyncDispatchEnabled() {
+        return asyncDispatchEnabled;
+    }
+    
+    /**
+     * 获取异步分发的观察者，可用于查看各自的队列深度
+     * @return 异步观察者列表
+     */
+    public List<AsyncObserver> getAsyncObservers() {
+        List<AsyncObserver> result = new ArrayList<>();
+        for (EditorObserver observer : observers.snapshot()) {
+            if (observer instanceof AsyncObserver async) {
+                result.add(async);
+            }
+        }
+        return result;
+    }
+    
+    /**
+     * 等待所有异步观察者处理完已排队的事件
+     */
+    public void awaitObservers() {
+        for (EditorObserver observer : observers.snapshot()) {
+            if (observer instanceof AsyncObserver async) {
+                async.awaitIdle();
+            }
+        }
+    }
+    
+    private EditorObserver wrap(EditorObserver observer) {
+        if (asyncDispatchEnabled && !(observer instanceof AsyncObserver)
+                && observer.getDispatch() == EditorObserver.Dispatch.ASYNC) {
+            return new AsyncObserver(observer);
+        }
+        return observer;
+    }
+    
+    /**
+     * 开始一个事件批次：结束前的事件对按批接收的观察者（wantsBatches）暂存，
+     * 在最外层 endBatch 时作为一批投递；其余观察者仍逐条即时回调。可以嵌套
+     */
+    public void beginBatch() {
+        batchDepth++;
+    }
+    
+    /**
+     * 结束事件批次，最外层结束时投递暂存的事件
+     */
+    public void endBatch() {
+        if (batchDepth == 0) {
+            throw new IllegalStateException("没有进行中的事件批次");
+        }
+        if (--batchDepth > 0 || pendingEvents.isEmpty()) {
+            return;
+        }
+        List<EditorEvent> events = List.copyOf(pendingEvents);
+        pendingEvents.clear();
+        for (EditorObserver observer : observers.snapshot()) {
+            if (observer.wantsBatches()) {
+                observer.onEvents(events);
+            }
+        }
     }
     
     /**
@@ -131,9 +274,7 @@ public class EditorInstance {
      * @param command 已执行的命令
      */
     public void notifyCommandExecuted(Command command) {
-        for (EditorObserver observer : observers) {
-            observer.onCommandExecuted(command);
-        }
+        dispatch(EditorEvent.Type.EXECUTE, List.of(command));
     }
     
     /**
@@ -141,9 +282,7 @@ public class EditorInstance {
      * @param command 已撤销的命令
      */
     public void notifyCommandUndone(Command command) {
-        for (EditorObserver observer : observers) {
-            observer.onCommandUndone(command);
-        }
+        dispatch(EditorEvent.Type.UNDO, List.of(command));
     }
     
     /**
@@ -151,8 +290,45 @@ public class EditorInstance {
      * @param command 已重做的命令
      */
     public void notifyCommandRedone(Command command) {
-        for (EditorObserver observer : observers) {
-            observer.onCommandRedone(command);
+        dispatch(EditorEvent.Type.REDO, List.of(command));
+    }
+    
+    /**
+     * 通知所有观察者一批命令已撤销（只通知一次）
+     * @param commands 按撤销顺序排列的命令
+     */
+    public void notifyCommandsUndone(List<Command> commands) {
+        dispatch(EditorEvent.Type.UNDO, commands);
+    }
+    
+    /**
+     * 通知所有观察者一批命令已重做（只通知一次）
+     * @param commands 按重做顺序排列的命令
+     */
+    public void notifyCommandsRedone(List<Command> commands) {
+        dispatch(EditorEvent.Type.REDO, commands);
+    }
+    
+    /**
+     * 分发一组同类事件：按批接收的观察者共享同一个事件列表（事件对象只在需要时创建），
+     * 批次进行中则暂存到批次结束
+     */
+    private void dispatch(EditorEvent.Type type, List<Command> commands) {
+        List<EditorEvent> events = null;
+        for (EditorObserver observer : observers.snapshot()) {
+            if (!observer.wantsBatches()) {
+                type.deliver(observer, commands);
+                continue;
+            }
+            if (events == null) {
+                events = EditorEvent.of(type, commands, System.currentTimeMillis());
+                if (batchDepth > 0) {
+                    pendingEvents.addAll(events);
+                }
+            }
+            if (batchDepth == 0) {
+                observer.onEvents(events);
+            }
         }
     }
     
@@ -175,6 +351,6 @@ public class EditorInstance {
     @Override
     public String toString() {
         return String.format("EditorInstance[file=%s, modified=%s, lines=%d, logging=%s]", 
-                           filePath, isModified, buffer.getSize(), loggingEnabled);
+                           filePath, isModified(), buffer.getSize(), loggingEnabled);
     }
 }
@@ -0,0 +1,159 @@
+package top.thesumst.workspace;
+
+import top.thesumst.engine.TextBuffer;
+import top.thesumst.memento.WorkspaceMemento;
+import top.thesumst.memento.WorkspaceMemento.FileState;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * StateSnapshotter - 在后台编码并写出工作区状态
+ * 调用方在编辑线程上截取各文件内容的快照（只复制行块引用），
+ * 压缩、编码和写文件在后台单线程上按提交顺序执行；
+ * 内容与上一次相同（行块全部共享）的文件直接复用上一次的压缩结果；
+ * 先写临时文件再替换状态文件，写到一半被中断时旧的状态文件仍完整；
+ * 可合并的保存在开始写之前若同一状态文件已有更新的提交，直接跳过，由更新的那次写出
+ */
+final class StateSnapshotter implements Closeable {
+
+    /**
+     * 一个文件在截取时刻的状态
+     */
+    static final class Entry {
+        final String path;
+        final boolean modified;
+        final boolean logging;
+        final TextBuffer.Snapshot content;   // 不附带未保存内容时为 null
+
+        Entry(String path, boolean modified, boolean logging, TextBuffer.Snapshot content) {
+            this.path = path;
+            this.modified = modified;
+            this.logging = logging;
+            this.content = content;
+        }
+    }
+
+    private static final class Compressed {
+        final TextBuffer.Snapshot snapshot;
+        final byte[] bytes;
+
+        Compressed(TextBuffer.Snapshot snapshot, byte[] bytes) {
+            this.snapshot = snapshot;
+            this.bytes = bytes;
+        }
+    }
+
+    private final ExecutorService executor = Executors.newSingleThreadExecutor(r -> {
+        Thread thread = new Thread(r, "workspace-snapshot");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private Map<String, Compressed> compressed = new HashMap<>(); // 仅由后台线程访问
+    private final Map<Path, Long> latest = new ConcurrentHashMap<>(); // 各状态文件最近一次提交的序号
+    private long sequence;                                            // 仅由提交线程访问
+
+    /**
+     * 提交一次保存
+     * @param entries 各文件状态
+     * @param activePath 活动文件路径，可为 null
+     * @param stateFile 状态文件
+     * @param journal 以该状态文件为基线的日志，写完后随之重建；没有时为 null
+     * @param cut 截取状态时的日志位置（journal 为 null 时忽略）
+     * @return 写入完成时完成；写入失败时以 UncheckedIOException 异常完成
+     */
+    CompletableFuture<Void> submit(List<Entry> entries, String activePath, Path stateFile,
+                                   WorkspaceJournal journal, long cut) {
+        return submit(entries, activePath, stateFile, journal, cut, false);
+    }
+
+    /**
+     * 提交一次保存
+     * @param entries 各文件状态
+     * @param activePath 活动文件路径，可为 null
+     * @param stateFile 状态文件
+     * @param journal 以该状态文件为基线的日志，写完后随之重建；没有时为 null
+     * @param cut 截取状态时的日志位置（journal 为 null 时忽略）
+     * @param coalesce 为 true 时，开始写之前若同一状态文件已有更新的提交则跳过
+     * @return 写入完成（或被跳过）时完成；写入失败时以 UncheckedIOException 异常完成
+     */
+    CompletableFuture<Void> submit(List<Entry> entries, String activePath, Path stateFile,
+                                   WorkspaceJournal journal, long cut, boolean coalesce) {
+        long id = ++sequence;
+        latest.put(stateFile, id);
+        return CompletableFuture.runAsync(() -> {
+            if (coalesce && latest.get(stateFile) != id) {
+                return;
+            }
+            try {
+                write(entries, activePath, stateFile, journal, cut);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }, executor);
+    }
+
+    private void write(List<Entry> entries, String activePath, Path stateFile,
+                       WorkspaceJournal journal, long cut) throws IOException {
+        Map<String, Compressed> retained = new HashMap<>();
+        List<FileState> states = new ArrayList<>(entries.size());
+        for (Entry entry : entries) {
+            byte[] content = null;
+            if (entry.content != null) {
+                Compressed previous = compressed.get(entry.path);
+                if (previous == null || !previous.snapshot.sharesAllChunksWith(entry.content)) {
+                    previous = new Compressed(entry.content, WorkspaceMemento.compressContent(entry.content));
+                }
+                retained.put(entry.path, previous);
+                content = previous.bytes;
+            }
+            states.add(new FileState(entry.path, entry.modified, entry.logging, content));
+        }
+        compressed = retained;
+
+        // 编码后一次写入临时文件
+        ByteBuffer data = new WorkspaceMemento(states, activePath).toBytes();
+        long baseId = WorkspaceJournal.baseId(data);
+        Path temp = stateFile.resolveSibling(stateFile.getFileName() + ".tmp");
+        try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            while (data.hasRemaining()) {
+                channel.write(data);
+            }
+        }
+        if (journal != null) {
+            journal.rebase(temp, baseId, cut);
+        } else {
+            Files.move(temp, stateFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        }
+    }
+
+    /**
+     * 等待已提交的保存写完后停止后台线程
+     */
+    @Override
+    public void close() {
+        executor.shutdown();
+        try {
+            executor.awaitTermination(1, TimeUnit.MINUTES);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -1,15 +1,27 @@
 package top.thesumst.workspace;
 
+import top.thesumst.command.Command;
+import top.thesumst.command.HistoryJournal;
+import top.thesumst.engine.TextBuffer;
+import top.thesumst.observer.EditorObserver;
 import top.thesumst.observer.FileLogger;
+import top.thesumst.observer.LogFlushPolicy;
+import top.thesumst.observer.LogRotationPolicy;
+import top.thesumst.observer.OperationLogger;
 import top.thesumst.memento.WorkspaceMemento;
 import top.thesumst.memento.WorkspaceMemento.FileState;
 
 import java.io.*;
+import java.nio.ByteBuffer;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedInputStream;
 
 /**
  * Workspace - 工作区管理器
@@ -20,6 +32,19 @@ public class Workspace {
     private final Map<String, EditorInstance> files;  // 所有打开的文件 (路径 -> EditorInstance)
     private EditorInstance activeEditor;              // 当前活动的编辑器
     private final Map<String, FileLogger> loggers;    // 每个文件的日志记录器
+    private final Map<String, OperationLogger> operationLoggers; // 每个文件的二进制操作日志
+    private boolean historyPersistenceEnabled;        // 是否将撤销历史持久化到 .filename.history
+    private LogFlushPolicy logFlushPolicy;            // 新建日志记录器使用的刷写策略
+    private LogRotationPolicy logRotationPolicy;      // 新建日志记录器使用的轮转策略
+    private boolean operationLogEnabled;              // 启用日志时是否同时写入 .filename.oplog
+    private boolean asyncObserverDispatch;            // 新打开的编辑器是否异步分发观察者事件
+    private final WorkspaceEventBus eventBus;         // 文件生命周期事件
+    private Map<String, TextBuffer.Snapshot> capturedContent = new HashMap<>(); // 上次保存状态时截取的未保存内容
+    private StateSnapshotter snapshotter;             // 第一次保存状态时创建
+    private WorkspaceJournal journal;                 // 状态日志，未启用时为 null
+    private WorkspaceEventBus.Subscription journalSubscription;
+    private CompletableFuture<Void> compaction;       // 进行中的状态日志压实
+    private boolean contentPending;                   // 上次写入状态文件后又有编辑，未保存的内容尚未写出
     
     private static final String WORKSPACE_STATE_FILE = ".editor_workspace"; // 工作区状态文件
     
@@ -27,9 +52,107 @@ public class Workspace {
      * 构造函数
      */
     public Workspace() {
-        this.files = new HashMap<>();
+        this.files = new LinkedHashMap<>();
         this.activeEditor = null;
         this.loggers = new HashMap<>();
+        this.operationLoggers = new HashMap<>();
+        this.historyPersistenceEnabled = false;
+        this.logFlushPolicy = LogFlushPolicy.synchronous();
+        this.logRotationPolicy = LogRotationPolicy.none();
+        this.eventBus = new WorkspaceEventBus();
+    }
+    
+    /**
+     * 获取工作区事件总线，可订阅文件的加载、激活、保存、关闭与工作区恢复事件
+     * @return 事件总线
+     */
+    public WorkspaceEventBus getEventBus() {
+        return eventBus;
+    }
+    
+    /**
+     * 设置是否持久化撤销历史（默认关闭）
+     * 开启后每个文件的撤销历史会追加写入同目录下的 .filename.history，
+     * 重新加载文件时可以继续撤销上次会话的编辑
+     * @param enabled 是否启用
+     */
+    public void setHistoryPersistenceEnabled(boolean enabled) {
+        this.historyPersistenceEnabled = enabled;
+    }
+    
+    /**
+     * 检查是否持久化撤销历史
+     * @return true 如果已启用
+     */
+    public boolean isHistoryPersistenceEnabled() {
+        return historyPersistenceEnabled;
+    }
+    
+    /**
+     * 设置日志刷写策略（默认同步写入，只影响之后启用的日志）
+     * @param policy 刷写策略
+     */
+    public void setLogFlushPolicy(LogFlushPolicy policy) {
+        this.logFlushPolicy = Objects.requireNonNull(policy);
+    }
+    
+    /**
+     * 获取日志刷写策略
+     * @return 刷写策略
+     */
+    public LogFlushPolicy getLogFlushPolicy() {
+        return logFlushPolicy;
+    }
+    
+    /**
+     * 设置日志轮转策略（默认不轮转，只影响之后启用的日志）
+     * @param policy 轮转策略
+     */
+    public void setLogRotationPolicy(LogRotationPolicy policy) {
+        this.logRotationPolicy = Objects.requireNonNull(policy);
+    }
+    
+    /**
+     * 获取日志轮转策略
+     * @return 轮转策略
+     */
+    public LogRotationPolicy getLogRotationPolicy() {
+        return logRotationPolicy;
+    }
+    
+    /**
+     * 设置是否对日志等声明异步的观察者异步分发事件（默认关闭，同时作用于已打开的编辑器）
+     * @param enabled 是否启用
+     */
+    public void setAsyncObserverDispatch(boolean enabled) {
+        this.asyncObserverDispatch = enabled;
+        for (EditorInstance editor : files.values()) {
+            editor.setAsyncDispatchEnabled(enabled);
+        }
+    }
+    
+    /**
+     * 检查是否异步分发观察者事件
+     * @return true 如果已启用
+     */
+    public boolean isAsyncObserverDispatch() {
+        return asyncObserverDispatch;
+    }
+    
+    /**
+     * 设置启用日志时是否同时写入二进制操作日志 .filename.oplog（默认关闭）
+     * @param enabled 是否启用
+     */
+    public void setOperationLogEnabled(boolean enabled) {
+        this.operationLogEnabled = enabled;
+    }
+    
+    /**
+     * 检查是否写入二进制操作日志
+     * @return true 如果已启用
+     */
+    public boolean isOperationLogEnabled() {
+        return operationLogEnabled;
     }
     
     /**
@@ -40,26 +163,46 @@ public class Workspace {
      * @throws IOException 如果文件读取失败
      */
     public EditorInstance load(String path) throws IOException {
+        return load(path, null);
+    }
+    
+    /**
+     * 加载文件，可用上次会话未保存的内容替换从磁盘读到的内容
+     * @param path 文件路径
+     * @param unsavedContent 未保存的内容，为 null 时使用磁盘内容
+     * @return 加载的 EditorInstance
+     * @throws IOException 如果文件读取失败
+     */
+    private EditorInstance load(String path, List<String> unsavedContent) throws IOException {
         // 规范化路径
         String normalizedPath = normalizePath(path);
         
         // 如果文件已经打开，直接返回并设为活动编辑器
         if (files.containsKey(normalizedPath)) {
-            activeEditor = files.get(normalizedPath);
+            setActiveEditor(files.get(normalizedPath));
             return activeEditor;
         }
         
         // 创建新的编辑器实例
-        EditorInstance editor = new EditorInstance(normalizedPath);
+        EditorInstance editor = newEditor(normalizedPath);
         
         // 检查文件是否存在
         Path filePath = Paths.get(normalizedPath);
+        boolean autoEnableLog = false;
         if (Files.exists(filePath)) {
-            // 读取文件内容
-            List<String> lines = Files.readAllLines(filePath, StandardCharsets.UTF_8);
+            // 读取文件内容，同时计算原始字节的校验和
+            List<String> lines = new ArrayList<>();
+            CRC32 crc = new CRC32();
+            try (BufferedReader in = new BufferedReader(new InputStreamReader(
+                    new CheckedInputStream(Files.newInputStream(filePath), crc),
+                    StandardCharsets.UTF_8.newDecoder()))) {
+                String line;
+                while ((line = in.readLine()) != null) {
+                    lines.add(line);
+                }
+            }
             
             // 检查首行是否为 #log，自动启用日志
-            boolean autoEnableLog = false;
             if (!lines.isEmpty() && lines.get(0).trim().equals("#log")) {
                 autoEnableLog = true;
             }
@@ -68,20 +211,29 @@ public class Workspace {
                 editor.getBuffer().append(line);
             }
             editor.markAsSaved(); // 刚加载的文件标记为未修改
-            
-            // 自动启用日志
-            if (autoEnableLog) {
-                enableLogging(editor);
-            }
+            recordDiskState(editor, crc.getValue());
         } else {
             // 文件不存在，创建空缓冲区
             // 标记为未修改（新文件）
             editor.markAsSaved();
         }
+        attachHistoryJournal(editor);
+        if (unsavedContent != null) {
+            // 换成未保存的内容：优先跳回撤销日志记录的上次所在节点，否则在磁盘内容之上作为一步可撤销的编辑
+            // 此时还没有观察者，恢复不会写入操作日志，也不算一次新的修改
+            editor.getHistory().restoreContent(unsavedContent);
+        }
+        trackModified(editor);
+        
+        // 自动启用日志
+        if (autoEnableLog) {
+            enableLogging(editor);
+        }
         
         // 添加到工作区
         files.put(normalizedPath, editor);
-        activeEditor = editor;
+        eventBus.publish(WorkspaceEvent.Type.LOADED, normalizedPath, editor);
+        setActiveEditor(editor);
         
         return editor;
     }
@@ -100,18 +252,21 @@ public class Workspace {
         
         // 如果文件已经打开，直接返回并设为活动编辑器
         if (files.containsKey(normalizedPath)) {
-            activeEditor = files.get(normalizedPath);
+            setActiveEditor(files.get(normalizedPath));
             return activeEditor;
         }
         
         // 创建新的编辑器实例（空缓冲区）
-    EditorInstance editor = new EditorInstance(normalizedPath);
+    EditorInstance editor = newEditor(normalizedPath);
+    trackModified(editor);
     // 语义更新：init 后直接标记为已修改，便于退出时提示保存（符合课程“新缓冲区标记为已修改”要求）
     editor.markAsModified();
+    attachHistoryJournal(editor);
         
         // 添加到工作区
         files.put(normalizedPath, editor);
-        activeEditor = editor;
+        eventBus.publish(WorkspaceEvent.Type.CREATED, normalizedPath, editor);
+        setActiveEditor(editor);
         
         return editor;
     }
@@ -126,20 +281,23 @@ public class Workspace {
 
         // 与 init 保持一致的已存在策略（暂不抛错，后续可统一调整）
         if (files.containsKey(normalizedPath)) {
-            activeEditor = files.get(normalizedPath);
+            setActiveEditor(files.get(normalizedPath));
             return activeEditor;
         }
 
-        EditorInstance editor = new EditorInstance(normalizedPath);
+        EditorInstance editor = newEditor(normalizedPath);
+        trackModified(editor);
         // 添加首行 #log 以标记
         editor.getBuffer().append("#log");
         // 标记为已修改：需要用户执行 save
         editor.markAsModified();
         // 启用日志（与 load 检测首行 #log 的行为一致）
         enableLogging(editor);
+        attachHistoryJournal(editor);
 
         files.put(normalizedPath, editor);
-        activeEditor = editor;
+        eventBus.publish(WorkspaceEvent.Type.CREATED, normalizedPath, editor);
+        setActiveEditor(editor);
         return editor;
     }
     
@@ -152,7 +310,7 @@ public class Workspace {
         String normalizedPath = normalizePath(path);
         
         if (files.containsKey(normalizedPath)) {
-            activeEditor = files.get(normalizedPath);
+            setActiveEditor(files.get(normalizedPath));
             return true;
         }
         
@@ -180,6 +338,17 @@ public class Workspace {
         
         // 从工作区移除
         files.remove(normalizedPath);
+        editor.getHistory().detachJournal();
+        editor.awaitObservers();
+        FileLogger logger = loggers.remove(normalizedPath);
+        if (logger != null) {
+            logger.close();
+        }
+        OperationLogger operationLogger = operationLoggers.remove(normalizedPath);
+        if (operationLogger != null) {
+            operationLogger.close();
+        }
+        eventBus.publish(WorkspaceEvent.Type.CLOSED, normalizedPath, editor);
         
         return true;
     }
@@ -190,6 +359,34 @@ public class Workspace {
      * @throws IOException 如果保存失败
      */
     public void save(String path) throws IOException {
+        EditorInstance editor = resolveEditorToSave(path);
+        writeToDisk(editor, editor.getBuffer().checksum());
+    }
+    
+    /**
+     * 仅在内容与磁盘不一致时保存文件
+     * 若缓冲区内容与最近一次加载/保存的字节完全相同且磁盘文件未被外部改动，则跳过写入，
+     * 只把当前历史位置记为保存点（例如撤销回原状态后退出）
+     * @param path 文件路径（如果为null则保存当前活动文件）
+     * @return true 如果实际写入了磁盘
+     * @throws IOException 如果保存失败
+     */
+    public boolean saveIfChanged(String path) throws IOException {
+        EditorInstance editor = resolveEditorToSave(path);
+        long checksum = editor.getBuffer().checksum();
+        if (matchesDisk(editor, checksum)) {
+            editor.markAsSaved();
+            if (editor.getHistory().getJournal() != null) {
+                editor.getHistory().markSaved(checksum);
+            }
+            eventBus.publish(WorkspaceEvent.Type.SAVED, editor.getFilePath(), editor);
+            return false;
+        }
+        writeToDisk(editor, checksum);
+        return true;
+    }
+    
+    private EditorInstance resolveEditorToSave(String path) {
         String normalizedPath = (path == null) ? 
             (activeEditor != null ? activeEditor.getFilePath() : null) : 
             normalizePath(path);
@@ -202,9 +399,12 @@ public class Workspace {
         if (editor == null) {
             throw new IllegalArgumentException("文件未打开: " + normalizedPath);
         }
-        
+        return editor;
+    }
+    
+    private void writeToDisk(EditorInstance editor, long checksum) throws IOException {
         // 确保父目录存在
-        Path filePath = Paths.get(normalizedPath);
+        Path filePath = Paths.get(editor.getFilePath());
         Path parentDir = filePath.getParent();
         if (parentDir != null && !Files.exists(parentDir)) {
             Files.createDirectories(parentDir);
@@ -216,6 +416,41 @@ public class Workspace {
         
         // 标记为未修改
         editor.markAsSaved();
+        recordDiskState(editor, checksum);
+        
+        // 记录撤销历史的保存点
+        if (editor.getHistory().getJournal() != null) {
+            editor.getHistory().markSaved(checksum);
+        }
+        eventBus.publish(WorkspaceEvent.Type.SAVED, editor.getFilePath(), editor);
+    }
+    
+    /**
+     * 记录编辑器当前内容对应的磁盘文件状态
+     * 校验和按 Files.write 的输出计算（每行 UTF-8 内容加系统换行符），
+     * 因此与 TextBuffer.checksum 相等即表示写出的字节与磁盘完全相同
+     */
+    private void recordDiskState(EditorInstance editor, long checksum) {
+        try {
+            Path filePath = Paths.get(editor.getFilePath());
+            editor.recordDiskState(checksum, Files.size(filePath),
+                                   Files.getLastModifiedTime(filePath).toMillis());
+        } catch (IOException e) {
+            editor.recordDiskState(checksum, -1, 0);
+        }
+    }
+    
+    private boolean matchesDisk(EditorInstance editor, long checksum) {
+        if (editor.getSavedFileSize() < 0 || editor.getSavedChecksum() != checksum) {
+            return false;
+        }
+        try {
+            Path filePath = Paths.get(editor.getFilePath());
+            return Files.size(filePath) == editor.getSavedFileSize()
+                && Files.getLastModifiedTime(filePath).toMillis() == editor.getSavedLastModified();
+        } catch (IOException e) {
+            return false; // 文件已被删除等，需要重新写入
+        }
     }
     
     /**
@@ -275,8 +510,30 @@ public class Workspace {
      * 关闭所有文件
      */
     public void closeAll() {
+        for (EditorInstance editor : files.values()) {
+            editor.getHistory().detachJournal();
+            editor.awaitObservers();
+        }
+        for (FileLogger logger : loggers.values()) {
+            logger.close(); // 异步日志按策略写完剩余事件
+        }
+        loggers.clear();
+        for (OperationLogger operationLogger : operationLoggers.values()) {
+            operationLogger.close();
+        }
+        operationLoggers.clear();
+        List<EditorInstance> closed = new ArrayList<>(files.values());
         files.clear();
+        capturedContent.clear();
         activeEditor = null;
+        if (snapshotter != null) {
+            snapshotter.close(); // 写完已提交的状态保存
+            snapshotter = null;
+        }
+        stopStateJournal(); // 关闭文件不是工作区状态的变化，不写入日志
+        for (EditorInstance editor : closed) {
+            eventBus.publish(WorkspaceEvent.Type.CLOSED, editor.getFilePath(), editor);
+        }
     }
     
     /**
@@ -343,6 +600,47 @@ public class Workspace {
         return matches;
     }
     
+    /**
+     * 为编辑器挂接撤销日志（仅在启用历史持久化时）
+     * @param editor 编辑器实例
+     */
+    private void attachHistoryJournal(EditorInstance editor) {
+        if (!historyPersistenceEnabled) {
+            return;
+        }
+        try {
+            HistoryJournal journal = new HistoryJournal(editor.getFilePath());
+            editor.getHistory().attachJournal(journal, editor.getBuffer(), editor.getBuffer().checksum());
+        } catch (IOException e) {
+            System.err.println("无法打开撤销日志: " + e.getMessage());
+        }
+    }
+    
+    /**
+     * 切换活动编辑器，实际发生变化时发布 ACTIVATED 事件
+     */
+    private void setActiveEditor(EditorInstance editor) {
+        if (activeEditor != editor) {
+            activeEditor = editor;
+            eventBus.publish(WorkspaceEvent.Type.ACTIVATED, editor.getFilePath(), editor);
+        }
+    }
+    
+    private EditorInstance newEditor(String normalizedPath) {
+        EditorInstance editor = new EditorInstance(normalizedPath);
+        editor.setAsyncDispatchEnabled(asyncObserverDispatch);
+        return editor;
+    }
+    
+    /**
+     * 启用状态日志时跟踪编辑器修改状态的变化
+     */
+    private void trackModified(EditorInstance editor) {
+        if (journal != null) {
+            editor.addObserver(new ModifiedTracker(editor));
+        }
+    }
+    
     // ===== 日志管理 =====
     
     /**
@@ -352,10 +650,18 @@ public class Workspace {
     public void enableLogging(EditorInstance editor) {
         String path = editor.getFilePath();
         if (!loggers.containsKey(path)) {
-            FileLogger logger = new FileLogger(path);
+            FileLogger logger = new FileLogger(path, logFlushPolicy, logRotationPolicy);
             editor.addObserver(logger);
             editor.setLoggingEnabled(true);
             loggers.put(path, logger);
+            if (operationLogEnabled) {
+                OperationLogger operationLogger = new OperationLogger(path);
+                editor.addObserver(operationLogger);
+                operationLoggers.put(path, operationLogger);
+            }
+            if (journal != null) {
+                journal.logging(path, true);
+            }
         }
     }
     
@@ -379,6 +685,27 @@ public class Workspace {
             editor.removeObserver(logger);
             editor.setLoggingEnabled(false);
             loggers.remove(path);
+            logger.close();
+        }
+        OperationLogger operationLogger = operationLoggers.remove(path);
+        if (operationLogger != null) {
+            editor.removeObserver(operationLogger);
+            operationLogger.close();
+        }
+        if (journal != null) {
+            journal.logging(path, false);
+        }
+    }
+    
+    /**
+     * 等待指定编辑器已记录的日志全部写入文件
+     * @param editor 编辑器实例
+     */
+    public void flushLog(EditorInstance editor) {
+        editor.awaitObservers();
+        FileLogger logger = loggers.get(editor.getFilePath());
+        if (logger != null) {
+            logger.flush();
         }
     }
     
@@ -411,28 +738,211 @@ public class Workspace {
     }
     
     /**
-     * 保存工作区状态到指定文件
+     * 保存工作区状态到文件
+     * @param includeUnsavedContent 是否附带已修改文件的未保存内容
+     * @throws IOException 如果保存失败
+     */
+    public void saveState(boolean includeUnsavedContent) throws IOException {
+        saveState(WORKSPACE_STATE_FILE, includeUnsavedContent);
+    }
+    
+    /**
+     * 保存工作区状态到指定文件，附带已修改文件的未保存内容
      * @param stateFile 状态文件路径
      * @throws IOException 如果保存失败
      */
     public void saveState(String stateFile) throws IOException {
-        // 创建备忘录
-        List<FileState> fileStates = new ArrayList<>();
+        saveState(stateFile, true);
+    }
+    
+    /**
+     * 保存工作区状态到指定文件并等待写入完成
+     * @param stateFile 状态文件路径
+     * @param includeUnsavedContent 是否附带已修改文件的未保存内容（放弃更改后退出时不附带）
+     * @throws IOException 如果保存失败
+     */
+    public void saveState(String stateFile, boolean includeUnsavedContent) throws IOException {
+        try {
+            saveStateAsync(stateFile, includeUnsavedContent).join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof UncheckedIOException io) {
+                throw io.getCause();
+            }
+            throw e;
+        }
+    }
+    
+    /**
+     * 在后台保存工作区状态（二进制格式，一次写入）
+     * 调用线程上只截取已修改文件的内容快照（复制行块引用），压缩、编码和写文件在后台线程上按提交顺序执行，
+     * 大文件有未保存更改时也不阻塞命令处理；内容自上次保存状态以来未变化的文件复用上次的压缩结果
+     * @param stateFile 状态文件路径
+     * @param includeUnsavedContent 是否附带已修改文件的未保存内容
+     * @return 写入完成时完成，失败时以 UncheckedIOException 异常完成
+     */
+    public CompletableFuture<Void> saveStateAsync(String stateFile, boolean includeUnsavedContent) {
+        return saveStateAsync(stateFile, includeUnsavedContent, false);
+    }
+    
+    private CompletableFuture<Void> saveStateAsync(String stateFile, boolean includeUnsavedContent,
+                                                   boolean coalesce) {
+        List<StateSnapshotter.Entry> entries = new ArrayList<>(files.size());
+        Map<String, TextBuffer.Snapshot> captured = new HashMap<>();
         for (EditorInstance editor : files.values()) {
-            FileState state = new FileState(
-                editor.getFilePath(),
-                editor.isModified(),
-                editor.isLoggingEnabled()
-            );
-            fileStates.add(state);
+            String path = editor.getFilePath();
+            boolean modified = editor.isModified();
+            TextBuffer.Snapshot content = null;
+            if (includeUnsavedContent && modified) {
+                content = editor.getBuffer().snapshot(capturedContent.get(path));
+                captured.put(path, content);
+            }
+            entries.add(new StateSnapshotter.Entry(path, modified, editor.isLoggingEnabled(), content));
         }
+        capturedContent = captured;
         
         String activeFilePath = (activeEditor != null) ? activeEditor.getFilePath() : null;
-        WorkspaceMemento memento = new WorkspaceMemento(fileStates, activeFilePath);
+        if (snapshotter == null) {
+            snapshotter = new StateSnapshotter();
+        }
+        // 保存到状态日志的基线时顺带压实日志
+        Path statePath = Paths.get(stateFile).toAbsolutePath().normalize();
+        WorkspaceJournal target = journal != null && journal.getStateFile().equals(statePath) ? journal : null;
+        if (target != null && includeUnsavedContent) {
+            contentPending = false;
+        }
+        return snapshotter.submit(entries, activeFilePath, statePath, target,
+                                  target != null ? target.position() : 0, coalesce);
+    }
+    
+    // ===== 状态日志 =====
+    
+    /**
+     * 启用默认状态文件的状态日志
+     * @throws IOException 如果无法打开日志
+     */
+    public void enableStateJournal() throws IOException {
+        enableStateJournal(WORKSPACE_STATE_FILE);
+    }
+    
+    /**
+     * 启用状态日志：之后打开、关闭、激活文件以及修改、日志标志的变化逐条追加到 stateFile.journal，
+     * 每次变化只写一条几十字节的记录，不重写状态文件，进程被强行结束时也不会丢失；
+     * 记录足够多时在后台把当前状态写成新的状态文件并重建日志（压实），
+     * 未保存的内容随压实、saveState 以及空闲时的 snapshotUnsavedContent 写入状态文件
+     * 应在 restoreState 之后调用；closeAll 时停止
+     * @param stateFile 状态文件路径
+     * @throws IOException 如果无法打开日志
+     */
+    public void enableStateJournal(String stateFile) throws IOException {
+        stopStateJournal();
+        journal = WorkspaceJournal.open(Paths.get(stateFile).toAbsolutePath().normalize(), files.values());
+        journalSubscription = eventBus.subscribe(EnumSet.of(WorkspaceEvent.Type.LOADED,
+            WorkspaceEvent.Type.CREATED, WorkspaceEvent.Type.ACTIVATED, WorkspaceEvent.Type.SAVED,
+            WorkspaceEvent.Type.CLOSED), null, event -> {
+                journal.onEvent(event);
+                compactIfNeeded();
+            });
+        for (EditorInstance editor : files.values()) {
+            editor.addObserver(new ModifiedTracker(editor));
+        }
+    }
+    
+    /**
+     * 检查是否启用了状态日志
+     * @return true 如果已启用
+     */
+    public boolean isStateJournalEnabled() {
+        return journal != null;
+    }
+    
+    private void stopStateJournal() {
+        if (journal == null) {
+            return;
+        }
+        journalSubscription.cancel();
+        journalSubscription = null;
+        if (compaction != null) {
+            compaction.exceptionally(e -> null).join();
+            compaction = null;
+        }
+        journal.close();
+        journal = null;
+    }
+    
+    /**
+     * 空闲时（处理完一批命令、等待下一条输入前）在后台把编辑过的未保存内容随当前状态写入状态文件，
+     * 进程随后被强行结束时恢复的内容不落后于最后一条命令；自上次写入以来没有编辑时什么也不做
+     * 调用线程上只截取快照；后台尚未开始的上一次写入会被这次合并掉，连续调用不会堆积写入
+     * @return 写入完成时完成；没有新的编辑时返回上一次写入（没有时为已完成的 future）
+     */
+    public CompletableFuture<Void> snapshotUnsavedContent() {
+        if (journal == null || !contentPending) {
+            return compaction != null ? compaction : CompletableFuture.completedFuture(null);
+        }
+        compaction = saveStateAsync(journal.getStateFile().toString(), true, true).whenComplete((result, e) -> {
+            if (e != null) {
+                System.err.println("写入未保存的内容失败: " + e.getMessage());
+            }
+        });
+        return compaction;
+    }
+    
+    /**
+     * 记录足够多时在后台压实状态日志，已有压实在进行时跳过
+     */
+    private void compactIfNeeded() {
+        if (!journal.needsCompaction() || (compaction != null && !compaction.isDone())) {
+            return;
+        }
+        compaction = saveStateAsync(journal.getStateFile().toString(), true).whenComplete((result, e) -> {
+            if (e != null) {
+                System.err.println("压实工作区状态日志失败: " + e.getMessage());
+            }
+        });
+    }
+    
+    /**
+     * 命令执行、撤销、重做后把文件修改标志的变化写入状态日志（相同时日志不追加）
+     */
+    private final class ModifiedTracker implements EditorObserver {
+        private final EditorInstance editor;
+        
+        ModifiedTracker(EditorInstance editor) {
+            this.editor = editor;
+        }
+        
+        private void update() {
+            if (journal != null) {
+                contentPending = true;
+                journal.modified(editor.getFilePath(), editor.isModified());
+                compactIfNeeded();
+            }
+        }
         
-        // 序列化并保存
-        String data = memento.serialize();
-        Files.write(Paths.get(stateFile), data.getBytes(StandardCharsets.UTF_8));
+        @Override
+        public void onCommandExecuted(Command command) {
+            update();
+        }
+        
+        @Override
+        public void onCommandUndone(Command command) {
+            update();
+        }
+        
+        @Override
+        public void onCommandRedone(Command command) {
+            update();
+        }
+        
+        @Override
+        public void onCommandsUndone(List<Command> commands) {
+            update();
+        }
+        
+        @Override
+        public void onCommandsRedone(List<Command> commands) {
+            update();
+        }
     }
     
     /**
@@ -444,25 +954,57 @@ public class Workspace {
     }
     
     /**
-     * 从指定文件恢复工作区状态
+     * 从指定文件恢复工作区状态，兼容旧的文本格式
+     * 存在与状态文件匹配的状态日志时，在其上重放日志记录
      * @param stateFile 状态文件路径
      * @throws IOException 如果读取失败
      */
     public void restoreState(String stateFile) throws IOException {
         Path statePath = Paths.get(stateFile);
-        if (!Files.exists(statePath)) {
+        Path journalPath = WorkspaceJournal.journalPath(statePath);
+        if (!Files.exists(statePath) && !Files.exists(journalPath)) {
             return; // 状态文件不存在，跳过恢复
         }
         
-        // 读取并反序列化
-        String data = new String(Files.readAllBytes(statePath), StandardCharsets.UTF_8);
-        WorkspaceMemento memento = WorkspaceMemento.deserialize(data);
+        // 读取并解码，不是二进制格式时按旧的文本格式导入
+        WorkspaceMemento memento;
+        long baseId = WorkspaceJournal.NO_BASE;
+        if (Files.exists(statePath)) {
+            ByteBuffer data = ByteBuffer.wrap(Files.readAllBytes(statePath));
+            baseId = WorkspaceJournal.baseId(data);
+            if (WorkspaceMemento.isBinary(data)) {
+                try {
+                    memento = WorkspaceMemento.fromBytes(data);
+                } catch (IllegalArgumentException e) {
+                    throw new IOException(e.getMessage() + ": " + statePath, e);
+                }
+            } else {
+                memento = WorkspaceMemento.deserialize(StandardCharsets.UTF_8.decode(data).toString());
+            }
+        } else {
+            memento = new WorkspaceMemento(new ArrayList<>(), null);
+        }
+        memento = WorkspaceJournal.replay(memento, baseId, journalPath);
         
-        // 恢复文件状态
+        // 恢复文件状态，附带未保存内容的文件恢复为上次会话内存中的内容
         for (FileState state : memento.getFileStates()) {
             try {
-                EditorInstance editor = load(state.getFilePath());
-                editor.setModified(state.isModified());
+                List<String> unsavedContent = null;
+                if (state.hasContent()) {
+                    try {
+                        unsavedContent = state.getContent();
+                    } catch (IllegalArgumentException e) {
+                        System.err.println("无法恢复未保存的内容: " + state.getFilePath() + " - " + e.getMessage());
+                    }
+                }
+                EditorInstance editor = load(state.getFilePath(), unsavedContent);
+                if (unsavedContent == null || !editor.isModified()) {
+                    // 换成未保存内容的编辑器由撤销历史推导修改状态，撤销回保存点后不再是已修改
+                    editor.setModified(state.isModified());
+                }
+                if (journal != null) {
+                    journal.modified(editor.getFilePath(), editor.isModified());
+                }
                 
                 // 恢复日志状态
                 if (state.isLoggingEnabled()) {
@@ -478,6 +1020,7 @@ public class Workspace {
         if (activeFilePath != null && files.containsKey(normalizePath(activeFilePath))) {
             activate(activeFilePath);
         }
+        eventBus.publish(WorkspaceEvent.Type.RESTORED, null, null);
     }
     
     /**
@@ -485,7 +1028,7 @@ public class Workspace {
      * @param path 原始路径
      * @return 规范化后的路径
      */
-    private String normalizePath(String path) {
+    static String normalizePath(String path) {
         if (path == null) {
             return null;
         }
@@ -0,0 +1,64 @@
+package top.thesumst.workspace;
+
+/**
+ * WorkspaceEvent - 工作区中文件生命周期事件
+ */
+public final class WorkspaceEvent {
+
+    /**
+     * 事件类型
+     */
+    public enum Type {
+        LOADED,     // 从磁盘加载文件
+        CREATED,    // init 创建新缓冲区
+        ACTIVATED,  // 成为活动编辑器
+        SAVED,      // 保存（内容未变而跳过写入时也会发布）
+        CLOSED,     // 关闭文件
+        RESTORED    // 从状态文件恢复工作区完成（filePath 为 null）
+    }
+
+    private final Type type;
+    private final String filePath;
+    private final EditorInstance editor;
+    private final long timestamp;
+
+    WorkspaceEvent(Type type, String filePath, EditorInstance editor, long timestamp) {
+        this.type = type;
+        this.filePath = filePath;
+        this.editor = editor;
+        this.timestamp = timestamp;
+    }
+
+    public Type getType() {
+        return type;
+    }
+
+    /**
+     * 获取事件涉及的文件（规范化的绝对路径）
+     * @return 文件路径，工作区级事件为 null
+     */
+    public String getFilePath() {
+        return filePath;
+    }
+
+    /**
+     * 获取事件涉及的编辑器（CLOSED 事件时已从工作区移除）
+     * @return 编辑器，工作区级事件为 null
+     */
+    public EditorInstance getEditor() {
+        return editor;
+    }
+
+    /**
+     * 获取事件发生的时间
+     * @return 毫秒时间戳
+     */
+    public long getTimestamp() {
+        return timestamp;
+    }
+
+    @Override
+    public String toString() {
+        return "WorkspaceEvent[" + type + (filePath != null ? ", " + filePath : "") + "]";
+    }
+}
@@ -0,0 +1,128 @@
+package top.thesumst.workspace;
+
+import java.util.Arrays;
+import java.util.EnumSet;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
+
+/**
+ * WorkspaceEventBus - 工作区事件总线
+ * 文件加载、激活、保存、关闭、恢复时发布事件，时间统计、缓存、索引等功能订阅即可，不必轮询
+ * 订阅列表是写时复制的不可变数组：发布时只读一次引用，不加锁；
+ * 没有匹配的订阅时不会创建事件对象，发布开销只有一次数组遍历
+ */
+public final class WorkspaceEventBus {
+
+    private static final Subscription[] NONE = new Subscription[0];
+
+    private final AtomicReference<Subscription[]> subscriptions = new AtomicReference<>(NONE);
+
+    /**
+     * 订阅所有事件
+     * @param listener 监听器
+     * @return 订阅，可用于取消
+     */
+    public Subscription subscribe(Consumer<WorkspaceEvent> listener) {
+        return subscribe(EnumSet.allOf(WorkspaceEvent.Type.class), null, listener);
+    }
+
+    /**
+     * 按类型和文件订阅事件
+     * @param types 关心的事件类型
+     * @param filePath 只接收该文件的事件，null 表示所有文件（含工作区级事件）
+     * @param listener 监听器
+     * @return 订阅，可用于取消
+     */
+    public Subscription subscribe(Set<WorkspaceEvent.Type> types, String filePath,
+                                  Consumer<WorkspaceEvent> listener) {
+        int mask = 0;
+        for (WorkspaceEvent.Type type : types) {
+            mask |= 1 << type.ordinal();
+        }
+        String normalized = filePath != null ? Workspace.normalizePath(filePath) : null;
+        Subscription subscription = new Subscription(mask, normalized, listener);
+        subscriptions.updateAndGet(current -> {
+            Subscription[] next = Arrays.copyOf(current, current.length + 1);
+            next[current.length] = subscription;
+            return next;
+        });
+        return subscription;
+    }
+
+    /**
+     * 获取当前订阅数
+     * @return 订阅数
+     */
+    public int getSubscriberCount() {
+        return subscriptions.get().length;
+    }
+
+    /**
+     * 发布事件；监听器抛出的异常会被记录，不影响其他监听器和发布方
+     * @param type 事件类型
+     * @param filePath 文件路径（已规范化），工作区级事件为 null
+     * @param editor 编辑器，工作区级事件为 null
+     */
+    void publish(WorkspaceEvent.Type type, String filePath, EditorInstance editor) {
+        Subscription[] current = subscriptions.get();
+        if (current.length == 0) {
+            return;
+        }
+        int bit = 1 << type.ordinal();
+        WorkspaceEvent event = null;
+        for (Subscription subscription : current) {
+            if ((subscription.mask & bit) == 0
+                    || (subscription.filePath != null && !subscription.filePath.equals(filePath))) {
+                continue;
+            }
+            if (event == null) {
+                event = new WorkspaceEvent(type, filePath, editor, System.currentTimeMillis());
+            }
+            try {
+                subscription.listener.accept(event);
+            } catch (RuntimeException e) {
+                System.err.println("工作区事件处理失败: " + e.getMessage());
+            }
+        }
+    }
+
+    private void remove(Subscription subscription) {
+        subscriptions.updateAndGet(current -> {
+            for (int i = 0; i < current.length; i++) {
+                if (current[i] == subscription) {
+                    if (current.length == 1) {
+                        return NONE;
+                    }
+                    Subscription[] next = new Subscription[current.length - 1];
+                    System.arraycopy(current, 0, next, 0, i);
+                    System.arraycopy(current, i + 1, next, i, current.length - i - 1);
+                    return next;
+                }
+            }
+            return current;
+        });
+    }
+
+    /**
+     * 一个订阅
+     */
+    public final class Subscription {
+        private final int mask;
+        private final String filePath;
+        private final Consumer<WorkspaceEvent> listener;
+
+        private Subscription(int mask, String filePath, Consumer<WorkspaceEvent> listener) {
+            this.mask = mask;
+            this.filePath = filePath;
+            this.listener = listener;
+        }
+
+        /**
+         * 取消订阅
+         */
+        public void cancel() {
+            remove(this);
+        }
+    }
+}
@@ -0,0 +1,400 @@
+package top.thesumst.workspace;
+
+import top.thesumst.memento.WorkspaceMemento;
+import top.thesumst.memento.WorkspaceMemento.FileState;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.zip.CRC32;
+
+/**
+ * WorkspaceJournal - 工作区状态的追加日志（状态文件名加 .journal）
+ * 打开、关闭、激活文件以及修改、日志标志的变化各追加一条记录，不重写状态文件；
+ * 恢复时在状态文件（基线）上按顺序重放。记录只写入页缓存不做 fsync，进程被强行结束也不会丢失
+ *
+ * 格式：文件头 magic(4) 版本(4) 基线标识(8)，基线标识是状态文件全部字节的 CRC32，
+ * 与当前状态文件不符的日志整体忽略；之后每条记录为 长度(4) CRC32(4) 类型(1) 标志(1) 路径(UTF-8)，
+ * 长度或校验和不对的记录及其后的内容视为写到一半被中断，丢弃
+ *
+ * 压实：在编辑线程上截取工作区状态并记下日志当前长度，后台写出新的状态文件后，
+ * 在锁内把截取之后追加的记录拷贝到以新基线开头的日志中再替换旧日志
+ */
+final class WorkspaceJournal implements Closeable {
+
+    static final int MAGIC = 0x45574A31; // "EWJ1"，与撤销日志的 "EDJ1" 区分
+    static final int VERSION = 1;
+    static final int HEADER_SIZE = 16;
+    static final long NO_BASE = -1;            // 创建日志时没有状态文件
+    static final int COMPACT_THRESHOLD = 256;  // 自上次压实以来的记录数达到此值时压实
+
+    private static final int RECORD_HEADER_SIZE = 8;
+    private static final byte OPEN = 1;
+    private static final byte CLOSE = 2;
+    private static final byte ACTIVATE = 3;
+    private static final byte MODIFIED = 4;
+    private static final byte LOGGING = 5;
+    private static final int FLAG_MODIFIED = 1;
+    private static final int FLAG_LOGGING = 1 << 1;
+
+    private final Path stateFile;
+    private final Path path;
+    private final Map<String, Integer> flags = new HashMap<>(); // 日志中已记录的各文件标志
+    private final CRC32 crc = new CRC32();
+    private ByteBuffer record = ByteBuffer.allocate(512);
+    private FileChannel channel;
+    private long size;      // 日志当前长度
+    private long discarded; // 历次压实丢弃的记录字节数，与 size 之和是不随压实改变的逻辑位置
+    private int records;    // 自上次压实以来的记录数
+
+    private WorkspaceJournal(Path stateFile, FileChannel channel, long size, int records) {
+        this.stateFile = stateFile;
+        this.path = journalPath(stateFile);
+        this.channel = channel;
+        this.size = size;
+        this.records = records;
+    }
+
+    /**
+     * 获取状态文件对应的日志路径
+     * @param stateFile 状态文件
+     * @return 日志路径
+     */
+    static Path journalPath(Path stateFile) {
+        return stateFile.resolveSibling(stateFile.getFileName() + ".journal");
+    }
+
+    /**
+     * 计算状态文件的基线标识
+     * @param stateFile 状态文件
+     * @return 文件字节的 CRC32，文件不存在时为 NO_BASE
+     * @throws IOException 如果读取失败
+     */
+    static long baseId(Path stateFile) throws IOException {
+        if (!Files.exists(stateFile)) {
+            return NO_BASE;
+        }
+        return baseId(ByteBuffer.wrap(Files.readAllBytes(stateFile)));
+    }
+
+    /**
+     * 计算状态数据的基线标识
+     * @param data 状态文件的全部字节，不改变其位置
+     * @return CRC32
+     */
+    static long baseId(ByteBuffer data) {
+        CRC32 checksum = new CRC32();
+        checksum.update(data.duplicate());
+        return checksum.getValue();
+    }
+
+    /**
+     * 打开日志：与当前状态文件匹配的已有日志继续追加（截掉末尾不完整的记录），否则重新创建
+     * @param stateFile 状态文件
+     * @param files 当前打开的文件，作为日志中各文件标志的初值
+     * @return 日志
+     * @throws IOException 如果打开失败
+     */
+    static WorkspaceJournal open(Path stateFile, Iterable<EditorInstance> files) throws IOException {
+        long baseId = baseId(stateFile);
+        Path path = journalPath(stateFile);
+        long size = 0;
+        int records = 0;
+        if (Files.exists(path)) {
+            ByteBuffer data = ByteBuffer.wrap(Files.readAllBytes(path));
+            if (matches(data, baseId)) {
+                data.position(HEADER_SIZE);
+                while (nextRecord(data) != null) {
+                    records++;
+                }
+                size = data.position();
+            }
+        }
+        FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                                               StandardOpenOption.WRITE);
+        if (size == 0) {
+            channel.truncate(0);
+            writeFully(channel, header(baseId), 0);
+            size = HEADER_SIZE;
+        } else {
+            channel.truncate(size);
+        }
+        WorkspaceJournal journal = new WorkspaceJournal(stateFile, channel, size, records);
+        for (EditorInstance editor : files) {
+            journal.flags.put(editor.getFilePath(), flagsOf(editor.isModified(), editor.isLoggingEnabled()));
+        }
+        return journal;
+    }
+
+    /**
+     * 在状态文件的内容上重放日志
+     * @param base 状态文件解码得到的状态，状态文件不存在时为空状态
+     * @param baseId 状态文件的基线标识
+     * @param journalPath 日志路径
+     * @return 重放后的状态；日志不存在或与状态文件不匹配时返回 base
+     * @throws IOException 如果读取失败
+     */
+    static WorkspaceMemento replay(WorkspaceMemento base, long baseId, Path journalPath) throws IOException {
+        if (!Files.exists(journalPath)) {
+            return base;
+        }
+        ByteBuffer data = ByteBuffer.wrap(Files.readAllBytes(journalPath));
+        if (!matches(data, baseId)) {
+            return base;
+        }
+        Map<String, FileState> states = new LinkedHashMap<>();
+        for (FileState state : base.getFileStates()) {
+            states.put(state.getFilePath(), state);
+        }
+        String active = base.getActiveFilePath();
+        data.position(HEADER_SIZE);
+        ByteBuffer payload;
+        while ((payload = nextRecord(data)) != null) {
+            byte type = payload.get();
+            int recordFlags = payload.get();
+            String file = StandardCharsets.UTF_8.decode(payload).toString();
+            boolean flag = (recordFlags & FLAG_MODIFIED) != 0;
+            FileState state = states.get(file);
+            switch (type) {
+                case OPEN -> {
+                    states.remove(file);
+                    states.put(file, new FileState(file, flag, (recordFlags & FLAG_LOGGING) != 0));
+                }
+                case CLOSE -> {
+                    states.remove(file);
+                    if (file.equals(active)) {
+                        active = null;
+                    }
+                }
+                case ACTIVATE -> active = file;
+                case MODIFIED -> {
+                    if (state != null) {
+                        states.put(file, state.withFlags(flag, state.isLoggingEnabled()));
+                    }
+                }
+                case LOGGING -> {
+                    if (state != null) {
+                        states.put(file, state.withFlags(state.isModified(), (recordFlags & FLAG_LOGGING) != 0));
+                    }
+                }
+                default -> {
+                    // 未知记录类型，跳过
+                }
+            }
+        }
+        return new WorkspaceMemento(new ArrayList<>(states.values()), active);
+    }
+
+    private static boolean matches(ByteBuffer data, long baseId) {
+        return data.remaining() >= HEADER_SIZE && data.getInt(0) == MAGIC
+            && data.getInt(4) == VERSION && data.getLong(8) == baseId;
+    }
+
+    /**
+     * 读取下一条完整的记录
+     * @return 记录内容，没有更多完整记录时返回 null（位置停在最后一条完整记录之后）
+     */
+    private static ByteBuffer nextRecord(ByteBuffer data) {
+        int start = data.position();
+        if (data.remaining() < RECORD_HEADER_SIZE) {
+            return null;
+        }
+        int length = data.getInt(start);
+        if (length < 2 || length > data.remaining() - RECORD_HEADER_SIZE) {
+            return null;
+        }
+        ByteBuffer payload = data.slice(start + RECORD_HEADER_SIZE, length);
+        CRC32 checksum = new CRC32();
+        checksum.update(payload.duplicate());
+        if (data.getInt(start + 4) != (int) checksum.getValue()) {
+            return null;
+        }
+        data.position(start + RECORD_HEADER_SIZE + length);
+        return payload;
+    }
+
+    private static ByteBuffer header(long baseId) {
+        return ByteBuffer.allocate(HEADER_SIZE).putInt(MAGIC).putInt(VERSION).putLong(baseId).flip();
+    }
+
+    private static int flagsOf(boolean modified, boolean logging) {
+        return (modified ? FLAG_MODIFIED : 0) | (logging ? FLAG_LOGGING : 0);
+    }
+
+    private static void writeFully(FileChannel channel, ByteBuffer data, long position) throws IOException {
+        while (data.hasRemaining()) {
+            position += channel.write(data, position);
+        }
+    }
+
+    Path getStateFile() {
+        return stateFile;
+    }
+
+    /**
+     * 处理工作区事件（订阅 LOADED、CREATED、ACTIVATED、SAVED、CLOSED）
+     * @param event 事件
+     */
+    void onEvent(WorkspaceEvent event) {
+        String file = event.getFilePath();
+        switch (event.getType()) {
+            case LOADED, CREATED -> {
+                EditorInstance editor = event.getEditor();
+                opened(file, editor.isModified(), editor.isLoggingEnabled());
+            }
+            case ACTIVATED -> activated(file);
+            case SAVED -> modified(file, false);
+            case CLOSED -> closed(file);
+            default -> {
+                // 其他事件不影响工作区状态
+            }
+        }
+    }
+
+    synchronized void opened(String file, boolean modified, boolean logging) {
+        int value = flagsOf(modified, logging);
+        flags.put(file, value);
+        append(OPEN, value, file);
+    }
+
+    synchronized void activated(String file) {
+        append(ACTIVATE, 0, file);
+    }
+
+    synchronized void closed(String file) {
+        flags.remove(file);
+        append(CLOSE, 0, file);
+    }
+
+    /**
+     * 记录文件修改标志，与日志中已记录的相同时不追加
+     */
+    synchronized void modified(String file, boolean modified) {
+        Integer current = flags.get(file);
+        if (current == null || ((current & FLAG_MODIFIED) != 0) == modified) {
+            return;
+        }
+        int value = modified ? current | FLAG_MODIFIED : current & ~FLAG_MODIFIED;
+        flags.put(file, value);
+        append(MODIFIED, value, file);
+    }
+
+    /**
+     * 记录文件日志标志，与日志中已记录的相同时不追加
+     */
+    synchronized void logging(String file, boolean logging) {
+        Integer current = flags.get(file);
+        if (current == null || ((current & FLAG_LOGGING) != 0) == logging) {
+            return;
+        }
+        int value = logging ? current | FLAG_LOGGING : current & ~FLAG_LOGGING;
+        flags.put(file, value);
+        append(LOGGING, value, file);
+    }
+
+    private synchronized void append(byte type, int value, String file) {
+        if (channel == null) {
+            return;
+        }
+        byte[] bytes = file.getBytes(StandardCharsets.UTF_8);
+        int length = 2 + bytes.length;
+        if (record.capacity() < RECORD_HEADER_SIZE + length) {
+            record = ByteBuffer.allocate(RECORD_HEADER_SIZE + length);
+        }
+        record.clear().position(RECORD_HEADER_SIZE);
+        record.put(type).put((byte) value).put(bytes);
+        crc.reset();
+        crc.update(record.array(), RECORD_HEADER_SIZE, length);
+        record.putInt(0, length).putInt(4, (int) crc.getValue()).flip();
+        try {
+            writeFully(channel, record, size);
+            size += RECORD_HEADER_SIZE + length;
+            records++;
+        } catch (IOException e) {
+            System.err.println("无法写入工作区状态日志: " + e.getMessage());
+        }
+    }
+
+    /**
+     * 获取日志当前的逻辑位置，压实时作为截取点（之前的压实不会使其失效）
+     * @return 位置
+     */
+    synchronized long position() {
+        return discarded + size;
+    }
+
+    /**
+     * 检查自上次压实以来的记录是否已足够多
+     * @return true 如果应当压实
+     */
+    synchronized boolean needsCompaction() {
+        return records >= COMPACT_THRESHOLD;
+    }
+
+    /**
+     * 以新的状态文件为基线重建日志（在后台线程上调用）
+     * 先用新状态文件替换旧的，再把截取点之后追加的记录拷贝到以新基线开头的日志中替换旧日志；
+     * 两次替换之间被强行结束时，只会丢失截取之后的少量记录
+     * @param newBase 已写好的新状态文件（临时文件）
+     * @param baseId 新状态文件的基线标识
+     * @param cut 截取状态时的日志位置（见 position）
+     * @throws IOException 如果写入失败
+     */
+    synchronized void rebase(Path newBase, long baseId, long cut) throws IOException {
+        if (channel == null) {
+            Files.move(newBase, stateFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            return;
+        }
+        long offset = Math.max(HEADER_SIZE, cut - discarded);
+        ByteBuffer tail = ByteBuffer.allocate((int) (size - offset));
+        while (tail.hasRemaining()) {
+            if (channel.read(tail, offset + tail.position()) < 0) {
+                break;
+            }
+        }
+        tail.flip();
+        Path temp = path.resolveSibling(path.getFileName() + ".tmp");
+        try (FileChannel out = FileChannel.open(temp, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                                                StandardOpenOption.TRUNCATE_EXISTING)) {
+            writeFully(out, header(baseId), 0);
+            writeFully(out, tail.duplicate(), HEADER_SIZE);
+        }
+        Files.move(newBase, stateFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        Files.move(temp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+
+        channel.close();
+        channel = FileChannel.open(path, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        discarded += offset - HEADER_SIZE;
+        size = HEADER_SIZE + tail.remaining();
+        records = 0;
+        while (nextRecord(tail) != null) {
+            records++;
+        }
+    }
+
+    /**
+     * 停止追加并关闭日志文件
+     */
+    @Override
+    public synchronized void close() {
+        if (channel == null) {
+            return;
+        }
+        try {
+            channel.close();
+        } catch (IOException e) {
+            // 忽略
+        }
+        channel = null;
+    }
+}
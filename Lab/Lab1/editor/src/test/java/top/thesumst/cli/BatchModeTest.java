@@ -0,0 +1,216 @@
+package top.thesumst.cli;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+/**
+ * 批处理模式测试
+ * 验证脚本执行不输出提示符、不读取交互输入，重名文件与未保存更改按策略处理，
+ * 以及 show 经缓冲写出到屏幕或文件
+ */
+public class BatchModeTest {
+
+    private Path testDir;
+
+    @Before
+    public void setUp() throws IOException {
+        testDir = Files.createTempDirectory("editor_batch_mode_test_");
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        if (testDir != null && Files.exists(testDir)) {
+            Files.walk(testDir)
+                .sorted((a, b) -> b.compareTo(a))
+                .forEach(path -> {
+                    try {
+                        Files.deleteIfExists(path);
+                    } catch (IOException e) {
+                        // 忽略
+                    }
+                });
+        }
+    }
+
+    private String runScript(String script, CommandLineApp.AmbiguousMatchPolicy ambiguous,
+                             CommandLineApp.UnsavedChangesPolicy unsaved) {
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+        PrintStream out = new PrintStream(buffer, false, StandardCharsets.UTF_8);
+        CommandLineApp app = new CommandLineApp(new BufferedReader(new StringReader(script)), out, true);
+        app.setAmbiguousMatchPolicy(ambiguous);
+        app.setUnsavedChangesPolicy(unsaved);
+        app.run();
+        return buffer.toString(StandardCharsets.UTF_8);
+    }
+
+    private String quoted(Path path) {
+        return "\"" + path + "\"";
+    }
+
+    @Test
+    public void testScriptRunsWithoutPrompts() throws IOException {
+        Path file = testDir.resolve("doc.txt");
+        String output = runScript(String.join("\n",
+            "# 注释行会被跳过",
+            "init " + quoted(file),
+            "append \"hello world\"",
+            "",
+            "replace 1:7 5 editor",
+            "show",
+            "save",
+            "close",
+            "exit",
+            "append \"exit 之后不再执行\""),
+            CommandLineApp.AmbiguousMatchPolicy.FAIL, CommandLineApp.UnsavedChangesPolicy.CANCEL);
+
+        assertFalse(output.contains("> "));
+        assertTrue(output.contains("1: hello editor"));
+        assertFalse(output.contains("再见"));
+        assertEquals(List.of("hello editor"), Files.readAllLines(file));
+    }
+
+    @Test
+    public void testAmbiguousMatchPolicy() throws IOException {
+        Path first = Files.createDirectories(testDir.resolve("one")).resolve("same.txt");
+        Path second = Files.createDirectories(testDir.resolve("two")).resolve("same.txt");
+        Files.writeString(first, "first\n");
+        Files.writeString(second, "second\n");
+        String script = String.join("\n",
+            "load " + quoted(first),
+            "load " + quoted(second),
+            "edit same.txt",
+            "show");
+
+        String failed = runScript(script, CommandLineApp.AmbiguousMatchPolicy.FAIL,
+                                  CommandLineApp.UnsavedChangesPolicy.CANCEL);
+        assertTrue(failed.contains("已跳过"));
+        assertTrue(failed.contains("1: second"));
+
+        String picked = runScript(script, CommandLineApp.AmbiguousMatchPolicy.FIRST,
+                                  CommandLineApp.UnsavedChangesPolicy.CANCEL);
+        assertTrue(picked.contains("已切换到文件: " + first));
+        assertTrue(picked.contains("1: first"));
+    }
+
+    @Test
+    public void testUnsavedChangesPolicy() throws IOException {
+        Path file = testDir.resolve("draft.txt");
+        Files.writeString(file, "draft\n");
+        String script = String.join("\n",
+            "load " + quoted(file),
+            "append more",
+            "close",
+            "editor-list");
+
+        String cancelled = runScript(script, CommandLineApp.AmbiguousMatchPolicy.FAIL,
+                                     CommandLineApp.UnsavedChangesPolicy.CANCEL);
+        assertTrue(cancelled.contains("已取消关闭操作"));
+        assertFalse(cancelled.contains("没有打开的文件"));
+
+        String discarded = runScript(script, CommandLineApp.AmbiguousMatchPolicy.FAIL,
+                                     CommandLineApp.UnsavedChangesPolicy.DISCARD);
+        assertTrue(discarded.contains("没有打开的文件"));
+        assertEquals(List.of("draft"), Files.readAllLines(file));
+
+        runScript(script, CommandLineApp.AmbiguousMatchPolicy.FAIL, CommandLineApp.UnsavedChangesPolicy.SAVE);
+        assertEquals(List.of("draft", "more"), Files.readAllLines(file));
+    }
+
+    @Test
+    public void testShowStreamsToScreenAndFile() throws IOException {
+        Path file = testDir.resolve("big.txt");
+        Path dump = testDir.resolve("dump.txt");
+        StringBuilder content = new StringBuilder();
+        for (int i = 1; i <= 20000; i++) {
+            content.append("line ").append(i).append('\n');
+        }
+        Files.writeString(file, content);
+
+        String output = runScript(String.join("\n",
+            "load " + quoted(file),
+            "show 9999:10001",
+            "show --out " + quoted(dump),
+            "show 1:2 --out"),
+            CommandLineApp.AmbiguousMatchPolicy.FAIL, CommandLineApp.UnsavedChangesPolicy.CANCEL);
+
+        String sep = System.lineSeparator();
+        assertTrue(output.contains("9999: line 9999" + sep + "10000: line 10000" + sep + "10001: line 10001" + sep));
+        assertFalse(output.contains("10002: "));
+        assertTrue(output.contains("已写入 20000 行到 " + dump));
+        assertTrue(output.contains("用法: show"));
+        List<String> lines = Files.readAllLines(dump);
+        assertEquals(20000, lines.size());
+        assertEquals("1: line 1", lines.get(0));
+        assertEquals("20000: line 20000", lines.get(19999));
+    }
+
+    @Test
+    public void testNumberedLineWriterFormatsNumbers() throws IOException {
+        StringWriter target = new StringWriter();
+        NumberedLineWriter writer = new NumberedLineWriter(target);
+        writer.write(0, "");
+        writer.write(7, "a");
+        writer.write(Integer.MAX_VALUE, "max");
+        writer.flush();
+        String sep = System.lineSeparator();
+        assertEquals("0: " + sep + "7: a" + sep + Integer.MAX_VALUE + ": max" + sep, target.toString());
+        assertEquals(3, writer.getCount());
+    }
+
+    @Test
+    public void testStartupReportAfterFirstCommand() {
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+        ByteArrayOutputStream errors = new ByteArrayOutputStream();
+        PrintStream out = new PrintStream(buffer, false, StandardCharsets.UTF_8);
+        PrintStream err = new PrintStream(errors, true, StandardCharsets.UTF_8);
+        CommandLineApp app = new CommandLineApp(CommandLineApp.newWorkspace(),
+            new BufferedReader(new StringReader("help\nhelp\n")), out, err, false);
+        app.setStartupReportEnabled(true);
+        app.run();
+
+        String report = errors.toString(StandardCharsets.UTF_8);
+        assertTrue(report.startsWith("启动耗时: 首个提示符 "));
+        assertEquals(1, report.lines().count());
+        assertTrue(buffer.toString(StandardCharsets.UTF_8).contains("辅助命令:"));
+    }
+
+    @Test
+    public void testRegisteredCommandsAreValidatedBeforeDispatch() {
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+        PrintStream out = new PrintStream(buffer, false, StandardCharsets.UTF_8);
+        String script = String.join("\n",
+            "count",
+            "init " + quoted(testDir.resolve("n.txt")),
+            "COUNT a b",
+            "insert 1:1",
+            "insert 1 x",
+            "insert a:1 x",
+            "nope");
+        CommandLineApp app = new CommandLineApp(new BufferedReader(new StringReader(script)), out, true);
+        app.registerCommand(new CommandSpec("count", "count <a> <b>", 2, true,
+            (cmd, editor) -> out.println("args=" + cmd.getArgCount() + " lines=" + editor.getBuffer().getSize())));
+        app.run();
+
+        String output = buffer.toString(StandardCharsets.UTF_8);
+        String sep = System.lineSeparator();
+        assertTrue(output.startsWith("没有活动的编辑器" + sep));
+        assertTrue(output.contains("args=2 lines=0"));
+        assertTrue(output.contains("用法: insert <行:列> <文本>"));
+        assertTrue(output.contains("位置格式错误，应为 <行:列>"));
+        assertTrue(output.contains("行号和列号必须是数字"));
+        assertTrue(output.contains("未知命令: nope"));
+    }
+}
@@ -0,0 +1,93 @@
+package top.thesumst.cli;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import top.thesumst.cli.CommandParser.ParsedCommand;
+import top.thesumst.workspace.Workspace;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * 命令解析基准测试
+ * 对比原先每次编译正则的实现、预编译正则，以及手写单遍切分的 CommandParser
+ * 语料为批处理脚本中常见的命令行，每次操作解析整个语料
+ * 运行：mvn -P bench test -Dbench.args="CommandParserBenchmark -prof gc"
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class CommandParserBenchmark {
+
+    private static final Pattern TOKEN = Pattern.compile("\"([^\"]*)\"|\\S+");
+
+    private final String[] corpus = {
+        "append \"hello world\"",
+        "insert 12:5 \"quick brown fox\"",
+        "delete 3:1 4",
+        "replace 7:10 3 \"new text\"",
+        "append plain",
+        "undo",
+        "redo 2",
+        "show 1:40",
+        "edit notes.txt",
+        "save",
+        "log-show --tail 20",
+        "insert 1:1 x"
+    };
+
+    @Benchmark
+    public void regexCompiledPerCall(Blackhole bh) {
+        for (String line : corpus) {
+            bh.consume(regexParse(Pattern.compile("\"([^\"]*)\"|\\S+"), line));
+        }
+    }
+
+    @Benchmark
+    public void regexPrecompiled(Blackhole bh) {
+        for (String line : corpus) {
+            bh.consume(regexParse(TOKEN, line));
+        }
+    }
+
+    /** 应用的命令表，解析时复用其中的命令名 */
+    private final CommandLineApp app = new CommandLineApp(new Workspace(), null, System.out, System.err, true);
+
+    @Benchmark
+    public void handWritten(Blackhole bh) {
+        for (String line : corpus) {
+            bh.consume(app.parse(line));
+        }
+    }
+
+    /**
+     * 原先的正则实现
+     */
+    private static ParsedCommand regexParse(Pattern pattern, String input) {
+        input = input.trim();
+        List<String> tokens = new ArrayList<>();
+        Matcher matcher = pattern.matcher(input);
+        while (matcher.find()) {
+            tokens.add(matcher.group(1) != null ? matcher.group(1) : matcher.group());
+        }
+        if (tokens.isEmpty()) {
+            return new ParsedCommand("", new String[0]);
+        }
+        return new ParsedCommand(tokens.get(0), tokens.subList(1, tokens.size()).toArray(new String[0]));
+    }
+}
@@ -4,6 +4,12 @@ import static org.junit.Assert.*;
 import org.junit.Test;
 import top.thesumst.cli.CommandParser.ParsedCommand;
 
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
 /**
  * CommandParser 单元测试
  * 测试命令解析器对各种输入格式的处理能力
@@ -13,6 +19,7 @@ import top.thesumst.cli.CommandParser.ParsedCommand;
  * 2. line:col 格式解析（用于 insert/delete/replace/show）
  * 3. 双引号参数解析
  * 4. 边界条件和错误处理
+ * 5. 手写切分与原先正则实现的行为一致
  */
 public class CommandParserTest {
     
@@ -261,4 +268,55 @@ public class CommandParserTest {
         assertEquals("5", range[0]);
         assertEquals("5", range[1]);
     }
+    
+    // ===== 手写切分与正则实现一致性测试 =====
+    
+    @Test
+    public void testParseUnclosedAndAdjacentQuotes() {
+        ParsedCommand cmd = CommandParser.parse("append \"a\"b \"\" x\"y \"open end");
+        assertEquals("append", cmd.getCommand());
+        assertArrayEquals(new String[] {"a", "b", "", "x\"y", "\"open", "end"}, cmd.getArgs());
+    }
+    
+    @Test
+    public void testRegisteredCommandNamesAreReused() {
+        String logShow = new String("log-show");
+        String undo = new String("undo");
+        String[] names = {"load", logShow, undo};
+        assertSame(logShow, CommandParser.parse("log-show --tail 5", names).getCommand());
+        assertSame(undo, CommandParser.parse("\tundo", names).getCommand());
+        assertEquals("Load", CommandParser.parse("Load a.txt", names).getCommand());
+        assertEquals("plugin", CommandParser.parse("plugin x", names).getCommand());
+    }
+    
+    @Test
+    public void testMatchesRegexTokenizer() {
+        Pattern pattern = Pattern.compile("\"([^\"]*)\"|\\S+");
+        char[] alphabet = {'a', 'b', ':', '"', '"', ' ', ' ', '\t', '1'};
+        Random random = new Random(42);
+        for (int n = 0; n < 20000; n++) {
+            StringBuilder sb = new StringBuilder();
+            int length = random.nextInt(16);
+            for (int i = 0; i < length; i++) {
+                sb.append(alphabet[random.nextInt(alphabet.length)]);
+            }
+            String input = sb.toString();
+            
+            List<String> expected = new ArrayList<>();
+            Matcher matcher = pattern.matcher(input.trim());
+            while (matcher.find()) {
+                expected.add(matcher.group(1) != null ? matcher.group(1) : matcher.group());
+            }
+            
+            ParsedCommand cmd = CommandParser.parse(input);
+            List<String> actual = new ArrayList<>();
+            if (!expected.isEmpty()) {
+                actual.add(cmd.getCommand());
+                actual.addAll(List.of(cmd.getArgs()));
+            } else {
+                assertEquals("", cmd.getCommand());
+            }
+            assertEquals("输入: [" + input + "]", expected, actual);
+        }
+    }
 }
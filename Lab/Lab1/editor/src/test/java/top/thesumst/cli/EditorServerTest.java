@@ -0,0 +1,283 @@
+package top.thesumst.cli;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+import top.thesumst.command.Command;
+import top.thesumst.observer.EditorEvent;
+import top.thesumst.observer.EditorObserver;
+import top.thesumst.workspace.Workspace;
+import top.thesumst.workspace.WorkspaceEvent;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.PrintStream;
+import java.net.StandardProtocolFamily;
+import java.net.UnixDomainSocketAddress;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * 编辑器服务器测试
+ * 验证多个连接共用工作区、各自保持活动文件（不借用其他连接的文件、只在被切走时重新激活）、exit 只结束连接，
+ * 响应分帧，以及流水线请求按编号响应并合批执行
+ */
+public class EditorServerTest {
+
+    private Path testDir;
+    private Workspace workspace;
+    private EditorServer server;
+
+    @Before
+    public void setUp() throws IOException {
+        testDir = Files.createTempDirectory("editor_server_test_");
+        workspace = new Workspace();
+        server = new EditorServer(workspace, testDir.resolve("editor.sock"));
+        server.start();
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        server.close();
+        workspace.closeAll();
+        if (testDir != null && Files.exists(testDir)) {
+            Files.walk(testDir)
+                .sorted((a, b) -> b.compareTo(a))
+                .forEach(path -> {
+                    try {
+                        Files.deleteIfExists(path);
+                    } catch (IOException e) {
+                        // 忽略
+                    }
+                });
+        }
+    }
+
+    /**
+     * 简单客户端：发送一行命令，读到单独的 "." 为止
+     */
+    private class Client implements AutoCloseable {
+        private final SocketChannel channel;
+        private final BufferedReader reader;
+        private final PrintStream writer;
+
+        Client() throws IOException {
+            channel = SocketChannel.open(StandardProtocolFamily.UNIX);
+            channel.connect(UnixDomainSocketAddress.of(testDir.resolve("editor.sock")));
+            reader = new BufferedReader(new InputStreamReader(SocketStreams.input(channel), StandardCharsets.UTF_8));
+            writer = new PrintStream(SocketStreams.output(channel), true, StandardCharsets.UTF_8);
+        }
+
+        void send(String lines) {
+            writer.print(lines);
+            writer.flush();
+        }
+
+        /**
+         * 读取一条分帧响应
+         * @return 第一项为 "@编号"，其后为输出行
+         */
+        List<String> readFramed() throws IOException {
+            String[] header = reader.readLine().split(" ");
+            List<String> lines = new ArrayList<>();
+            lines.add(header[0]);
+            for (int i = Integer.parseInt(header[1]); i > 0; i--) {
+                lines.add(reader.readLine());
+            }
+            return lines;
+        }
+
+        List<String> request(String command) throws IOException {
+            send(command + "\n");
+            return readPlain();
+        }
+
+        List<String> readPlain() throws IOException {
+            List<String> lines = new ArrayList<>();
+            String line;
+            while (!(line = reader.readLine()).equals(".")) {
+                lines.add(line.startsWith(".") ? line.substring(1) : line);
+            }
+            return lines;
+        }
+
+        @Override
+        public void close() throws IOException {
+            channel.close();
+        }
+    }
+
+    private String quoted(String name) {
+        return "\"" + testDir.resolve(name) + "\"";
+    }
+
+    @Test
+    public void testSessionsKeepTheirOwnActiveFile() throws Exception {
+        try (Client a = new Client(); Client b = new Client()) {
+            assertEquals(List.of("已创建文件: a.txt"), a.request("init " + quoted("a.txt")));
+            b.request("init " + quoted("b.txt"));
+            a.request("append \"from a\"");
+            b.request("append \"from b\"");
+            assertEquals(List.of("1: from a"), a.request("show"));
+            assertEquals(List.of("1: from b"), b.request("show"));
+            assertEquals(List.of(), a.request("# 注释"));
+            assertTrue(b.request("bogus").get(0).startsWith("未知命令"));
+            assertEquals(2, server.getConnectionCount());
+        }
+        assertEquals(2, workspace.getOpenFileCount());
+    }
+
+    @Test
+    public void testSessionWithoutActiveFileDoesNotEditOthers() throws Exception {
+        try (Client a = new Client(); Client b = new Client()) {
+            a.request("init " + quoted("a.txt"));
+            assertEquals(List.of("没有活动的编辑器"), b.request("append \"from b\""));
+            assertEquals(List.of("没有活动的编辑器"), b.request("save"));
+            b.request("edit a.txt");
+            b.request("append \"from b\"");
+
+            // 活动文件被其他连接关闭后不会落到别的文件上
+            a.request("save " + quoted("a.txt"));
+            a.request("init " + quoted("c.txt"));
+            a.request("close a.txt");
+            assertEquals(List.of("没有活动的编辑器"), b.request("show"));
+            assertEquals(List.of("已追加文本"), a.request("append \"from a\""));
+        }
+        assertEquals(List.of("from a"), workspace.getEditor(testDir.resolve("c.txt").toString())
+            .getBuffer().getLines());
+    }
+
+    @Test
+    public void testReactivatesOnlyWhenAnotherSessionSwitched() throws Exception {
+        List<WorkspaceEvent> activations = Collections.synchronizedList(new ArrayList<>());
+        workspace.getEventBus().subscribe(EnumSet.of(WorkspaceEvent.Type.ACTIVATED), null, activations::add);
+        try (Client a = new Client(); Client b = new Client()) {
+            a.request("init " + quoted("a.txt"));
+            for (int i = 0; i < 10; i++) {
+                a.request("append x" + i);
+            }
+            assertEquals(1, activations.size());
+            b.request("init " + quoted("b.txt"));
+            a.request("append y");
+            b.request("append y");
+            assertEquals(4, activations.size());
+        }
+    }
+
+    @Test
+    public void testExitOnlyEndsSession() throws Exception {
+        try (Client a = new Client(); Client b = new Client()) {
+            a.request("init " + quoted("a.txt"));
+            a.request("append \"unsaved\"");
+            assertEquals(List.of(), a.request("exit"));
+            assertNull(a.reader.readLine());
+            b.request("init " + quoted("b.txt"));
+            assertEquals(List.of("已追加文本"), b.request("append b"));
+        }
+        assertTrue(workspace.getEditor(testDir.resolve("a.txt").toString()).isModified());
+        assertFalse(Files.exists(testDir.resolve("a.txt")));
+    }
+
+    @Test
+    public void testConcurrentClientsShareWorkspace() throws Exception {
+        int clients = 4;
+        int commands = 500;
+        ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor();
+        List<Future<?>> futures = new ArrayList<>();
+        for (int c = 0; c < clients; c++) {
+            String file = "f" + c + ".txt";
+            futures.add(executor.submit(() -> {
+                try (Client client = new Client()) {
+                    client.request("init " + quoted(file));
+                    for (int i = 0; i < commands; i++) {
+                        assertEquals(List.of("已追加文本"), client.request("append l" + i));
+                    }
+                }
+                return null;
+            }));
+        }
+        for (Future<?> future : futures) {
+            future.get();
+        }
+        executor.shutdown();
+        for (int c = 0; c < clients; c++) {
+            assertEquals(commands, workspace.getEditor(testDir.resolve("f" + c + ".txt").toString())
+                .getBuffer().getSize());
+        }
+        assertEquals(clients * (commands + 1L), server.getCommandCount());
+    }
+
+    @Test
+    public void testResponseFramerStuffsLeadingDots() throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        ResponseFramer framer = new ResponseFramer(bytes);
+        framer.write(".a\nb.\n.\nc".getBytes(StandardCharsets.UTF_8));
+        framer.endResponse();
+        framer.write('.');
+        framer.endResponse();
+        assertEquals("..a\nb.\n..\nc\n.\n..\n.\n", bytes.toString(StandardCharsets.UTF_8));
+    }
+
+    @Test
+    public void testPipelinedFramedRequests() throws Exception {
+        List<Integer> batchSizes = Collections.synchronizedList(new ArrayList<>());
+        try (Client client = new Client()) {
+            client.request("init " + quoted("p.txt"));
+            workspace.getActiveEditor().addObserver(new EditorObserver() {
+                @Override
+                public boolean wantsBatches() {
+                    return true;
+                }
+
+                @Override
+                public void onEvents(List<EditorEvent> events) {
+                    batchSizes.add(events.size());
+                }
+
+                @Override
+                public void onCommandExecuted(Command command) {
+                }
+
+                @Override
+                public void onCommandUndone(Command command) {
+                }
+
+                @Override
+                public void onCommandRedone(Command command) {
+                }
+            });
+
+            int commands = 1000;
+            StringBuilder pipeline = new StringBuilder();
+            for (int i = 0; i < commands; i++) {
+                pipeline.append("@r").append(i).append(" append \"line ").append(i).append("\"\n");
+            }
+            pipeline.append("@last show 999:1000\n");
+            pipeline.append("show 1:1\n");
+            pipeline.append("@empty\n");
+            client.send(pipeline.toString());
+
+            for (int i = 0; i < commands; i++) {
+                assertEquals(List.of("@r" + i, "已追加文本"), client.readFramed());
+            }
+            assertEquals(List.of("@last", "999: line 998", "1000: line 999"), client.readFramed());
+            assertEquals(List.of("1: line 0"), client.readPlain());
+            assertEquals(List.of("@empty"), client.readFramed());
+        }
+        assertEquals(1000, batchSizes.stream().mapToInt(Integer::intValue).sum());
+        assertTrue("流水线请求应合批执行: " + batchSizes.size(), batchSizes.size() < 1000);
+    }
+}
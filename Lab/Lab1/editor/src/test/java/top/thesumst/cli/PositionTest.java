@@ -0,0 +1,40 @@
+package top.thesumst.cli;
+
+import static org.junit.Assert.*;
+import org.junit.Test;
+
+/**
+ * Position 单元测试
+ * 验证 <行:列> 解析结果与原先 split(":") + parseInt 的判断一致
+ */
+public class PositionTest {
+
+    @Test
+    public void testParseValid() {
+        Position pos = Position.parse("12:345");
+        assertEquals(12, pos.getLine());
+        assertEquals(345, pos.getColumn());
+        assertEquals("12:345", pos.toString());
+        assertEquals(-1, Position.parse("-1:+2").getLine());
+    }
+
+    @Test
+    public void testFormatErrors() {
+        assertNull(Position.parse("12"));
+        assertNull(Position.parse("1:"));
+        assertNull(Position.parse(":"));
+        assertNull(Position.parse("1:2:3"));
+    }
+
+    @Test
+    public void testNumberErrors() {
+        for (String text : new String[] {":5", "a:1", "1:b", "1 :2", "99999999999:1"}) {
+            try {
+                Position.parse(text);
+                fail("应拒绝: " + text);
+            } catch (NumberFormatException e) {
+                // 预期
+            }
+        }
+    }
+}
@@ -0,0 +1,215 @@
+package top.thesumst.command;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+import top.thesumst.engine.TextBuffer;
+import top.thesumst.workspace.EditorInstance;
+import top.thesumst.workspace.Workspace;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+/**
+ * 撤销历史持久化测试
+ * 验证重启（新建 Workspace）后仍可撤销上次会话的编辑
+ */
+public class HistoryJournalTest {
+
+    private Path testDir;
+
+    @Before
+    public void setUp() throws IOException {
+        testDir = Files.createTempDirectory("editor_journal_test_");
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        if (testDir != null && Files.exists(testDir)) {
+            Files.walk(testDir)
+                .sorted((a, b) -> b.compareTo(a))
+                .forEach(path -> {
+                    try {
+                        Files.deleteIfExists(path);
+                    } catch (IOException e) {
+                        // 忽略
+                    }
+                });
+        }
+    }
+
+    private Workspace newWorkspace() {
+        Workspace workspace = new Workspace();
+        workspace.setHistoryPersistenceEnabled(true);
+        return workspace;
+    }
+
+    @Test
+    public void testCodecRoundTrip() {
+        TextBuffer buffer = new TextBuffer();
+        buffer.append("Hello World");
+        DeleteCommand delete = new DeleteCommand(buffer, 1, 7, 5);
+        delete.execute();
+
+        ByteBuffer out = CommandCodec.encode(delete, ByteBuffer.allocate(2));
+        out.flip();
+        Command decoded = CommandCodec.decode(out, buffer);
+
+        decoded.undo();
+        assertEquals("Hello World", buffer.getLine(1));
+    }
+
+    @Test
+    public void testCodecRoundTripsReplaceContent() {
+        TextBuffer buffer = new TextBuffer();
+        buffer.appendAll(List.of("old", ""));
+        ReplaceContentCommand replace = new ReplaceContentCommand(buffer, List.of("", "new", "lines"));
+        replace.execute();
+
+        ByteBuffer out = CommandCodec.encode(replace, ByteBuffer.allocate(2));
+        out.flip();
+        Command decoded = CommandCodec.decode(out, buffer);
+
+        decoded.undo();
+        assertEquals(List.of("old", ""), buffer.getLines());
+        decoded.execute();
+        assertEquals(List.of("", "new", "lines"), buffer.getLines());
+    }
+
+    @Test
+    public void testUndoAfterRestart() throws IOException {
+        Path file = testDir.resolve("doc.txt");
+        Files.write(file, List.of("base"));
+
+        Workspace first = newWorkspace();
+        EditorInstance editor = first.load(file.toString());
+        editor.getHistory().push(new AppendCommand(editor.getBuffer(), "line 2"));
+        editor.getHistory().push(new InsertCommand(editor.getBuffer(), 1, 5, "!"));
+        editor.getHistory().push(new DeleteCommand(editor.getBuffer(), 1, 1, 1));
+        first.save(file.toString());
+        first.closeAll();
+
+        assertTrue("应生成撤销日志", Files.exists(testDir.resolve(".doc.txt.history")));
+
+        Workspace second = newWorkspace();
+        EditorInstance restored = second.load(file.toString());
+        assertEquals(List.of("ase!", "line 2"), restored.getBuffer().getLines());
+        assertTrue(restored.getHistory().canUndo());
+        assertEquals(3, restored.getHistory().getUndoStackSize());
+
+        assertTrue(restored.getHistory().undo());
+        assertEquals("base!", restored.getBuffer().getLine(1));
+        assertTrue(restored.getHistory().undo());
+        assertEquals("base", restored.getBuffer().getLine(1));
+        assertTrue(restored.getHistory().undo());
+        assertEquals(List.of("base"), restored.getBuffer().getLines());
+        assertFalse(restored.getHistory().undo());
+
+        // 重做恢复的命令并继续编辑
+        assertTrue(restored.getHistory().redo());
+        assertEquals(List.of("base", "line 2"), restored.getBuffer().getLines());
+        second.closeAll();
+    }
+
+    @Test
+    public void testCurrentPositionSurvivesReopen() throws IOException {
+        Path file = testDir.resolve("current.txt");
+        TextBuffer buffer = new TextBuffer();
+        HistoryJournal journal = new HistoryJournal(file.toString());
+        long first = journal.append(new AppendCommand(buffer, "a"), 0, 1);
+        long second = journal.append(new AppendCommand(buffer, "b"), first, 2);
+        journal.markSave(0, 0, 42);
+        journal.markCurrent(second);
+        long size = journal.size();
+        journal.markCurrent(first);
+        assertEquals("当前位置原地改写，不追加记录", size, journal.size());
+        journal.close();
+
+        HistoryJournal reopened = new HistoryJournal(file.toString());
+        assertEquals(first, reopened.getCurrentOffset());
+        reopened.reset();
+        assertEquals(0, reopened.getCurrentOffset());
+        reopened.close();
+    }
+
+    @Test
+    public void testUnsavedEditsAfterSaveAreNotRestored() throws IOException {
+        Path file = testDir.resolve("partial.txt");
+
+        Workspace first = newWorkspace();
+        EditorInstance editor = first.load(file.toString());
+        editor.getHistory().push(new AppendCommand(editor.getBuffer(), "saved"));
+        first.save(file.toString());
+        editor.getHistory().push(new AppendCommand(editor.getBuffer(), "unsaved"));
+        first.closeAll();
+
+        Workspace second = newWorkspace();
+        EditorInstance restored = second.load(file.toString());
+        assertEquals(1, restored.getHistory().getUndoStackSize());
+        assertTrue(restored.getHistory().undo());
+        assertEquals(0, restored.getBuffer().getSize());
+        second.closeAll();
+    }
+
+    @Test
+    public void testExternalModificationDiscardsHistory() throws IOException {
+        Path file = testDir.resolve("external.txt");
+
+        Workspace first = newWorkspace();
+        EditorInstance editor = first.load(file.toString());
+        editor.getHistory().push(new AppendCommand(editor.getBuffer(), "mine"));
+        first.save(file.toString());
+        first.closeAll();
+
+        Files.write(file, List.of("changed elsewhere"));
+
+        Workspace second = newWorkspace();
+        EditorInstance restored = second.load(file.toString());
+        assertFalse("外部修改后历史应作废", restored.getHistory().canUndo());
+        second.closeAll();
+    }
+
+    @Test
+    public void testCompactionDropsAbandonedBranches() throws IOException {
+        Path file = testDir.resolve("branches.txt");
+        Files.write(file, List.of("base"));
+
+        Workspace first = newWorkspace();
+        EditorInstance editor = first.load(file.toString());
+        CommandHistory history = editor.getHistory();
+        history.getJournal().setCompactThreshold(4096);
+        // 每轮追加一行后撤销再换一行，撤销树中留下大量放弃的分支
+        for (int i = 0; i < 500; i++) {
+            history.push(new AppendCommand(editor.getBuffer(), "abandoned " + i));
+            history.undo();
+            history.push(new AppendCommand(editor.getBuffer(), "kept " + i));
+        }
+        first.save(file.toString());
+        long size = history.getJournal().size();
+        assertTrue("日志应被压实: " + size, size < 3 * 4096);
+        first.closeAll();
+
+        Workspace second = newWorkspace();
+        EditorInstance restored = second.load(file.toString());
+        assertEquals(500, restored.getHistory().getUndoStackSize());
+        assertEquals(500, restored.getHistory().undo(1000));
+        assertEquals(List.of("base"), restored.getBuffer().getLines());
+        second.closeAll();
+    }
+
+    @Test
+    public void testPersistenceDisabledByDefault() throws IOException {
+        Path file = testDir.resolve("plain.txt");
+        Workspace workspace = new Workspace();
+        EditorInstance editor = workspace.load(file.toString());
+        editor.getHistory().push(new AppendCommand(editor.getBuffer(), "x"));
+        workspace.save(file.toString());
+
+        assertFalse(Files.exists(testDir.resolve(".plain.txt.history")));
+    }
+}
@@ -0,0 +1,223 @@
+package top.thesumst.command;
+
+import org.junit.Before;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+import top.thesumst.engine.TextBuffer;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 撤销树测试类
+ * 验证分支保留、跨分支跳转以及基于检查点的远距离跳转
+ */
+public class UndoTreeTest {
+
+    private TextBuffer buffer;
+    private CommandHistory history;
+
+    @Before
+    public void setUp() {
+        buffer = new TextBuffer();
+        history = new CommandHistory(buffer);
+    }
+
+    @Test
+    public void testBranchIsKeptAfterNewCommand() {
+        history.push(new AppendCommand(buffer, "A"));
+        int branchA = history.getCurrentNodeId();
+        history.undo();
+        history.push(new AppendCommand(buffer, "B"));
+        int branchB = history.getCurrentNodeId();
+
+        // 根节点下保留两个分支
+        assertEquals(List.of(branchA, branchB), history.getChildIds(0));
+        assertFalse(history.canRedo());
+
+        // 跳回被"覆盖"的分支
+        assertTrue(history.jumpTo(branchA));
+        assertEquals(List.of("A"), buffer.getLines());
+        assertTrue(history.jumpTo(branchB));
+        assertEquals(List.of("B"), buffer.getLines());
+    }
+
+    @Test
+    public void testJumpUpdatesRedoDirection() {
+        history.push(new AppendCommand(buffer, "1"));
+        history.push(new AppendCommand(buffer, "2"));
+        int two = history.getCurrentNodeId();
+        history.jumpTo(0);
+        assertEquals(0, buffer.getSize());
+        assertEquals(2, history.getRedoStackSize());
+
+        assertTrue(history.redo());
+        assertTrue(history.redo());
+        assertEquals(two, history.getCurrentNodeId());
+        assertEquals(List.of("1", "2"), buffer.getLines());
+    }
+
+    @Test
+    public void testLongJumpThroughCheckpointMatchesStepwise() {
+        int steps = CommandHistory.DEFAULT_CHECKPOINT_INTERVAL * 5 + 7;
+        List<List<String>> states = new ArrayList<>();
+        List<Integer> ids = new ArrayList<>();
+        for (int i = 0; i < steps; i++) {
+            if (i % 3 == 0) {
+                history.push(new AppendCommand(buffer, "line " + i));
+            } else {
+                history.push(new InsertCommand(buffer, buffer.getSize(), 1, i + ":"));
+            }
+            states.add(buffer.getLines());
+            ids.add(history.getCurrentNodeId());
+        }
+
+        // 另起一个分支，再跳回主干上的任意状态
+        history.jumpTo(ids.get(10));
+        history.push(new AppendCommand(buffer, "branch"));
+
+        for (int index : new int[] {steps - 1, 3, CommandHistory.DEFAULT_CHECKPOINT_INTERVAL * 3 + 1, 200}) {
+            assertTrue(history.jumpTo(ids.get(index)));
+            assertEquals("跳转到第 " + index + " 步的内容不一致", states.get(index), buffer.getLines());
+            assertEquals(index + 1, history.getUndoStackSize());
+        }
+    }
+
+    @Test
+    public void testJumpFiresCallbacks() {
+        List<String> events = new ArrayList<>();
+        history.setOnUndo(c -> events.add("undo"));
+        history.setOnRedo(c -> events.add("redo"));
+
+        history.push(new AppendCommand(buffer, "A"));
+        history.push(new AppendCommand(buffer, "B"));
+        int b = history.getCurrentNodeId();
+        history.jumpTo(0);
+        history.jumpTo(b);
+
+        assertEquals(List.of("undo", "undo", "redo", "redo"), events);
+    }
+
+    @Test
+    public void testBulkUndoRedo() {
+        history = new CommandHistory(buffer, 8);
+        List<List<String>> states = new ArrayList<>();
+        states.add(buffer.getLines());
+        for (int i = 0; i < 50; i++) {
+            history.push(new AppendCommand(buffer, "L" + i));
+            states.add(buffer.getLines());
+        }
+
+        assertEquals(30, history.undo(30));
+        assertEquals(states.get(20), buffer.getLines());
+        assertEquals(30, history.getRedoStackSize());
+
+        assertEquals(25, history.redo(25));
+        assertEquals(states.get(45), buffer.getLines());
+
+        // 超出历史范围时只移动可用的步数
+        assertEquals(45, history.undo(100));
+        assertEquals(0, buffer.getSize());
+        assertEquals(0, history.undo(1));
+        assertEquals(50, history.redo(100));
+        assertEquals(states.get(50), buffer.getLines());
+    }
+
+    @Test
+    public void testBulkUndoNotifiesOnce() {
+        List<String> events = new ArrayList<>();
+        history.setOnUndo(c -> events.add("undo"));
+        history.setOnBulkUndo(list -> events.add("bulk-undo:" + list.size()));
+        history.setOnBulkRedo(list -> events.add("bulk-redo:" + list.size()));
+
+        for (int i = 0; i < 5; i++) {
+            history.push(new AppendCommand(buffer, "L" + i));
+        }
+        history.undo(4);
+        history.undo(1);
+        history.redo(5);
+
+        assertEquals(List.of("bulk-undo:4", "undo", "bulk-redo:5"), events);
+    }
+
+    @Test
+    public void testUndoToSavePoint() {
+        assertFalse(history.undoToSavePoint());
+
+        history.push(new AppendCommand(buffer, "saved"));
+        history.markSavePoint();
+        assertTrue(history.isAtSavePoint());
+
+        for (int i = 0; i < 10; i++) {
+            history.push(new AppendCommand(buffer, "edit " + i));
+        }
+        assertFalse(history.isAtSavePoint());
+
+        assertTrue(history.undoToSavePoint());
+        assertTrue(history.isAtSavePoint());
+        assertEquals(List.of("saved"), buffer.getLines());
+    }
+
+    @Test
+    public void testCheckpointsAreThinnedWithBoundedReplay() {
+        int interval = 4;
+        int stride = CommandHistory.SPARSE_CHECKPOINT_STRIDE;
+        history = new CommandHistory(buffer, interval);
+        int steps = interval * 4096;
+        List<Integer> ids = new ArrayList<>();
+        for (int i = 0; i < steps; i++) {
+            history.push(new AppendCommand(buffer, "L" + i));
+            ids.add(history.getCurrentNodeId());
+        }
+        // 较早的检查点按跨度稀疏化，只有最近的保持密集
+        int count = history.getCheckpointCount();
+        assertEquals(4096 / stride + stride - 1, count);
+
+        // 稀疏化后远距离跳转的结果不变
+        assertEquals(steps - 5, history.undo(steps - 5));
+        assertEquals(List.of("L0", "L1", "L2", "L3", "L4"), buffer.getLines());
+
+        // 在早期节点上新建分支：原分支的检查点保留，新分支各自稀疏化
+        for (int i = 0; i < interval * stride * 3; i++) {
+            history.push(new AppendCommand(buffer, "b" + i));
+        }
+        assertEquals(count + 3 + stride - 1, history.getCheckpointCount());
+
+        // 任意状态（包括被放弃的分支）都只需重放不到一个跨度的命令
+        for (int id : ids) {
+            int distance = history.getReplayDistance(id);
+            assertTrue("重放距离应有上界: " + distance, distance >= 0 && distance < interval * stride);
+        }
+        assertTrue(history.jumpTo(ids.get(steps - 1)));
+        assertEquals(steps, buffer.getSize());
+        assertEquals("L" + (steps - 1), buffer.getLines().get(steps - 1));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testInvalidCheckpointInterval() {
+        new CommandHistory(buffer, 0);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testJumpToUnknownNode() {
+        history.jumpTo(42);
+    }
+
+    @Test
+    public void testSnapshotSharesUnchangedChunks() {
+        for (int i = 0; i < 1000; i++) {
+            buffer.append("line " + i);
+        }
+        TextBuffer.Snapshot first = buffer.snapshot();
+        buffer.insert(900, 1, "x");
+        TextBuffer.Snapshot second = buffer.snapshot(first);
+
+        assertTrue(second.sharesChunkWith(first, 0));
+        assertFalse("被修改的块不应共享", second.sharesChunkWith(first, 3));
+
+        buffer.restore(first);
+        assertEquals("line 899", buffer.getLine(900));
+        assertEquals(1000, buffer.getSize());
+    }
+}
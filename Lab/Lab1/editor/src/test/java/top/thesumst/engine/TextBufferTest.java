@@ -244,4 +244,21 @@ public class TextBufferTest {
     public void testEmptyBufferSize() {
         assertEquals(0, buffer.getSize());
     }
+
+    @Test
+    public void testSnapshotLinesAndUnchangedDetection() {
+        for (int i = 0; i < 600; i++) {
+            buffer.append("line " + i);
+        }
+        TextBuffer.Snapshot first = buffer.snapshot();
+        assertEquals("line 0", first.getLine(0));
+        assertEquals("line 599", first.getLine(599));
+
+        TextBuffer.Snapshot unchanged = buffer.snapshot(first);
+        assertTrue(unchanged.sharesAllChunksWith(first));
+
+        buffer.insert(300, 1, "x");
+        assertFalse(buffer.snapshot(unchanged).sharesAllChunksWith(unchanged));
+        assertFalse(first.sharesAllChunksWith(null));
+    }
 }
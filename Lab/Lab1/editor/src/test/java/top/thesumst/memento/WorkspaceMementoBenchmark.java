@@ -0,0 +1,75 @@
+package top.thesumst.memento;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import top.thesumst.memento.WorkspaceMemento.FileState;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 工作区备忘录编解码基准测试
+ * 对比旧文本格式（split/trim/正则切分）与二进制格式的编码和解码
+ * 运行：mvn -P bench test -Dbench.args="WorkspaceMementoBenchmark -prof gc"
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class WorkspaceMementoBenchmark {
+
+    @Param({"16", "1024"})
+    private int files;
+
+    private WorkspaceMemento memento;
+    private byte[] text;
+    private byte[] binary;
+
+    @Setup
+    public void setUp() {
+        List<FileState> states = new ArrayList<>();
+        for (int i = 0; i < files; i++) {
+            states.add(new FileState("/home/user/projects/editor/docs/notes-" + i + ".txt", i % 3 == 0, i % 2 == 0));
+        }
+        memento = new WorkspaceMemento(states, states.get(0).getFilePath());
+        text = memento.serialize().getBytes(StandardCharsets.UTF_8);
+        ByteBuffer encoded = memento.toBytes();
+        binary = new byte[encoded.remaining()];
+        encoded.get(binary);
+    }
+
+    @Benchmark
+    public byte[] textEncode() {
+        return memento.serialize().getBytes(StandardCharsets.UTF_8);
+    }
+
+    @Benchmark
+    public ByteBuffer binaryEncode() {
+        return memento.toBytes();
+    }
+
+    @Benchmark
+    public WorkspaceMemento textDecode() {
+        return WorkspaceMemento.deserialize(new String(text, StandardCharsets.UTF_8));
+    }
+
+    @Benchmark
+    public WorkspaceMemento binaryDecode() {
+        return WorkspaceMemento.fromBytes(ByteBuffer.wrap(binary));
+    }
+}
@@ -0,0 +1,343 @@
+package top.thesumst.memento;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+import top.thesumst.command.AppendCommand;
+import top.thesumst.command.HistoryJournal;
+import top.thesumst.command.InsertCommand;
+import top.thesumst.engine.TextBuffer;
+import top.thesumst.memento.WorkspaceMemento.FileState;
+import top.thesumst.workspace.EditorInstance;
+import top.thesumst.workspace.Workspace;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.zip.CRC32;
+
+/**
+ * 工作区备忘录二进制格式测试
+ * 验证特殊字符路径的往返、校验和与版本检查，旧文本格式状态文件的导入，
+ * 以及未保存内容的保存与恢复
+ */
+public class WorkspaceMementoTest {
+
+    private Path testDir;
+
+    @Before
+    public void setUp() throws IOException {
+        testDir = Files.createTempDirectory("editor_memento_test_");
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        if (testDir != null && Files.exists(testDir)) {
+            Files.walk(testDir)
+                .sorted((a, b) -> b.compareTo(a))
+                .forEach(path -> {
+                    try {
+                        Files.deleteIfExists(path);
+                    } catch (IOException e) {
+                        // 忽略
+                    }
+                });
+        }
+    }
+
+    @Test
+    public void testBinaryRoundTripKeepsSpecialPaths() {
+        List<FileState> states = List.of(
+            new FileState("/tmp/a|b|c.txt", true, false),
+            new FileState("/tmp/换行\n文件.txt", false, true),
+            new FileState("", true, true));
+        WorkspaceMemento memento = new WorkspaceMemento(states, "/tmp/a|b|c.txt");
+
+        ByteBuffer bytes = memento.toBytes();
+        assertTrue(WorkspaceMemento.isBinary(bytes));
+        WorkspaceMemento restored = WorkspaceMemento.fromBytes(bytes);
+
+        assertEquals("/tmp/a|b|c.txt", restored.getActiveFilePath());
+        assertEquals(3, restored.getFileStates().size());
+        for (int i = 0; i < states.size(); i++) {
+            FileState expected = states.get(i);
+            FileState actual = restored.getFileStates().get(i);
+            assertEquals(expected.getFilePath(), actual.getFilePath());
+            assertEquals(expected.isModified(), actual.isModified());
+            assertEquals(expected.isLoggingEnabled(), actual.isLoggingEnabled());
+        }
+
+        WorkspaceMemento empty = WorkspaceMemento.fromBytes(new WorkspaceMemento(List.of(), null).toBytes());
+        assertNull(empty.getActiveFilePath());
+        assertTrue(empty.getFileStates().isEmpty());
+    }
+
+    @Test
+    public void testCorruptedDataIsRejected() {
+        ByteBuffer bytes = new WorkspaceMemento(List.of(new FileState("/tmp/x.txt", false, false)), null).toBytes();
+
+        ByteBuffer flipped = ByteBuffer.wrap(bytes.array().clone());
+        flipped.put(WorkspaceMemento.HEADER_SIZE + 6, (byte) 'y');
+        assertRejected(flipped, "校验和");
+
+        ByteBuffer truncated = ByteBuffer.wrap(bytes.array(), 0, bytes.limit() - 1);
+        assertRejected(truncated, "不完整");
+
+        ByteBuffer future = ByteBuffer.wrap(bytes.array().clone());
+        future.putInt(4, WorkspaceMemento.VERSION + 1);
+        assertRejected(future, "版本");
+    }
+
+    private static void assertRejected(ByteBuffer data, String reason) {
+        try {
+            WorkspaceMemento.fromBytes(data);
+            fail("应拒绝损坏的数据");
+        } catch (IllegalArgumentException e) {
+            assertTrue(e.getMessage(), e.getMessage().contains(reason));
+        }
+    }
+
+    @Test
+    public void testWorkspaceSavesBinaryAndImportsLegacyText() throws IOException {
+        Path piped = Files.writeString(testDir.resolve("a|b.txt"), "piped\n");
+        Path plain = Files.writeString(testDir.resolve("plain.txt"), "plain\n");
+        Path stateFile = testDir.resolve("state");
+
+        Workspace workspace = new Workspace();
+        workspace.load(piped.toString());
+        workspace.load(plain.toString());
+        workspace.saveState(stateFile.toString());
+        workspace.closeAll();
+        assertTrue(WorkspaceMemento.isBinary(ByteBuffer.wrap(Files.readAllBytes(stateFile))));
+
+        Workspace restored = new Workspace();
+        restored.restoreState(stateFile.toString());
+        assertEquals(List.of(piped.toString(), plain.toString()), restored.getOpenFiles());
+        assertEquals(plain.toString(), restored.getActiveEditor().getFilePath());
+        restored.closeAll();
+
+        // 旧的文本格式仍可导入
+        Files.writeString(stateFile, "ACTIVE:" + plain + "\nFILE:" + plain + "|true|false\n");
+        Workspace legacy = new Workspace();
+        legacy.restoreState(stateFile.toString());
+        assertEquals(List.of(plain.toString()), legacy.getOpenFiles());
+        assertTrue(legacy.getActiveEditor().isModified());
+        legacy.closeAll();
+    }
+
+    @Test
+    public void testUnsavedContentIsRestoredExactly() throws IOException {
+        Path edited = Files.writeString(testDir.resolve("edited.txt"), "first\nsecond\n");
+        Path fresh = testDir.resolve("fresh.txt");
+        Path stateFile = testDir.resolve("state");
+
+        Workspace workspace = new Workspace();
+        workspace.setHistoryPersistenceEnabled(true);
+        EditorInstance editor = workspace.load(edited.toString());
+        editor.getHistory().push(new InsertCommand(editor.getBuffer(), 1, 6, " 行\r\n内换行"));
+        editor.getHistory().push(new AppendCommand(editor.getBuffer(), ""));
+        EditorInstance created = workspace.init(fresh.toString());
+        created.getHistory().push(new AppendCommand(created.getBuffer(), "never saved"));
+        List<String> expected = editor.getBuffer().getLines();
+        workspace.saveState(stateFile.toString());
+        workspace.closeAll();
+
+        Workspace restored = new Workspace();
+        restored.setHistoryPersistenceEnabled(true);
+        restored.restoreState(stateFile.toString());
+        EditorInstance back = restored.getEditor(edited.toString());
+        assertEquals(expected, back.getBuffer().getLines());
+        assertTrue(back.isModified());
+        assertEquals(List.of("never saved"), restored.getEditor(fresh.toString()).getBuffer().getLines());
+        assertEquals("磁盘文件不受影响", "first\nsecond\n", Files.readString(edited));
+        assertFalse(Files.exists(fresh));
+
+        restored.save(edited.toString());
+        String sep = System.lineSeparator();
+        assertEquals(String.join(sep, expected) + sep, Files.readString(edited));
+        restored.closeAll();
+    }
+
+    @Test
+    public void testUnsavedContentKeepsUndoHistory() throws IOException {
+        Path file = Files.writeString(testDir.resolve("history.txt"), "base\n");
+        Path stateFile = testDir.resolve("state");
+
+        Workspace workspace = new Workspace();
+        workspace.setHistoryPersistenceEnabled(true);
+        EditorInstance editor = workspace.load(file.toString());
+        editor.getHistory().push(new AppendCommand(editor.getBuffer(), "saved"));
+        workspace.save(file.toString());
+        editor.getHistory().push(new AppendCommand(editor.getBuffer(), "unsaved"));
+        workspace.saveState(stateFile.toString());
+        workspace.closeAll();
+
+        Workspace restored = new Workspace();
+        restored.setHistoryPersistenceEnabled(true);
+        restored.restoreState(stateFile.toString());
+        EditorInstance back = restored.getEditor(file.toString());
+        assertEquals(List.of("base", "saved", "unsaved"), back.getBuffer().getLines());
+        assertTrue(back.isModified());
+
+        // 恢复的内容是保存点之上的一步编辑，再往前是上次会话的撤销历史
+        assertTrue(back.getHistory().undo());
+        assertEquals(List.of("base", "saved"), back.getBuffer().getLines());
+        assertFalse(back.isModified());
+        assertTrue(back.getHistory().undo());
+        assertEquals(List.of("base"), back.getBuffer().getLines());
+        assertEquals(2, back.getHistory().redo(2));
+        assertEquals(List.of("base", "saved", "unsaved"), back.getBuffer().getLines());
+        restored.closeAll();
+    }
+
+    @Test
+    public void testRestartsReturnToJournaledNode() throws IOException {
+        Path file = Files.writeString(testDir.resolve("steps.txt"), "base\n");
+        Path stateFile = testDir.resolve("state");
+        Path history = HistoryJournal.journalPathFor(file.toString());
+
+        Workspace workspace = new Workspace();
+        workspace.setHistoryPersistenceEnabled(true);
+        EditorInstance editor = workspace.load(file.toString());
+        editor.getHistory().push(new AppendCommand(editor.getBuffer(), "a"));
+        editor.getHistory().push(new AppendCommand(editor.getBuffer(), "b"));
+        workspace.saveState(stateFile.toString());
+        workspace.closeAll();
+        long size = Files.size(history);
+
+        // 每次重启都跳回日志中的同一节点，不再追加整段替换
+        EditorInstance back = null;
+        for (int i = 0; i < 3; i++) {
+            workspace = new Workspace();
+            workspace.setHistoryPersistenceEnabled(true);
+            workspace.restoreState(stateFile.toString());
+            back = workspace.getEditor(file.toString());
+            assertEquals(List.of("base", "a", "b"), back.getBuffer().getLines());
+            assertTrue(back.isModified());
+            assertEquals(List.of(), back.getHistory().getChildIds(back.getHistory().getCurrentNodeId()));
+            workspace.saveState(stateFile.toString());
+            if (i < 2) {
+                workspace.closeAll();
+            }
+            assertEquals(size, Files.size(history));
+        }
+
+        // 上次会话的编辑仍可逐条撤销
+        assertTrue(back.getHistory().undo());
+        assertEquals(List.of("base", "a"), back.getBuffer().getLines());
+        assertTrue(back.getHistory().undo());
+        assertEquals(List.of("base"), back.getBuffer().getLines());
+        assertFalse(back.isModified());
+        assertFalse(back.getHistory().canUndo());
+        workspace.closeAll();
+    }
+
+    @Test
+    public void testUnmatchedContentIsReplacedOnlyOnce() throws IOException {
+        Path file = Files.writeString(testDir.resolve("lost.txt"), "#log\nbase\n");
+        Path stateFile = testDir.resolve("state");
+        Path history = HistoryJournal.journalPathFor(file.toString());
+        Path log = testDir.resolve(".lost.txt.log");
+
+        Workspace workspace = new Workspace();
+        workspace.setHistoryPersistenceEnabled(true);
+        EditorInstance editor = workspace.load(file.toString());
+        editor.getHistory().push(new AppendCommand(editor.getBuffer(), "edit"));
+        workspace.saveState(stateFile.toString());
+        workspace.closeAll();
+        assertEquals(1, countLines(log, "EXECUTE"));
+
+        // 撤销日志丢失：找不到对应节点时作为一步编辑换成未保存的内容，重启后复用这一步
+        Files.delete(history);
+        long size = -1;
+        for (int i = 0; i < 2; i++) {
+            workspace = new Workspace();
+            workspace.setHistoryPersistenceEnabled(true);
+            workspace.restoreState(stateFile.toString());
+            EditorInstance back = workspace.getEditor(file.toString());
+            assertEquals(List.of("#log", "base", "edit"), back.getBuffer().getLines());
+            assertTrue(back.isLoggingEnabled());
+            workspace.saveState(stateFile.toString());
+            workspace.closeAll();
+            if (size < 0) {
+                size = Files.size(history);
+            }
+            assertEquals(size, Files.size(history));
+        }
+        // 恢复发生在挂接日志观察者之前，不会记成一次执行
+        assertEquals(1, countLines(log, "EXECUTE"));
+    }
+
+    private static long countLines(Path file, String text) throws IOException {
+        try (var lines = Files.lines(file)) {
+            return lines.filter(line -> line.contains(text)).count();
+        }
+    }
+
+    @Test
+    public void testDiscardedChangesAreNotKept() throws IOException {
+        Path file = Files.writeString(testDir.resolve("discard.txt"), "disk\n");
+        Path stateFile = testDir.resolve("state");
+
+        Workspace workspace = new Workspace();
+        EditorInstance editor = workspace.load(file.toString());
+        editor.getHistory().push(new AppendCommand(editor.getBuffer(), "dropped"));
+        workspace.saveState(stateFile.toString(), false);
+        workspace.closeAll();
+
+        Workspace restored = new Workspace();
+        restored.restoreState(stateFile.toString());
+        assertEquals(List.of("disk"), restored.getEditor(file.toString()).getBuffer().getLines());
+        assertTrue(restored.getEditor(file.toString()).isModified());
+        restored.closeAll();
+    }
+
+    @Test
+    public void testAsyncSaveCapturesContentAtCallTime() throws IOException {
+        Path file = testDir.resolve("big.txt");
+        Path stateFile = testDir.resolve("state");
+
+        Workspace workspace = new Workspace();
+        EditorInstance editor = workspace.init(file.toString());
+        TextBuffer buffer = editor.getBuffer();
+        for (int i = 0; i < 100_000; i++) {
+            buffer.append("line " + i);
+        }
+        CompletableFuture<Void> first = workspace.saveStateAsync(stateFile.toString(), true);
+        buffer.append("after snapshot"); // 不影响已截取的内容
+        first.join();
+        WorkspaceMemento memento = WorkspaceMemento.fromBytes(ByteBuffer.wrap(Files.readAllBytes(stateFile)));
+        List<String> content = memento.getFileStates().get(0).getContent();
+        assertEquals(100_000, content.size());
+        assertEquals("line 99999", content.get(99_999));
+
+        workspace.saveStateAsync(stateFile.toString(), true).join();
+        memento = WorkspaceMemento.fromBytes(ByteBuffer.wrap(Files.readAllBytes(stateFile)));
+        assertEquals("after snapshot", memento.getFileStates().get(0).getContent().get(100_000));
+        workspace.closeAll();
+    }
+
+    @Test
+    public void testVersionOneIsStillReadable() {
+        ByteBuffer bytes = new WorkspaceMemento(List.of(new FileState("/tmp/old.txt", true, true)), "/tmp/old.txt")
+            .toBytes();
+        byte[] data = bytes.array().clone();
+        ByteBuffer old = ByteBuffer.wrap(data);
+        old.putInt(4, 1);
+        int end = data.length - WorkspaceMemento.CHECKSUM_SIZE;
+        CRC32 crc = new CRC32();
+        crc.update(data, 0, end);
+        old.putInt(end, (int) crc.getValue());
+
+        WorkspaceMemento memento = WorkspaceMemento.fromBytes(old);
+        FileState state = memento.getFileStates().get(0);
+        assertEquals("/tmp/old.txt", state.getFilePath());
+        assertTrue(state.isModified() && state.isLoggingEnabled());
+        assertFalse(state.hasContent());
+    }
+}
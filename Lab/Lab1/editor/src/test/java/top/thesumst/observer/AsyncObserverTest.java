@@ -0,0 +1,198 @@
+package top.thesumst.observer;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+import top.thesumst.command.AppendCommand;
+import top.thesumst.command.Command;
+import top.thesumst.workspace.EditorInstance;
+import top.thesumst.workspace.Workspace;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * 观察者异步分发测试
+ * 验证声明 ASYNC 的观察者不阻塞编辑线程、按顺序收到事件，并能查看队列深度
+ */
+public class AsyncObserverTest {
+
+    private Path testDir;
+
+    @Before
+    public void setUp() throws IOException {
+        testDir = Files.createTempDirectory("editor_async_observer_test_");
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        if (testDir != null && Files.exists(testDir)) {
+            Files.walk(testDir)
+                .sorted((a, b) -> b.compareTo(a))
+                .forEach(path -> {
+                    try {
+                        Files.deleteIfExists(path);
+                    } catch (IOException e) {
+                        // 忽略
+                    }
+                });
+        }
+    }
+
+    /**
+     * 记录收到的事件与回调线程的观察者
+     */
+    private static class RecordingObserver implements EditorObserver {
+        private final Dispatch dispatch;
+        private final long delayMillis;
+        final List<String> events = Collections.synchronizedList(new ArrayList<>());
+        final List<Thread> threads = Collections.synchronizedList(new ArrayList<>());
+
+        RecordingObserver(Dispatch dispatch, long delayMillis) {
+            this.dispatch = dispatch;
+            this.delayMillis = delayMillis;
+        }
+
+        @Override
+        public Dispatch getDispatch() {
+            return dispatch;
+        }
+
+        private void record(String type, Command command) {
+            if (delayMillis > 0) {
+                try {
+                    Thread.sleep(delayMillis);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+            events.add(type + " " + command);
+            threads.add(Thread.currentThread());
+        }
+
+        @Override
+        public void onCommandExecuted(Command command) {
+            record("EXECUTE", command);
+        }
+
+        @Override
+        public void onCommandUndone(Command command) {
+            record("UNDO", command);
+        }
+
+        @Override
+        public void onCommandRedone(Command command) {
+            record("REDO", command);
+        }
+    }
+
+    @Test
+    public void testSlowAsyncObserverKeepsOrderAndReportsDepth() {
+        EditorInstance editor = new EditorInstance(testDir.resolve("a.txt").toString());
+        editor.setAsyncDispatchEnabled(true);
+        RecordingObserver slow = new RecordingObserver(EditorObserver.Dispatch.ASYNC, 1);
+        RecordingObserver inline = new RecordingObserver(EditorObserver.Dispatch.SYNC, 0);
+        editor.addObserver(slow);
+        editor.addObserver(inline);
+        assertEquals(1, editor.getAsyncObservers().size());
+
+        for (int i = 0; i < 100; i++) {
+            editor.getHistory().push(new AppendCommand(editor.getBuffer(), "l" + i));
+        }
+        editor.getHistory().undo(3);
+
+        // 同步观察者已收到全部事件，慢观察者仍在排队
+        assertEquals(103, inline.events.size());
+        AsyncObserver async = editor.getAsyncObservers().get(0);
+        assertTrue(async.getQueueDepth() > 0);
+
+        editor.awaitObservers();
+        assertEquals(0, async.getQueueDepth());
+        assertTrue(async.getPeakQueueDepth() > 1);
+        assertEquals(103, async.getDeliveredCount()); // 按事件计数，undo 3 计为 3 个事件
+        assertEquals(inline.events, slow.events);
+        assertFalse(slow.threads.contains(Thread.currentThread()));
+        assertTrue(slow.threads.get(0).isVirtual());
+    }
+
+    @Test(timeout = 10000)
+    public void testErrorInObserverDoesNotStallQueue() {
+        RecordingObserver recording = new RecordingObserver(EditorObserver.Dispatch.ASYNC, 0);
+        AsyncObserver async = new AsyncObserver(new EditorObserver() {
+            private boolean failed;
+
+            @Override
+            public void onCommandExecuted(Command command) {
+                if (!failed) {
+                    failed = true;
+                    throw new AssertionError("boom");
+                }
+                recording.onCommandExecuted(command);
+            }
+
+            @Override
+            public void onCommandUndone(Command command) {
+            }
+
+            @Override
+            public void onCommandRedone(Command command) {
+            }
+        });
+        EditorInstance editor = new EditorInstance(testDir.resolve("e.txt").toString());
+        for (int i = 0; i < 3; i++) {
+            async.onCommandExecuted(new AppendCommand(editor.getBuffer(), "l" + i));
+        }
+        async.awaitIdle();
+        assertEquals(3, async.getDeliveredCount());
+        assertEquals(0, async.getQueueDepth());
+
+        // 之后的事件照常投递，关闭时不会挂起
+        async.onCommandExecuted(new AppendCommand(editor.getBuffer(), "later"));
+        async.close();
+        assertEquals(4, async.getDeliveredCount());
+        assertTrue(recording.events.get(recording.events.size() - 1).contains("later"));
+    }
+
+    @Test
+    public void testDispatchIsSynchronousUnlessEnabled() {
+        EditorInstance editor = new EditorInstance(testDir.resolve("b.txt").toString());
+        RecordingObserver observer = new RecordingObserver(EditorObserver.Dispatch.ASYNC, 0);
+        editor.addObserver(observer);
+        editor.getHistory().push(new AppendCommand(editor.getBuffer(), "x"));
+        assertEquals(List.of(Thread.currentThread()), observer.threads);
+        assertTrue(editor.getAsyncObservers().isEmpty());
+
+        // 开启后已注册的观察者改为异步，重复注册不会产生第二个包装
+        editor.setAsyncDispatchEnabled(true);
+        editor.addObserver(observer);
+        assertEquals(1, editor.getAsyncObservers().size());
+        editor.getHistory().push(new AppendCommand(editor.getBuffer(), "y"));
+
+        // 移除时先投递完已排队的事件
+        editor.removeObserver(observer);
+        assertEquals(2, observer.events.size());
+        assertTrue(editor.getAsyncObservers().isEmpty());
+        editor.getHistory().push(new AppendCommand(editor.getBuffer(), "z"));
+        assertEquals(2, observer.events.size());
+    }
+
+    @Test
+    public void testWorkspaceFlushWaitsForAsyncLogger() throws IOException {
+        Workspace workspace = new Workspace();
+        workspace.setAsyncObserverDispatch(true);
+        EditorInstance editor = workspace.load(testDir.resolve("c.txt").toString());
+        workspace.enableLogging(editor);
+        for (int i = 0; i < 50; i++) {
+            editor.getHistory().push(new AppendCommand(editor.getBuffer(), "l" + i));
+        }
+        workspace.flushLog(editor);
+        assertEquals(50, Files.readAllLines(testDir.resolve(".c.txt.log")).size());
+        workspace.closeAll();
+    }
+}
@@ -0,0 +1,203 @@
+package top.thesumst.observer;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+import top.thesumst.command.AppendCommand;
+import top.thesumst.command.Command;
+import top.thesumst.workspace.EditorInstance;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * 事件批量回调测试
+ * 验证事务、批量撤销与异步排空分别形成一批，逐条观察者的行为不变
+ */
+public class EditorEventBatchTest {
+
+    private Path testDir;
+
+    @Before
+    public void setUp() throws IOException {
+        testDir = Files.createTempDirectory("editor_batch_test_");
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        if (testDir != null && Files.exists(testDir)) {
+            Files.walk(testDir)
+                .sorted((a, b) -> b.compareTo(a))
+                .forEach(path -> {
+                    try {
+                        Files.deleteIfExists(path);
+                    } catch (IOException e) {
+                        // 忽略
+                    }
+                });
+        }
+    }
+
+    /**
+     * 记录每一批事件的观察者
+     */
+    private static class BatchObserver implements EditorObserver {
+        private final Dispatch dispatch;
+        private final long delayMillis;
+        final List<List<EditorEvent>> batches = Collections.synchronizedList(new ArrayList<>());
+
+        BatchObserver(Dispatch dispatch, long delayMillis) {
+            this.dispatch = dispatch;
+            this.delayMillis = delayMillis;
+        }
+
+        @Override
+        public Dispatch getDispatch() {
+            return dispatch;
+        }
+
+        @Override
+        public boolean wantsBatches() {
+            return true;
+        }
+
+        @Override
+        public void onEvents(List<EditorEvent> events) {
+            if (delayMillis > 0) {
+                try {
+                    Thread.sleep(delayMillis);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+            batches.add(events);
+        }
+
+        List<EditorEvent> all() {
+            List<EditorEvent> result = new ArrayList<>();
+            batches.forEach(result::addAll);
+            return result;
+        }
+
+        @Override
+        public void onCommandExecuted(Command command) {
+            fail("按批接收的观察者不应收到逐条回调");
+        }
+
+        @Override
+        public void onCommandUndone(Command command) {
+            fail("按批接收的观察者不应收到逐条回调");
+        }
+
+        @Override
+        public void onCommandRedone(Command command) {
+            fail("按批接收的观察者不应收到逐条回调");
+        }
+    }
+
+    /**
+     * 逐条记录事件的观察者
+     */
+    private static class SingleObserver implements EditorObserver {
+        final List<String> events = new ArrayList<>();
+
+        @Override
+        public void onCommandExecuted(Command command) {
+            events.add("EXECUTE");
+        }
+
+        @Override
+        public void onCommandUndone(Command command) {
+            events.add("UNDO");
+        }
+
+        @Override
+        public void onCommandRedone(Command command) {
+            events.add("REDO");
+        }
+    }
+
+    @Test
+    public void testTransactionAndBulkUndoFormBatches() {
+        EditorInstance editor = new EditorInstance(testDir.resolve("t.txt").toString());
+        BatchObserver batch = new BatchObserver(EditorObserver.Dispatch.SYNC, 0);
+        SingleObserver single = new SingleObserver();
+        editor.addObserver(batch);
+        editor.addObserver(single);
+
+        editor.beginBatch();
+        editor.getHistory().push(new AppendCommand(editor.getBuffer(), "a"));
+        editor.beginBatch();
+        editor.getHistory().push(new AppendCommand(editor.getBuffer(), "b"));
+        editor.endBatch();
+        editor.getHistory().undo();
+        assertTrue("批次结束前不投递", batch.batches.isEmpty());
+        assertEquals(List.of("EXECUTE", "EXECUTE", "UNDO"), single.events);
+        editor.endBatch();
+
+        assertEquals(1, batch.batches.size());
+        List<EditorEvent> events = batch.batches.get(0);
+        assertEquals(3, events.size());
+        assertEquals(EditorEvent.Type.EXECUTE, events.get(0).getType());
+        assertEquals(EditorEvent.Type.UNDO, events.get(2).getType());
+        assertSame(events.get(1).getCommand(), events.get(2).getCommand());
+
+        editor.getHistory().redo();
+        editor.getHistory().push(new AppendCommand(editor.getBuffer(), "c"));
+        editor.getHistory().undo(3);
+        assertEquals(4, batch.batches.size());
+        assertEquals(3, batch.batches.get(3).size());
+
+        try {
+            editor.endBatch();
+            fail("应拒绝不匹配的 endBatch");
+        } catch (IllegalStateException e) {
+            // 预期
+        }
+    }
+
+    @Test
+    public void testAsyncDrainMergesQueuedEventsIntoOneBatch() {
+        EditorInstance editor = new EditorInstance(testDir.resolve("a.txt").toString());
+        editor.setAsyncDispatchEnabled(true);
+        BatchObserver slow = new BatchObserver(EditorObserver.Dispatch.ASYNC, 2);
+        editor.addObserver(slow);
+
+        for (int i = 0; i < 200; i++) {
+            editor.getHistory().push(new AppendCommand(editor.getBuffer(), "l" + i));
+        }
+        editor.awaitObservers();
+
+        List<EditorEvent> all = slow.all();
+        assertEquals(200, all.size());
+        assertTrue("排队的事件应合并投递: " + slow.batches.size(), slow.batches.size() < 100);
+        for (int i = 0; i < 200; i++) {
+            assertEquals("AppendCommand(line=+1, text=\"l" + i + "\")", all.get(i).getCommand().toString());
+        }
+    }
+
+    @Test
+    public void testFileLoggerWritesBatchWithEventTimestamps() throws IOException {
+        Path file = testDir.resolve("log.txt");
+        FileLogger logger = new FileLogger(file.toString());
+        EditorInstance editor = new EditorInstance(file.toString());
+        editor.addObserver(logger);
+
+        editor.beginBatch();
+        for (int i = 0; i < 5; i++) {
+            editor.getHistory().push(new AppendCommand(editor.getBuffer(), "l" + i));
+        }
+        assertFalse(Files.exists(file.resolveSibling(".log.txt.log")));
+        editor.endBatch();
+
+        List<String> lines = Files.readAllLines(file.resolveSibling(".log.txt.log"));
+        assertEquals(5, lines.size());
+        assertTrue(lines.get(4).endsWith("EXECUTE: AppendCommand(line=+1, text=\"l4\")"));
+    }
+}
@@ -0,0 +1,67 @@
+package top.thesumst.observer;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import top.thesumst.command.Command;
+import top.thesumst.command.DeleteCommand;
+import top.thesumst.command.InsertCommand;
+import top.thesumst.engine.TextBuffer;
+
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 日志记录格式化基准测试
+ * 对比原先的 String.format 路径与 LogRecordFormatter 的复用缓冲区路径
+ * 运行：mvn -P bench test -Dbench.args="LogFormatBenchmark -prof gc"
+ * 关注 gc.alloc.rate.norm（每次操作分配的字节数）
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class LogFormatBenchmark {
+
+    private static final DateTimeFormatter TIME_FORMATTER =
+        DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss");
+
+    private Command insert;
+    private Command delete;
+    private LogRecordFormatter formatter;
+
+    @Setup
+    public void setUp() {
+        TextBuffer buffer = new TextBuffer();
+        buffer.append("benchmark line");
+        insert = new InsertCommand(buffer, 1, 5, "hello");
+        delete = new DeleteCommand(buffer, 1, 3, 4);
+        formatter = new LogRecordFormatter();
+    }
+
+    @Benchmark
+    public void stringFormat(Blackhole bh) {
+        String timestamp = LocalDateTime.now().format(TIME_FORMATTER);
+        bh.consume(String.format("[%s] %s: %s%n", timestamp, "EXECUTE", insert));
+        bh.consume(String.format("[%s] %s: %s%n", timestamp, "UNDO", delete));
+    }
+
+    @Benchmark
+    public void reusableBuffer(Blackhole bh) {
+        long now = System.currentTimeMillis();
+        bh.consume(formatter.format(now, "EXECUTE", insert).length());
+        bh.consume(formatter.format(now, "UNDO", delete).length());
+    }
+}
@@ -0,0 +1,51 @@
+package top.thesumst.observer;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+import top.thesumst.command.AppendCommand;
+import top.thesumst.command.DeleteCommand;
+import top.thesumst.command.InsertCommand;
+import top.thesumst.engine.TextBuffer;
+
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+
+/**
+ * 日志记录格式化测试
+ * 验证复用缓冲区的输出与原先 String.format 的格式一致
+ */
+public class LogRecordFormatterTest {
+
+    @Test
+    public void testFormatMatchesLegacyLayout() {
+        TextBuffer buffer = new TextBuffer();
+        buffer.append("hello");
+        LogRecordFormatter formatter = new LogRecordFormatter(ZoneOffset.UTC);
+        long millis = LocalDateTime.of(2024, 3, 5, 7, 8, 9).toInstant(ZoneOffset.UTC).toEpochMilli();
+
+        InsertCommand insert = new InsertCommand(buffer, 1, 2, "ab");
+        assertEquals("[2024-03-05 07:08:09] EXECUTE: InsertCommand(line=1, col=2, text=\"ab\")" + System.lineSeparator(),
+                     formatter.format(millis, "EXECUTE", insert).toString());
+        assertEquals(String.format("InsertCommand(line=%d, col=%d, text=\"%s\")", 1, 2, "ab"), insert.toString());
+
+        DeleteCommand delete = new DeleteCommand(buffer, 1, 1, 3);
+        assertEquals("[2024-03-05 07:08:09] UNDO: DeleteCommand(line=1, col=1, length=3)" + System.lineSeparator(),
+                     formatter.format(millis + 999, "UNDO", delete).toString());
+
+        assertEquals("AppendCommand(line=+1, text=\"x\")", new AppendCommand(buffer, "x").toString());
+        assertEquals("AppendCommand(lines=+2)", new AppendCommand(buffer, "x\ny").toString());
+    }
+
+    @Test
+    public void testTimestampCacheRefreshesOnNextSecond() {
+        LogRecordFormatter formatter = new LogRecordFormatter(ZoneOffset.UTC);
+        long millis = LocalDateTime.of(2024, 12, 31, 23, 59, 59).toInstant(ZoneOffset.UTC).toEpochMilli();
+        StringBuilder out = new StringBuilder();
+
+        formatter.appendTimestamp(out, millis + 500);
+        out.append('|');
+        formatter.appendTimestamp(out, millis + 1000);
+        assertEquals("2024-12-31 23:59:59|2025-01-01 00:00:00", out.toString());
+    }
+}
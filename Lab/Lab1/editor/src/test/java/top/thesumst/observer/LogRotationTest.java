@@ -0,0 +1,149 @@
+package top.thesumst.observer;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+import top.thesumst.command.AppendCommand;
+import top.thesumst.workspace.EditorInstance;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * 日志轮转测试
+ * 验证按大小滚动、后台压缩、保留段数上限，以及读取时透明地跨越历史段
+ */
+public class LogRotationTest {
+
+    private Path testDir;
+
+    @Before
+    public void setUp() throws IOException {
+        testDir = Files.createTempDirectory("editor_rotation_test_");
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        if (testDir != null && Files.exists(testDir)) {
+            Files.walk(testDir)
+                .sorted((a, b) -> b.compareTo(a))
+                .forEach(path -> {
+                    try {
+                        Files.deleteIfExists(path);
+                    } catch (IOException e) {
+                        // 忽略
+                    }
+                });
+        }
+    }
+
+    private FileLogger edit(Path file, LogFlushPolicy flush, LogRotationPolicy rotation, int count) {
+        FileLogger logger = new FileLogger(file.toString(), flush, rotation);
+        EditorInstance editor = new EditorInstance(file.toString());
+        editor.addObserver(logger);
+        for (int i = 0; i < count; i++) {
+            editor.getHistory().push(new AppendCommand(editor.getBuffer(), "line " + i));
+        }
+        logger.close();
+        return logger;
+    }
+
+    @Test
+    public void testSizeRotationCompressesAndPrunesSegments() throws IOException {
+        Path file = testDir.resolve("sync.txt");
+        FileLogger logger = edit(file, LogFlushPolicy.synchronous(),
+                                 LogRotationPolicy.bySize(4096).withMaxSegments(3), 1000);
+        Path log = Paths.get(logger.getLogFilePath());
+
+        List<Path> segments = LogRotator.segments(log);
+        assertEquals(3, segments.size());
+        for (Path segment : segments) {
+            assertTrue("历史段应被压缩: " + segment, LogRotator.isCompressed(segment));
+            assertFalse(Files.exists(segment.resolveSibling(segment.getFileName() + ".tmp")));
+        }
+        assertTrue(Files.size(log) < 4096 + 128);
+
+        // 保留的历史段与当前日志是连续的最新记录
+        List<String> lines = new ArrayList<>();
+        TextLogReader.range(log, null, null, lines::add);
+        assertTrue(lines.size() > 100 && lines.size() < 1000);
+        int first = 1000 - lines.size();
+        for (int i = 0; i < lines.size(); i++) {
+            assertTrue(lines.get(i).endsWith("text=\"line " + (first + i) + "\")"));
+        }
+    }
+
+    @Test
+    public void testAsyncRotationKeepsEveryRecordReadable() throws IOException {
+        Path file = testDir.resolve("async.txt");
+        LogFlushPolicy flush = LogFlushPolicy.asynchronous().withBatchSize(16);
+        FileLogger logger = edit(file, flush, LogRotationPolicy.bySize(2048).withMaxSegments(0), 2000);
+        Path log = Paths.get(logger.getLogFilePath());
+
+        assertFalse(LogRotator.segments(log).isEmpty());
+
+        List<String> lines = new ArrayList<>();
+        TextLogReader.range(log, null, null, lines::add);
+        assertEquals(2000, lines.size());
+        assertTrue(lines.get(1999).endsWith("text=\"line 1999\")"));
+
+        // 超过当前日志行数的 tail 从历史段补足
+        lines.clear();
+        TextLogReader.tail(log, 500, lines::add);
+        assertEquals(500, lines.size());
+        for (int i = 0; i < 500; i++) {
+            assertTrue(lines.get(i).endsWith("text=\"line " + (1500 + i) + "\")"));
+        }
+    }
+
+    @Test
+    public void testRangeSkipsSegmentsBeforeStart() throws IOException {
+        Path log = testDir.resolve(".manual.txt.log");
+        try (OutputStream out = new GZIPOutputStream(Files.newOutputStream(testDir.resolve(".manual.txt.log.1.gz")))) {
+            out.write(("[2024-05-01 08:00:00] EXECUTE: a\n"
+                     + "[2024-05-01 08:00:05] EXECUTE: b\n").getBytes(StandardCharsets.UTF_8));
+        }
+        Files.writeString(testDir.resolve(".manual.txt.log.2"),
+                          "[2024-05-01 08:00:10] EXECUTE: c\n  continued c\n"
+                        + "[2024-05-01 08:00:20] EXECUTE: d\n");
+        Files.writeString(log, "[2024-05-01 08:00:30] EXECUTE: e\n");
+
+        List<String> lines = new ArrayList<>();
+        TextLogReader.range(log, LocalDateTime.of(2024, 5, 1, 8, 0, 5),
+                            LocalDateTime.of(2024, 5, 1, 8, 0, 20), lines::add);
+        assertEquals(List.of("[2024-05-01 08:00:05] EXECUTE: b",
+                             "[2024-05-01 08:00:10] EXECUTE: c",
+                             "  continued c",
+                             "[2024-05-01 08:00:20] EXECUTE: d"), lines);
+
+        lines.clear();
+        TextLogReader.tail(log, 2, lines::add);
+        assertEquals(List.of("[2024-05-01 08:00:20] EXECUTE: d", "[2024-05-01 08:00:30] EXECUTE: e"), lines);
+    }
+
+    @Test
+    public void testAgeOfExistingLogSurvivesRestart() throws IOException {
+        Path file = testDir.resolve("aged.txt");
+        Path log = testDir.resolve(".aged.txt.log");
+        LogRotationPolicy hourly = LogRotationPolicy.none().withMaxAge(60 * 60 * 1000L);
+        // 上次进程留下的日志已超过时长上限，重启后的第一次写入就应轮转
+        Files.writeString(log, "[2024-05-01 08:00:00] EXECUTE: old\n");
+        edit(file, LogFlushPolicy.synchronous(), hourly, 1);
+        assertEquals(List.of(testDir.resolve(".aged.txt.log.1")), LogRotator.segments(log));
+        assertFalse(Files.readString(log).contains("old"));
+
+        // 刚开始写的日志在重启后不轮转
+        edit(file, LogFlushPolicy.synchronous(), hourly, 1);
+        assertEquals(1, LogRotator.segments(log).size());
+    }
+}
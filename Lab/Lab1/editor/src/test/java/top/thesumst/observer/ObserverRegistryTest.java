@@ -0,0 +1,89 @@
+package top.thesumst.observer;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+import top.thesumst.command.AppendCommand;
+import top.thesumst.command.Command;
+import top.thesumst.workspace.EditorInstance;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 观察者注册表测试
+ * 验证按键去重、保持注册顺序，以及分发过程中增删观察者不影响本轮遍历
+ */
+public class ObserverRegistryTest {
+
+    /**
+     * 只统计执行次数的观察者
+     */
+    private static class CountingObserver implements EditorObserver {
+        int executed;
+
+        @Override
+        public void onCommandExecuted(Command command) {
+            executed++;
+        }
+
+        @Override
+        public void onCommandUndone(Command command) {
+        }
+
+        @Override
+        public void onCommandRedone(Command command) {
+        }
+    }
+
+    @Test
+    public void testKeyedMembershipAndOrder() {
+        ObserverRegistry registry = new ObserverRegistry();
+        List<CountingObserver> added = new ArrayList<>();
+        for (int i = 0; i < 20000; i++) {
+            CountingObserver observer = new CountingObserver();
+            assertTrue(registry.add(observer, observer));
+            added.add(observer);
+        }
+        assertFalse(registry.add(added.get(5), added.get(5)));
+        assertEquals(20000, registry.size());
+
+        EditorObserver[] snapshot = registry.snapshot();
+        assertSame(snapshot, registry.snapshot());   // 未变更时复用同一快照
+        assertSame(added.get(0), snapshot[0]);
+        assertSame(added.get(19999), snapshot[19999]);
+
+        assertSame(added.get(7), registry.remove(added.get(7)));
+        assertNull(registry.remove(added.get(7)));
+        assertFalse(registry.contains(added.get(7)));
+        assertEquals(20000, snapshot.length);         // 旧快照不受影响
+        assertEquals(19999, registry.snapshot().length);
+    }
+
+    @Test
+    public void testObserversMayUnregisterDuringDispatch() {
+        EditorInstance editor = new EditorInstance("registry.txt");
+        CountingObserver survivor = new CountingObserver();
+        EditorObserver once = new EditorObserver() {
+            @Override
+            public void onCommandExecuted(Command command) {
+                editor.removeObserver(this);      // 回调中移除自己
+                editor.addObserver(new CountingObserver());
+            }
+
+            @Override
+            public void onCommandUndone(Command command) {
+            }
+
+            @Override
+            public void onCommandRedone(Command command) {
+            }
+        };
+        editor.addObserver(once);
+        editor.addObserver(survivor);
+
+        editor.getHistory().push(new AppendCommand(editor.getBuffer(), "a"));
+        editor.getHistory().push(new AppendCommand(editor.getBuffer(), "b"));
+        assertEquals(2, survivor.executed);
+    }
+}
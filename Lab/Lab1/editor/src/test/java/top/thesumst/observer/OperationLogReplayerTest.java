@@ -0,0 +1,128 @@
+package top.thesumst.observer;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+import top.thesumst.command.AppendCommand;
+import top.thesumst.command.DeleteCommand;
+import top.thesumst.command.InsertCommand;
+import top.thesumst.engine.TextBuffer;
+import top.thesumst.workspace.EditorInstance;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Random;
+
+/**
+ * 操作日志回放测试
+ * 验证回放结果与原编辑一致，并且互逆的记录被抵消、连续追加被合并
+ */
+public class OperationLogReplayerTest {
+
+    private Path testDir;
+
+    @Before
+    public void setUp() throws IOException {
+        testDir = Files.createTempDirectory("editor_replay_test_");
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        if (testDir != null && Files.exists(testDir)) {
+            Files.walk(testDir)
+                .sorted((a, b) -> b.compareTo(a))
+                .forEach(path -> {
+                    try {
+                        Files.deleteIfExists(path);
+                    } catch (IOException e) {
+                        // 忽略
+                    }
+                });
+        }
+    }
+
+    @Test
+    public void testReplayRebuildsRandomSession() throws IOException {
+        Path file = testDir.resolve("random.txt");
+        OperationLogger logger = new OperationLogger(file.toString());
+        EditorInstance editor = new EditorInstance(file.toString());
+        editor.addObserver(logger);
+
+        Random random = new Random(42);
+        for (int i = 0; i < 5000; i++) {
+            TextBuffer buffer = editor.getBuffer();
+            int choice = random.nextInt(10);
+            if (buffer.getSize() == 0 || choice < 3) {
+                editor.getHistory().push(new AppendCommand(buffer, "line " + i));
+            } else if (choice < 6) {
+                int line = 1 + random.nextInt(buffer.getSize());
+                int col = 1 + random.nextInt(buffer.getLine(line).length() + 1);
+                editor.getHistory().push(new InsertCommand(buffer, line, col, "i" + i));
+            } else if (choice < 7) {
+                int line = 1 + random.nextInt(buffer.getSize());
+                int length = buffer.getLine(line).length();
+                if (length > 0) {
+                    editor.getHistory().push(new DeleteCommand(buffer, line, 1, 1 + random.nextInt(length)));
+                }
+            } else if (choice < 9) {
+                editor.getHistory().undo(1 + random.nextInt(3));
+            } else {
+                editor.getHistory().redo(1 + random.nextInt(2));
+            }
+        }
+        logger.close();
+
+        TextBuffer replayed = new TextBuffer();
+        OperationLogReplayer.Result result = new OperationLogReplayer(replayed).replay(logger.getLogPath());
+
+        assertEquals(editor.getBuffer().getLines(), replayed.getLines());
+        assertEquals(result.getRecordsRead(), result.getRecordsApplied() + result.getRecordsCancelled());
+        assertTrue("撤销/重做应产生可抵消的记录", result.getRecordsCancelled() > 0);
+        assertTrue(result.getOpsPerSecond() > 0);
+    }
+
+    @Test
+    public void testCancelledPairsAndAppendBatching() throws IOException {
+        Path file = testDir.resolve("batch.txt");
+        OperationLogger logger = new OperationLogger(file.toString());
+        EditorInstance editor = new EditorInstance(file.toString());
+        editor.addObserver(logger);
+
+        for (int i = 0; i < 100; i++) {
+            editor.getHistory().push(new AppendCommand(editor.getBuffer(), "a" + i));
+        }
+        editor.getHistory().push(new InsertCommand(editor.getBuffer(), 1, 1, "x"));
+        editor.getHistory().undo(11);   // 撤销插入与最后 10 次追加
+        editor.getHistory().redo(10);   // 重做其中 10 步
+        logger.close();
+
+        TextBuffer replayed = new TextBuffer();
+        OperationLogReplayer.Result result = new OperationLogReplayer(replayed).replay(logger.getLogPath());
+
+        assertEquals(editor.getBuffer().getLines(), replayed.getLines());
+        assertEquals(122, result.getRecordsRead());
+        assertEquals(22, result.getRecordsCancelled());
+        assertEquals(100, result.getRecordsApplied());
+        assertEquals(1, result.getAppendBatches());
+    }
+
+    @Test
+    public void testReplayUntilSequence() throws IOException {
+        Path file = testDir.resolve("prefix.txt");
+        OperationLogger logger = new OperationLogger(file.toString());
+        EditorInstance editor = new EditorInstance(file.toString());
+        editor.addObserver(logger);
+        for (int i = 0; i < 10; i++) {
+            editor.getHistory().push(new AppendCommand(editor.getBuffer(), "l" + i));
+        }
+        logger.close();
+
+        TextBuffer replayed = new TextBuffer();
+        new OperationLogReplayer(replayed).replay(logger.getLogPath(), 4);
+        assertEquals(4, replayed.getSize());
+        assertEquals("l3", replayed.getLine(4));
+    }
+}
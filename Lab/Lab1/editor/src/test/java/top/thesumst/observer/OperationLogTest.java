@@ -0,0 +1,146 @@
+package top.thesumst.observer;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+import top.thesumst.command.AppendCommand;
+import top.thesumst.command.InsertCommand;
+import top.thesumst.engine.TextBuffer;
+import top.thesumst.workspace.EditorInstance;
+import top.thesumst.workspace.Workspace;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * 二进制操作日志测试
+ * 验证写入、按序号/时间定位、文本渲染以及崩溃后截断不完整记录
+ */
+public class OperationLogTest {
+
+    private Path testDir;
+
+    @Before
+    public void setUp() throws IOException {
+        testDir = Files.createTempDirectory("editor_oplog_test_");
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        if (testDir != null && Files.exists(testDir)) {
+            Files.walk(testDir)
+                .sorted((a, b) -> b.compareTo(a))
+                .forEach(path -> {
+                    try {
+                        Files.deleteIfExists(path);
+                    } catch (IOException e) {
+                        // 忽略
+                    }
+                });
+        }
+    }
+
+    private EditorInstance edit(Path file, OperationLogger logger, int count) {
+        EditorInstance editor = new EditorInstance(file.toString());
+        editor.addObserver(logger);
+        for (int i = 0; i < count; i++) {
+            editor.getHistory().push(new AppendCommand(editor.getBuffer(), "line " + i));
+        }
+        return editor;
+    }
+
+    @Test
+    public void testWriteAndSeekBySequence() throws IOException {
+        Path file = testDir.resolve("seq.txt");
+        OperationLogger logger = new OperationLogger(file.toString());
+        EditorInstance editor = edit(file, logger, 1000);
+        editor.getHistory().undo(2);
+        logger.close();
+
+        try (OperationLogReader reader = new OperationLogReader(logger.getLogPath(), new TextBuffer())) {
+            assertTrue("应生成稀疏索引", reader.getIndexEntryCount() >= 3);
+
+            reader.seekToSequence(700);
+            OperationRecord record = reader.next();
+            assertEquals(700, record.getSequence());
+            assertEquals(OperationLog.TYPE_EXECUTE, record.getType());
+            assertEquals("AppendCommand(line=+1, text=\"line 700\")", record.getCommand().toString());
+
+            reader.seekToSequence(1000);
+            assertEquals(OperationLog.TYPE_UNDO, reader.next().getType());
+            assertEquals(1001, reader.next().getSequence());
+            assertNull(reader.next());
+        }
+    }
+
+    @Test
+    public void testSeekByTimeAndRenderText() throws IOException {
+        Path file = testDir.resolve("time.txt");
+        OperationLogger logger = new OperationLogger(file.toString());
+        edit(file, logger, 600);
+        logger.close();
+
+        try (OperationLogReader reader = new OperationLogReader(logger.getLogPath(), new TextBuffer())) {
+            reader.seekToSequence(450);
+            OperationRecord target = reader.next();
+
+            reader.seekToTime(target.getTimestamp());
+            OperationRecord found = reader.next();
+            assertEquals(target.getTimestamp(), found.getTimestamp());
+            assertTrue(found.getSequence() <= target.getSequence());
+
+            reader.seekToTime(Long.MAX_VALUE);
+            assertNull(reader.next());
+
+            StringBuilder text = new StringBuilder();
+            target.appendText(new LogRecordFormatter(), text);
+            assertTrue(text.toString().matches(
+                "\\[\\d{4}-\\d\\d-\\d\\d \\d\\d:\\d\\d:\\d\\d\\] EXECUTE: AppendCommand\\(line=\\+1, text=\"line 450\"\\)\\R"));
+        }
+    }
+
+    @Test
+    public void testTruncatedTailIsDiscardedOnReopen() throws IOException {
+        Path file = testDir.resolve("crash.txt");
+        OperationLogger logger = new OperationLogger(file.toString());
+        edit(file, logger, 300);
+        logger.close();
+
+        // 模拟写入一半时崩溃：追加一个声明长度为 100 但只有 3 字节的记录
+        Files.write(logger.getLogPath(), new byte[] {100, 1, 2, 3}, StandardOpenOption.APPEND);
+
+        OperationLogger reopened = new OperationLogger(file.toString());
+        assertEquals(300, reopened.getNextSequence());
+        EditorInstance editor = new EditorInstance(file.toString());
+        editor.addObserver(reopened);
+        editor.getHistory().push(new InsertCommand(editor.getBuffer(), 1, 1, "x"));
+        reopened.close();
+
+        try (OperationLogReader reader = new OperationLogReader(logger.getLogPath(), new TextBuffer())) {
+            long expected = 0;
+            OperationRecord record;
+            while ((record = reader.next()) != null) {
+                assertEquals(expected++, record.getSequence());
+            }
+            assertEquals(301, expected);
+        }
+    }
+
+    @Test
+    public void testWorkspaceWritesOperationLogWhenEnabled() throws IOException {
+        Workspace workspace = new Workspace();
+        workspace.setOperationLogEnabled(true);
+        Path file = testDir.resolve("ws.txt");
+        EditorInstance editor = workspace.load(file.toString());
+        workspace.enableLogging(editor);
+        editor.getHistory().push(new AppendCommand(editor.getBuffer(), "a"));
+        workspace.closeAll();
+
+        assertTrue(Files.exists(testDir.resolve(".ws.txt.log")));
+        assertTrue(Files.exists(testDir.resolve(".ws.txt.oplog")));
+    }
+}
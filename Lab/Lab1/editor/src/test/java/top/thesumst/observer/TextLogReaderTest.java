@@ -0,0 +1,141 @@
+package top.thesumst.observer;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+import top.thesumst.command.AppendCommand;
+import top.thesumst.workspace.EditorInstance;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 文本日志读取测试
+ * 验证 tail 从末尾读取、按时间范围借助稀疏索引定位，以及 follow 只输出完整的新行
+ */
+public class TextLogReaderTest {
+
+    private static final LocalDateTime BASE = LocalDateTime.of(2024, 5, 1, 8, 0, 0);
+
+    private Path testDir;
+
+    @Before
+    public void setUp() throws IOException {
+        testDir = Files.createTempDirectory("editor_textlog_test_");
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        if (testDir != null && Files.exists(testDir)) {
+            Files.walk(testDir)
+                .sorted((a, b) -> b.compareTo(a))
+                .forEach(path -> {
+                    try {
+                        Files.deleteIfExists(path);
+                    } catch (IOException e) {
+                        // 忽略
+                    }
+                });
+        }
+    }
+
+    /**
+     * 写入 count 条记录，第 i 条的时间为 BASE + i/10 秒，每 7 条带一个续行
+     */
+    private Path writeLog(int count) throws IOException {
+        Path log = testDir.resolve(".range.txt.log");
+        TextLogIndex index = new TextLogIndex(log.toString());
+        StringBuilder text = new StringBuilder();
+        long offset = 0;
+        for (int i = 0; i < count; i++) {
+            text.setLength(0);
+            text.append('[').append(BASE.plusSeconds(i / 10).format(LogRecordFormatter.TIME_FORMATTER))
+                .append("] EXECUTE: record ").append(i).append('\n');
+            if (i % 7 == 0) {
+                text.append("  continued ").append(i).append('\n');
+            }
+            index.record(offset, text);
+            byte[] bytes = text.toString().getBytes(StandardCharsets.UTF_8);
+            Files.write(log, bytes, StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+            offset += bytes.length;
+        }
+        return log;
+    }
+
+    @Test
+    public void testTailReadsLastLinesOfLargeLog() throws IOException {
+        Path file = testDir.resolve("big.txt");
+        FileLogger logger = new FileLogger(file.toString());
+        EditorInstance editor = new EditorInstance(file.toString());
+        editor.addObserver(logger);
+        for (int i = 0; i < 2000; i++) {
+            editor.getHistory().push(new AppendCommand(editor.getBuffer(), "第 " + i + " 行"));
+        }
+
+        Path log = Paths.get(logger.getLogFilePath());
+        assertTrue("日志超过索引间隔后应生成索引", Files.exists(TextLogIndex.pathFor(log)));
+
+        List<String> lines = new ArrayList<>();
+        long end = TextLogReader.tail(log, 3, lines::add);
+        assertEquals(Files.size(log), end);
+        assertEquals(3, lines.size());
+        assertTrue(lines.get(0).endsWith("EXECUTE: AppendCommand(line=+1, text=\"第 1997 行\")"));
+        assertTrue(lines.get(2).endsWith("EXECUTE: AppendCommand(line=+1, text=\"第 1999 行\")"));
+
+        lines.clear();
+        TextLogReader.tail(log, 5000, lines::add);
+        assertEquals(2000, lines.size());
+    }
+
+    @Test
+    public void testRangeSeeksWithIndexAndKeepsContinuationLines() throws IOException {
+        Path log = writeLog(20000);
+        LocalDateTime from = BASE.plusSeconds(1500);
+        LocalDateTime to = BASE.plusSeconds(1501);
+
+        assertTrue("应跳过范围之前的大部分日志", TextLogIndex.seekOffset(log, from) > Files.size(log) / 2);
+
+        List<String> lines = new ArrayList<>();
+        TextLogReader.range(log, from, to, lines::add);
+        // 记录 15000..15019，以及其中 7 的倍数各自的续行
+        assertEquals(20 + 3, lines.size());
+        assertTrue(lines.get(0).endsWith("record 15000"));
+        assertEquals("  continued 15001", lines.get(2));
+        assertTrue(lines.get(lines.size() - 1).endsWith("record 15019"));
+
+        lines.clear();
+        TextLogReader.range(log, null, BASE.plusSeconds(0), lines::add);
+        assertEquals(10 + 2, lines.size());
+    }
+
+    @Test
+    public void testFollowReturnsOnlyCompleteNewLines() throws IOException {
+        Path log = testDir.resolve(".follow.txt.log");
+        Files.write(log, "[2024-05-01 08:00:00] EXECUTE: a\n".getBytes(StandardCharsets.UTF_8));
+
+        List<String> lines = new ArrayList<>();
+        long offset = TextLogReader.tail(log, 10, lines::add);
+        assertEquals(1, lines.size());
+
+        Files.write(log, "[2024-05-01 08:00:01] EXECUTE: b\n[2024-05-01 08:00:02] EXE".getBytes(StandardCharsets.UTF_8),
+                    StandardOpenOption.APPEND);
+        lines.clear();
+        offset = TextLogReader.follow(log, offset, lines::add);
+        assertEquals(List.of("[2024-05-01 08:00:01] EXECUTE: b"), lines);
+
+        Files.write(log, "CUTE: c\n".getBytes(StandardCharsets.UTF_8), StandardOpenOption.APPEND);
+        lines.clear();
+        offset = TextLogReader.follow(log, offset, lines::add);
+        assertEquals(List.of("[2024-05-01 08:00:02] EXECUTE: c"), lines);
+        assertEquals(Files.size(log), offset);
+    }
+}
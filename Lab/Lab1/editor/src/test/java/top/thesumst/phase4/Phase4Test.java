@@ -6,6 +6,8 @@ import org.junit.Test;
 import static org.junit.Assert.*;
 
 import top.thesumst.command.InsertCommand;
+import top.thesumst.observer.FileLogger;
+import top.thesumst.observer.LogFlushPolicy;
 import top.thesumst.workspace.EditorInstance;
 import top.thesumst.workspace.Workspace;
 
@@ -103,6 +105,120 @@ public class Phase4Test {
         assertTrue(logLines.get(2).contains("REDO"));
     }
     
+    @Test
+    public void testBulkUndoLoggedInOneBatch() throws IOException {
+        Path testFile = testDir.resolve("bulk_undo.txt");
+        EditorInstance editor = workspace.load(testFile.toString());
+        workspace.enableLogging(editor);
+        
+        for (int i = 0; i < 5; i++) {
+            editor.getHistory().push(new InsertCommand(editor.getBuffer(), 1, 1, "x"));
+        }
+        assertEquals(5, editor.getHistory().undo(5));
+        
+        List<String> logLines = Files.readAllLines(testDir.resolve(".bulk_undo.txt.log"));
+        assertEquals(10, logLines.size());
+        for (int i = 5; i < 10; i++) {
+            assertTrue(logLines.get(i).contains("UNDO"));
+        }
+    }
+    
+    @Test
+    public void testAsyncLoggerWritesAllEventsInOrder() throws IOException {
+        workspace.setLogFlushPolicy(LogFlushPolicy.asynchronous().withBatchSize(16));
+        Path testFile = testDir.resolve("async.txt");
+        EditorInstance editor = workspace.load(testFile.toString());
+        workspace.enableLogging(editor);
+        
+        for (int i = 0; i < 1000; i++) {
+            editor.getHistory().push(new InsertCommand(editor.getBuffer(), 1, 1, "x"));
+        }
+        editor.getHistory().undo(3);
+        workspace.flushLog(editor);
+        
+        List<String> logLines = Files.readAllLines(testDir.resolve(".async.txt.log"));
+        assertEquals(1003, logLines.size());
+        assertTrue(logLines.get(999).contains("EXECUTE"));
+        assertTrue(logLines.get(1000).contains("UNDO"));
+        workspace.closeAll();
+    }
+    
+    @Test
+    public void testAsyncLoggerDrainsOnClose() throws IOException {
+        // 刷写间隔很长，只有关闭时才会写入
+        LogFlushPolicy policy = LogFlushPolicy.asynchronous().withFlushInterval(3_600_000);
+        FileLogger logger = new FileLogger(testDir.resolve("drain.txt").toString(), policy);
+        EditorInstance editor = workspace.load(testDir.resolve("drain.txt").toString());
+        editor.addObserver(logger);
+        editor.getHistory().push(new InsertCommand(editor.getBuffer(), 1, 1, "x"));
+        
+        logger.close();
+        assertEquals(1, Files.readAllLines(Path.of(logger.getLogFilePath())).size());
+    }
+    
+    @Test
+    public void testAsyncLoggerDiscardsOnCloseWhenConfigured() throws IOException {
+        LogFlushPolicy policy = LogFlushPolicy.asynchronous()
+            .withFlushInterval(3_600_000)
+            .withDrainOnClose(false);
+        FileLogger logger = new FileLogger(testDir.resolve("discard.txt").toString(), policy);
+        EditorInstance editor = workspace.load(testDir.resolve("discard.txt").toString());
+        editor.addObserver(logger);
+        editor.getHistory().push(new InsertCommand(editor.getBuffer(), 1, 1, "x"));
+        
+        logger.close();
+        assertFalse(Files.exists(Path.of(logger.getLogFilePath())));
+    }
+    
+    @Test
+    public void testAsyncLoggerDropBackpressure() throws IOException {
+        // 缓冲区只有 4 条且写线程要等满一批：编辑线程连续提交时缓冲区满就丢弃，从不阻塞
+        LogFlushPolicy policy = LogFlushPolicy.asynchronous()
+            .withCapacity(4)
+            .withBatchSize(4)
+            .withFlushInterval(3_600_000)
+            .withBackpressure(LogFlushPolicy.Backpressure.DROP);
+        FileLogger logger = new FileLogger(testDir.resolve("drop.txt").toString(), policy);
+        EditorInstance editor = workspace.load(testDir.resolve("drop.txt").toString());
+        editor.addObserver(logger);
+        for (int i = 0; i < 10; i++) {
+            editor.getHistory().push(new InsertCommand(editor.getBuffer(), 1, 1, "x"));
+        }
+        
+        // 每条事件要么写入要么计入丢弃数；至少前 4 条能放进缓冲区
+        long dropped = logger.getDroppedCount();
+        assertTrue(dropped <= 6);
+        logger.close();
+        assertEquals(10 - dropped, Files.readAllLines(Path.of(logger.getLogFilePath())).size());
+    }
+    
+    @Test(expected = IllegalArgumentException.class)
+    public void testBatchSizeCannotExceedCapacity() {
+        // 缩小容量时批大小随之收紧，但不能单独设成比容量还大
+        LogFlushPolicy policy = LogFlushPolicy.asynchronous().withCapacity(4);
+        assertEquals(4, policy.getBatchSize());
+        policy.withBatchSize(100);
+    }
+    
+    @Test
+    public void testAsyncLoggerStartsWriterOnFirstEvent() throws IOException {
+        // 只打开不编辑时不创建写线程，第一条事件到来时才启动
+        FileLogger logger = new FileLogger(testDir.resolve("lazy.txt").toString(), LogFlushPolicy.asynchronous());
+        EditorInstance editor = workspace.load(testDir.resolve("lazy.txt").toString());
+        editor.addObserver(logger);
+        assertFalse(hasLoggerThread("lazy.txt"));
+        
+        editor.getHistory().push(new InsertCommand(editor.getBuffer(), 1, 1, "x"));
+        assertTrue(hasLoggerThread("lazy.txt"));
+        logger.close();
+        assertEquals(1, Files.readAllLines(Path.of(logger.getLogFilePath())).size());
+    }
+    
+    private static boolean hasLoggerThread(String fileName) {
+        return Thread.getAllStackTraces().keySet().stream()
+            .anyMatch(thread -> thread.getName().equals("file-logger-." + fileName + ".log"));
+    }
+    
     @Test
     public void testAutoEnableLoggingWithHashLog() throws IOException {
         // 创建带 #log 首行的文件
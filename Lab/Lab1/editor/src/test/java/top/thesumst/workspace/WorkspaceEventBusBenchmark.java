@@ -0,0 +1,50 @@
+package top.thesumst.workspace;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.EnumSet;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 工作区事件总线基准测试
+ * 测量没有订阅者、以及只有不匹配的订阅者时发布一次事件的开销（两者都不应创建事件对象）
+ * 运行：mvn -P bench test -Dbench.args="WorkspaceEventBusBenchmark -prof gc"
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class WorkspaceEventBusBenchmark {
+
+    private final String path = "/tmp/hot.txt";
+    private WorkspaceEventBus empty;
+    private WorkspaceEventBus filtered;
+
+    @Setup
+    public void setUp() {
+        empty = new WorkspaceEventBus();
+        filtered = new WorkspaceEventBus();
+        filtered.subscribe(EnumSet.of(WorkspaceEvent.Type.SAVED), "/tmp/other.txt", event -> { });
+    }
+
+    @Benchmark
+    public void publishWithoutSubscribers() {
+        empty.publish(WorkspaceEvent.Type.ACTIVATED, path, null);
+    }
+
+    @Benchmark
+    public void publishToUnmatchedSubscriber() {
+        filtered.publish(WorkspaceEvent.Type.ACTIVATED, path, null);
+    }
+}
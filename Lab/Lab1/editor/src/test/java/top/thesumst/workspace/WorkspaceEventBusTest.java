@@ -0,0 +1,114 @@
+package top.thesumst.workspace;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+import top.thesumst.command.AppendCommand;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.List;
+
+/**
+ * 工作区事件总线测试
+ * 验证生命周期事件的发布顺序、按类型/文件过滤与取消订阅
+ */
+public class WorkspaceEventBusTest {
+
+    private Path testDir;
+    private Workspace workspace;
+
+    @Before
+    public void setUp() throws IOException {
+        testDir = Files.createTempDirectory("editor_event_bus_test_");
+        workspace = new Workspace();
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        workspace.closeAll();
+        if (testDir != null && Files.exists(testDir)) {
+            Files.walk(testDir)
+                .sorted((a, b) -> b.compareTo(a))
+                .forEach(path -> {
+                    try {
+                        Files.deleteIfExists(path);
+                    } catch (IOException e) {
+                        // 忽略
+                    }
+                });
+        }
+    }
+
+    @Test
+    public void testLifecycleEventsInOrder() throws IOException {
+        List<String> events = new ArrayList<>();
+        workspace.getEventBus().subscribe(event -> events.add(event.getType() + " "
+            + (event.getFilePath() != null ? Path.of(event.getFilePath()).getFileName() : "-")));
+
+        String a = testDir.resolve("a.txt").toString();
+        String b = testDir.resolve("b.txt").toString();
+        workspace.load(a);
+        workspace.init(b);
+        workspace.activate(a);
+        workspace.activate(a);   // 已是活动编辑器，不重复发布
+        workspace.getEditor(a).getHistory().push(new AppendCommand(workspace.getEditor(a).getBuffer(), "x"));
+        workspace.save(a);
+        workspace.saveIfChanged(a);
+        workspace.close(a);
+
+        assertEquals(List.of("LOADED a.txt", "ACTIVATED a.txt", "CREATED b.txt", "ACTIVATED b.txt",
+                             "ACTIVATED a.txt", "SAVED a.txt", "SAVED a.txt", "CLOSED a.txt"), events);
+    }
+
+    @Test
+    public void testFilterByTypeAndFileAndCancel() throws IOException {
+        String a = testDir.resolve("a.txt").toString();
+        String b = testDir.resolve("b.txt").toString();
+        List<WorkspaceEvent> received = new ArrayList<>();
+        // 过滤路径可以是未规范化的写法
+        WorkspaceEventBus.Subscription subscription = workspace.getEventBus().subscribe(
+            EnumSet.of(WorkspaceEvent.Type.ACTIVATED, WorkspaceEvent.Type.CLOSED),
+            testDir.resolve("sub/../a.txt").toString(), received::add);
+
+        workspace.load(a);
+        workspace.load(b);
+        workspace.activate(a);
+        assertEquals(2, received.size());
+        assertSame(workspace.getEditor(a), received.get(1).getEditor());
+
+        subscription.cancel();
+        assertEquals(0, workspace.getEventBus().getSubscriberCount());
+        workspace.closeAll();
+        assertEquals(2, received.size());
+    }
+
+    @Test
+    public void testFailingListenerDoesNotBreakWorkspace() throws IOException {
+        List<WorkspaceEvent> received = new ArrayList<>();
+        workspace.getEventBus().subscribe(event -> {
+            throw new IllegalStateException("boom");
+        });
+        workspace.getEventBus().subscribe(received::add);
+        workspace.load(testDir.resolve("c.txt").toString());
+        assertEquals(2, received.size());
+    }
+
+    @Test
+    public void testUnmatchedSubscribersReceiveNothing() {
+        WorkspaceEventBus bus = new WorkspaceEventBus();
+        String path = testDir.resolve("hot.txt").toString();
+        bus.publish(WorkspaceEvent.Type.ACTIVATED, path, null);
+
+        // 只订阅其他文件时同样不创建事件（发布开销见 WorkspaceEventBusBenchmark）
+        bus.subscribe(EnumSet.of(WorkspaceEvent.Type.SAVED), path, event -> fail("不应收到"));
+        bus.publish(WorkspaceEvent.Type.ACTIVATED, path, null);
+        bus.publish(WorkspaceEvent.Type.SAVED, testDir.resolve("other.txt").toString(), null);
+        assertEquals(1, bus.getSubscriberCount());
+    }
+}
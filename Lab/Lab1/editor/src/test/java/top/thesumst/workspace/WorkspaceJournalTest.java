@@ -0,0 +1,244 @@
+package top.thesumst.workspace;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+import top.thesumst.command.AppendCommand;
+import top.thesumst.memento.WorkspaceMemento;
+import top.thesumst.memento.WorkspaceMemento.FileState;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * 工作区状态日志测试
+ * 验证未调用 saveState 就被结束的会话可以由日志恢复（空闲时写出的未保存内容是最新的）、末尾不完整的记录被丢弃、
+ * 压实时保留截取之后追加的记录，以及与状态文件不匹配的日志被忽略
+ */
+public class WorkspaceJournalTest {
+
+    private Path testDir;
+    private String stateFile;
+    private final List<Workspace> workspaces = new ArrayList<>();
+
+    @Before
+    public void setUp() throws IOException {
+        testDir = Files.createTempDirectory("editor_journal_test_");
+        stateFile = testDir.resolve(".editor_workspace").toString();
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        for (Workspace workspace : workspaces) {
+            workspace.closeAll();
+        }
+        if (testDir != null && Files.exists(testDir)) {
+            Files.walk(testDir)
+                .sorted((a, b) -> b.compareTo(a))
+                .forEach(path -> {
+                    try {
+                        Files.deleteIfExists(path);
+                    } catch (IOException e) {
+                        // 忽略
+                    }
+                });
+        }
+    }
+
+    private Workspace newWorkspace() {
+        Workspace workspace = new Workspace();
+        workspaces.add(workspace);
+        return workspace;
+    }
+
+    private String file(String name, String content) throws IOException {
+        Path path = testDir.resolve(name);
+        Files.writeString(path, content);
+        return path.toString();
+    }
+
+    private Path journalPath() {
+        return WorkspaceJournal.journalPath(Path.of(stateFile));
+    }
+
+    @Test
+    public void testChangesSurviveWithoutSaveState() throws IOException {
+        String a = file("a.txt", "a\n");
+        String b = file("b.txt", "b\n");
+        String c = file("c.txt", "c\n");
+        Workspace first = newWorkspace();
+        first.enableStateJournal(stateFile);
+        first.load(a);
+        first.load(b);
+        first.load(c);
+        EditorInstance editor = first.getEditor(a);
+        editor.getHistory().push(new AppendCommand(editor.getBuffer(), "more"));
+        first.enableLogging(first.getEditor(b));
+        first.close(c);
+        first.activate(b);
+        // 不调用 saveState 和 closeAll，相当于进程被强行结束
+
+        Workspace second = newWorkspace();
+        second.restoreState(stateFile);
+        assertEquals(List.of(Workspace.normalizePath(a), Workspace.normalizePath(b)), second.getOpenFiles());
+        assertTrue(second.getEditor(a).isModified());
+        assertFalse(second.getEditor(b).isModified());
+        assertTrue(second.getEditor(b).isLoggingEnabled());
+        assertEquals(Workspace.normalizePath(b), second.getActiveEditor().getFilePath());
+    }
+
+    @Test
+    public void testIdleSnapshotKeepsUnsavedContentCurrent() throws IOException {
+        String a = file("a.txt", "a\n");
+        Workspace first = newWorkspace();
+        first.enableStateJournal(stateFile);
+        first.load(a);
+        EditorInstance editor = first.getEditor(a);
+        editor.getHistory().push(new AppendCommand(editor.getBuffer(), "one"));
+        first.snapshotUnsavedContent().join();
+        assertTrue("没有新的编辑时不再写入", first.snapshotUnsavedContent().isDone());
+        for (int i = 0; i < 50; i++) {
+            editor.getHistory().push(new AppendCommand(editor.getBuffer(), "more " + i));
+            first.snapshotUnsavedContent();        // 连续调用时未开始的写入被合并
+        }
+        first.snapshotUnsavedContent().join();
+        List<String> expected = editor.getBuffer().getLines();
+        // 不调用 saveState 和 closeAll，相当于进程被强行结束
+
+        Workspace second = newWorkspace();
+        second.restoreState(stateFile);
+        assertEquals(expected, second.getEditor(a).getBuffer().getLines());
+        assertTrue(second.getEditor(a).isModified());
+    }
+
+    @Test
+    public void testJournalAppliesOnTopOfSavedState() throws IOException {
+        String a = file("a.txt", "a\n");
+        String b = file("b.txt", "b\n");
+        Workspace first = newWorkspace();
+        first.load(a);
+        EditorInstance editor = first.getEditor(a);
+        editor.getHistory().push(new AppendCommand(editor.getBuffer(), "unsaved"));
+        first.saveState(stateFile);
+        first.enableStateJournal(stateFile);
+        first.load(b);
+        first.save(a);              // 保存后不再附带未保存的内容
+        first.closeAll();           // 关闭不写入日志
+
+        Workspace second = newWorkspace();
+        second.restoreState(stateFile);
+        assertEquals(2, second.getOpenFileCount());
+        assertFalse(second.getEditor(a).isModified());
+        assertEquals(List.of("a", "unsaved"), second.getEditor(a).getBuffer().getLines());
+        assertEquals(Workspace.normalizePath(b), second.getActiveEditor().getFilePath());
+    }
+
+    @Test
+    public void testTornTailIsIgnoredAndTruncated() throws IOException {
+        String a = file("a.txt", "a\n");
+        String b = file("b.txt", "b\n");
+        Workspace first = newWorkspace();
+        first.enableStateJournal(stateFile);
+        first.load(a);
+        first.closeAll();
+        // 模拟写到一半的记录
+        Files.write(journalPath(), new byte[] {0, 0, 0, 40, 1, 2, 3}, StandardOpenOption.APPEND);
+
+        Workspace second = newWorkspace();
+        second.restoreState(stateFile);
+        assertEquals(List.of(Workspace.normalizePath(a)), second.getOpenFiles());
+        second.enableStateJournal(stateFile);
+        second.load(b);
+        second.closeAll();
+
+        Workspace third = newWorkspace();
+        third.restoreState(stateFile);
+        assertEquals(List.of(Workspace.normalizePath(a), Workspace.normalizePath(b)), third.getOpenFiles());
+    }
+
+    @Test
+    public void testRebaseKeepsRecordsAfterCut() throws IOException {
+        String a = file("a.txt", "a\n");
+        String b = file("b.txt", "b\n");
+        Path state = Path.of(stateFile).toAbsolutePath();
+        WorkspaceJournal journal = WorkspaceJournal.open(state, List.of());
+        journal.opened(a, false, false);
+        journal.activated(a);
+        long cut = journal.position();
+        journal.opened(b, true, false);
+        long laterCut = journal.position();   // 在第一次压实完成前截取
+        journal.activated(b);
+
+        // 新状态只包含截取时的内容
+        rebase(journal, new WorkspaceMemento(List.of(new FileState(a, false, false)), a), cut);
+        rebase(journal, new WorkspaceMemento(List.of(new FileState(a, false, false),
+                                                     new FileState(b, true, false)), a), laterCut);
+        journal.closed(a);
+        journal.close();
+
+        WorkspaceMemento base = WorkspaceMemento.fromBytes(ByteBuffer.wrap(Files.readAllBytes(state)));
+        WorkspaceMemento replayed = WorkspaceJournal.replay(base, WorkspaceJournal.baseId(state), journalPath());
+        assertEquals(1, replayed.getFileStates().size());
+        assertEquals(b, replayed.getFileStates().get(0).getFilePath());
+        assertTrue(replayed.getFileStates().get(0).isModified());
+        assertEquals(b, replayed.getActiveFilePath());
+    }
+
+    private void rebase(WorkspaceJournal journal, WorkspaceMemento state, long cut) throws IOException {
+        Path temp = testDir.resolve("base.tmp");
+        ByteBuffer data = state.toBytes();
+        long baseId = WorkspaceJournal.baseId(data);
+        Files.write(temp, Arrays.copyOfRange(data.array(), 0, data.limit()));
+        journal.rebase(temp, baseId, cut);
+    }
+
+    @Test
+    public void testCompactionBoundsJournalSize() throws IOException {
+        String a = file("a.txt", "a\n");
+        String b = file("b.txt", "b\n");
+        Workspace first = newWorkspace();
+        first.enableStateJournal(stateFile);
+        first.load(a);
+        first.load(b);
+        for (int i = 0; i < 10 * WorkspaceJournal.COMPACT_THRESHOLD; i++) {
+            first.activate(i % 2 == 0 ? a : b);
+        }
+        first.saveState(stateFile);     // 保存状态时同时压实
+        assertEquals(WorkspaceJournal.HEADER_SIZE, Files.size(journalPath()));
+        first.activate(a);
+        first.closeAll();
+
+        Workspace second = newWorkspace();
+        second.restoreState(stateFile);
+        assertEquals(2, second.getOpenFileCount());
+        assertEquals(Workspace.normalizePath(a), second.getActiveEditor().getFilePath());
+    }
+
+    @Test
+    public void testStaleJournalIsIgnored() throws IOException {
+        String a = file("a.txt", "a\n");
+        String b = file("b.txt", "b\n");
+        Workspace first = newWorkspace();
+        first.enableStateJournal(stateFile);
+        first.load(a);
+        first.closeAll();
+
+        // 不使用日志的会话重写了状态文件，旧日志不再适用
+        Workspace other = newWorkspace();
+        other.load(b);
+        other.saveState(stateFile);
+        other.closeAll();
+
+        Workspace second = newWorkspace();
+        second.restoreState(stateFile);
+        assertEquals(List.of(Workspace.normalizePath(b)), second.getOpenFiles());
+    }
+}
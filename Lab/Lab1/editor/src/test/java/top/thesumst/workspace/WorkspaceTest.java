@@ -5,11 +5,13 @@ import org.junit.After;
 import org.junit.Test;
 import static org.junit.Assert.*;
 
+import top.thesumst.command.AppendCommand;
 import top.thesumst.command.InsertCommand;
 
 import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
 import java.util.List;
 
 /**
@@ -585,4 +587,57 @@ public class WorkspaceTest {
         List<String> matches2 = workspace.findFilesByName("other.txt");
         assertEquals(1, matches2.size());
     }
+    
+    // ===== 保存点与跳过写入测试 =====
+    
+    @Test
+    public void testUndoBackToSavePointIsNotModified() throws IOException {
+        Path file = testDir.resolve("savepoint.txt");
+        Files.write(file, List.of("origin"));
+        EditorInstance editor = workspace.load(file.toString());
+        
+        editor.getHistory().push(new AppendCommand(editor.getBuffer(), "more"));
+        assertTrue(editor.isModified());
+        
+        editor.getHistory().undo();
+        assertFalse("撤销回保存时的状态应视为未修改", editor.isModified());
+        
+        editor.getHistory().redo();
+        assertTrue(editor.isModified());
+    }
+    
+    @Test
+    public void testSaveIfChangedSkipsIdenticalContent() throws IOException {
+        Path file = testDir.resolve("identical.txt");
+        Files.write(file, List.of("a", "b"));
+        EditorInstance editor = workspace.load(file.toString());
+        FileTime stamp = FileTime.fromMillis(1_000_000L);
+        Files.setLastModifiedTime(file, stamp);
+        workspace.close(file.toString());
+        editor = workspace.load(file.toString());
+        
+        editor.getHistory().push(new AppendCommand(editor.getBuffer(), "c"));
+        editor.getHistory().undo();
+        editor.markAsModified();
+        
+        assertFalse("内容与磁盘一致时不应写入", workspace.saveIfChanged(file.toString()));
+        assertEquals(stamp, Files.getLastModifiedTime(file));
+        assertFalse(editor.isModified());
+        
+        editor.getHistory().push(new AppendCommand(editor.getBuffer(), "c"));
+        assertTrue(workspace.saveIfChanged(file.toString()));
+        assertEquals(List.of("a", "b", "c"), Files.readAllLines(file));
+    }
+    
+    @Test
+    public void testSaveIfChangedRewritesAfterExternalChange() throws IOException {
+        Path file = testDir.resolve("external.txt");
+        Files.write(file, List.of("mine"));
+        workspace.load(file.toString());
+        
+        Files.write(file, List.of("someone else's edit"));
+        
+        assertTrue(workspace.saveIfChanged(file.toString()));
+        assertEquals(List.of("mine"), Files.readAllLines(file));
+    }
 }